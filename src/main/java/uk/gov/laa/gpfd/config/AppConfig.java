@@ -6,7 +6,9 @@ import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executors;
 
+import com.zaxxer.hikari.HikariConfig;
 import javax.sql.DataSource;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -28,17 +30,26 @@ import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.security.authorization.AuthorizationManager;
 import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
 import org.springframework.web.client.RestTemplate;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import oracle.ucp.jdbc.PoolDataSource;
 import oracle.ucp.jdbc.PoolDataSourceFactory;
+import uk.gov.laa.gpfd.dao.ExportSpool;
+import uk.gov.laa.gpfd.dao.JdbcDataStreamer.CsvEncoding;
 import uk.gov.laa.gpfd.dao.JdbcWorkbookDataStreamer;
+import uk.gov.laa.gpfd.dao.ParallelSheetStreamer;
+import uk.gov.laa.gpfd.dao.PartitionedCsvStreamer;
 import uk.gov.laa.gpfd.dao.ReportDao;
+import uk.gov.laa.gpfd.dao.RowEstimator;
 import static uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.forSheet;
 import uk.gov.laa.gpfd.dao.ReportTrackingDao;
+import uk.gov.laa.gpfd.dao.ZippedCsvStreamer;
 import uk.gov.laa.gpfd.dao.sql.core.StatementPolicy;
 import uk.gov.laa.gpfd.model.FieldProjection;
 import uk.gov.laa.gpfd.model.FileExtension;
@@ -55,11 +66,20 @@ import uk.gov.laa.gpfd.services.excel.formatting.CellFormatter;
 import uk.gov.laa.gpfd.services.excel.formatting.CellFormatting;
 import uk.gov.laa.gpfd.services.excel.formatting.ColumnFormatting;
 import uk.gov.laa.gpfd.services.excel.formatting.Formatting;
+import uk.gov.laa.gpfd.services.excel.template.AnalyticsPartsCache;
+import uk.gov.laa.gpfd.services.excel.template.TemplateCache;
 import uk.gov.laa.gpfd.services.excel.template.TemplateClient;
 import uk.gov.laa.gpfd.services.excel.template.TemplateFileNameResolver;
+import uk.gov.laa.gpfd.services.excel.workbook.ParallelDeflate;
+import uk.gov.laa.gpfd.services.excel.workbook.PivotCacheGenerator;
+import uk.gov.laa.gpfd.services.excel.workbook.SheetStorage;
 import uk.gov.laa.gpfd.services.excel.workbook.StyleManager;
 import uk.gov.laa.gpfd.services.stream.AbstractDataStream;
 import uk.gov.laa.gpfd.services.stream.DataStream;
+import uk.gov.laa.gpfd.services.stream.ExportCoalescer;
+import uk.gov.laa.gpfd.services.stream.ExportScheduler;
+import uk.gov.laa.gpfd.services.stream.ReportResultCache;
+import uk.gov.laa.gpfd.utils.SecurityUtils;
 import uk.gov.laa.gpfd.utils.StrategyFactory;
 import uk.gov.laa.gpfd.utils.WorkbookFactory;
 
@@ -71,6 +91,7 @@ import uk.gov.laa.gpfd.utils.WorkbookFactory;
  * are essential for database connectivity, object mapping, and external API integration.
  * </p>
  */
+@Slf4j
 @Configuration
 public class AppConfig {
     @Value("${excel.security.compression-ratio:0.001}")
@@ -79,11 +100,17 @@ public class AppConfig {
     @Value("${excel.steam.window.size:1000}")
     private int rowAccessWindowSize;
 
+    @Value("${gpfd.excel.direct-rows.enabled:false}")
+    private boolean excelDirectRows;
+
     @Value("${excel.jdbc.streamer.default-fetch-size:1000}")
     private int defaultFetchSize;
     @Getter
     @Value("${gpfd.csv-generation.buffer-flush-frequency:1000}")
     private int csvBufferFlushFrequency;
+    @Getter
+    @Value("${gpfd.csv-generation.encoding:DIRECT}")
+    private CsvEncoding csvEncoding;
 
     /**
      * Configures a read-only {@link DataSource}.
@@ -98,7 +125,8 @@ public class AppConfig {
             @Value("${gpfd.datasource.read-only.url}") String url,
             @Value("${gpfd.datasource.read-only.username}") String username,
             @Value("${gpfd.datasource.read-only.password}") String password,
-            @Value("${gpfd.datasource.read-only.driver-class-name}") String driverClass
+            @Value("${gpfd.datasource.read-only.driver-class-name}") String driverClass,
+            @Value("${gpfd.datasource.read-only.max-pool-size:10}") int maxPoolSize
     ) throws SQLException {
         PoolDataSource pds = PoolDataSourceFactory.getPoolDataSource();
 
@@ -109,7 +137,7 @@ public class AppConfig {
 
         pds.setInitialPoolSize(5);
         pds.setMinPoolSize(5);
-        pds.setMaxPoolSize(10);
+        pds.setMaxPoolSize(maxPoolSize);
         pds.setCommitOnConnectionReturn(false);
         pds.setConnectionWaitDuration(Duration.of(30, ChronoUnit.SECONDS));
         pds.setTimeoutCheckInterval(5);
@@ -194,6 +222,30 @@ public class AppConfig {
         return trackingDataSource;
     }
 
+    /**
+     * Opens unpooled connections to the metadata database, for the metadata catalogue to listen
+     * for change notifications on.
+     *
+     * <p>A listening connection is held for as long as the application runs, and would go back to
+     * the pool still listening if it failed, so it is opened outside the pool when the pool's
+     * connection details are known. Otherwise there is no listener, and metadata changes are only
+     * picked up as the snapshot ages.</p>
+     *
+     * @param metadataDataSource the pooled metadata data source
+     * @return a data source whose connections are closed for real, or null when the pool's
+     *         connection details are not known
+     */
+    @Bean
+    @ConditionalOnMissingBean(name = "metadataListenerDataSource")
+    DataSource metadataListenerDataSource(@Qualifier("metadataDataSource") DataSource metadataDataSource) {
+        if (metadataDataSource instanceof HikariConfig pool) {
+            return new DriverManagerDataSource(pool.getJdbcUrl(), pool.getUsername(), pool.getPassword());
+        }
+        log.warn("Metadata data source {} is not a Hikari pool, metadata changes will only be picked up by polling",
+                metadataDataSource.getClass().getName());
+        return null;
+    }
+
     /**
      * Allows JDBC operations on the "trackingDataSource" above.
      *
@@ -315,24 +367,35 @@ public class AppConfig {
     }
 
     /**
-     * Creates a {@link TemplateService} bean with security policies that delegates to the provided {@link TemplateClient}
-     * for loading Excel templates.
+     * Creates a {@link TemplateService} bean with security policies that loads Excel templates through the
+     * {@link TemplateCache}, which delegates to the configured {@link TemplateClient}. Analytics sheets
+     * are spliced into workbooks from the {@link AnalyticsPartsCache} when it is enabled.
      *
-     * @param templateClient the {@link TemplateClient} used to retrieve templates
+     * @param templateCache the {@link TemplateCache} used to retrieve templates
+     * @param analyticsPartsCache the {@link AnalyticsPartsCache} holding precompiled analytics sheets
+     * @param sheetStorage the {@link SheetStorage} keeping the sheet data of generated workbooks
+     * @param parallelDeflate the {@link ParallelDeflate} compressing generated workbooks
+     * @param pivotCacheGenerator the {@link PivotCacheGenerator} building the pivot caches of spliced analytics sheets
      * @return a {@link TemplateService} instance
      */
     @Bean
-    public TemplateService streamingTemplateService(TemplateClient templateClient, StyleManager styleManager) {
+    public TemplateService streamingTemplateService(TemplateCache templateCache, AnalyticsPartsCache analyticsPartsCache,
+                                                    SheetStorage sheetStorage, ParallelDeflate parallelDeflate,
+                                                    PivotCacheGenerator pivotCacheGenerator) {
         if (allowedCompressionRatio <= 0) {
             throw new IllegalStateException("Compression ratio must be positive");
         }
 
         return new TemplateService.ExcelTemplateService.Builder()
-                .repository(templateClient)
+                .repository(templateCache::findTemplateById)
                 .factory(WorkbookFactory::newWorkbook)
                 .withSecurity(allowedCompressionRatio)
-                .withStyleManager(styleManager)
                 .withStream(rowAccessWindowSize)
+                .withDirectRows(excelDirectRows)
+                .withAnalytics(analyticsPartsCache::findById)
+                .withSheetStorage(sheetStorage)
+                .withParallelDeflate(parallelDeflate)
+                .withPivotCacheGenerator(pivotCacheGenerator)
                 .build();
     }
 
@@ -370,25 +433,14 @@ public class AppConfig {
     }
 
     /**
-     * Creates and configures a {@link StyleManager} bean for managing Excel cell styles.
-     *
-     * <p>This bean provides a centralized way to create, cache, and reuse cell styles
-     * throughout the application to ensure consistent formatting in generated Excel files
-     * while optimizing memory usage.</p>
-     */
-    @Bean
-    public StyleManager styleManager() {
-        return StyleManager.create();
-    }
-
-    /**
-     * Creates a {@link CellFormatting} bean for applying cell-level formatting strategies.
+     * Creates a {@link CellFormatting} bean for applying cell-level formatting strategies. Styles are
+     * kept by each workbook's own {@link StyleManager}.
      *
      * @return a {@link CellFormatting} instance
      */
     @Bean
-    public CellFormatting cellFormattingStrategy(StyleManager styleManager) {
-        return new CellFormatting(styleManager) {
+    public CellFormatting cellFormattingStrategy() {
+        return new CellFormatting() {
         };
     }
 
@@ -423,15 +475,140 @@ public class AppConfig {
      * @return a {@link DataStreamer} instance
      */
     @Bean
-    DataStreamer dataStreamer(JdbcTemplate readOnlyJdbcTemplate) {
-        return createJdbcStreamer(readOnlyJdbcTemplate, getCsvBufferFlushFrequency());
+    DataStreamer dataStreamer(JdbcTemplate readOnlyJdbcTemplate, PartitionedCsvStreamer partitionedCsvStreamer,
+                              ExportSpool exportSpool) {
+        return createJdbcStreamer(readOnlyJdbcTemplate, getCsvBufferFlushFrequency(), getCsvEncoding(),
+                partitionedCsvStreamer, exportSpool);
+    }
+
+    /**
+     * Creates the {@link ExportSpool} that lets exports release their read-only connection before a
+     * slow client has downloaded the whole report. Database reads run on virtual threads.
+     *
+     * @param enabled       whether CSV reads are spooled
+     * @param memoryBytes   output kept on the heap per export before overflowing to a temporary file
+     * @param meterRegistry records connection hold and response times
+     * @return an {@link ExportSpool} instance
+     */
+    @Bean
+    ExportSpool exportSpool(@Value("${gpfd.export.spool.enabled:false}") boolean enabled,
+                            @Value("${gpfd.export.spool.memory-bytes:4194304}") int memoryBytes,
+                            MeterRegistry meterRegistry) {
+        var executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("spool-read-", 0).factory());
+        return new ExportSpool(enabled, memoryBytes, executor, meterRegistry);
+    }
+
+    /**
+     * Fits the extra read-only connections borrowed by partition-parallel CSV exports and parallel
+     * Excel sheets into what the admitted exports leave of the read-only pool.
+     *
+     * @param maxPoolSize     the maximum size of the read-only pool
+     * @param requestedSlices the cap from {@code gpfd.csv-generation.parallel.max-connections}
+     * @param requestedSheets the cap from {@code gpfd.excel.parallel-sheets.max-connections}
+     * @param exportScheduler bounds the exports that hold a connection each
+     * @return a {@link ReadOnlyConnectionBudget} instance
+     */
+    @Bean
+    ReadOnlyConnectionBudget readOnlyConnectionBudget(
+            @Value("${gpfd.datasource.read-only.max-pool-size:10}") int maxPoolSize,
+            @Value("${gpfd.csv-generation.parallel.max-connections:2}") int requestedSlices,
+            @Value("${gpfd.excel.parallel-sheets.max-connections:2}") int requestedSheets,
+            ExportScheduler exportScheduler) {
+        return ReadOnlyConnectionBudget.allocate(maxPoolSize, exportScheduler.totalSlots(),
+                requestedSlices, requestedSheets);
+    }
+
+    /**
+     * Creates the {@link PartitionedCsvStreamer} used for CSV reports whose query declares a
+     * partitioning. All parallel exports together use at most the CSV share of the
+     * {@link ReadOnlyConnectionBudget}.
+     *
+     * @param readOnlyJdbcTemplate the read-only JDBC template
+     * @param connectionBudget     the extra read-only connections helpers may borrow
+     * @param sheetStorage         where ordered exports keep slices that finish ahead of their turn
+     * @return a {@link PartitionedCsvStreamer} instance
+     */
+    @Bean
+    PartitionedCsvStreamer partitionedCsvStreamer(JdbcTemplate readOnlyJdbcTemplate,
+                                                  ReadOnlyConnectionBudget connectionBudget,
+                                                  SheetStorage sheetStorage) {
+        var maxConnections = connectionBudget.csvSlices();
+        var executor = Executors.newFixedThreadPool(Math.max(1, maxConnections),
+                Thread.ofPlatform().name("csv-slice-", 0).daemon().factory());
+        return new PartitionedCsvStreamer(readOnlyJdbcTemplate, executor, maxConnections, sheetStorage);
+    }
+
+    /**
+     * Creates the {@link ParallelDeflate} that compresses the parts of generated workbooks at the
+     * same time. All Excel exports share {@code gpfd.excel.parallel-deflate.threads} platform threads.
+     *
+     * @param threads the threads deflating package parts, 0 leaves workbooks to POI unless their
+     *                report has its own deflate level
+     * @param level   the deflate level of reports without their own, -1 for the zlib default
+     * @return a {@link ParallelDeflate} instance
+     */
+    @Bean
+    ParallelDeflate parallelDeflate(@Value("${gpfd.excel.parallel-deflate.threads:4}") int threads,
+                                    @Value("${gpfd.excel.parallel-deflate.level:-1}") int level) {
+        if (threads < 0) {
+            throw new IllegalStateException("Parallel deflate threads cannot be negative");
+        }
+        var executor = Executors.newFixedThreadPool(Math.max(1, threads),
+                Thread.ofPlatform().name("xlsx-deflate-", 0).daemon().factory());
+        return new ParallelDeflate(executor, threads > 0, level);
+    }
+
+    /**
+     * Creates the {@link ParallelSheetStreamer} that fills the data sheets of an Excel report at the
+     * same time. All Excel exports together use at most the sheet share of the
+     * {@link ReadOnlyConnectionBudget}, and each fills at most
+     * {@code gpfd.excel.parallel-sheets.per-export} sheets at once.
+     *
+     * @param connectionBudget the extra read-only connections helpers may borrow, no sheet share
+     *                         fills sheets one after another
+     * @param perExport        the most sheets of one export filled at the same time
+     * @param meterRegistry    records sheet timings
+     * @return a {@link ParallelSheetStreamer} instance
+     */
+    @Bean
+    ParallelSheetStreamer parallelSheetStreamer(ReadOnlyConnectionBudget connectionBudget,
+                                                @Value("${gpfd.excel.parallel-sheets.per-export:3}") int perExport,
+                                                MeterRegistry meterRegistry) {
+        var executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sheet-query-", 0).factory());
+        return new ParallelSheetStreamer(executor, connectionBudget.sheets(), perExport, meterRegistry);
     }
 
     @Bean
     DataStreamer createExcelStreamer(TemplateService templateLoader,
                                      JdbcWorkbookDataStreamer dataFetcher,
-                                     CellFormatter formatter) {
-        return DataStreamer.createExcelStreamer(templateLoader, dataFetcher, formatter);
+                                     CellFormatter formatter,
+                                     ExportSpool exportSpool,
+                                     ParallelSheetStreamer parallelSheetStreamer) {
+        return DataStreamer.createExcelStreamer(templateLoader, dataFetcher, formatter, exportSpool,
+                parallelSheetStreamer);
+    }
+
+    /**
+     * Creates the {@link RowEstimator} used to pick the format of large Excel reports before they
+     * are generated.
+     *
+     * @param readOnlyJdbcTemplate the read-only JDBC template
+     * @return a {@link RowEstimator} instance
+     */
+    @Bean
+    RowEstimator rowEstimator(JdbcTemplate readOnlyJdbcTemplate) {
+        return new RowEstimator(readOnlyJdbcTemplate);
+    }
+
+    /**
+     * Creates a {@link DataStreamer} bean that streams the sheets of Excel reports as a zip of
+     * CSV files.
+     *
+     * @return a {@link ZippedCsvStreamer} instance
+     */
+    @Bean
+    DataStreamer zippedCsvStreamer(JdbcTemplate readOnlyJdbcTemplate, ExportSpool exportSpool) {
+        return new ZippedCsvStreamer(readOnlyJdbcTemplate, getCsvBufferFlushFrequency(), exportSpool);
     }
 
     @Bean
@@ -445,8 +622,20 @@ public class AppConfig {
     }
 
     @Bean
-    StreamingService streamingService(StrategyFactory<FileExtension, DataStream> streamStrategyFactory) {
-        return new StreamingService.DefaultStreamingService(streamStrategyFactory.getStrategies());
+    DataStream createCsvZipStreamStrategy(ReportDao reportDao, DataStreamer zippedCsvStreamer) {
+        return AbstractDataStream.createCsvZipStreamStrategy(reportDao, zippedCsvStreamer);
+    }
+
+    @Bean
+    StreamingService streamingService(StrategyFactory<FileExtension, DataStream> streamStrategyFactory,
+                                      ReportDao reportDao, ReportResultCache reportResultCache,
+                                      ExportCoalescer exportCoalescer, ExportScheduler exportScheduler,
+                                      SecurityUtils securityUtils) {
+        var streamingService = new StreamingService.DefaultStreamingService(streamStrategyFactory.getStrategies());
+        var admissionControlled = new StreamingService.AdmissionControlledStreamingService(streamingService,
+                exportScheduler, securityUtils::extractUserId);
+        return new StreamingService.CachingStreamingService(admissionControlled, reportDao, reportResultCache,
+                exportCoalescer);
     }
 
     @Bean
@@ -6,8 +6,11 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
@@ -34,6 +37,18 @@ public class AsyncConfig implements AsyncConfigurer {
     return new DelegatingSecurityContextExecutor(executor);
   }
 
+  /**
+   * Executor for Spring MVC async work such as {@code StreamingResponseBody} downloads, running each
+   * task on a virtual thread with at most {@code gpfd.streaming.executor.max-concurrency} running at once.
+   * Unlike {@link #getAsyncExecutor()} it is not used for {@code @Async} methods.
+   */
+  @Bean
+  public StreamingTaskExecutor streamingTaskExecutor(
+      @Value("${gpfd.streaming.executor.max-concurrency:1000}") int maxConcurrency,
+      MeterRegistry meterRegistry) {
+    return new StreamingTaskExecutor(maxConcurrency, meterRegistry);
+  }
+
   @Override
   public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
     return (throwable, method, params) ->
@@ -0,0 +1,58 @@
+package uk.gov.laa.gpfd.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * How the read-only connection pool is shared between admitted exports and the extra connections
+ * their helpers borrow.
+ * <p>
+ * Every export admitted by the export scheduler holds one connection. Partition-parallel CSV
+ * exports and parallel Excel sheets borrow more on top of it, so their caps are only kept when
+ * the admission slots and both caps fit in the pool together. Otherwise the connections the slots
+ * leave over are split between the helpers in proportion to their configured caps, and a CSV
+ * share too small to run two slices at once goes to the sheets.
+ *
+ * @param csvSlices extra connections shared by partition-parallel CSV exports
+ * @param sheets    extra connections shared by Excel exports filling sheets at once
+ */
+@Slf4j
+public record ReadOnlyConnectionBudget(int csvSlices, int sheets) {
+
+    public ReadOnlyConnectionBudget {
+        if (csvSlices < 0 || sheets < 0) {
+            throw new IllegalArgumentException("Connection budgets cannot be negative");
+        }
+    }
+
+    /**
+     * Fits the configured helper caps into the pool.
+     *
+     * @param poolSize        the maximum size of the read-only pool
+     * @param admissionSlots  the exports admitted at once, 0 when admission is disabled
+     * @param requestedSlices the configured cap for partition-parallel CSV exports
+     * @param requestedSheets the configured cap for parallel Excel sheets
+     * @return the caps to use
+     */
+    public static ReadOnlyConnectionBudget allocate(int poolSize, int admissionSlots,
+                                                    int requestedSlices, int requestedSheets) {
+        if (requestedSlices < 0 || requestedSheets < 0) {
+            throw new IllegalStateException("Parallel connection caps cannot be negative");
+        }
+        var spare = Math.max(0, poolSize - admissionSlots);
+        var requested = requestedSlices + requestedSheets;
+        if (requested <= spare) {
+            return new ReadOnlyConnectionBudget(requestedSlices, requestedSheets);
+        }
+
+        var slices = (int) ((long) spare * requestedSlices / requested);
+        if (slices < 2) {
+            // A partitioned export needs two connections to run in parallel
+            slices = 0;
+        }
+        var budget = new ReadOnlyConnectionBudget(slices, Math.min(requestedSheets, spare - slices));
+        log.warn("{} admission slots leave {} of {} read-only connections for helpers, using {} for CSV slices "
+                        + "and {} for Excel sheets instead of {} and {}", admissionSlots, spare, poolSize,
+                budget.csvSlices(), budget.sheets(), requestedSlices, requestedSheets);
+        return budget;
+    }
+}
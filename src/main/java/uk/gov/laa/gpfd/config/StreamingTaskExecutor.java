@@ -0,0 +1,109 @@
+package uk.gov.laa.gpfd.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Spring MVC async work, such as writing a {@code StreamingResponseBody}, on virtual threads.
+ * <p>
+ * Report downloads spend most of their time blocked on database fetches or on slow clients
+ * reading the socket, which ties up a platform thread each. A virtual thread only holds a carrier
+ * thread while it is running, so thousands of slow downloads can be in progress at once.
+ * <p>
+ * At most {@code maxConcurrency} tasks run at the same time. Tasks over the limit are started
+ * straight away but park their virtual thread until a permit is free, so the servlet thread that
+ * submitted them is never blocked. Running and waiting tasks are exposed as gauges and task
+ * durations as a timer.
+ */
+@Slf4j
+public class StreamingTaskExecutor implements AsyncTaskExecutor, AutoCloseable {
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Timer duration;
+
+    public StreamingTaskExecutor(int maxConcurrency, MeterRegistry meterRegistry) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Streaming concurrency must be at least 1");
+        }
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stream-", 0).factory());
+        this.permits = new Semaphore(maxConcurrency, true);
+
+        Gauge.builder("gpfd.stream.tasks.running", running, AtomicInteger::get)
+                .description("Streaming responses currently being written")
+                .register(meterRegistry);
+        Gauge.builder("gpfd.stream.tasks.waiting", waiting, AtomicInteger::get)
+                .description("Streaming responses waiting for the concurrency limit")
+                .register(meterRegistry);
+        this.duration = Timer.builder("gpfd.stream.tasks.duration")
+                .description("Time spent writing streaming responses")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        try {
+            executor.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            throw new TaskRejectedException("Streaming executor has been shut down", e);
+        }
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        var future = new FutureTask<>(task, null);
+        execute(future);
+        return future;
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        var future = new FutureTask<>(task);
+        execute(future);
+        return future;
+    }
+
+    private void run(Runnable task) {
+        waiting.incrementAndGet();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Streaming task interrupted before it started");
+            if (task instanceof Future<?> future) {
+                future.cancel(false);
+            }
+            return;
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        running.incrementAndGet();
+        try {
+            duration.record(task);
+        } finally {
+            running.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -1,9 +1,13 @@
 package uk.gov.laa.gpfd.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import uk.gov.laa.gpfd.controller.DownloadHeadersResetResolver;
 
 import java.util.List;
 
@@ -23,11 +27,14 @@ public class WebConfig implements WebMvcConfigurer {
     );
     private final TimeBasedAccessInterceptor timeInterceptor;
     private final RequestResponseInterceptor requestResponseInterceptor;
+    private final ObjectProvider<StreamingTaskExecutor> streamingTaskExecutor;
 
     @Autowired
-    public WebConfig(TimeBasedAccessInterceptor timeInterceptor, RequestResponseInterceptor requestResponseInterceptor) {
+    public WebConfig(TimeBasedAccessInterceptor timeInterceptor, RequestResponseInterceptor requestResponseInterceptor,
+                     ObjectProvider<StreamingTaskExecutor> streamingTaskExecutor) {
         this.timeInterceptor = timeInterceptor;
         this.requestResponseInterceptor = requestResponseInterceptor;
+        this.streamingTaskExecutor = streamingTaskExecutor;
     }
 
     @Override
@@ -37,4 +44,21 @@ public class WebConfig implements WebMvcConfigurer {
         registry.addInterceptor(requestResponseInterceptor)
                 .excludePathPatterns(EXCLUDED_PATHS);
     }
+
+    /**
+     * Writes streaming responses on virtual threads when a {@link StreamingTaskExecutor} is
+     * configured, keeping the MVC default otherwise.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        streamingTaskExecutor.ifAvailable(configurer::setTaskExecutor);
+    }
+
+    /**
+     * Clears the headers of a failed download before the exception is resolved to an error response.
+     */
+    @Override
+    public void extendHandlerExceptionResolvers(List<HandlerExceptionResolver> resolvers) {
+        resolvers.addFirst(new DownloadHeadersResetResolver());
+    }
 }
@@ -4,11 +4,14 @@ import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.binder.MeterBinder;
 import oracle.ucp.jdbc.PoolDataSource;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.sql.DataSource;
+import java.time.Duration;
 
 @Configuration
 public class MetricsConfig {
@@ -29,4 +32,19 @@ public class MetricsConfig {
         };
     }
 
+    /**
+     * Reports virtual threads that pin their carrier thread for longer than
+     * {@code gpfd.streaming.executor.pinning-threshold}, to spot blocking code that stops
+     * streaming downloads from sharing carriers.
+     *
+     * @param threshold the shortest pin that is recorded
+     * @return the pinning binder
+     */
+    @Bean
+    @ConditionalOnProperty(name = "gpfd.streaming.executor.pinning-telemetry", havingValue = "true")
+    public VirtualThreadPinningBinder virtualThreadPinningBinder(
+            @Value("${gpfd.streaming.executor.pinning-threshold:20ms}") Duration threshold) {
+        return new VirtualThreadPinningBinder(threshold);
+    }
+
 }
@@ -0,0 +1,70 @@
+package uk.gov.laa.gpfd.config.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.time.Duration;
+
+/**
+ * Records every time a virtual thread pins its carrier thread for longer than a threshold, using
+ * the JFR {@code jdk.VirtualThreadPinned} event.
+ * <p>
+ * A pinned virtual thread blocks its carrier, so sustained pinning (for example in native code or
+ * a class initialiser in POI or the Oracle driver) quietly shrinks the number of downloads that can
+ * make progress. The first application frame of each pinned stack is logged at debug level.
+ */
+@Slf4j
+public class VirtualThreadPinningBinder implements MeterBinder, AutoCloseable {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final Duration threshold;
+    private RecordingStream recording;
+
+    public VirtualThreadPinningBinder(Duration threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry meterRegistry) {
+        var pinned = Timer.builder("gpfd.virtual.threads.pinned")
+                .description("Times a virtual thread pinned its carrier thread")
+                .register(meterRegistry);
+        try {
+            recording = new RecordingStream();
+            recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+            recording.onEvent(PINNED_EVENT, event -> {
+                pinned.record(event.getDuration());
+                log.debug("Virtual thread pinned for {} at {}", event.getDuration(), topFrame(event));
+            });
+            recording.startAsync();
+        } catch (RuntimeException | LinkageError e) {
+            // Runtimes without JFR still serve downloads, just without this telemetry
+            log.warn("Virtual thread pinning telemetry unavailable: {}", e.getMessage());
+        }
+    }
+
+    private static String topFrame(RecordedEvent event) {
+        var stackTrace = event.getStackTrace();
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return "unknown";
+        }
+        return stackTrace.getFrames().stream()
+                .filter(frame -> frame.isJavaFrame() && !frame.getMethod().getType().getName().startsWith("java."))
+                .findFirst()
+                .orElse(stackTrace.getFrames().getFirst())
+                .toString();
+    }
+
+    @Override
+    public void close() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+}
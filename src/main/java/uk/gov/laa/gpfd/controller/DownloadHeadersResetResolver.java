@@ -0,0 +1,51 @@
+package uk.gov.laa.gpfd.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.exception.ExportRejectedException;
+
+import java.util.List;
+
+/**
+ * Removes the headers of a download whose body failed before writing anything, so the error
+ * response from the {@link GlobalExceptionHandler} is not labelled as the download.
+ * <p>
+ * A {@link StreamingResponseBody} is written after the controller has returned, by which time the
+ * headers of its {@link org.springframework.http.ResponseEntity} are on the servlet response. An
+ * exception thrown before the first byte, such as an {@link ExportRejectedException} when no
+ * admission slot became free, is still answered with an error response, but would keep the
+ * download's {@code Content-Disposition}, content type and length.
+ * <p>
+ * Compressed downloads carry a {@code Content-Encoding} from the start, and the gzip stream has
+ * already buffered its header by the time the body fails. Both are dropped, so the error response
+ * goes out uncompressed and is not labelled gzip.
+ * <p>
+ * Runs ahead of the other resolvers and never resolves an exception itself. A response that has
+ * already been committed is left alone.
+ */
+public class DownloadHeadersResetResolver implements HandlerExceptionResolver {
+
+    private static final List<String> DOWNLOAD_HEADERS = List.of(
+            HttpHeaders.CONTENT_DISPOSITION,
+            HttpHeaders.CONTENT_ENCODING,
+            HttpHeaders.CONTENT_RANGE,
+            HttpHeaders.ACCEPT_RANGES,
+            HttpHeaders.ETAG,
+            HttpHeaders.LAST_MODIFIED);
+
+    @Override
+    public ModelAndView resolveException(HttpServletRequest request, HttpServletResponse response,
+                                         Object handler, Exception ex) {
+        if (!response.isCommitted()) {
+            response.resetBuffer();
+            DOWNLOAD_HEADERS.forEach(name -> response.setHeader(name, null));
+            response.setContentType(null);
+            response.setContentLengthLong(-1);
+        }
+        return null;
+    }
+}
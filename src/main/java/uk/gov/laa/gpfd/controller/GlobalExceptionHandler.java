@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -16,6 +17,7 @@ import uk.gov.laa.gpfd.utils.RequestLogUtils;
 import uk.gov.laa.gpfd.exception.CsvGenerationException;
 import uk.gov.laa.gpfd.exception.DatabaseReadException;
 import uk.gov.laa.gpfd.exception.DatabaseWriteException;
+import uk.gov.laa.gpfd.exception.ExportRejectedException;
 import uk.gov.laa.gpfd.exception.FileDownloadException.InvalidDownloadFormatException;
 import uk.gov.laa.gpfd.exception.FileDownloadException.ReportNotSupportedForDownloadException;
 import uk.gov.laa.gpfd.exception.FileDownloadException.S3BucketHasNoCopiesOfReportException;
@@ -33,6 +35,7 @@ import uk.gov.laa.gpfd.model.GetReportDownloadById403Response;
 import uk.gov.laa.gpfd.model.GetReportDownloadById501Response;
 import uk.gov.laa.gpfd.model.ReportsGet400Response;
 import uk.gov.laa.gpfd.model.ReportsGet404Response;
+import uk.gov.laa.gpfd.model.ReportsGet429Response;
 import uk.gov.laa.gpfd.model.ReportsGet500Response;
 
 import java.sql.SQLSyntaxErrorException;
@@ -93,7 +96,8 @@ public class GlobalExceptionHandler {
             ReportGenerationException.PivotTableCopyException.class,
             ReportGenerationException.PivotTableCreationException.class,
             ReportGenerationException.SheetCopyException.class,
-            ReportGenerationException.SheetNotFoundException.class
+            ReportGenerationException.SheetNotFoundException.class,
+            ReportGenerationException.SheetWriteException.class
     })
     public ResponseEntity<ReportsGet500Response> handleReportGenerationException(ReportGenerationException e) {
         var response = new ReportsGet500Response() {{
@@ -459,4 +463,27 @@ public class GlobalExceptionHandler {
                 .body(errorResponse);
     }
 
+    /**
+     * Handles {@link ExportRejectedException} and responds with an HTTP 429 Too Many Requests.
+     *
+     * @param e the exception thrown when an export could not be admitted in time
+     * @return a {@link ResponseEntity} containing a {@link ReportsGet429Response} with error details
+     * and a {@code Retry-After} header.
+     */
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    @ExceptionHandler(ExportRejectedException.class)
+    public ResponseEntity<ReportsGet429Response> handleExportRejectedException(ExportRejectedException e) {
+        var errorResponse = new ReportsGet429Response();
+        errorResponse.setError(e.getMessage());
+
+        log.atWarn()
+                .addKeyValue(RequestLogUtils.EVENT_ACTION, "export.rejected")
+                .addKeyValue(RequestLogUtils.EVENT_OUTCOME, "failure")
+                .log("ExportRejectedException Thrown: {}, retry after {}s", e.getMessage(), e.getRetryAfter().toSeconds());
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .body(errorResponse);
+    }
+
 }
@@ -11,12 +11,16 @@ import uk.gov.laa.gpfd.dao.ReportDao;
 import uk.gov.laa.gpfd.exception.ReportIdNotFoundException;
 import uk.gov.laa.gpfd.model.FileExtension;
 import uk.gov.laa.gpfd.model.GetReportById200Response;
+import uk.gov.laa.gpfd.model.Report;
 import uk.gov.laa.gpfd.model.ReportsGet200Response;
+import uk.gov.laa.gpfd.services.ReportCatalogueService;
 import uk.gov.laa.gpfd.services.ReportManagementService;
 import uk.gov.laa.gpfd.services.ReportResponseBuilder;
 import uk.gov.laa.gpfd.services.StreamingService;
 import uk.gov.laa.gpfd.services.s3.FileDownloadService;
 import uk.gov.laa.gpfd.services.s3.S3ClientWrapper;
+import uk.gov.laa.gpfd.services.stream.ExportFormatPlanner;
+import uk.gov.laa.gpfd.services.stream.KnownLengthResponseBody;
 import uk.gov.laa.gpfd.services.stream.TrackedStreamService;
 import uk.gov.laa.gpfd.utils.SecurityUtils;
 
@@ -33,12 +37,14 @@ import static uk.gov.laa.gpfd.model.FileExtension.XLSX;
 public class ReportsController implements ReportsApi {
 
     private final ReportManagementService reportManagementService;
+    private final ReportCatalogueService reportCatalogueService;
     private final StreamingService streamingService;
     private final FileDownloadService fileDownloadService;
     private final ReportDao reportDao;
     private final SecurityUtils securityUtils;
     private final ReportResponseBuilder reportResponseBuilder;
     private final TrackedStreamService trackedStreamService;
+    private final ExportFormatPlanner exportFormatPlanner;
 
     @Override
     public Optional<NativeWebRequest> getRequest() {
@@ -54,7 +60,7 @@ public class ReportsController implements ReportsApi {
     @Override
     public ResponseEntity<ReportsGet200Response> reportsGet() {
         log.info("Requesting report list from service");
-        var reportListEntries = reportManagementService.fetchReportListEntries();
+        var reportListEntries = reportCatalogueService.fetchReportListEntries();
 
         var response = new ReportsGet200Response();
         reportListEntries.forEach(response::addReportListItem);
@@ -83,9 +89,10 @@ public class ReportsController implements ReportsApi {
 
         // Validate that this report is actually a CSV report
         reportManagementService.validateReportFormat(requestedId, CSV);
-        var rawStream = streamingService.stream(requestedId, CSV);
+        var report = fetchReport(requestedId);
+        var rawStream = streamingService.stream(report, CSV);
 
-        return fetchCsvExcelDownloadResponse(requestedId, rawStream);
+        return fetchCsvExcelDownloadResponse(report, rawStream, CSV);
     }
 
     /**
@@ -107,6 +114,9 @@ public class ReportsController implements ReportsApi {
      *   <li>A {@code Content-Type} header set to {@code application/vnd.openxmlformats-officedocument.spreadsheetml.sheet}.</li>
      * </ul>
      *
+     * <p>Reports that the {@link ExportFormatPlanner} estimates to be too large for a workbook are instead
+     * streamed as {@code <report_name>.zip}, holding a CSV file per sheet, with the content type {@code application/zip}.
+     *
      * <p>If an error occurs during the process, the method will log the error and throw an appropriate exception.
      *
      * @param id The unique identifier (UUID) of the report to be generated and streamed as an Excel file.
@@ -122,8 +132,11 @@ public class ReportsController implements ReportsApi {
         // Validate format before attempting to stream
         reportManagementService.validateReportFormat(id, XLSX);
 
-        var rawStream = streamingService.stream(id, XLSX);
-        return fetchCsvExcelDownloadResponse(id, rawStream);
+        // Reports estimated to be too large for a workbook are sent as zipped CSV instead
+        var report = fetchReport(id);
+        var format = exportFormatPlanner.excelFormat(report);
+        var rawStream = streamingService.stream(report, format);
+        return fetchCsvExcelDownloadResponse(report, rawStream, format);
     }
 
     @Override
@@ -137,20 +150,26 @@ public class ReportsController implements ReportsApi {
         return fetchS3DownloadResponse(id, s3Response);
     }
 
-    private ResponseEntity<StreamingResponseBody> fetchCsvExcelDownloadResponse(UUID reportId, StreamingResponseBody rawStream) {
+    private Report fetchReport(UUID reportId) {
+        return reportDao.fetchReportById(reportId).orElseThrow(() -> new ReportIdNotFoundException(reportId));
+    }
+
+    private ResponseEntity<StreamingResponseBody> fetchCsvExcelDownloadResponse(Report report, StreamingResponseBody rawStream,
+                                                                                FileExtension fileExtension) {
         var userId = securityUtils.extractUserId();
-        var report = reportDao.fetchReportById(reportId).orElseThrow(() -> new ReportIdNotFoundException(reportId));
 
-        StreamingResponseBody trackedStream = trackedStreamService.wrapStream(rawStream, reportId, userId);
+        StreamingResponseBody trackedStream = trackedStreamService.wrapStream(rawStream, report.getId(), userId);
 
-        var filename = String.format("%s.%s", report.getName(), report.getOutputType().getExtension());
-        var fileExtension = FileExtension.fromString(report.getOutputType().getExtension());
+        var filename = String.format("%s.%s", report.getName(), fileExtension.getExtension());
+        if (rawStream instanceof KnownLengthResponseBody cached) {
+            return reportResponseBuilder.buildResponse(trackedStream, filename, fileExtension, cached.contentLength());
+        }
         return reportResponseBuilder.buildResponse(trackedStream, filename, fileExtension);
     }
 
     private ResponseEntity<StreamingResponseBody> fetchS3DownloadResponse(UUID reportId, S3ClientWrapper.S3CsvDownload s3CsvDownload) {
         var userId = securityUtils.extractUserId();
-        var report = reportDao.fetchReportById(reportId).orElseThrow(() -> new ReportIdNotFoundException(reportId));
+        var report = fetchReport(reportId);
         var s3Stream = s3CsvDownload.stream();
         var filename = s3CsvDownload.getFileName();
         var fileExtension = FileExtension.fromString(report.getOutputType().getExtension());
@@ -5,12 +5,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
-import uk.gov.laa.gpfd.api.ReportsApi;
+import uk.gov.laa.gpfd.services.ReportCatalogueService;
 import uk.gov.laa.gpfd.utils.UrlBuilder;
 
 import java.net.URI;
 import java.util.Locale;
-import java.util.Objects;
 import java.util.UUID;
 
 @Slf4j
@@ -18,7 +17,7 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class ReportsViewController {
 
-    private final ReportsApi api;
+    private final ReportCatalogueService reportCatalogueService;
     private final UrlBuilder urlBuilder;
 
     @GetMapping("/ui")
@@ -37,23 +36,15 @@ public class ReportsViewController {
                 String fileExtension
         ) {}
 
-        var response = Objects.requireNonNull(api.reportsGet().getBody());
-
-        var reportList = response.getReportList().stream()
-                .map(reportItem -> {
-                    var reportResponse =
-                            Objects.requireNonNull(api.getReportById(reportItem.getId()).getBody());
-
-                    var downloadUrl = reportResponse.getReportDownloadUrl();
-
-                    return new ReportDto(
-                            reportItem.getId(),
-                            reportItem.getReportName(),
-                            reportItem.getDescription(),
-                            downloadUrl,
-                            extractExtension(downloadUrl)
-                    );
-                })
+        // Each entry already carries its download URL, so no per-report lookups are needed
+        var reportList = reportCatalogueService.fetchReportListEntries().stream()
+                .map(reportItem -> new ReportDto(
+                        reportItem.getId(),
+                        reportItem.getReportName(),
+                        reportItem.getDescription(),
+                        reportItem.getReportDownloadUrl(),
+                        extractExtension(reportItem.getReportDownloadUrl())
+                ))
                 .toList();
 
         model.addAttribute("reportListResponse", reportList);
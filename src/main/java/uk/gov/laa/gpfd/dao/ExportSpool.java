@@ -0,0 +1,200 @@
+package uk.gov.laa.gpfd.dao;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import uk.gov.laa.gpfd.model.FileExtension;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decouples reading a report from the database from writing it to the client.
+ * <p>
+ * Without a spool the read-only connection stays borrowed until the last byte has reached the
+ * browser, so one slow client holds one of the pooled connections for the whole download. With
+ * the spool enabled the report is read on a separate thread as fast as the database supplies it,
+ * into a buffer of at most {@code memoryBytes} that overflows to a temporary file. The connection
+ * is released as soon as the query has been drained, while the calling thread streams the spool to
+ * the client at the client's pace.
+ * <p>
+ * A read failure is rethrown to the caller once the output before it has been written. A client
+ * that disconnects stops the read at its next write. Output that is already being written into a
+ * {@link TailSpool}, such as a coalesced export, goes straight through instead of being spooled twice.
+ * <p>
+ * A caller that only needs to hold a resource while the database is being read, such as an
+ * admission slot, writes the export through {@link #writeNotifying(Runnable, Producer, OutputStream)}
+ * and is told as soon as the reads have finished.
+ * <p>
+ * How long each export holds its connection and how long the whole response takes are recorded
+ * per format as {@code gpfd.export.connection.hold} and {@code gpfd.export.response.duration},
+ * with or without the spool, so the two modes can be compared.
+ */
+@Slf4j
+public final class ExportSpool {
+
+    /**
+     * Writes report output that is read from the database.
+     */
+    @FunctionalInterface
+    public interface Producer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static final ScopedValue<Runnable> READ_FINISHED = ScopedValue.newInstance();
+    private static final Runnable NOTHING = () -> { };
+
+    @Getter
+    private final boolean enabled;
+    private final int memoryBytes;
+    private final Executor executor;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Creates a spool.
+     *
+     * @param enabled       whether reads are spooled, when false only the timings are recorded
+     * @param memoryBytes   the output kept on the heap per export before overflowing to a file
+     * @param executor      runs the database reads
+     * @param meterRegistry records hold and response times
+     */
+    public ExportSpool(boolean enabled, int memoryBytes, Executor executor, MeterRegistry meterRegistry) {
+        if (memoryBytes < 0) {
+            throw new IllegalArgumentException("Spool memory cannot be negative");
+        }
+        this.enabled = enabled;
+        this.memoryBytes = memoryBytes;
+        this.executor = requireNonNull(executor, "Executor cannot be null");
+        this.meterRegistry = requireNonNull(meterRegistry, "MeterRegistry cannot be null");
+    }
+
+    /**
+     * Creates an instance that reads straight into the client stream.
+     *
+     * @return a disabled spool
+     */
+    public static ExportSpool disabled() {
+        return new ExportSpool(false, 0, Runnable::run, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Writes an export, calling {@code readFinished} once the database reads made through any spool
+     * have finished. When the spool is enabled that is as soon as the query has been drained,
+     * otherwise it is when the output has been written. It may be called on another thread, and is
+     * not called at all if the export never reads through a spool.
+     *
+     * @param readFinished told when the reads have finished
+     * @param export       writes the export
+     * @param out          the response stream
+     * @throws IOException if the export fails
+     */
+    public static void writeNotifying(Runnable readFinished, Producer export, OutputStream out) throws IOException {
+        requireNonNull(readFinished, "Read callback cannot be null");
+        ScopedValue.where(READ_FINISHED, readFinished).call(() -> {
+            export.writeTo(out);
+            return null;
+        });
+    }
+
+    /**
+     * Streams database output to the client, through the spool when it is enabled.
+     *
+     * @param format   the report format, used to tag timings
+     * @param producer reads the report and writes its output
+     * @param client   the response stream
+     * @throws IOException if reading or writing fails
+     */
+    public void stream(FileExtension format, Producer producer, OutputStream client) throws IOException {
+        var response = Timer.start(meterRegistry);
+        var readFinished = READ_FINISHED.orElse(NOTHING);
+        try {
+            if (!enabled || TailSpool.isFilling()) {
+                var hold = Timer.start(meterRegistry);
+                try {
+                    producer.writeTo(client);
+                } finally {
+                    hold.stop(holdTimer(format));
+                    readFinished.run();
+                }
+                return;
+            }
+
+            var spool = new TailSpool(memoryBytes, null);
+            spool.subscribe();
+            try {
+                executor.execute(() -> fill(spool, producer, format, readFinished));
+            } catch (RejectedExecutionException e) {
+                spool.fail(e);
+                spool.unsubscribe();
+                throw new IOException("Cannot start spooled database read", e);
+            }
+            try {
+                spool.tailTo(client);
+            } catch (IOException | RuntimeException | Error e) {
+                spool.abandon();
+                throw e;
+            }
+        } finally {
+            response.stop(responseTimer(format));
+        }
+    }
+
+    /**
+     * Records work that holds database connections, for outputs that are not spooled here. The
+     * reads count as finished once it returns.
+     *
+     * @param format the report format
+     * @param work   the database reads
+     */
+    public void holding(FileExtension format, Runnable work) {
+        try {
+            holdTimer(format).record(work);
+        } finally {
+            READ_FINISHED.orElse(NOTHING).run();
+        }
+    }
+
+    /**
+     * Records the time taken to produce a whole response, for outputs that are not spooled here.
+     *
+     * @param format the report format
+     * @param work   writes the response
+     */
+    public void measure(FileExtension format, Runnable work) {
+        responseTimer(format).record(work);
+    }
+
+    private void fill(TailSpool spool, Producer producer, FileExtension format, Runnable readFinished) {
+        var hold = Timer.start(meterRegistry);
+        try {
+            spool.fill(producer);
+        } catch (IOException | RuntimeException | Error e) {
+            // Recorded by the spool and rethrown to the client once it has caught up
+            log.debug("Spooled {} read failed", format, e);
+        } finally {
+            var nanos = hold.stop(holdTimer(format));
+            log.debug("Spooled {} bytes of {} output in {} ms", spool.size(), format, nanos / 1_000_000);
+            readFinished.run();
+        }
+    }
+
+    private Timer holdTimer(FileExtension format) {
+        return Timer.builder("gpfd.export.connection.hold")
+                .description("Time a report export holds its database connection")
+                .tag("format", format.getExtension())
+                .register(meterRegistry);
+    }
+
+    private Timer responseTimer(FileExtension format) {
+        return Timer.builder("gpfd.export.response.duration")
+                .description("Time taken to write a report export to the client")
+                .tag("format", format.getExtension())
+                .register(meterRegistry);
+    }
+}
@@ -5,14 +5,19 @@ import tools.jackson.dataformat.csv.CsvMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcOperations;
 import uk.gov.laa.gpfd.dao.sql.ResultSetExtractorHelper;
+import uk.gov.laa.gpfd.model.FileExtension;
+import uk.gov.laa.gpfd.model.QueryPartitioning;
+import uk.gov.laa.gpfd.model.Queryable;
 import uk.gov.laa.gpfd.model.Report;
+import uk.gov.laa.gpfd.model.ReportQuery;
 import uk.gov.laa.gpfd.services.DataStreamer;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Objects;
 
+import static uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.forEncodedStream;
 import static uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.forStream;
 
 /**
@@ -22,12 +27,37 @@ import static uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.forStream;
  * The streaming starts immediately upon query execution.
  *
  * @implNote Uses Spring's {@link JdbcOperations} for database operations and a
- *           row-by-row callback mechanism for streaming.
+ *           row-by-row callback mechanism for streaming. Queries configured with a
+ *           {@link QueryPartitioning} are handed to the {@link PartitionedCsvStreamer}, when one is
+ *           provided and the {@link CsvEncoding#DIRECT} encoder is in use. All reads go through the
+ *           {@link ExportSpool}, which releases the connection before a slow client has caught up
+ *           when spooling is enabled.
  */
 @Slf4j
-public record JdbcDataStreamer(JdbcOperations jdbc, int csvBufferFlushFrequency) implements DataStreamer {
+public record JdbcDataStreamer(JdbcOperations jdbc, int csvBufferFlushFrequency, CsvEncoding encoding,
+                               PartitionedCsvStreamer partitionedStreamer, ExportSpool spool) implements DataStreamer {
     private static final char END_OF_LINE_SEPARATOR = '\n', EMPTY = ' ';
 
+    /**
+     * The engine used to turn result set rows into CSV.
+     */
+    public enum CsvEncoding {
+        /**
+         * Rows are collected into a map and written through a Jackson {@code SequenceWriter}.
+         */
+        JACKSON,
+
+        /**
+         * Rows are encoded straight into a reusable byte buffer, see {@link uk.gov.laa.gpfd.dao.sql.CsvRowEncoder}.
+         */
+        DIRECT
+    }
+
+    public JdbcDataStreamer {
+        Objects.requireNonNull(encoding, "CSV encoding must not be null");
+        Objects.requireNonNull(spool, "Export spool must not be null");
+    }
+
     /**
      * Streams the results of a SQL query directly to the provided output stream.
      *
@@ -37,10 +67,6 @@ public record JdbcDataStreamer(JdbcOperations jdbc, int csvBufferFlushFrequency)
      * @throws RuntimeException        if database access or streaming fails
      * @implNote The caller is responsible for closing the output stream.
      */
-    @SuppressFBWarnings(
-            value = "SECSQLISPRJDBC",
-            justification = "SQL is sourced from ReportQuerySql which is populated from admin-controlled data store; no user input is concatenated into the query string"
-    )
     @Override
     public void stream(Report report, OutputStream stream) throws IOException {
         if (null == report) {
@@ -60,12 +86,49 @@ public record JdbcDataStreamer(JdbcOperations jdbc, int csvBufferFlushFrequency)
             throw new IllegalArgumentException("SQL query must not be empty");
         }
 
-        Map<String, String> row = new LinkedHashMap<>();
-        var csvMapper = new CsvMapper();
+        var partitioning = firstQueryPartitioning(report);
+        spool.stream(FileExtension.CSV, out -> query(sql, partitioning, out), stream);
+    }
 
-        log.debug("Initiating streaming for query: [{}]", sql.replace(END_OF_LINE_SEPARATOR, EMPTY));
-        jdbc.query(sql, new ResultSetExtractorHelper<>(forStream(stream, csvMapper, row, csvBufferFlushFrequency)));
+    @SuppressFBWarnings(
+            value = "SECSQLISPRJDBC",
+            justification = "SQL is sourced from ReportQuerySql which is populated from admin-controlled data store; no user input is concatenated into the query string"
+    )
+    private void query(String sql, QueryPartitioning partitioning, OutputStream stream) throws IOException {
+        if (partitioning != null && encoding == CsvEncoding.DIRECT && partitionedStreamer != null) {
+            var start = System.nanoTime();
+            if (partitionedStreamer.stream(sql, partitioning, stream)) {
+                stream.flush();
+                log.debug("Finished parallel streaming of {} slices for query: [{}] in {} ms", partitioning.slices(),
+                        sql.replace(END_OF_LINE_SEPARATOR, EMPTY), (System.nanoTime() - start) / 1_000_000);
+                return;
+            }
+        }
+
+        var handler = switch (encoding) {
+            case JACKSON -> forStream(stream, new CsvMapper(), new LinkedHashMap<>(), csvBufferFlushFrequency);
+            case DIRECT -> forEncodedStream(stream, csvBufferFlushFrequency);
+        };
+
+        var start = System.nanoTime();
+        log.debug("Initiating {} streaming for query: [{}]", encoding, sql.replace(END_OF_LINE_SEPARATOR, EMPTY));
+        jdbc.query(sql, new ResultSetExtractorHelper<>(handler));
+        handler.complete();
         stream.flush();
-        log.debug("Finished streaming for query: [{}]", sql.replace(END_OF_LINE_SEPARATOR, EMPTY));
+        log.debug("Finished {} streaming for query: [{}] in {} ms", encoding, sql.replace(END_OF_LINE_SEPARATOR, EMPTY),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Returns the parallel export configuration of the query that {@link Report#extractFirstQuery()} selects.
+     */
+    private static QueryPartitioning firstQueryPartitioning(Report report) {
+        return Queryable.processor(report)
+                .presentOnly()
+                .allMappings()
+                .stream()
+                .findFirst()
+                .map(ReportQuery::getPartitioning)
+                .orElse(null);
     }
 }
@@ -0,0 +1,266 @@
+package uk.gov.laa.gpfd.dao;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Nullable;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+import uk.gov.laa.gpfd.dao.support.ReportMetadataHydrator;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps the whole report metadata catalogue in memory as a {@link MetadataSnapshot}, so that
+ * looking up a report or its roles does not query the metadata tables on every request.
+ * <p>
+ * The snapshot is loaded when the application is ready and replaced whenever the metadata tables
+ * change. Triggers on the {@code glad} tables send a Postgres notification on the
+ * {@value #CHANNEL} channel, which a listener thread receives on an unpooled connection. The
+ * snapshot is also reloaded once it is older than {@code gpfd.metadata.snapshot.max-age}, so
+ * changes are still picked up if a notification is missed or the listener cannot connect. If a
+ * reload fails the previous snapshot keeps being served. Reports are read by the
+ * {@link ReportMetadataHydrator}, one query per metadata table.
+ * <p>
+ * Until the first snapshot has loaded, and when {@code gpfd.metadata.snapshot.enabled} is off,
+ * {@link #current()} is empty and the metadata is read from the database as before.
+ * <p>
+ * The snapshot's age and report count are exposed as {@code gpfd.metadata.snapshot.*} gauges and
+ * reload times as a timer tagged with what caused the reload.
+ */
+@Slf4j
+@Component
+public class MetadataCatalogue implements AutoCloseable {
+
+    /**
+     * The notification channel the metadata triggers send to.
+     */
+    public static final String CHANNEL = "gpfd_metadata";
+
+    static final String SELECT_REPORT_ROLES_SQL = """
+        SELECT rr.report_id AS "REPORT_ID", r.role_name AS "ROLE_NAME"
+        FROM glad.report_roles rr
+        JOIN glad.roles r ON r.role_id = rr.role_id
+        ORDER BY r.role_name
+    """;
+
+    private final JdbcClient metadataClient;
+    private final DataSource listenerDataSource;
+    private final ReportMetadataHydrator hydrator;
+    @Getter
+    private final boolean enabled;
+    private final boolean listen;
+    private final Duration maxAge;
+    private final MeterRegistry meterRegistry;
+
+    private volatile MetadataSnapshot snapshot;
+    private volatile boolean running;
+    private Thread watcher;
+
+    public MetadataCatalogue(@Qualifier("metadataClient") JdbcClient metadataClient,
+                             @Qualifier("metadataListenerDataSource") @Nullable DataSource listenerDataSource,
+                             ReportMetadataHydrator hydrator,
+                             @Value("${gpfd.metadata.snapshot.enabled:false}") boolean enabled,
+                             @Value("${gpfd.metadata.snapshot.listen:true}") boolean listen,
+                             @Value("${gpfd.metadata.snapshot.max-age:5m}") Duration maxAge,
+                             MeterRegistry meterRegistry) {
+        if (maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException("Metadata snapshot maximum age must be positive");
+        }
+        this.metadataClient = requireNonNull(metadataClient, "JdbcClient cannot be null");
+        this.listenerDataSource = listenerDataSource;
+        this.hydrator = requireNonNull(hydrator, "Report hydrator cannot be null");
+        this.enabled = enabled;
+        this.listen = listen && listenerDataSource != null;
+        this.maxAge = maxAge;
+        this.meterRegistry = requireNonNull(meterRegistry, "MeterRegistry cannot be null");
+
+        Gauge.builder("gpfd.metadata.snapshot.age", this, MetadataCatalogue::ageSeconds)
+                .description("Seconds since the report metadata snapshot was loaded")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("gpfd.metadata.snapshot.reports", this, MetadataCatalogue::reportCount)
+                .description("Reports held by the report metadata snapshot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Gets the current snapshot.
+     *
+     * @return the snapshot, or empty if the catalogue is disabled or has not loaded yet
+     */
+    public Optional<MetadataSnapshot> current() {
+        return enabled ? Optional.ofNullable(snapshot) : Optional.empty();
+    }
+
+    /**
+     * Loads the first snapshot and starts watching for changes, if the catalogue is enabled. When
+     * the first load fails, lookups read the database until the watcher has loaded one.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        reloadQuietly("startup");
+        running = true;
+        watcher = Thread.ofPlatform().name("metadata-watcher").daemon().start(this::watch);
+    }
+
+    /**
+     * Reads the whole catalogue and replaces the current snapshot with it.
+     *
+     * @param trigger what caused the reload, used to tag its timing
+     * @return the new snapshot
+     * @throws DataAccessException if the catalogue cannot be read
+     */
+    public MetadataSnapshot reload(String trigger) {
+        var start = System.nanoTime();
+        var reports = hydrator.hydrateAll();
+        var roles = new HashMap<UUID, List<String>>();
+        metadataClient.sql(SELECT_REPORT_ROLES_SQL)
+                .query((RowCallbackHandler) rs -> roles
+                        .computeIfAbsent(UUID.fromString(rs.getString("REPORT_ID")), _ -> new ArrayList<>())
+                        .add(rs.getString("ROLE_NAME")));
+
+        var loaded = MetadataSnapshot.of(reports, roles, Instant.now());
+        snapshot = loaded;
+        var elapsed = System.nanoTime() - start;
+        Timer.builder("gpfd.metadata.snapshot.reload")
+                .description("Time taken to load the report metadata snapshot")
+                .tag("trigger", trigger)
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Loaded metadata snapshot of {} reports on {} in {} ms", loaded.reports().size(), trigger,
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return loaded;
+    }
+
+    /**
+     * Stops watching for changes. The current snapshot is left in place.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    private void watch() {
+        while (running) {
+            if (listen) {
+                listenForChanges();
+            }
+            if (running) {
+                // Without a listening connection changes are only picked up as the snapshot ages
+                pause(waitMillis());
+                if (isStale()) {
+                    reloadQuietly("poll");
+                }
+            }
+        }
+    }
+
+    private void listenForChanges() {
+        try (var connection = listenerDataSource.getConnection()) {
+            try {
+                listenOn(connection);
+            } finally {
+                unlisten(connection);
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (running) {
+                log.warn("Stopped listening for metadata changes, falling back to polling", e);
+            }
+        }
+    }
+
+    private void listenOn(Connection connection) throws SQLException {
+        var notifications = connection.unwrap(PGConnection.class);
+        try (var statement = connection.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        }
+        // Changes made before listening started would otherwise wait for the snapshot to age
+        reloadQuietly("listen");
+        while (running) {
+            var received = notifications.getNotifications(waitMillis());
+            if (received != null && received.length > 0) {
+                log.debug("Received {} metadata change notifications", received.length);
+                reloadQuietly("notification");
+            } else if (isStale()) {
+                reloadQuietly("poll");
+            }
+        }
+    }
+
+    /**
+     * Stops the connection listening before it is closed, in case closing only returns it to a pool.
+     */
+    private static void unlisten(Connection connection) {
+        try (var statement = connection.createStatement()) {
+            statement.execute("UNLISTEN *");
+        } catch (SQLException | RuntimeException e) {
+            log.debug("Could not stop listening for metadata changes", e);
+        }
+    }
+
+    private void reloadQuietly(String trigger) {
+        try {
+            reload(trigger);
+        } catch (RuntimeException e) {
+            meterRegistry.counter("gpfd.metadata.snapshot.reload.failures", "trigger", trigger).increment();
+            log.warn("Failed to reload metadata snapshot on {}, serving the previous snapshot", trigger, e);
+        }
+    }
+
+    private boolean isStale() {
+        var current = snapshot;
+        return current == null || Duration.between(current.loadedAt(), Instant.now()).compareTo(maxAge) >= 0;
+    }
+
+    private int waitMillis() {
+        return (int) Math.min(maxAge.toMillis(), TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private double ageSeconds() {
+        var current = snapshot;
+        return current == null ? Double.NaN : Duration.between(current.loadedAt(), Instant.now()).toMillis() / 1000.0;
+    }
+
+    private double reportCount() {
+        var current = snapshot;
+        return current == null ? 0 : current.reports().size();
+    }
+}
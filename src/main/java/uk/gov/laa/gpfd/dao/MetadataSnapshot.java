@@ -0,0 +1,154 @@
+package uk.gov.laa.gpfd.dao;
+
+import uk.gov.laa.gpfd.model.ImmutableReport;
+import uk.gov.laa.gpfd.model.ImmutableReportQuery;
+import uk.gov.laa.gpfd.model.Report;
+import uk.gov.laa.gpfd.model.ReportQuery;
+import uk.gov.laa.gpfd.model.excel.ImmutableExcelSheet;
+import uk.gov.laa.gpfd.security.RoleBits;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The report metadata catalogue as it was at one point in time, indexed for lookups by report id
+ * and by role.
+ * <p>
+ * Reports are held with their queries, field attributes and output type, and their collections are
+ * copied so that nothing reachable from a snapshot can be changed. A snapshot is never updated;
+ * the {@link MetadataCatalogue} replaces it as a whole, so its roles and reports always change
+ * together.
+ *
+ * @param reports          every report by id, in catalogue order
+ * @param requiredRoles    the roles that may access each report, by report id
+ * @param requiredRoleBits the same roles as {@link RoleBits}, for authorisation checks
+ * @param activeByRole     the ids of the active reports each role may access
+ * @param loadedAt         when the snapshot was read from the database
+ */
+public record MetadataSnapshot(Map<UUID, Report> reports,
+                               Map<UUID, List<String>> requiredRoles,
+                               Map<UUID, RoleBits> requiredRoleBits,
+                               Map<String, List<UUID>> activeByRole,
+                               Instant loadedAt) {
+
+    public MetadataSnapshot {
+        requireNonNull(reports, "Reports cannot be null");
+        requireNonNull(requiredRoles, "Required roles cannot be null");
+        requireNonNull(requiredRoleBits, "Required role bits cannot be null");
+        requireNonNull(activeByRole, "Active reports by role cannot be null");
+        requireNonNull(loadedAt, "Load time cannot be null");
+    }
+
+    /**
+     * Creates a snapshot of the given reports and roles.
+     *
+     * @param reports  the reports, as hydrated from the metadata tables
+     * @param roles    the names of the roles that may access each report, by report id
+     * @param loadedAt when the reports and roles were read
+     * @return the snapshot
+     */
+    public static MetadataSnapshot of(Collection<Report> reports, Map<UUID, ? extends Collection<String>> roles,
+                                      Instant loadedAt) {
+        var byId = new LinkedHashMap<UUID, Report>();
+        for (var report : reports) {
+            byId.put(report.getId(), freeze(report));
+        }
+
+        var required = new HashMap<UUID, List<String>>();
+        var requiredBits = new HashMap<UUID, RoleBits>();
+        var activeByRole = new HashMap<String, List<UUID>>();
+        for (var entry : roles.entrySet()) {
+            var report = byId.get(entry.getKey());
+            required.put(entry.getKey(), List.copyOf(entry.getValue()));
+            requiredBits.put(entry.getKey(), RoleBits.of(entry.getValue()));
+            if (report != null && Boolean.TRUE.equals(report.getActive())) {
+                for (var role : entry.getValue()) {
+                    activeByRole.computeIfAbsent(role, _ -> new ArrayList<>()).add(report.getId());
+                }
+            }
+        }
+        activeByRole.replaceAll((_, ids) -> List.copyOf(ids));
+
+        return new MetadataSnapshot(unmodifiableMap(byId), Map.copyOf(required), Map.copyOf(requiredBits),
+                Map.copyOf(activeByRole), loadedAt);
+    }
+
+    /**
+     * Gets a report by id.
+     *
+     * @param reportId the report's id
+     * @return the report, or empty if it is not in the catalogue
+     */
+    public Optional<Report> report(UUID reportId) {
+        return Optional.ofNullable(reports.get(reportId));
+    }
+
+    /**
+     * Gets the roles that may access a report.
+     *
+     * @param reportId the report's id
+     * @return the role names, empty if the report is unknown or has no roles
+     */
+    public List<String> requiredRoles(UUID reportId) {
+        return requiredRoles.getOrDefault(reportId, List.of());
+    }
+
+    /**
+     * Checks whether a user may access a report.
+     *
+     * @param reportId  the report's id
+     * @param userRoles the user's roles
+     * @return {@code true} if the user has at least one of the report's roles, {@code false} if not
+     *         or if the report is unknown
+     */
+    public boolean grants(UUID reportId, RoleBits userRoles) {
+        return requiredRoleBits.getOrDefault(reportId, RoleBits.EMPTY).intersects(userRoles);
+    }
+
+    /**
+     * Gets the active reports that any of the given roles may access.
+     *
+     * @param roles the role names
+     * @return the reports, in catalogue order
+     */
+    public List<Report> activeReportsFor(Collection<String> roles) {
+        var ids = new HashSet<UUID>();
+        for (var role : roles) {
+            ids.addAll(activeByRole.getOrDefault(role, List.of()));
+        }
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return reports.values().stream()
+                .filter(report -> ids.contains(report.getId()))
+                .toList();
+    }
+
+    private static Report freeze(Report report) {
+        var queries = new ArrayList<ReportQuery>(report.getQueries().size());
+        for (var query : report.getQueries()) {
+            queries.add(freeze(query));
+        }
+        return ImmutableReport.copyOf(report).withQueries(List.copyOf(queries));
+    }
+
+    private static ReportQuery freeze(ReportQuery query) {
+        var sheet = query.getExcelSheet();
+        if (sheet == null || sheet.getFieldAttributes() == null) {
+            return query;
+        }
+        return ImmutableReportQuery.copyOf(query)
+                .withExcelSheet(ImmutableExcelSheet.copyOf(sheet).withFieldAttributes(List.copyOf(sheet.getFieldAttributes())));
+    }
+}
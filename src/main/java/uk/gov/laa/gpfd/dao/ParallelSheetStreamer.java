@@ -0,0 +1,208 @@
+package uk.gov.laa.gpfd.dao;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.Sheet;
+import uk.gov.laa.gpfd.model.Mapping;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Populates the data sheets of an Excel export by running their queries at the same time, each on
+ * its own pooled connection and into its own sheet.
+ * <p>
+ * Streaming sheets buffer their rows in separate temporary files, so the tabs of a workbook can be
+ * filled independently and the workbook's sheet order is only applied when it is written. The
+ * calling thread always fills sheets itself, and up to {@code maxPerExport - 1} helpers join it.
+ * Helpers are only started for connections under a semaphore shared by all Excel exports, so a
+ * burst of multi-tab reports falls back to filling their sheets one after another rather than
+ * draining the read-only pool.
+ * <p>
+ * Each sheet's query time is recorded as {@code gpfd.excel.sheet.duration}, tagged with whether it
+ * ran alongside other sheets, and logged per sheet at debug level.
+ */
+@Slf4j
+public final class ParallelSheetStreamer {
+
+    /**
+     * A data sheet and the report query that fills it.
+     *
+     * @param sheet   the sheet, with its header row already written
+     * @param mapping the query and field mappings of the sheet
+     */
+    public record SheetQuery(Sheet sheet, Mapping mapping) {
+        public SheetQuery {
+            requireNonNull(sheet, "Sheet cannot be null");
+            requireNonNull(mapping, "Mapping cannot be null");
+        }
+    }
+
+    private final Executor executor;
+    private final Semaphore connections;
+    private final int maxPerExport;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Creates a streamer that uses at most {@code maxConnections} extra connections across all
+     * exports.
+     *
+     * @param executor       runs the helpers, it must be able to run {@code maxConnections} tasks at once
+     * @param maxConnections the cap on connections used by helpers, 0 fills every sheet serially
+     * @param maxPerExport   the most sheets of one export that are filled at the same time
+     * @param meterRegistry  records sheet timings
+     */
+    public ParallelSheetStreamer(Executor executor, int maxConnections, int maxPerExport, MeterRegistry meterRegistry) {
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("Maximum parallel connections cannot be negative");
+        }
+        if (maxPerExport < 1) {
+            throw new IllegalArgumentException("Parallel sheets per export must be at least 1");
+        }
+        this.executor = requireNonNull(executor, "Executor cannot be null");
+        this.connections = new Semaphore(maxConnections);
+        this.maxPerExport = maxPerExport;
+        this.meterRegistry = requireNonNull(meterRegistry, "MeterRegistry cannot be null");
+    }
+
+    /**
+     * Creates an instance that fills the sheets one after another on the calling thread.
+     *
+     * @return a serial streamer
+     */
+    public static ParallelSheetStreamer disabled() {
+        return new ParallelSheetStreamer(Runnable::run, 0, 1, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Runs the query of every sheet and returns once all of them have finished. If a query fails,
+     * sheets that have not started are skipped, and the first failure is rethrown after the running
+     * queries have finished.
+     *
+     * @param sheets   the sheets to fill
+     * @param streamer runs a query into a sheet
+     */
+    public void populate(List<SheetQuery> sheets, JdbcWorkbookDataStreamer streamer) {
+        var helpers = acquire(Math.min(maxPerExport, sheets.size()) - 1);
+        var export = new Export(sheets, streamer, helpers > 0);
+        var finished = new CountDownLatch(helpers);
+
+        for (int i = 0; i < helpers; i++) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        export.work();
+                    } finally {
+                        connections.release();
+                        finished.countDown();
+                    }
+                });
+            } catch (RuntimeException e) {
+                connections.release(helpers - i);
+                for (int j = i; j < helpers; j++) {
+                    finished.countDown();
+                }
+                log.debug("Could not start sheet helper, filling remaining sheets on the calling thread", e);
+                break;
+            }
+        }
+
+        export.work();
+        awaitHelpers(finished, export);
+        export.rethrow();
+    }
+
+    private int acquire(int wanted) {
+        var acquired = 0;
+        while (acquired < wanted && connections.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    /**
+     * Helpers may still be reading into sheets of the workbook, which cannot be written or closed
+     * until they are done, so interrupts only stop new sheets from starting.
+     */
+    private static void awaitHelpers(CountDownLatch finished, Export export) {
+        var interrupted = false;
+        while (true) {
+            try {
+                finished.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                export.cancel(e);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sheets of one export, claimed in order by the calling thread and its helpers.
+     */
+    private final class Export {
+        private final List<SheetQuery> sheets;
+        private final JdbcWorkbookDataStreamer streamer;
+        private final Timer timer;
+        private final AtomicInteger nextSheet = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Export(List<SheetQuery> sheets, JdbcWorkbookDataStreamer streamer, boolean parallel) {
+            this.sheets = sheets;
+            this.streamer = streamer;
+            this.timer = Timer.builder("gpfd.excel.sheet.duration")
+                    .description("Time taken to fill an Excel sheet from its query")
+                    .tag("mode", parallel ? "parallel" : "serial")
+                    .register(meterRegistry);
+        }
+
+        void work() {
+            int index;
+            while (failure.get() == null && (index = nextSheet.getAndIncrement()) < sheets.size()) {
+                var sheet = sheets.get(index);
+                var start = System.nanoTime();
+                try {
+                    streamer.queryToSheet(sheet.sheet(), sheet.mapping());
+                } catch (RuntimeException | Error e) {
+                    cancel(e);
+                    return;
+                } finally {
+                    var nanos = System.nanoTime() - start;
+                    timer.record(nanos, TimeUnit.NANOSECONDS);
+                    log.debug("Filled sheet '{}' in {} ms", sheet.sheet().getSheetName(), TimeUnit.NANOSECONDS.toMillis(nanos));
+                }
+            }
+        }
+
+        void cancel(Throwable cause) {
+            if (!failure.compareAndSet(null, cause)) {
+                var first = failure.get();
+                if (first != cause) {
+                    first.addSuppressed(cause);
+                }
+            }
+        }
+
+        void rethrow() {
+            switch (failure.get()) {
+                case null -> { }
+                case RuntimeException e -> throw e;
+                case Error e -> throw e;
+                case InterruptedException e -> throw new IllegalStateException("Interrupted while filling sheets", e);
+                case Throwable e -> throw new IllegalStateException("Failed to fill sheets", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package uk.gov.laa.gpfd.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import uk.gov.laa.gpfd.dao.sql.ColumnReader;
+import uk.gov.laa.gpfd.dao.sql.CsvRowEncoder;
+import uk.gov.laa.gpfd.dao.sql.ResultSetExtractorHelper;
+import uk.gov.laa.gpfd.exception.CsvGenerationException.MetadataInvalidException;
+import uk.gov.laa.gpfd.exception.CsvGenerationException.WritingToCsvException;
+import uk.gov.laa.gpfd.model.QueryPartitioning;
+import uk.gov.laa.gpfd.services.excel.workbook.SheetStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Streams a report query as CSV by reading disjoint slices of it on separate pooled connections.
+ * <p>
+ * Each worker runs the slice query from {@link QueryPartitioning#sliceSql(String)}, encodes its rows
+ * with a {@link CsvRowEncoder} and hands complete rows to the calling thread in chunks through a
+ * bounded queue. The calling thread is the only one writing to the output stream:
+ * <ul>
+ *   <li>unordered exports write each chunk as soon as it arrives</li>
+ *   <li>ordered exports write the current slice live and spill chunks from later slices to the
+ *   {@link SheetStorage}, which are copied out once every earlier slice has finished</li>
+ * </ul>
+ * Spilled slices are held to the storage's directory and quotas, like the sheets of Excel exports,
+ * and are deleted when the export ends however it ends.
+ * The header row is written once, from whichever slice reads its metadata first.
+ * <p>
+ * The number of connections used by all parallel exports together is capped by a shared semaphore.
+ * An export that cannot get at least two permits is not run in parallel, and the caller reads the
+ * query serially instead, so a burst of large exports cannot drain the read-only pool.
+ */
+@Slf4j
+public final class PartitionedCsvStreamer {
+    private static final int CHUNK_SIZE = 32 * 1024;
+    private static final int QUEUE_CAPACITY = 64;
+    private static final long OFFER_TIMEOUT_MILLIS = 500;
+
+    private final JdbcOperations jdbc;
+    private final Executor executor;
+    private final Semaphore connections;
+    private final SheetStorage storage;
+
+    /**
+     * Creates a streamer that uses at most {@code maxConnections} connections across all exports.
+     *
+     * @param jdbc           the read-only JDBC operations
+     * @param executor       runs slice workers, it must be able to run {@code maxConnections} tasks at once
+     * @param maxConnections the cap on connections used by parallel exports
+     * @param storage        where ordered exports keep slices that finish ahead of their turn
+     */
+    public PartitionedCsvStreamer(JdbcOperations jdbc, Executor executor, int maxConnections, SheetStorage storage) {
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("Maximum parallel connections cannot be negative");
+        }
+        this.jdbc = requireNonNull(jdbc, "JdbcOperations cannot be null");
+        this.executor = requireNonNull(executor, "Executor cannot be null");
+        this.connections = new Semaphore(maxConnections);
+        this.storage = requireNonNull(storage, "SheetStorage cannot be null");
+    }
+
+    /**
+     * Streams the query slice by slice if enough connections are available.
+     *
+     * @param sql          the validated report query
+     * @param partitioning how to split the query
+     * @param out          the stream to write CSV to
+     * @return {@code true} if the query was streamed, {@code false} if the caller should read it serially
+     * @throws IOException if writing to {@code out} fails
+     */
+    public boolean stream(String sql, QueryPartitioning partitioning, OutputStream out) throws IOException {
+        var workers = acquire(partitioning.slices());
+        if (workers < 2) {
+            connections.release(workers);
+            log.debug("Not enough connections for a parallel export, reading query serially");
+            return false;
+        }
+
+        var start = System.nanoTime();
+        var exchange = new Exchange(partitioning.slices());
+        var sliceSql = partitioning.sliceSql(sql);
+        for (int i = 0; i < workers; i++) {
+            try {
+                executor.execute(() -> work(sliceSql, exchange));
+            } catch (RuntimeException e) {
+                connections.release(workers - i);
+                exchange.cancel();
+                throw e;
+            }
+        }
+
+        try (var spills = storage.open()) {
+            stitch(exchange, partitioning, spills, out);
+        } finally {
+            exchange.cancel();
+        }
+        log.debug("Finished parallel export of {} slices on {} connections in {} ms",
+                partitioning.slices(), workers, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+    }
+
+    private int acquire(int wanted) {
+        var acquired = 0;
+        while (acquired < wanted && connections.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    private void work(String sliceSql, Exchange exchange) {
+        try {
+            int slice;
+            while (!exchange.cancelled && (slice = exchange.nextSlice.getAndIncrement()) < exchange.slices) {
+                readSlice(sliceSql, slice, exchange);
+            }
+        } finally {
+            connections.release();
+        }
+    }
+
+    private void readSlice(String sliceSql, int slice, Exchange exchange) {
+        try {
+            var handler = new SliceRowHandler(slice, exchange);
+            jdbc.query(sliceSql, ps -> ps.setInt(1, slice), new ResultSetExtractorHelper<>(handler));
+            handler.finish();
+            exchange.put(new SliceEvent.Done(slice));
+        } catch (CancellationException e) {
+            log.debug("Slice {} cancelled", slice);
+        } catch (RuntimeException | IOException | Error e) {
+            exchange.offerFailure(new SliceEvent.Failed(slice, e));
+            exchange.cancel();
+        }
+    }
+
+    private static void stitch(Exchange exchange, QueryPartitioning partitioning, SheetStorage.Export storage,
+                               OutputStream out) throws IOException {
+        var slices = partitioning.slices();
+        var spills = new SheetStorage.Sheet[slices];
+        var done = new boolean[slices];
+        var remaining = slices;
+        var current = 0;
+        var headerWritten = false;
+
+        while (remaining > 0) {
+            switch (exchange.take()) {
+                case SliceEvent.Header(_, var bytes) -> {
+                    if (!headerWritten) {
+                        out.write(bytes);
+                        headerWritten = true;
+                    }
+                }
+                case SliceEvent.Chunk(var slice, var bytes) -> {
+                    if (!partitioning.ordered() || slice == current) {
+                        out.write(bytes);
+                    } else {
+                        if (spills[slice] == null) {
+                            spills[slice] = storage.newSheet();
+                        }
+                        spills[slice].output().write(bytes);
+                    }
+                }
+                case SliceEvent.Done(var slice) -> {
+                    done[slice] = true;
+                    remaining--;
+                }
+                case SliceEvent.Failed(var slice, var cause) -> throw failure(slice, cause);
+            }
+
+            while (partitioning.ordered() && current < slices && done[current]) {
+                current++;
+                if (current < slices && spills[current] != null) {
+                    copyOut(spills[current], storage, out);
+                    spills[current] = null;
+                }
+            }
+        }
+    }
+
+    private static void copyOut(SheetStorage.Sheet spill, SheetStorage.Export storage, OutputStream out) throws IOException {
+        spill.output().close();
+        try (var input = spill.read()) {
+            input.transferTo(out);
+        } finally {
+            storage.release(spill);
+        }
+    }
+
+    private static RuntimeException failure(int slice, Throwable cause) throws IOException {
+        log.error("Slice {} of parallel export failed", slice, cause);
+        return switch (cause) {
+            case IOException e -> throw e;
+            case Error e -> throw e;
+            case RuntimeException e -> e;
+            default -> new IllegalStateException("Slice " + slice + " failed", cause);
+        };
+    }
+
+    /**
+     * Events sent from slice workers to the stitching thread.
+     */
+    private sealed interface SliceEvent {
+        record Header(int slice, byte[] bytes) implements SliceEvent {}
+
+        record Chunk(int slice, byte[] bytes) implements SliceEvent {}
+
+        record Done(int slice) implements SliceEvent {}
+
+        record Failed(int slice, Throwable cause) implements SliceEvent {}
+    }
+
+    /**
+     * State shared by the workers and the stitching thread of a single export.
+     */
+    private static final class Exchange {
+        private final BlockingQueue<SliceEvent> events = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicInteger nextSlice = new AtomicInteger();
+        private final int slices;
+        private volatile boolean cancelled;
+
+        Exchange(int slices) {
+            this.slices = slices;
+        }
+
+        void put(SliceEvent event) {
+            try {
+                while (!events.offer(event, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        throw new CancellationException("Parallel export cancelled");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while queueing slice output");
+            }
+        }
+
+        void offerFailure(SliceEvent.Failed failure) {
+            try {
+                put(failure);
+            } catch (CancellationException e) {
+                log.debug("Dropping failure of slice {} after cancellation", failure.slice(), failure.cause());
+            }
+        }
+
+        SliceEvent take() throws IOException {
+            try {
+                return events.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for slice output");
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Encodes the rows of one slice and publishes them in chunks of whole rows.
+     */
+    private static final class SliceRowHandler implements RowCallbackHandler {
+        private final int slice;
+        private final Exchange exchange;
+        private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_SIZE * 2);
+        private final CsvRowEncoder encoder = new CsvRowEncoder(chunk);
+        private ColumnReader[] readers;
+
+        SliceRowHandler(int slice, Exchange exchange) {
+            this.slice = slice;
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            if (exchange.cancelled) {
+                throw new CancellationException("Parallel export cancelled");
+            }
+
+            try {
+                if (readers == null) {
+                    writeHeader(rs);
+                }
+
+                for (int i = 0; i < readers.length; i++) {
+                    readers[i].write(rs, i + 1, encoder);
+                }
+                encoder.endRow();
+
+                if (encoder.buffered() + chunk.size() >= CHUNK_SIZE) {
+                    publish();
+                }
+            } catch (IOException e) {
+                throw new WritingToCsvException("Error encoding slice " + slice, e);
+            }
+        }
+
+        private void writeHeader(ResultSet rs) throws SQLException, IOException {
+            var metaData = rs.getMetaData();
+            if (metaData == null) {
+                throw new MetadataInvalidException("Result set metadata is null");
+            }
+
+            var header = new ByteArrayOutputStream();
+            var headerEncoder = new CsvRowEncoder(header);
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                headerEncoder.field(metaData.getColumnName(i));
+            }
+            headerEncoder.endRow();
+            headerEncoder.drain();
+
+            readers = ColumnReader.forColumns(metaData);
+            exchange.put(new SliceEvent.Header(slice, header.toByteArray()));
+        }
+
+        void finish() throws IOException {
+            publish();
+        }
+
+        private void publish() throws IOException {
+            encoder.drain();
+            if (chunk.size() > 0) {
+                exchange.put(new SliceEvent.Chunk(slice, chunk.toByteArray()));
+                chunk.reset();
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package uk.gov.laa.gpfd.dao;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
@@ -8,7 +9,10 @@ import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.stereotype.Service;
 import uk.gov.laa.gpfd.exception.ReportAccessException;
+import uk.gov.laa.gpfd.model.FileExtension;
+import uk.gov.laa.gpfd.model.ImmutableReportOutputType;
 import uk.gov.laa.gpfd.model.Report;
+import uk.gov.laa.gpfd.model.ReportCatalogueEntry;
 import uk.gov.laa.gpfd.utils.SecurityUtils;
 
 import java.util.ArrayList;
@@ -24,9 +28,22 @@ import static uk.gov.laa.gpfd.exception.DatabaseReadException.DatabaseFetchExcep
 public record ReportDao(
         ResultSetExtractor<Collection<Report>> extractor,
         @Qualifier("metadataClient") JdbcClient metadataClient,
-        SecurityUtils securityUtils
+        SecurityUtils securityUtils,
+        MetadataCatalogue catalogue
 ) {
 
+    @Autowired
+    public ReportDao {
+    }
+
+    /**
+     * Creates a DAO that always reads report metadata from the database.
+     */
+    public ReportDao(ResultSetExtractor<Collection<Report>> extractor, JdbcClient metadataClient,
+                     SecurityUtils securityUtils) {
+        this(extractor, metadataClient, securityUtils, null);
+    }
+
     private static final String SELECT_REPORT_BY_ID = """
         SELECT 
             r.ID, 
@@ -42,10 +59,14 @@ public record ReportDao(
             r.REPORT_OWNER_NAME,
             r.ACTIVE,
             r.REPORT_OWNER_EMAIL,
+            r.DEFLATE_LEVEL,
             q.ID AS QUERY_ID,
             q.QUERY,
             q.TAB_NAME,
             q."index" AS "INDEX",
+            q.PARALLEL_SLICES,
+            q.PARALLEL_SLICE_KEY,
+            q.PARALLEL_ORDERED,
             fa.ID AS FIELD_ATTRIBUTE_ID,
             fa.SOURCE_NAME,
             fa.MAPPED_NAME,
@@ -78,10 +99,14 @@ public record ReportDao(
             r.REPORT_OWNER_NAME,
             r.ACTIVE,
             r.REPORT_OWNER_EMAIL,
+            r.DEFLATE_LEVEL,
             q.ID AS QUERY_ID,
             q.QUERY,
             q."index" AS "INDEX",
             q.TAB_NAME,
+            q.PARALLEL_SLICES,
+            q.PARALLEL_SLICE_KEY,
+            q.PARALLEL_ORDERED,
             fa.ID AS FIELD_ATTRIBUTE_ID,
             fa.SOURCE_NAME,
             fa.MAPPED_NAME,
@@ -100,6 +125,26 @@ public record ReportDao(
        WHERE r.ACTIVE = 'Y' AND ro.ROLE_NAME IN (:roles)
     """;
 
+    static final String SELECT_REPORT_CATALOGUE_SQL = """
+        SELECT
+            r.ID,
+            r.NAME,
+            r.DESCRIPTION AS REPORT_DESCRIPTION,
+            rot.ID AS OUTPUT_TYPE_ID,
+            rot.EXTENSION,
+            rot.DESCRIPTION AS OUTPUT_TYPE_DESCRIPTION
+        FROM glad.reports r
+        JOIN glad.report_output_types rot ON r.REPORT_OUTPUT_TYPE = rot.ID
+        WHERE r.ACTIVE = 'Y'
+          AND EXISTS (
+              SELECT 1
+              FROM glad.report_roles rr
+              JOIN glad.roles ro ON rr.ROLE_ID = ro.ROLE_ID
+              WHERE rr.REPORT_ID = r.ID AND ro.ROLE_NAME IN (:roles)
+          )
+        ORDER BY r.NAME ASC, r.ID ASC
+    """;
+
    static final String SELECT_REPORT_ROLES = """
        SELECT r.role_name AS "ROLE_NAME"
        FROM glad.roles r
@@ -110,7 +155,8 @@ public record ReportDao(
     /**
      * Fetches a {@link Report} by its unique identifier (UUID) from the database.
      * This method executes a SQL query to retrieve the report and returns it as an {@link Optional}.
-     * If no report is found, an empty {@link Optional} is returned.
+     * If no report is found, an empty {@link Optional} is returned. When the {@link MetadataCatalogue}
+     * holds a snapshot the report is read from it instead.
      *
      * @param reportId the unique identifier (UUID) of the report to fetch
      * @return an {@link Optional} containing the fetched report if found, otherwise an empty {@link Optional}
@@ -122,6 +168,10 @@ public record ReportDao(
             // Enforce role-based access control for this report
             verifyUserCanAccessReport(reportId);
 
+            var snapshot = snapshot();
+            if (snapshot.isPresent()) {
+                return snapshot.get().report(reportId);
+            }
             return metadataClient.sql(SELECT_REPORT_BY_ID)
                     .param(reportId)
                     .query(extractor)
@@ -143,6 +193,11 @@ public record ReportDao(
         log.debug("Fetching all reports from database");
         try {
             List<String> roles = securityUtils.extractRoles();
+            var snapshot = snapshot();
+            if (snapshot.isPresent()) {
+                log.info("Fetching reports from metadata snapshot for RBAC roles: {}", roles);
+                return snapshot.get().activeReportsFor(roles);
+            }
             log.info("Fetching reports from database for RBAC roles: {}", roles);
             return metadataClient.sql(SELECT_ALL_REPORTS_SQL)
                     .param("roles", roles)
@@ -154,7 +209,64 @@ public record ReportDao(
         }
     }
 
+    /**
+     * Fetches the list entries of the active reports that any of the given roles may access, without
+     * their queries or field attributes. Served from the {@link MetadataCatalogue} snapshot when it
+     * holds one.
+     *
+     * @param roles the role names
+     * @return the entries, ordered by report name
+     * @throws DatabaseFetchException if there's an error accessing the database
+     */
+    public List<ReportCatalogueEntry> fetchCatalogue(Collection<String> roles) {
+        var snapshot = snapshot();
+        if (snapshot.isPresent()) {
+            return snapshot.get().activeReportsFor(roles).stream()
+                    .map(ReportCatalogueEntry::of)
+                    .toList();
+        }
+        if (roles.isEmpty()) {
+            return List.of();
+        }
+        try {
+            log.debug("Fetching report catalogue from database for RBAC roles: {}", roles);
+            return metadataClient.sql(SELECT_REPORT_CATALOGUE_SQL)
+                    .param("roles", roles)
+                    .query((rs, _) -> new ReportCatalogueEntry(
+                            UUID.fromString(rs.getString("ID")),
+                            rs.getString("NAME"),
+                            rs.getString("REPORT_DESCRIPTION"),
+                            ImmutableReportOutputType.builder()
+                                    .id(UUID.fromString(rs.getString("OUTPUT_TYPE_ID")))
+                                    .fileExtension(FileExtension.fromString(rs.getString("EXTENSION")))
+                                    .description(rs.getString("OUTPUT_TYPE_DESCRIPTION"))
+                                    .build()))
+                    .list();
+        } catch (DataAccessException e) {
+            log.error("Failed to fetch report catalogue from database: {}", e.getMessage(), e);
+            throw new DatabaseFetchException("Failed to fetch report catalogue from database");
+        }
+    }
+
+    /**
+     * Checks that the current user has at least one of the roles that may access a report. With a
+     * metadata snapshot this compares the session's {@link uk.gov.laa.gpfd.security.RoleBits} with
+     * the report's, without reading the database.
+     *
+     * @param reportId the report's id
+     * @throws ReportAccessException if the user may not access the report
+     */
     public void verifyUserCanAccessReport(UUID reportId) {
+        var snapshot = snapshot();
+        if (snapshot.isPresent()) {
+            if (!snapshot.get().grants(reportId, securityUtils.extractRoleBits())) {
+                log.info("Report {} requires roles: {}, which the user does not have",
+                        reportId, snapshot.get().requiredRoles(reportId));
+                throw new ReportAccessException(reportId);
+            }
+            return;
+        }
+
         List<String> userRoles = securityUtils.extractRoles();
         List<String> requiredRoles = loadRequiredRoles(reportId);
         log.info(
@@ -175,4 +287,7 @@ public record ReportDao(
         return roles;
     }
 
+    private Optional<MetadataSnapshot> snapshot() {
+        return catalogue == null ? Optional.empty() : catalogue.current();
+    }
 }
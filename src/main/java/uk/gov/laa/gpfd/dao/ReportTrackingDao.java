@@ -3,13 +3,11 @@ package uk.gov.laa.gpfd.dao;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcOperations;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import uk.gov.laa.gpfd.exception.DatabaseWriteException;
 
 import java.sql.Timestamp;
-import java.time.Instant;
-import java.util.UUID;
+import java.util.Collection;
 
 @Slf4j
 @Service
@@ -17,29 +15,34 @@ public class ReportTrackingDao {
 
     private final JdbcOperations trackingJdbcTemplate;
 
-    protected static final String INSERT_INTO_TRACKING_SQL = "INSERT INTO GLAD.REPORT_TRACKING(ID, REPORT_ID, USER_ID, DOWNLOAD_TIME) VALUES (?, ?, ?, ?)";
+    protected static final String INSERT_INTO_TRACKING_SQL = "INSERT INTO GLAD.REPORT_TRACKING(ID, REPORT_ID, USER_ID, DOWNLOAD_TIME) VALUES (?, ?, ?, ?) ON CONFLICT (ID) DO NOTHING";
 
     public ReportTrackingDao(JdbcOperations trackingJdbcTemplate) {
         this.trackingJdbcTemplate = trackingJdbcTemplate;
     }
 
     /**
-     * Insert an entry into our tracking table
+     * Insert entries into our tracking table as one JDBC batch
      * Note we track server-side successfully compiled the data & the download has started.
      * We can't know if the client-side has downloaded or saved all the data due to how HTTP works (e.g. cancelling download in browser mid-way)
+     * Rows whose id is already in the table are skipped, so a batch can safely be written again.
      *
-     * @param reportId report being downloaded
-     * @param userId   user doing the download
+     * @param events downloads to record
      */
-    @Async
-    public void insertTrackingRow(UUID reportId, UUID userId) {
-        log.debug("Attempting to insert report tracking row for {}", reportId);
+    public void insertTrackingRows(Collection<TrackingEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        log.debug("Attempting to insert {} report tracking rows", events.size());
 
         try {
-            trackingJdbcTemplate.update(INSERT_INTO_TRACKING_SQL, UUID.randomUUID(), reportId, userId, Timestamp.from(Instant.now()));
-            log.info("Inserted report tracking row for {}", reportId);
+            var rows = events.stream()
+                    .map(event -> new Object[]{event.id(), event.reportId(), event.userId(), Timestamp.from(event.downloadTime())})
+                    .toList();
+            trackingJdbcTemplate.batchUpdate(INSERT_INTO_TRACKING_SQL, rows);
+            log.debug("Inserted {} report tracking rows", events.size());
         } catch (DataAccessException e) {
-            var message = "Failed to insert report tracking row for report " + reportId + " / user " + userId;
+            var message = "Failed to insert " + events.size() + " report tracking rows";
             log.error("{} with {} exception: {}", message, e.getClass().getName(), e.getMessage());
             throw new DatabaseWriteException(message);
         }
@@ -0,0 +1,238 @@
+package uk.gov.laa.gpfd.dao;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Records downloads in the tracking table behind the request that made them.
+ * <p>
+ * {@link #track(UUID, UUID)} only puts the event in a {@link TrackingRingBuffer} and returns. A
+ * flusher thread writes the buffered events to the database as JDBC batches of up to
+ * {@code gpfd.tracking.batch-size}, as soon as a batch has filled or every
+ * {@code gpfd.tracking.flush-interval}, whichever comes first.
+ * <p>
+ * Events are never rejected back to the request. When the buffer is full, or a batch cannot be
+ * written, the events are appended to a {@link TrackingJournal} in
+ * {@code gpfd.tracking.journal.directory}, which is replayed into the database at startup and every
+ * {@code gpfd.tracking.replay-interval}. Events are only lost if the journal cannot be written
+ * either.
+ * <p>
+ * Counts of inserted, journaled, replayed and dropped events, batch sizes, the time from a download
+ * to its row being written and the events waiting in the buffer are exposed as
+ * {@code gpfd.tracking.*} metrics.
+ */
+@Slf4j
+@Component
+public class ReportTrackingPipeline implements AutoCloseable {
+    private final ReportTrackingDao trackingDao;
+    private final TrackingRingBuffer<TrackingEvent> buffer;
+    private final TrackingJournal journal;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration replayInterval;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final Counter inserted;
+    private final Counter journaledOnOverflow;
+    private final Counter journaledOnFailure;
+    private final Counter replayed;
+    private final Counter dropped;
+    private final DistributionSummary batchSizes;
+    private final Timer lag;
+
+    private volatile boolean running;
+    private volatile Thread flusher;
+
+    public ReportTrackingPipeline(ReportTrackingDao trackingDao,
+                                  @Value("${gpfd.tracking.buffer-size:8192}") int bufferSize,
+                                  @Value("${gpfd.tracking.batch-size:500}") int batchSize,
+                                  @Value("${gpfd.tracking.flush-interval:1s}") Duration flushInterval,
+                                  @Value("${gpfd.tracking.replay-interval:1m}") Duration replayInterval,
+                                  @Value("${gpfd.tracking.journal.directory:}") String journalDirectory,
+                                  MeterRegistry meterRegistry) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Tracking batch size must be positive");
+        }
+        if (!flushInterval.isPositive() || !replayInterval.isPositive()) {
+            throw new IllegalArgumentException("Tracking flush and replay intervals must be positive");
+        }
+        this.trackingDao = requireNonNull(trackingDao, "ReportTrackingDao cannot be null");
+        this.buffer = new TrackingRingBuffer<>(bufferSize);
+        this.journal = new TrackingJournal(journalDirectory == null || journalDirectory.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "gpfd-tracking")
+                : Path.of(journalDirectory));
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.replayInterval = replayInterval;
+
+        requireNonNull(meterRegistry, "MeterRegistry cannot be null");
+        this.inserted = meterRegistry.counter("gpfd.tracking.inserted");
+        this.journaledOnOverflow = meterRegistry.counter("gpfd.tracking.journaled", "reason", "overflow");
+        this.journaledOnFailure = meterRegistry.counter("gpfd.tracking.journaled", "reason", "failure");
+        this.replayed = meterRegistry.counter("gpfd.tracking.replayed");
+        this.dropped = meterRegistry.counter("gpfd.tracking.dropped");
+        this.batchSizes = DistributionSummary.builder("gpfd.tracking.batch.size")
+                .description("Tracking rows written per batch")
+                .register(meterRegistry);
+        this.lag = Timer.builder("gpfd.tracking.lag")
+                .description("Time from a download being tracked to its row being written")
+                .register(meterRegistry);
+        Gauge.builder("gpfd.tracking.buffered", buffer, TrackingRingBuffer::size)
+                .description("Tracking events waiting to be written")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records that a download has started. Returns without waiting for the database.
+     *
+     * @param reportId report being downloaded
+     * @param userId   user doing the download
+     */
+    public void track(UUID reportId, UUID userId) {
+        var event = TrackingEvent.now(reportId, userId);
+        if (!buffer.offer(event)) {
+            journal(List.of(event), journaledOnOverflow);
+            return;
+        }
+        if (buffer.size() >= batchSize) {
+            var thread = flusher;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * Replays the journal and starts the flusher.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        replayJournal();
+        running = true;
+        flusher = Thread.ofPlatform().name("tracking-flusher").daemon().start(this::flushContinuously);
+    }
+
+    /**
+     * Writes every buffered event now, journaling any batch that cannot be written.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            var batch = new ArrayList<TrackingEvent>(Math.min(batchSize, buffer.capacity()));
+            while (buffer.drainTo(batch, batchSize) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the journaled events to the database. Events that still cannot be written stay in the
+     * journal for the next replay.
+     *
+     * @return the number of events replayed
+     */
+    public int replayJournal() {
+        writeLock.lock();
+        try {
+            if (!journal.hasEvents()) {
+                return 0;
+            }
+            var count = journal.replay(batchSize, trackingDao::insertTrackingRows);
+            replayed.increment(count);
+            log.info("Replayed {} journaled report tracking rows", count);
+            return count;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to replay the report tracking journal, it will be retried", e);
+            return 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the flusher and writes the events still buffered.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = flusher;
+            flusher = null;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private void flushContinuously() {
+        var nextReplay = System.nanoTime() + replayInterval.toNanos();
+        while (running) {
+            LockSupport.parkNanos(this, flushInterval.toNanos());
+            flush();
+            if (System.nanoTime() - nextReplay >= 0) {
+                replayJournal();
+                nextReplay = System.nanoTime() + replayInterval.toNanos();
+            }
+        }
+    }
+
+    private void write(List<TrackingEvent> batch) {
+        try {
+            trackingDao.insertTrackingRows(batch);
+        } catch (RuntimeException e) {
+            log.warn("Journaling {} report tracking rows that could not be written", batch.size(), e);
+            journal(batch, journaledOnFailure);
+            return;
+        }
+        inserted.increment(batch.size());
+        batchSizes.record(batch.size());
+        var now = Instant.now();
+        for (var event : batch) {
+            lag.record(Duration.between(event.downloadTime(), now));
+        }
+    }
+
+    private void journal(List<TrackingEvent> events, Counter journaled) {
+        try {
+            journal.append(events);
+            journaled.increment(events.size());
+        } catch (IOException e) {
+            dropped.increment(events.size());
+            log.error("Dropped {} report tracking rows that could not be journaled", events.size(), e);
+        }
+    }
+}
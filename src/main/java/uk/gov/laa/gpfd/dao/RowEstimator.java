@@ -0,0 +1,76 @@
+package uk.gov.laa.gpfd.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.internal.annotation.SuppressFBWarnings;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Estimates how many rows a report query returns from the optimizer's plan, without running it.
+ * <p>
+ * The query is explained into the session's {@code PLAN_TABLE} and the cardinality of the plan's
+ * root step is read back, then the plan is deleted again on the same connection. The estimate is
+ * only as good as the table statistics, and is not available at all when the query cannot be
+ * explained, in which case the report is exported as it normally would be.
+ */
+@Slf4j
+public record RowEstimator(JdbcOperations jdbc) {
+    private static final String ESTIMATE_SQL =
+            "SELECT CARDINALITY FROM PLAN_TABLE WHERE STATEMENT_ID = ? AND ID = 0";
+    private static final String DELETE_SQL = "DELETE FROM PLAN_TABLE WHERE STATEMENT_ID = ?";
+
+    public RowEstimator {
+        Objects.requireNonNull(jdbc, "JdbcOperations must not be null");
+    }
+
+    /**
+     * Gets the optimizer's estimate of the rows a query returns.
+     *
+     * @param sql the query
+     * @return the estimated row count, or empty if the query could not be explained
+     */
+    public OptionalLong estimate(String sql) {
+        var statementId = "gpfd-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        try {
+            var estimate = jdbc.execute((ConnectionCallback<Long>) connection -> explain(connection, statementId, sql));
+            return estimate == null ? OptionalLong.empty() : OptionalLong.of(estimate);
+        } catch (DataAccessException e) {
+            log.debug("Could not estimate the rows of query: [{}]", sql, e);
+            return OptionalLong.empty();
+        }
+    }
+
+    @SuppressFBWarnings(
+            value = "SECSQLISPRJDBC",
+            justification = "SQL is sourced from ReportQuerySql which is populated from admin-controlled data store; no user input is concatenated into the query string"
+    )
+    private static Long explain(Connection connection, String statementId, String sql) throws SQLException {
+        try {
+            try (var statement = connection.createStatement()) {
+                statement.execute("EXPLAIN PLAN SET STATEMENT_ID = '" + statementId + "' FOR " + sql);
+            }
+            try (var statement = connection.prepareStatement(ESTIMATE_SQL)) {
+                statement.setString(1, statementId);
+                try (var rows = statement.executeQuery()) {
+                    if (!rows.next()) {
+                        return null;
+                    }
+                    var cardinality = rows.getLong(1);
+                    return rows.wasNull() ? null : cardinality;
+                }
+            }
+        } finally {
+            try (var statement = connection.prepareStatement(DELETE_SQL)) {
+                statement.setString(1, statementId);
+                statement.executeUpdate();
+            }
+        }
+    }
+}
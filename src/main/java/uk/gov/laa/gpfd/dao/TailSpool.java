@@ -0,0 +1,282 @@
+package uk.gov.laa.gpfd.dao;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Output that is written by one thread and read, while it is still being written, by one or more
+ * readers.
+ * <p>
+ * Output is kept on the heap up to {@code memoryLimit} bytes and then moves to a temporary file,
+ * which takes all later output. A reader that catches up with the writer flushes its target and
+ * waits for more. A writer failure is rethrown to each reader once it has written the output that
+ * came before it. The file is deleted once the writer has finished and the last reader has gone.
+ * <p>
+ * Progress is published through the object's monitor.
+ */
+@Slf4j
+public final class TailSpool {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final ScopedValue<TailSpool> FILLING = ScopedValue.newInstance();
+
+    private final int memoryLimit;
+    private final Path directory;
+    private byte[] memory = new byte[0];
+    private Path file;
+    private FileChannel channel;
+    private long written;
+    private boolean complete;
+    private boolean abandoned;
+    private boolean released;
+    private Throwable failure;
+    private int readers;
+
+    /**
+     * Creates an empty spool.
+     *
+     * @param memoryLimit the output kept on the heap before overflowing to a file
+     * @param directory   where the overflow file is created, or null for the default temporary directory
+     */
+    public TailSpool(int memoryLimit, Path directory) {
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Spool memory cannot be negative");
+        }
+        this.memoryLimit = memoryLimit;
+        this.directory = directory;
+    }
+
+    /**
+     * Whether the current thread is filling a spool, so its output is already decoupled from the
+     * client that eventually reads it.
+     *
+     * @return true inside {@link #fill(ExportSpool.Producer)}
+     */
+    public static boolean isFilling() {
+        return FILLING.isBound();
+    }
+
+    /**
+     * Writes the output of {@code producer} into the spool and marks it complete. A failure is
+     * recorded for the readers before it is rethrown.
+     *
+     * @param producer writes the output
+     * @throws IOException if the producer fails, or every reader has been {@link #abandon() abandoned}
+     */
+    public void fill(ExportSpool.Producer producer) throws IOException {
+        try {
+            ScopedValue.where(FILLING, this).call(() -> {
+                producer.writeTo(new SpoolOutputStream());
+                return null;
+            });
+            finish(null);
+        } catch (IOException | RuntimeException | Error e) {
+            finish(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Completes the spool with a failure, for a writer that could not be started.
+     *
+     * @param cause rethrown to the readers
+     */
+    public void fail(Throwable cause) {
+        finish(cause);
+    }
+
+    /**
+     * Registers a reader, which must then either {@link #tailTo(OutputStream) tail} the spool or
+     * {@link #unsubscribe() unsubscribe}.
+     *
+     * @return false if the writer has already finished
+     */
+    public synchronized boolean subscribe() {
+        if (complete) {
+            return false;
+        }
+        readers++;
+        return true;
+    }
+
+    /**
+     * Drops a reader that will not tail the spool.
+     */
+    public synchronized void unsubscribe() {
+        readers--;
+        releaseIfUnused();
+    }
+
+    /**
+     * Makes the writer fail at its next write, once the client it was writing for has gone.
+     */
+    public synchronized void abandon() {
+        abandoned = true;
+    }
+
+    /**
+     * Copies the output to {@code target} from the start, waiting for the writer whenever it has
+     * caught up, and ends the subscription.
+     *
+     * @param target the stream to copy to
+     * @throws IOException if the writer failed or {@code target} cannot be written
+     */
+    public void tailTo(OutputStream target) throws IOException {
+        var chunk = new byte[CHUNK_SIZE];
+        var position = 0L;
+        try {
+            while (true) {
+                int length;
+                FileChannel source;
+                synchronized (this) {
+                    awaitBeyond(position);
+                    if (written <= position) {
+                        break;
+                    }
+                    length = (int) Math.min(written - position, chunk.length);
+                    source = channel;
+                    if (source == null) {
+                        System.arraycopy(memory, (int) position, chunk, 0, length);
+                    }
+                }
+                if (source != null) {
+                    length = readFile(source, chunk, position, length);
+                }
+                target.write(chunk, 0, length);
+                position += length;
+                if (caughtUp(position)) {
+                    target.flush();
+                }
+            }
+            target.flush();
+        } finally {
+            unsubscribe();
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public synchronized long size() {
+        return written;
+    }
+
+    private synchronized boolean caughtUp(long position) {
+        return written <= position;
+    }
+
+    private void awaitBeyond(long position) throws IOException {
+        while (written <= position && !complete) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for spooled output");
+            }
+        }
+        if (written <= position && failure != null) {
+            switch (failure) {
+                case IOException e -> throw e;
+                case RuntimeException e -> throw e;
+                case Error e -> throw e;
+                default -> throw new IOException("Spooled output failed", failure);
+            }
+        }
+    }
+
+    private int readFile(FileChannel source, byte[] chunk, long position, int length) throws IOException {
+        var target = ByteBuffer.wrap(chunk, 0, length);
+        while (target.hasRemaining()) {
+            if (source.read(target, position + target.position()) < 0) {
+                break;
+            }
+        }
+        return target.position();
+    }
+
+    private synchronized void finish(Throwable cause) {
+        failure = cause;
+        complete = true;
+        notifyAll();
+        releaseIfUnused();
+    }
+
+    private synchronized void append(byte[] b, int off, int len) throws IOException {
+        if (abandoned) {
+            throw new IOException("Client stopped reading spooled output");
+        }
+        if (channel == null && written + len <= memoryLimit) {
+            if (written + len > memory.length) {
+                memory = Arrays.copyOf(memory, (int) Math.min(memoryLimit, Math.max(written + len, memory.length * 2L)));
+            }
+            System.arraycopy(b, off, memory, (int) written, len);
+        } else {
+            if (channel == null) {
+                overflow();
+            }
+            var source = ByteBuffer.wrap(b, off, len);
+            var offset = written;
+            while (source.hasRemaining()) {
+                offset += channel.write(source, offset);
+            }
+        }
+        written += len;
+        notifyAll();
+    }
+
+    /**
+     * Moves the in-memory output to a temporary file, which takes all later output.
+     */
+    private void overflow() throws IOException {
+        file = directory == null
+                ? Files.createTempFile("gpfd-spool-", ".tmp")
+                : Files.createTempFile(directory, "gpfd-spool-", ".tmp");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        var source = ByteBuffer.wrap(memory, 0, (int) written);
+        while (source.hasRemaining()) {
+            channel.write(source, source.position());
+        }
+        memory = null;
+        log.debug("Spool overflowed {} bytes to {}", memoryLimit, file);
+    }
+
+    /**
+     * Removes the file once the writer has finished and nobody is reading it.
+     */
+    private void releaseIfUnused() {
+        if (!complete || readers > 0 || released) {
+            return;
+        }
+        released = true;
+        memory = null;
+        if (file == null) {
+            return;
+        }
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Spool file {} not removed", file, e);
+        }
+    }
+
+    private final class SpoolOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            append(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            append(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package uk.gov.laa.gpfd.dao;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A download to be recorded in the report tracking table.
+ *
+ * @param id           the tracking row's id, which makes writing the event more than once harmless
+ * @param reportId     the report being downloaded
+ * @param userId       the user doing the download
+ * @param downloadTime when the download was tracked
+ */
+public record TrackingEvent(UUID id, UUID reportId, UUID userId, Instant downloadTime) {
+
+    public TrackingEvent {
+        requireNonNull(id, "Id cannot be null");
+        requireNonNull(reportId, "Report id cannot be null");
+        requireNonNull(userId, "User id cannot be null");
+        requireNonNull(downloadTime, "Download time cannot be null");
+    }
+
+    /**
+     * Creates an event for a download happening now.
+     *
+     * @param reportId the report being downloaded
+     * @param userId   the user doing the download
+     * @return the event
+     */
+    public static TrackingEvent now(UUID reportId, UUID userId) {
+        return new TrackingEvent(UUID.randomUUID(), reportId, userId, Instant.now());
+    }
+
+    /**
+     * Formats the event as a line of the tracking journal.
+     *
+     * @return the event's fields, comma separated
+     */
+    String toJournalLine() {
+        return id + "," + reportId + "," + userId + "," + downloadTime;
+    }
+
+    /**
+     * Parses a line written by {@link #toJournalLine()}.
+     *
+     * @param line the journal line
+     * @return the event
+     * @throws IllegalArgumentException if the line is not a journaled event
+     */
+    static TrackingEvent fromJournalLine(String line) {
+        var fields = line.split(",");
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Not a tracking journal line: " + line);
+        }
+        try {
+            return new TrackingEvent(UUID.fromString(fields[0]), UUID.fromString(fields[1]),
+                    UUID.fromString(fields[2]), Instant.parse(fields[3]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Not a tracking journal line: " + line, e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package uk.gov.laa.gpfd.dao;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An append-only file of tracking events that could not be written to the database, either because
+ * the ring buffer was full or because the write failed.
+ * <p>
+ * Events are appended to {@value #ACTIVE_FILE}. A replay first renames that file so new events go
+ * to a fresh one, then writes each renamed file's events in batches and deletes the file once they
+ * are all written. A file whose replay fails is kept and tried again on the next replay; events
+ * written before the failure are written again, which the tracking insert ignores.
+ */
+@Slf4j
+final class TrackingJournal {
+    static final String ACTIVE_FILE = "tracking.journal";
+    private static final String REPLAY_SUFFIX = ".replay";
+
+    private final Path directory;
+    private long replaySequence;
+
+    TrackingJournal(Path directory) {
+        this.directory = requireNonNull(directory, "Journal directory cannot be null");
+    }
+
+    /**
+     * Appends events to the journal.
+     *
+     * @param events the events
+     * @throws IOException if the journal cannot be written
+     */
+    synchronized void append(Collection<TrackingEvent> events) throws IOException {
+        if (events.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        try (var writer = Files.newBufferedWriter(directory.resolve(ACTIVE_FILE), UTF_8, CREATE, APPEND)) {
+            for (var event : events) {
+                writer.write(event.toJournalLine());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Checks whether there are journaled events waiting to be replayed.
+     *
+     * @return {@code true} if there are events
+     * @throws IOException if the journal directory cannot be read
+     */
+    synchronized boolean hasEvents() throws IOException {
+        return Files.exists(directory.resolve(ACTIVE_FILE)) || !replayFiles().isEmpty();
+    }
+
+    /**
+     * Writes the journaled events and removes them from the journal.
+     *
+     * @param batchSize the most events passed to the writer at once
+     * @param writer    writes a batch of events, throwing if it cannot
+     * @return the number of events written
+     * @throws IOException if the journal cannot be read
+     */
+    int replay(int batchSize, Consumer<List<TrackingEvent>> writer) throws IOException {
+        var replayed = 0;
+        for (var file : rotate()) {
+            var batch = new ArrayList<TrackingEvent>(batchSize);
+            try (var lines = Files.lines(file, UTF_8)) {
+                for (var line : (Iterable<String>) lines::iterator) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        batch.add(TrackingEvent.fromJournalLine(line));
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Skipping unreadable tracking journal line in {}: {}", file, e.getMessage());
+                        continue;
+                    }
+                    if (batch.size() == batchSize) {
+                        writer.accept(List.copyOf(batch));
+                        replayed += batch.size();
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                writer.accept(List.copyOf(batch));
+                replayed += batch.size();
+            }
+            Files.delete(file);
+        }
+        return replayed;
+    }
+
+    private synchronized List<Path> rotate() throws IOException {
+        var active = directory.resolve(ACTIVE_FILE);
+        if (Files.exists(active)) {
+            var name = "tracking-%d-%d%s".formatted(System.currentTimeMillis(), replaySequence++, REPLAY_SUFFIX);
+            Files.move(active, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        }
+        return replayFiles();
+    }
+
+    private List<Path> replayFiles() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(REPLAY_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
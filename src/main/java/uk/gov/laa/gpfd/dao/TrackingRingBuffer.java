@@ -0,0 +1,123 @@
+package uk.gov.laa.gpfd.dao;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded queue that never blocks or locks, for handing tracking events from request threads to
+ * the flusher.
+ * <p>
+ * Each slot carries a sequence number saying whether it is ready to be written or read for the
+ * current lap of the ring, so producers and consumers only contend on a compare-and-set of the
+ * position they claim. A full buffer rejects the element rather than waiting.
+ *
+ * @param <E> the element type
+ */
+final class TrackingRingBuffer<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates a buffer holding at least {@code capacity} elements, rounded up to a power of two.
+     *
+     * @param capacity the minimum capacity
+     */
+    TrackingRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ring buffer capacity must be between 1 and 2^30");
+        }
+        var size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (var i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element if there is room.
+     *
+     * @param element the element
+     * @return {@code false} if the buffer is full
+     */
+    boolean offer(E element) {
+        requireNonNull(element, "Element cannot be null");
+        var position = tail.get();
+        while (true) {
+            var index = (int) (position & mask);
+            var ready = sequences.get(index) - position;
+            if (ready == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (ready < 0) {
+                return false;
+            }
+            position = tail.get();
+        }
+    }
+
+    /**
+     * Removes the oldest element.
+     *
+     * @return the element, or {@code null} if the buffer is empty
+     */
+    E poll() {
+        var position = head.get();
+        while (true) {
+            var index = (int) (position & mask);
+            var ready = sequences.get(index) - (position + 1);
+            if (ready == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    var element = elements.getAndSet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+            } else if (ready < 0) {
+                return null;
+            }
+            position = head.get();
+        }
+    }
+
+    /**
+     * Moves up to {@code max} of the oldest elements to a collection.
+     *
+     * @param sink receives the elements
+     * @param max  the most elements to move
+     * @return the number moved
+     */
+    int drainTo(Collection<? super E> sink, int max) {
+        var drained = 0;
+        E element;
+        while (drained < max && (element = poll()) != null) {
+            sink.add(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Gets the number of elements waiting. Only an estimate while other threads use the buffer.
+     *
+     * @return the number of elements
+     */
+    int size() {
+        var size = tail.get() - head.get();
+        return Math.clamp(size, 0, capacity());
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
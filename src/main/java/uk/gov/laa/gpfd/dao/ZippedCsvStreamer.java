@@ -0,0 +1,105 @@
+package uk.gov.laa.gpfd.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.internal.annotation.SuppressFBWarnings;
+import org.springframework.jdbc.core.JdbcOperations;
+import uk.gov.laa.gpfd.dao.sql.ResultSetExtractorHelper;
+import uk.gov.laa.gpfd.model.FileExtension;
+import uk.gov.laa.gpfd.model.Queryable;
+import uk.gov.laa.gpfd.model.Report;
+import uk.gov.laa.gpfd.model.ReportQuery;
+import uk.gov.laa.gpfd.services.DataStreamer;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.forEncodedStream;
+
+/**
+ * Streams every sheet query of an Excel report as a CSV file in a zip archive, for reports too
+ * large to be useful as a workbook.
+ * <p>
+ * Each query is written to an entry named after its sheet, one after another on a single
+ * connection, and nothing is held in memory beyond the CSV encoder's buffer. Reads go through the
+ * {@link ExportSpool} in the same way as plain CSV reports.
+ */
+@Slf4j
+public record ZippedCsvStreamer(JdbcOperations jdbc, int csvBufferFlushFrequency, ExportSpool spool)
+        implements DataStreamer {
+
+    public ZippedCsvStreamer {
+        Objects.requireNonNull(jdbc, "JdbcOperations must not be null");
+        Objects.requireNonNull(spool, "Export spool must not be null");
+    }
+
+    /**
+     * Streams the sheet queries of the report to the output stream as a zip of CSV files.
+     *
+     * @param report the report whose sheet queries are exported (must not be {@code null})
+     * @param stream the output stream to write the archive to (must not be {@code null})
+     * @throws IOException if writing the archive fails
+     * @implNote The caller is responsible for closing the output stream.
+     */
+    @Override
+    public void stream(Report report, OutputStream stream) throws IOException {
+        Objects.requireNonNull(report, "Report must not be null");
+        Objects.requireNonNull(stream, "Output stream must not be null");
+
+        var queries = Queryable.processor(report).presentOnly().allMappings();
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("Report '%s' has no queries".formatted(report.getName()));
+        }
+        spool.stream(FileExtension.ZIP, out -> writeArchive(report, queries, out), stream);
+    }
+
+    private void writeArchive(Report report, Iterable<ReportQuery> queries, OutputStream out) throws IOException {
+        var start = System.nanoTime();
+        var names = new HashSet<String>();
+        // The archive is finished, not closed, so the response stream is left to the caller
+        var zip = new ZipOutputStream(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+        for (var query : queries) {
+            var name = entryName(query.getExcelSheet().getName(), names);
+            zip.putNextEntry(new ZipEntry(name));
+            query(query.getQuery().value(), zip);
+            zip.closeEntry();
+        }
+        zip.finish();
+        out.flush();
+        log.debug("Finished zipped CSV streaming of {} queries for report '{}' in {} ms", names.size(),
+                report.getName(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @SuppressFBWarnings(
+            value = "SECSQLISPRJDBC",
+            justification = "SQL is sourced from ReportQuerySql which is populated from admin-controlled data store; no user input is concatenated into the query string"
+    )
+    private void query(String sql, OutputStream entry) throws IOException {
+        var handler = forEncodedStream(entry, csvBufferFlushFrequency);
+        jdbc.query(sql, new ResultSetExtractorHelper<>(handler));
+        handler.complete();
+    }
+
+    private static String entryName(String sheetName, HashSet<String> names) {
+        var base = sheetName == null || sheetName.isBlank() ? "Sheet" : sheetName.replaceAll("[\\\\/:*?\"<>|]", "_");
+        var name = base + ".csv";
+        for (int i = 2; !names.add(name); i++) {
+            name = "%s (%d).csv".formatted(base, i);
+        }
+        return name;
+    }
+}
@@ -5,25 +5,36 @@ import tools.jackson.databind.ObjectWriter;
 import tools.jackson.databind.SequenceWriter;
 import tools.jackson.dataformat.csv.CsvMapper;
 import tools.jackson.dataformat.csv.CsvSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFRow;
 import org.springframework.jdbc.core.RowCallbackHandler;
 import uk.gov.laa.gpfd.exception.CsvGenerationException.MetadataInvalidException;
 import uk.gov.laa.gpfd.exception.CsvGenerationException.WritingToCsvException;
+import uk.gov.laa.gpfd.exception.ReportGenerationException.SheetWriteException;
 import uk.gov.laa.gpfd.model.FieldProjection;
 import uk.gov.laa.gpfd.services.excel.editor.CellValueSetter;
+import uk.gov.laa.gpfd.services.excel.workbook.ReportSXSSFSheet;
+import uk.gov.laa.gpfd.services.excel.workbook.ReportWorkbook;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.EncodedStreamChannelRowHandler;
 import static uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.SheetChannelRowHandler;
 import static uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.StreamChannelRowHandler;
 
@@ -37,7 +48,7 @@ import static uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.StreamChannelRowHandler;
 public sealed interface ChannelRowHandler extends
         RowCallbackHandler,
         AutoCloseable
-        permits SheetChannelRowHandler, StreamChannelRowHandler {
+        permits SheetChannelRowHandler, StreamChannelRowHandler, EncodedStreamChannelRowHandler {
 
     /**
      * Creates a {@code ChannelRowHandler} that writes to the specified output stream.
@@ -51,6 +62,28 @@ public sealed interface ChannelRowHandler extends
         return new StreamChannelRowHandler(stream, csvMapper, row, bufferFlushFrequency);
     }
 
+    /**
+     * Creates a {@code ChannelRowHandler} that encodes rows as CSV straight into a reusable byte
+     * buffer rather than going through Jackson.
+     *
+     * @param stream the output stream to write to (must not be {@code null})
+     * @param bufferFlushFrequency number of rows between flushes of the output stream
+     * @return a new {@code ChannelRowHandler} instance configured for the given stream
+     * @throws NullPointerException if {@code stream} is {@code null}
+     */
+    static ChannelRowHandler forEncodedStream(OutputStream stream, int bufferFlushFrequency) {
+        Objects.requireNonNull(stream, "OutputStream cannot be null");
+        return new EncodedStreamChannelRowHandler(new CsvRowEncoder(stream), stream, bufferFlushFrequency);
+    }
+
+    /**
+     * Writes out anything this handler is still buffering. Called once the result set has been
+     * fully read; the underlying channel is not flushed or closed.
+     *
+     * @throws IOException if writing to the channel fails
+     */
+    default void complete() throws IOException {}
+
     /**
      * Creates a ChannelRowHandler for the given sheet with field projections.
      *
@@ -77,11 +110,38 @@ public sealed interface ChannelRowHandler extends
     /**
      * Implementation of ChannelRowHandler that processes database result sets into Excel sheet rows.
      * Maps database columns to Excel columns based on the provided projection mapping.
+     * <p>
+     * On a {@link ReportSXSSFSheet} with direct rows enabled, the values are written into one
+     * detached row whose cells are reused for every result set row, and each row is written
+     * straight to the sheet's temporary file instead of through {@link Sheet#createRow(int)}.
+     * <p>
+     * Once a sheet is full the rows carry on in a new sheet named after the first one, as
+     * {@code Name (2)}, {@code Name (3)} and so on, which repeats the header row, its styles and the
+     * column widths and styles of the first sheet. The split is decided as the rows arrive, so no
+     * count of the result is needed up front.
      */
+    @Slf4j
     final class SheetChannelRowHandler implements ChannelRowHandler, CellValueSetter {
-        private final Sheet sheet;
+        private static final int MAX_SHEET_NAME_LENGTH = 31;
+        private final Sheet firstSheet;
         private final Map<String, Integer> projection;
+        private final int lastRowIndex;
+        private Sheet sheet;
         private int rowNum = 1;
+        private int part = 1;
+        private int[] sourceColumns;
+        private int[] targetColumns;
+        private ColumnReader[] readers;
+        private List<HeaderCell> header;
+        private ReportSXSSFSheet directSheet;
+        private SXSSFRow directRow;
+        private Cell[] directCells;
+
+        /**
+         * A cell of the header row, repeated on every sheet the rows roll over to.
+         */
+        private record HeaderCell(int column, String value, CellStyle style, int width, CellStyle columnStyle) {
+        }
 
         /**
          * Constructs a new SheetChannelRowHandler for the given sheet and column projection.
@@ -90,34 +150,181 @@ public sealed interface ChannelRowHandler extends
          * @param projection Mapping of database column names to Excel column indices
          */
         public SheetChannelRowHandler(Sheet sheet, Map<String, Integer> projection) {
-            this.sheet = Objects.requireNonNull(sheet, "Sheet cannot be null");
+            this(sheet, projection, SpreadsheetVersion.EXCEL2007.getLastRowIndex());
+        }
+
+        /**
+         * Constructs a new SheetChannelRowHandler that rolls over to a new sheet after the given row.
+         *
+         * @param sheet The Excel sheet to write to
+         * @param projection Mapping of database column names to Excel column indices
+         * @param lastRowIndex The index of the last row written to each sheet, at least 1
+         */
+        public SheetChannelRowHandler(Sheet sheet, Map<String, Integer> projection, int lastRowIndex) {
+            if (lastRowIndex < 1) {
+                throw new IllegalArgumentException("Last row index must be at least 1");
+            }
+            this.firstSheet = Objects.requireNonNull(sheet, "Sheet cannot be null");
+            this.sheet = sheet;
             this.projection = Map.copyOf(Objects.requireNonNull(projection, "Projection cannot be null"));
+            this.lastRowIndex = lastRowIndex;
         }
 
         /**
          * Processes a single row from the result set and writes it to the Excel sheet.
          * Only columns that exist in the projection mapping will be written.
+         * <p>
+         * The projection and a {@link ColumnReader} per projected column are resolved from the
+         * result set metadata on the first row and reused for every following row.
          *
          * @param rs The result set containing the data to process
          * @throws SQLException if a database access error occurs
          */
         @Override
         public void processRow(ResultSet rs) throws SQLException {
+            if (readers == null) {
+                bind(rs.getMetaData());
+            }
+            if (rowNum > lastRowIndex) {
+                rollover();
+            }
+
+            if (directSheet != null) {
+                for (int i = 0; i < readers.length; i++) {
+                    readers[i].write(rs, sourceColumns[i], directCells[i]);
+                }
+                writeDirectRow();
+                return;
+            }
+
             var row = sheet.createRow(rowNum++);
-            var metaData = rs.getMetaData();
+            for (int i = 0; i < readers.length; i++) {
+                var cell = row.createCell(targetColumns[i], CellType.BLANK);
+                readers[i].write(rs, sourceColumns[i], cell);
+            }
+        }
+
+        private void writeDirectRow() {
+            try {
+                directSheet.writeDirectRow(rowNum++, directRow);
+            } catch (IOException e) {
+                throw new SheetWriteException("Failed to write row to sheet " + sheet.getSheetName(), e);
+            }
+        }
+
+        private void bindDirectRow(ReportSXSSFSheet reportSheet) {
+            try {
+                directRow = reportSheet.createDirectRow();
+            } catch (IOException e) {
+                throw new SheetWriteException("Failed to write rows to sheet " + sheet.getSheetName(), e);
+            }
+            directCells = new Cell[readers.length];
+            for (int i = 0; i < readers.length; i++) {
+                directCells[i] = directRow.createCell(targetColumns[i], CellType.BLANK);
+            }
+            directSheet = reportSheet;
+        }
+
+        private void bind(ResultSetMetaData metaData) throws SQLException {
             var columnCount = metaData.getColumnCount();
+            var sources = new int[columnCount];
+            var targets = new int[columnCount];
+            var bound = new ColumnReader[columnCount];
+            var projected = 0;
 
             for (int i = 1; i <= columnCount; i++) {
-                var columnName = metaData.getColumnLabel(i);
+                var target = projection.get(metaData.getColumnLabel(i));
+                if (target != null) {
+                    sources[projected] = i;
+                    targets[projected] = target;
+                    bound[projected++] = ColumnReader.forColumn(metaData, i);
+                }
+            }
 
-                if (projection.containsKey(columnName)) {
-                    var cell = row.createCell(projection.get(columnName), CellType.BLANK);
-                    var value = rs.getObject(i);
-                    setCellValue(cell, value != null ? value : "");
+            sourceColumns = Arrays.copyOf(sources, projected);
+            targetColumns = Arrays.copyOf(targets, projected);
+            readers = Arrays.copyOf(bound, projected);
+            // Streamed rows leave memory as the sheet fills, so the header is kept while it is still there
+            header = readHeader(sheet);
+
+            if (sheet instanceof ReportSXSSFSheet reportSheet && reportSheet.isDirectRows()) {
+                bindDirectRow(reportSheet);
+            }
+        }
+
+        /**
+         * Carries on writing in a new sheet with the same header, after the current one is full.
+         * Sheets of a workbook may be filled at the same time, so new sheets are named and created
+         * while holding the workbook.
+         */
+        private void rollover() {
+            var workbook = sheet.getWorkbook();
+            Sheet next;
+            synchronized (workbook) {
+                String name;
+                do {
+                    name = rolloverName(firstSheet.getSheetName(), ++part);
+                } while (workbook.getSheet(name) != null);
+                next = workbook instanceof ReportWorkbook reportWorkbook
+                        ? reportWorkbook.createRolloverSheet(firstSheet.getSheetName(), name)
+                        : workbook.createSheet(name);
+            }
+            log.debug("Sheet {} reached row {}, continuing on sheet {}", sheet.getSheetName(), lastRowIndex,
+                    next.getSheetName());
+
+            writeHeader(next);
+            sheet = next;
+            rowNum = 1;
+            directSheet = null;
+            if (next instanceof ReportSXSSFSheet reportSheet && reportSheet.isDirectRows()) {
+                bindDirectRow(reportSheet);
+            }
+        }
+
+        private void writeHeader(Sheet target) {
+            var row = target.createRow(0);
+            for (var cell : header) {
+                var copy = row.createCell(cell.column());
+                copy.setCellValue(cell.value());
+                copy.setCellStyle(cell.style());
+                target.setColumnWidth(cell.column(), cell.width());
+                if (cell.columnStyle() != null) {
+                    target.setDefaultColumnStyle(cell.column(), cell.columnStyle());
                 }
             }
         }
 
+        private static List<HeaderCell> readHeader(Sheet sheet) {
+            var row = sheet.getRow(0);
+            var cells = new ArrayList<HeaderCell>();
+            if (row == null) {
+                return cells;
+            }
+            for (var cell : row) {
+                var column = cell.getColumnIndex();
+                var value = cell.getCellType() == CellType.STRING ? cell.getStringCellValue() : cell.toString();
+                var columnStyle = sheet.getColumnStyle(column);
+                cells.add(new HeaderCell(column, value, cell.getCellStyle(), sheet.getColumnWidth(column),
+                        columnStyle == null || columnStyle.getIndex() == 0 ? null : columnStyle));
+            }
+            return cells;
+        }
+
+        /**
+         * Names a rollover sheet after the first sheet, shortening the name to fit Excel's limit.
+         *
+         * @param name the name of the first sheet
+         * @param part the sheet's number, from 2
+         * @return the name of the sheet
+         */
+        static String rolloverName(String name, int part) {
+            var suffix = " (" + part + ")";
+            var base = name.length() + suffix.length() > MAX_SHEET_NAME_LENGTH
+                    ? name.substring(0, MAX_SHEET_NAME_LENGTH - suffix.length())
+                    : name;
+            return base + suffix;
+        }
+
         /**
          * Closes this handler. This implementation does nothing.
          */
@@ -221,4 +428,99 @@ public sealed interface ChannelRowHandler extends
             stream.close();
         }
     }
+
+    /**
+     * Stream-based implementation of {@link ChannelRowHandler} that encodes rows with a
+     * {@link CsvRowEncoder}.
+     * <p>
+     * Column metadata is resolved once, on the first row, binding a {@link ColumnReader} per column
+     * so the per-row work is limited to reading each value and encoding it into the shared buffer.
+     * No per-row map is built.
+     */
+    final class EncodedStreamChannelRowHandler implements ChannelRowHandler {
+        private final CsvRowEncoder encoder;
+        private final OutputStream stream;
+        private final int bufferFlushFrequency;
+        private ColumnReader[] readers;
+        private long rowCount;
+
+        /**
+         * Constructs a new handler writing through the given encoder.
+         *
+         * @param encoder the encoder wrapping {@code stream} (must not be {@code null})
+         * @param stream the output stream the encoder drains to (must not be {@code null})
+         * @param bufferFlushFrequency number of rows between flushes of the output stream
+         * @throws NullPointerException if {@code encoder} or {@code stream} is {@code null}
+         */
+        public EncodedStreamChannelRowHandler(CsvRowEncoder encoder, OutputStream stream, int bufferFlushFrequency) {
+            this.encoder = Objects.requireNonNull(encoder, "CsvRowEncoder cannot be null");
+            this.stream = Objects.requireNonNull(stream, "OutputStream cannot be null");
+            this.bufferFlushFrequency = bufferFlushFrequency;
+        }
+
+        /**
+         * Encodes the current row, writing the header row first if this is the first row processed.
+         *
+         * @param rs the result set containing the current row data
+         * @throws SQLException if a database access error occurs
+         * @throws WritingToCsvException if writing to the stream fails
+         */
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            try {
+                if (readers == null) {
+                    writeHeader(rs.getMetaData());
+                }
+
+                for (int i = 0; i < readers.length; i++) {
+                    readers[i].write(rs, i + 1, encoder);
+                }
+                encoder.endRow();
+
+                // Regular flush of buffer reduces memory usage when
+                // processing large files.
+                if (++rowCount % bufferFlushFrequency == 0) {
+                    encoder.flush();
+                }
+            } catch (IOException e) {
+                throw new WritingToCsvException("Error writing to output stream", e);
+            }
+        }
+
+        private void writeHeader(ResultSetMetaData metaData) throws SQLException, IOException {
+            if (metaData == null) {
+                throw new MetadataInvalidException("Result set metadata is null");
+            }
+
+            var count = metaData.getColumnCount();
+            for (int i = 1; i <= count; i++) {
+                encoder.field(metaData.getColumnName(i));
+            }
+            encoder.endRow();
+            readers = ColumnReader.forColumns(metaData);
+        }
+
+        /**
+         * Drains any rows still held in the encoder buffer to the output stream.
+         *
+         * @throws IOException if writing to the stream fails
+         */
+        @Override
+        public void complete() throws IOException {
+            encoder.drain();
+        }
+
+        /**
+         * Drains the encoder buffer and closes the underlying output stream.
+         * After calling this method, the handler should not be used.
+         *
+         * @throws IOException if an I/O error occurs while writing or closing the stream
+         */
+        @Override
+        public void close() throws IOException {
+            try (stream) {
+                encoder.drain();
+            }
+        }
+    }
 }
@@ -0,0 +1,214 @@
+package uk.gov.laa.gpfd.dao.sql;
+
+import org.apache.poi.ss.usermodel.Cell;
+import uk.gov.laa.gpfd.services.excel.editor.CellValueHandler;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Reads a single column of the current {@link ResultSet} row and writes it to an output target
+ * using an accessor chosen from the column's SQL type.
+ * <p>
+ * Readers are bound once per query from {@link ResultSetMetaData} via {@link #forColumns}, so the
+ * per-row loop neither inspects the runtime class of each value nor boxes numeric columns:
+ * <ul>
+ *   <li>integral columns ({@code NUMBER(p,0)} with {@code p <= 18}, {@code INTEGER}, ...) are read
+ *   with {@link ResultSet#getLong(int)}</li>
+ *   <li>other numeric columns are read with {@link ResultSet#getDouble(int)} for sheets</li>
+ *   <li>{@code DATE} and {@code TIMESTAMP} columns are read as {@link LocalDate} and
+ *   {@link LocalDateTime} and stored as Excel serial dates</li>
+ *   <li>character columns are read with {@link ResultSet#getString(int)}</li>
+ * </ul>
+ * Any other type falls back to {@link ResultSet#getObject(int)} and the {@link CellValueHandler}
+ * lookup. CSV output keeps the driver's own text for decimal and temporal columns so the file
+ * content is unchanged; only integral columns are encoded without an intermediate {@link String}.
+ */
+public enum ColumnReader {
+
+    /**
+     * Reader for integral numeric columns.
+     */
+    LONG {
+        @Override
+        public void write(ResultSet rs, int column, Cell cell) throws SQLException {
+            var value = rs.getLong(column);
+            if (rs.wasNull()) {
+                CellValueHandler.EMPTY.accept(cell, null);
+            } else {
+                cell.setCellValue(value);
+            }
+        }
+
+        @Override
+        public void write(ResultSet rs, int column, CsvRowEncoder encoder) throws SQLException, IOException {
+            var value = rs.getLong(column);
+            if (rs.wasNull()) {
+                encoder.field(null);
+            } else {
+                encoder.field(value);
+            }
+        }
+    },
+
+    /**
+     * Reader for fractional or unconstrained numeric columns.
+     */
+    DOUBLE {
+        @Override
+        public void write(ResultSet rs, int column, Cell cell) throws SQLException {
+            var value = rs.getDouble(column);
+            if (rs.wasNull()) {
+                CellValueHandler.EMPTY.accept(cell, null);
+            } else {
+                cell.setCellValue(value);
+            }
+        }
+    },
+
+    /**
+     * Reader for {@code TIMESTAMP} columns, including Oracle {@code DATE} which carries a time part.
+     */
+    TIMESTAMP {
+        @Override
+        public void write(ResultSet rs, int column, Cell cell) throws SQLException {
+            var value = rs.getObject(column, LocalDateTime.class);
+            if (value == null) {
+                CellValueHandler.EMPTY.accept(cell, null);
+            } else {
+                cell.setCellValue(value);
+            }
+        }
+    },
+
+    /**
+     * Reader for date-only columns.
+     */
+    DATE {
+        @Override
+        public void write(ResultSet rs, int column, Cell cell) throws SQLException {
+            var value = rs.getObject(column, LocalDate.class);
+            if (value == null) {
+                CellValueHandler.EMPTY.accept(cell, null);
+            } else {
+                cell.setCellValue(value);
+            }
+        }
+    },
+
+    /**
+     * Reader for boolean columns.
+     */
+    BOOLEAN {
+        @Override
+        public void write(ResultSet rs, int column, Cell cell) throws SQLException {
+            var value = rs.getBoolean(column);
+            if (rs.wasNull()) {
+                CellValueHandler.EMPTY.accept(cell, null);
+            } else {
+                cell.setCellValue(value);
+            }
+        }
+    },
+
+    /**
+     * Reader for character columns. Numeric looking text is still stored as a number, matching
+     * {@link CellValueHandler#STRING}.
+     */
+    STRING {
+        @Override
+        public void write(ResultSet rs, int column, Cell cell) throws SQLException {
+            var value = rs.getString(column);
+            CellValueHandler.forValue(value).accept(cell, value);
+        }
+    },
+
+    /**
+     * Fallback reader for any other column type.
+     */
+    OBJECT {
+        @Override
+        public void write(ResultSet rs, int column, Cell cell) throws SQLException {
+            var value = rs.getObject(column);
+            CellValueHandler.forValue(value).accept(cell, value);
+        }
+    };
+
+    /**
+     * The largest precision whose integral values always fit in a {@code long}.
+     */
+    private static final int MAX_LONG_PRECISION = 18;
+
+    /**
+     * Writes the value of {@code column} in the current row to the given cell.
+     *
+     * @param rs     the result set positioned on the row to read
+     * @param column the 1-based column index
+     * @param cell   the cell to write to
+     * @throws SQLException if the value cannot be read
+     */
+    public abstract void write(ResultSet rs, int column, Cell cell) throws SQLException;
+
+    /**
+     * Writes the value of {@code column} in the current row as a CSV field.
+     *
+     * @param rs      the result set positioned on the row to read
+     * @param column  the 1-based column index
+     * @param encoder the encoder to append the field to
+     * @throws SQLException if the value cannot be read
+     * @throws IOException  if the encoder fails to drain its buffer
+     */
+    public void write(ResultSet rs, int column, CsvRowEncoder encoder) throws SQLException, IOException {
+        encoder.field(rs.getString(column));
+    }
+
+    /**
+     * Binds a reader to every column described by the given metadata.
+     *
+     * @param metaData the metadata of the result set to read
+     * @return an array holding the reader for column {@code i} at index {@code i - 1}
+     * @throws SQLException if the metadata cannot be read
+     */
+    public static ColumnReader[] forColumns(ResultSetMetaData metaData) throws SQLException {
+        var readers = new ColumnReader[metaData.getColumnCount()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = forColumn(metaData, i + 1);
+        }
+        return readers;
+    }
+
+    /**
+     * Chooses the reader for a single column from its SQL type, precision and scale.
+     *
+     * @param metaData the metadata of the result set to read
+     * @param column   the 1-based column index
+     * @return the reader for the column, never {@code null}
+     * @throws SQLException if the metadata cannot be read
+     */
+    public static ColumnReader forColumn(ResultSetMetaData metaData, int column) throws SQLException {
+        return switch (metaData.getColumnType(column)) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> LONG;
+            case Types.NUMERIC, Types.DECIMAL -> isIntegral(metaData, column) ? LONG : DOUBLE;
+            case Types.FLOAT, Types.REAL, Types.DOUBLE -> DOUBLE;
+            case Types.TIMESTAMP -> TIMESTAMP;
+            case Types.DATE -> DATE;
+            case Types.BIT, Types.BOOLEAN -> BOOLEAN;
+            case Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR, Types.LONGNVARCHAR -> STRING;
+            default -> OBJECT;
+        };
+    }
+
+    /**
+     * An Oracle {@code NUMBER} without a declared precision reports a precision of 0 and a scale
+     * of -127, so only columns with an explicit scale of 0 and a bounded precision are integral.
+     */
+    private static boolean isIntegral(ResultSetMetaData metaData, int column) throws SQLException {
+        var precision = metaData.getPrecision(column);
+        return metaData.getScale(column) == 0 && precision > 0 && precision <= MAX_LONG_PRECISION;
+    }
+}
@@ -0,0 +1,230 @@
+package uk.gov.laa.gpfd.dao.sql;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Encodes CSV fields straight into a reusable UTF-8 byte buffer, which is drained to the
+ * underlying {@link OutputStream} whenever it fills up.
+ * <p>
+ * Fields are separated by {@code ,} and rows are terminated by {@code \n}. A field is only
+ * quoted when it contains a separator, a quote or a line break, with embedded quotes doubled
+ * as described in RFC 4180. {@code null} values are written as empty fields.
+ * <p>
+ * Characters are encoded one at a time, so no intermediate {@link String} or {@code byte[]}
+ * is created per field. Instances are not thread-safe.
+ */
+public final class CsvRowEncoder {
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_LONG_LENGTH = 20;
+
+    private static final char SEPARATOR = ',', QUOTE = '"', END_OF_LINE = '\n', REPLACEMENT = '?';
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+    private int column;
+
+    /**
+     * Creates an encoder with the default buffer size.
+     *
+     * @param out the stream to drain encoded bytes to (must not be {@code null})
+     */
+    public CsvRowEncoder(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates an encoder with the given buffer size.
+     *
+     * @param out        the stream to drain encoded bytes to (must not be {@code null})
+     * @param bufferSize the number of bytes to hold before draining, at least 20
+     */
+    public CsvRowEncoder(OutputStream out, int bufferSize) {
+        if (bufferSize < MAX_LONG_LENGTH) {
+            throw new IllegalArgumentException("Buffer size must be at least " + MAX_LONG_LENGTH + " bytes");
+        }
+        this.out = Objects.requireNonNull(out, "OutputStream cannot be null");
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Appends a field to the current row, quoting it only when required.
+     *
+     * @param value the field value, {@code null} is written as an empty field
+     * @throws IOException if draining the buffer fails
+     */
+    public void field(CharSequence value) throws IOException {
+        separate();
+        if (value == null) {
+            return;
+        }
+
+        var length = value.length();
+        if (!needsQuotes(value, length)) {
+            encode(value, length);
+            return;
+        }
+
+        put(QUOTE);
+        for (int i = 0; i < length; i++) {
+            var c = value.charAt(i);
+            if (c == QUOTE) {
+                put(QUOTE);
+            }
+            encode(value, i, c);
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                i++;
+            }
+        }
+        put(QUOTE);
+    }
+
+    /**
+     * Appends a numeric field to the current row, writing its decimal digits straight into the
+     * buffer.
+     *
+     * @param value the field value
+     * @throws IOException if draining the buffer fails
+     */
+    public void field(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            field(Long.toString(value));
+            return;
+        }
+
+        separate();
+        ensureCapacity(MAX_LONG_LENGTH);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+
+        var digits = 1;
+        for (var remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        position += digits;
+        for (int i = position - 1; i >= position - digits; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Terminates the current row.
+     *
+     * @throws IOException if draining the buffer fails
+     */
+    public void endRow() throws IOException {
+        put(END_OF_LINE);
+        column = 0;
+    }
+
+    /**
+     * Returns the number of encoded bytes held in the buffer that have not been drained yet.
+     *
+     * @return the buffered byte count
+     */
+    public int buffered() {
+        return position;
+    }
+
+    /**
+     * Writes any buffered bytes to the underlying stream without flushing it.
+     *
+     * @throws IOException if writing to the stream fails
+     */
+    public void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * Writes any buffered bytes to the underlying stream and flushes it.
+     *
+     * @throws IOException if writing to or flushing the stream fails
+     */
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    private void separate() throws IOException {
+        if (column++ > 0) {
+            put(SEPARATOR);
+        }
+    }
+
+    private static boolean needsQuotes(CharSequence value, int length) {
+        for (int i = 0; i < length; i++) {
+            switch (value.charAt(i)) {
+                case SEPARATOR, QUOTE, END_OF_LINE, '\r' -> {
+                    return true;
+                }
+                default -> {
+                    // plain character
+                }
+            }
+        }
+        return false;
+    }
+
+    private void encode(CharSequence value, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            var c = value.charAt(i);
+            encode(value, i, c);
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * UTF-8 encodes the character at {@code index}, consuming the following low surrogate when
+     * {@code c} starts a valid surrogate pair. Unpaired surrogates are replaced with {@code ?}.
+     */
+    private void encode(CharSequence value, int index, char c) throws IOException {
+        if (c < 0x80) {
+            put(c);
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            buffer[position++] = (byte) (0xC0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            var next = index + 1 < value.length() ? value.charAt(index + 1) : 0;
+            if (Character.isHighSurrogate(c) && Character.isLowSurrogate(next)) {
+                var codePoint = Character.toCodePoint(c, next);
+                ensureCapacity(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                put(REPLACEMENT);
+            }
+        } else {
+            ensureCapacity(3);
+            buffer[position++] = (byte) (0xE0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void put(int b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            drain();
+        }
+    }
+}
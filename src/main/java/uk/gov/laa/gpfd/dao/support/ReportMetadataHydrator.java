@@ -0,0 +1,236 @@
+package uk.gov.laa.gpfd.dao.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+import uk.gov.laa.gpfd.model.FileExtension;
+import uk.gov.laa.gpfd.model.ImmutableReport;
+import uk.gov.laa.gpfd.model.ImmutableReportOutputType;
+import uk.gov.laa.gpfd.model.ImmutableReportOwner;
+import uk.gov.laa.gpfd.model.ImmutableReportQuery;
+import uk.gov.laa.gpfd.model.QueryPartitioning;
+import uk.gov.laa.gpfd.model.Report;
+import uk.gov.laa.gpfd.model.ReportQuery;
+import uk.gov.laa.gpfd.model.ReportQuerySql;
+import uk.gov.laa.gpfd.model.excel.ExcelMappingProjection;
+import uk.gov.laa.gpfd.model.excel.ExcelTemplate;
+import uk.gov.laa.gpfd.model.excel.ImmutableColumnFormat;
+import uk.gov.laa.gpfd.model.excel.ImmutableExcelColumn;
+import uk.gov.laa.gpfd.model.excel.ImmutableExcelMappingProjection;
+import uk.gov.laa.gpfd.model.excel.ImmutableExcelSheet;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Loads every {@link Report} with its {@link ReportQuery} objects and their
+ * {@link ExcelMappingProjection} objects, reading each table once.
+ *
+ * <p>{@link ReportWithQueriesAndFieldAttributesExtractor} reads a join that repeats every report and
+ * query column on each field attribute row. This class reads the reports, the queries and the field
+ * attributes with one query each, so every row is transferred and mapped once, and merges them in
+ * memory by id. Columns are read by position.
+ *
+ * <p>The three reads are not one transaction. A query or field attribute whose report or query was
+ * not read is skipped; the change that caused it also notifies the metadata catalogue, which reloads.
+ */
+@Slf4j
+@Component
+public class ReportMetadataHydrator {
+
+    static final String SELECT_REPORTS_SQL = """
+        SELECT
+            r.ID,
+            r.NAME,
+            r.FILE_NAME,
+            r.TEMPLATE_SECURE_DOCUMENT_ID,
+            r.REPORT_CREATION_DATE,
+            r.LAST_DATABASE_REFRESH_DATETIME,
+            r.DESCRIPTION,
+            r.NUM_DAYS_TO_KEEP,
+            r.REPORT_OWNER_ID,
+            r.REPORT_OWNER_NAME,
+            r.REPORT_OWNER_EMAIL,
+            r.ACTIVE,
+            r.DEFLATE_LEVEL,
+            rot.ID,
+            rot.EXTENSION,
+            rot.DESCRIPTION
+        FROM glad.reports r
+        JOIN glad.report_output_types rot ON r.REPORT_OUTPUT_TYPE = rot.ID
+        ORDER BY r.NAME ASC, r.ID ASC
+    """;
+
+    static final String SELECT_QUERIES_SQL = """
+        SELECT
+            q.REPORT_ID,
+            q.ID,
+            q.QUERY,
+            q.TAB_NAME,
+            q."index",
+            q.PARALLEL_SLICES,
+            q.PARALLEL_SLICE_KEY,
+            q.PARALLEL_ORDERED
+        FROM glad.report_queries q
+        ORDER BY q."index" ASC
+    """;
+
+    static final String SELECT_FIELD_ATTRIBUTES_SQL = """
+        SELECT
+            fa.REPORT_QUERY_ID,
+            fa.ID,
+            fa.SOURCE_NAME,
+            fa.MAPPED_NAME,
+            fa.FORMAT,
+            fa.FORMAT_TYPE,
+            fa.COLUMN_WIDTH
+        FROM glad.field_attributes fa
+        ORDER BY fa.column_order ASC
+    """;
+
+    private static final int REPORT_ID = 1;
+    private static final int REPORT_NAME = 2;
+    private static final int REPORT_FILE_NAME = 3;
+    private static final int REPORT_TEMPLATE = 4;
+    private static final int REPORT_CREATION_DATE = 5;
+    private static final int REPORT_REFRESH_DATE = 6;
+    private static final int REPORT_DESCRIPTION = 7;
+    private static final int REPORT_DAYS_TO_KEEP = 8;
+    private static final int REPORT_OWNER_ID = 9;
+    private static final int REPORT_OWNER_NAME = 10;
+    private static final int REPORT_OWNER_EMAIL = 11;
+    private static final int REPORT_ACTIVE = 12;
+    private static final int REPORT_DEFLATE_LEVEL = 13;
+    private static final int OUTPUT_TYPE_ID = 14;
+    private static final int OUTPUT_TYPE_EXTENSION = 15;
+    private static final int OUTPUT_TYPE_DESCRIPTION = 16;
+
+    private static final int QUERY_REPORT_ID = 1;
+    private static final int QUERY_ID = 2;
+    private static final int QUERY_SQL = 3;
+    private static final int QUERY_TAB_NAME = 4;
+    private static final int QUERY_INDEX = 5;
+    private static final int QUERY_PARALLEL_SLICES = 6;
+    private static final int QUERY_PARALLEL_SLICE_KEY = 7;
+    private static final int QUERY_PARALLEL_ORDERED = 8;
+
+    private static final int FIELD_QUERY_ID = 1;
+    private static final int FIELD_ID = 2;
+    private static final int FIELD_SOURCE_NAME = 3;
+    private static final int FIELD_MAPPED_NAME = 4;
+    private static final int FIELD_FORMAT = 5;
+    private static final int FIELD_FORMAT_TYPE = 6;
+    private static final int FIELD_COLUMN_WIDTH = 7;
+
+    private final JdbcClient metadataClient;
+
+    public ReportMetadataHydrator(@Qualifier("metadataClient") JdbcClient metadataClient) {
+        this.metadataClient = requireNonNull(metadataClient, "JdbcClient cannot be null");
+    }
+
+    /**
+     * Loads every report, active or not, ordered by name.
+     *
+     * @return the reports, each with its queries in sheet order and their field attributes in column order
+     * @throws DataAccessException if the metadata cannot be read
+     */
+    public Collection<Report> hydrateAll() {
+        var reports = new LinkedHashMap<UUID, Report>();
+        metadataClient.sql(SELECT_REPORTS_SQL)
+                .query((RowCallbackHandler) rs -> {
+                    var report = mapReport(rs);
+                    reports.put(report.getId(), report);
+                });
+
+        var queries = new HashMap<UUID, ReportQuery>();
+        metadataClient.sql(SELECT_QUERIES_SQL)
+                .query((RowCallbackHandler) rs -> {
+                    var report = reports.get(rs.getObject(QUERY_REPORT_ID, UUID.class));
+                    if (report == null) {
+                        return;
+                    }
+                    var query = mapQuery(rs);
+                    queries.put(query.getId(), query);
+                    report.getQueries().add(query);
+                });
+
+        metadataClient.sql(SELECT_FIELD_ATTRIBUTES_SQL)
+                .query((RowCallbackHandler) rs -> {
+                    var query = queries.get(rs.getObject(FIELD_QUERY_ID, UUID.class));
+                    if (query == null) {
+                        return;
+                    }
+                    query.getExcelSheet().getFieldAttributes().add(mapFieldAttribute(rs));
+                });
+
+        log.debug("Hydrated {} reports with {} queries", reports.size(), queries.size());
+        return reports.values();
+    }
+
+    private static Report mapReport(ResultSet rs) throws SQLException {
+        return ImmutableReport.builder()
+                .id(rs.getObject(REPORT_ID, UUID.class))
+                .name(rs.getString(REPORT_NAME))
+                .outputFileName(rs.getString(REPORT_FILE_NAME))
+                .templateDocument(ExcelTemplate.fromString(rs.getString(REPORT_TEMPLATE)))
+                .creationTime(rs.getTimestamp(REPORT_CREATION_DATE))
+                .lastDatabaseRefreshDate(rs.getTimestamp(REPORT_REFRESH_DATE))
+                .description(rs.getString(REPORT_DESCRIPTION))
+                .numDaysToKeep(rs.getInt(REPORT_DAYS_TO_KEEP))
+                .owner(ImmutableReportOwner.newBuilder()
+                        .withId(rs.getObject(REPORT_OWNER_ID, UUID.class))
+                        .withName(rs.getString(REPORT_OWNER_NAME))
+                        .withEmail(rs.getString(REPORT_OWNER_EMAIL))
+                        .create())
+                .active("Y".equals(rs.getString(REPORT_ACTIVE)))
+                .deflateLevel(rs.getObject(REPORT_DEFLATE_LEVEL, Integer.class))
+                .outputType(ImmutableReportOutputType.builder()
+                        .id(rs.getObject(OUTPUT_TYPE_ID, UUID.class))
+                        .fileExtension(FileExtension.fromString(rs.getString(OUTPUT_TYPE_EXTENSION)))
+                        .description(rs.getString(OUTPUT_TYPE_DESCRIPTION))
+                        .build())
+                .queries(new ArrayList<>())
+                .build();
+    }
+
+    private static ReportQuery mapQuery(ResultSet rs) throws SQLException {
+        return ImmutableReportQuery.builder()
+                .id(rs.getObject(QUERY_ID, UUID.class))
+                .query(ReportQuerySql.ofNullable(rs.getString(QUERY_SQL)))
+                .partitioning(QueryPartitioning.ofNullable(
+                        rs.getObject(QUERY_PARALLEL_SLICES, Integer.class),
+                        rs.getString(QUERY_PARALLEL_SLICE_KEY),
+                        rs.getObject(QUERY_PARALLEL_ORDERED, Boolean.class)))
+                .excelSheet(ImmutableExcelSheet.builder()
+                        .name(rs.getString(QUERY_TAB_NAME))
+                        .index(rs.getInt(QUERY_INDEX))
+                        .fieldAttributes(new ArrayList<>())
+                        .build())
+                .build();
+    }
+
+    private static ExcelMappingProjection mapFieldAttribute(ResultSet rs) throws SQLException {
+        return ImmutableExcelMappingProjection.builder()
+                .id(rs.getObject(FIELD_ID, UUID.class))
+                .sourceName(rs.getString(FIELD_SOURCE_NAME))
+                .excelColumn(ImmutableExcelColumn.builder()
+                        .name(rs.getString(FIELD_MAPPED_NAME))
+                        .format(ImmutableColumnFormat.builder()
+                                .format(rs.getString(FIELD_FORMAT))
+                                .formatType(rs.getString(FIELD_FORMAT_TYPE))
+                                .columnWidth(rs.getDouble(FIELD_COLUMN_WIDTH))
+                                .build())
+                        .build())
+                .build();
+    }
+}
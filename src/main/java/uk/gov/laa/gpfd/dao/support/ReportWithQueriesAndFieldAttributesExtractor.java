@@ -10,6 +10,7 @@ import uk.gov.laa.gpfd.model.ImmutableReportOutputType;
 import uk.gov.laa.gpfd.model.ImmutableReportOwner;
 import uk.gov.laa.gpfd.model.ImmutableReportQuery;
 import uk.gov.laa.gpfd.model.excel.ExcelMappingProjection;
+import uk.gov.laa.gpfd.model.QueryPartitioning;
 import uk.gov.laa.gpfd.model.Report;
 import uk.gov.laa.gpfd.model.ReportQuery;
 import uk.gov.laa.gpfd.model.ReportQuerySql;
@@ -76,6 +77,7 @@ public class ReportWithQueriesAndFieldAttributesExtractor implements ResultSetEx
                                     .create())
                             .active(rs.getString("ACTIVE").equals("Y"))
                             .outputFileName(rs.getString("FILE_NAME"))
+                            .deflateLevel(rs.getObject("DEFLATE_LEVEL", Integer.class))
                             .outputType(ImmutableReportOutputType.builder()
                                     .id(UUID.fromString(rs.getString("OUTPUT_TYPE_ID")))
                                     .fileExtension(FileExtension.fromString(rs.getString("EXTENSION")))
@@ -103,6 +105,10 @@ public class ReportWithQueriesAndFieldAttributesExtractor implements ResultSetEx
                     return ImmutableReportQuery.builder()
                             .id(queryUUID)
                             .query(ReportQuerySql.ofNullable(rs.getString("QUERY")))
+                            .partitioning(QueryPartitioning.ofNullable(
+                                    rs.getObject("PARALLEL_SLICES", Integer.class),
+                                    rs.getString("PARALLEL_SLICE_KEY"),
+                                    rs.getObject("PARALLEL_ORDERED", Boolean.class)))
                             .excelSheet(ImmutableExcelSheet.builder()
                                     .name(rs.getString("TAB_NAME"))
                                     .index(rs.getInt("INDEX"))
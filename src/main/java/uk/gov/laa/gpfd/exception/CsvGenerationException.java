@@ -59,9 +59,9 @@ public abstract sealed class CsvGenerationException extends RuntimeException {
          * Constructs a new writing to csv exception with the specified detail message.
          *
          * @param message the detail message
-         * @param e the IOException that caused the error
+         * @param e the {@link JacksonException} or {@link java.io.IOException} that caused the error
          */
-        public WritingToCsvException(String message, JacksonException e) {
+        public WritingToCsvException(String message, Exception e) {
             super(message, e);
         }
     }
@@ -0,0 +1,20 @@
+package uk.gov.laa.gpfd.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Exception class to indicate that an export could not be admitted because the export capacity
+ * for its cost class is exhausted.
+ */
+@Getter
+public class ExportRejectedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ExportRejectedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -90,6 +90,22 @@ public abstract sealed class ReportGenerationException extends RuntimeException
         }
     }
 
+    /**
+     * Exception indicating that rows could not be written to a sheet's temporary storage.
+     */
+    public static final class SheetWriteException extends ReportGenerationException {
+
+        /**
+         * Constructs a new sheet write exception with the specified detail message and cause.
+         *
+         * @param message the detail message including the sheet that could not be written
+         * @param cause   the underlying I/O failure
+         */
+        public SheetWriteException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
     /**
      * Exception thrown when pivot table creation fails.
      * <p>
@@ -3,12 +3,14 @@ package uk.gov.laa.gpfd.mapper;
 import org.springframework.stereotype.Component;
 import uk.gov.laa.gpfd.model.FileExtension;
 import uk.gov.laa.gpfd.model.Report;
+import uk.gov.laa.gpfd.model.ReportOutputType;
 import uk.gov.laa.gpfd.utils.UrlBuilder;
 
 import java.net.URI;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.Objects;
+import java.util.UUID;
 
 /**
  * Abstract base class for report mappers that provides common functionality
@@ -32,13 +34,25 @@ public abstract class AbstractReportMapper {
      * @throws IllegalStateException if URL construction fails
      */
     protected URI constructDownloadUrl(Report report) {
+        return constructDownloadUrl(report.getId(), report.getOutputType());
+    }
+
+    /**
+     * Constructs a download URL for a report of the given output type.
+     *
+     * @param id         the report's id
+     * @param outputType the report's output type
+     * @return the constructed URI
+     * @throws IllegalStateException if URL construction fails
+     */
+    protected URI constructDownloadUrl(UUID id, ReportOutputType outputType) {
         try {
             var baseUrl = urlBuilder.getServiceUrl();
-            var reportId = report.getIdAsString();
-            if (Objects.equals(report.getOutputType().getExtension(), FileExtension.S3STORAGE.getExtension())) {
+            var reportId = id.toString();
+            if (Objects.equals(outputType.getExtension(), FileExtension.S3STORAGE.getExtension())) {
                 return URI.create("%s/%s/%s/%s".formatted(baseUrl,REPORTS, reportId, "file"));
             }
-            var extensionPath = report.getOutputType().getSubPath();
+            var extensionPath = outputType.getSubPath();
             return URI.create("%s/%s/%s/%s".formatted(baseUrl, REPORTS, reportId, extensionPath));
         } catch (Exception e) {
             throw new IllegalStateException("Failed to construct report URL", e);
@@ -1,35 +1,44 @@
 package uk.gov.laa.gpfd.mapper;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import uk.gov.laa.gpfd.model.Report;
+import uk.gov.laa.gpfd.model.ReportCatalogueEntry;
 import uk.gov.laa.gpfd.model.ReportsGet200ResponseReportListInner;
+import uk.gov.laa.gpfd.utils.UrlBuilder;
 
 /**
- * Utility class responsible for mapping a {@link Report} object to a {@link ReportsGet200ResponseReportListInner} object.
+ * Utility class responsible for mapping a {@link ReportCatalogueEntry} object to a {@link ReportsGet200ResponseReportListInner} object.
  * <p>
- * This class provides a method to transform a {@link Report} entity (which holds CSV to SQL mapping details)
- * into a response object that can be returned in an API response.
+ * This class provides a method to transform a report's catalogue entry into a list item that can be
+ * returned in an API response, including the report's download URL so clients don't need to fetch
+ * each report to link to it.
  * </p>
  */
 @Component
-public final class ReportsGet200ResponseReportListInnerMapper implements ResourceResponseMapper<Report, ReportsGet200ResponseReportListInner> {
+public final class ReportsGet200ResponseReportListInnerMapper extends AbstractReportMapper implements ResourceResponseMapper<ReportCatalogueEntry, ReportsGet200ResponseReportListInner> {
+
+    @Autowired
+    private ReportsGet200ResponseReportListInnerMapper(UrlBuilder urlBuilder) {
+        super(urlBuilder);
+    }
 
     /**
-     * Maps a {@link Report} object to a {@link ReportsGet200ResponseReportListInner} object.
+     * Maps a {@link ReportCatalogueEntry} object to a {@link ReportsGet200ResponseReportListInner} object.
      * <p>
-     * This method transforms a given {@link Report} entity into a response object used by the service layer
-     * to expose report details such as report name, SQL query, and other metadata to the client.
+     * This method transforms a given catalogue entry into a response object used by the service layer
+     * to expose the report's id, name, description and download URL to the client.
      * </p>
      *
-     * @param reportData the {@link Report} object containing the data to be mapped
-     * @return a {@link ReportsGet200ResponseReportListInner} object populated with data from the provided {@link Report}
+     * @param entry the {@link ReportCatalogueEntry} object containing the data to be mapped
+     * @return a {@link ReportsGet200ResponseReportListInner} object populated with data from the provided entry
      */
     @Override
-    public ReportsGet200ResponseReportListInner map(Report reportData) {
+    public ReportsGet200ResponseReportListInner map(ReportCatalogueEntry entry) {
         var result = new ReportsGet200ResponseReportListInner();
-        result.setId(reportData.getId());
-        result.setReportName(reportData.getName());
-        result.description(reportData.getDescription());
+        result.setId(entry.id());
+        result.setReportName(entry.name());
+        result.description(entry.description());
+        result.setReportDownloadUrl(constructDownloadUrl(entry.id(), entry.outputType()));
 
         return result;
     }
@@ -13,7 +13,8 @@ import uk.gov.laa.gpfd.exception.ReportOutputTypeNotFoundException;
 public enum FileExtension {
     CSV("csv", "csv"),
     XLSX("xlsx", "excel"),
-    S3STORAGE("s3storage", "s3storage");
+    S3STORAGE("s3storage", "s3storage"),
+    ZIP("zip", "zip");
 
     private static final Map<String, FileExtension> EXTENSION_MAP =
             Stream.of(values()).collect(Collectors.toMap(FileExtension::getExtension, e -> e));
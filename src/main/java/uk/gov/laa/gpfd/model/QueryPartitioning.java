@@ -0,0 +1,66 @@
+package uk.gov.laa.gpfd.model;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Describes how a report query may be split into disjoint slices that are read in parallel.
+ * <p>
+ * Slice {@code i} of {@code n} wraps the report query and selects the rows where
+ * {@code ORA_HASH(sliceKey, n - 1) = i}, so together the slices cover every row of the original
+ * query exactly once. The slice key is resolved against the query's result, so it must be one of
+ * its columns. It defaults to {@code ROWID}, which Oracle only exposes for queries over a single
+ * key-preserved table or view; other queries must declare a key column instead.
+ *
+ * @param slices   the number of slices, at least 2
+ * @param sliceKey the column hashed to assign rows to slices, a plain identifier
+ * @param ordered  {@code true} to stitch slices back in slice order, {@code false} to write rows
+ *                 from whichever slice produces them first
+ */
+public record QueryPartitioning(int slices, String sliceKey, boolean ordered) {
+
+    /**
+     * The default slice key.
+     */
+    public static final String ROWID = "ROWID";
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Z][A-Z0-9_$#]{0,127}", Pattern.CASE_INSENSITIVE);
+
+    public QueryPartitioning {
+        if (slices < 2) {
+            throw new IllegalArgumentException("A partitioned query needs at least 2 slices");
+        }
+        sliceKey = Objects.requireNonNullElse(sliceKey, ROWID);
+        if (!IDENTIFIER.matcher(sliceKey).matches()) {
+            throw new IllegalArgumentException("Slice key must be a plain column name (got: '" + sliceKey + "')");
+        }
+    }
+
+    /**
+     * Creates a partitioning from nullable metadata columns.
+     *
+     * @param slices   the configured slice count, may be {@code null}
+     * @param sliceKey the configured slice key, may be {@code null}
+     * @param ordered  whether slices should be stitched in order, {@code null} means ordered
+     * @return the partitioning, or {@code null} when fewer than 2 slices are configured
+     */
+    public static QueryPartitioning ofNullable(Integer slices, String sliceKey, Boolean ordered) {
+        if (slices == null || slices < 2) {
+            return null;
+        }
+        return new QueryPartitioning(slices, sliceKey, !Boolean.FALSE.equals(ordered));
+    }
+
+    /**
+     * Restricts the given query to a single slice. The query is wrapped rather than extended, so
+     * its own {@code WHERE}, {@code GROUP BY}, {@code ORDER BY} and {@code FETCH FIRST} clauses
+     * apply before rows are assigned to slices. The returned statement has one parameter, the
+     * 0-based slice index.
+     *
+     * @param sql a query validated by {@link ReportQuerySql}
+     * @return the slice query
+     */
+    public String sliceSql(String sql) {
+        return "SELECT * FROM (" + sql + ") WHERE ORA_HASH(" + sliceKey + ", " + (slices - 1) + ") = ?";
+    }
+}
@@ -52,5 +52,12 @@ public abstract class Report implements Queryable<ReportQuery, Report>, Identifi
 
     @Nullable
     public abstract Boolean getActive();
+
+    /**
+     * The deflate level of the report's xlsx package, from 0 (stored) to 9, or null for the
+     * configured default.
+     */
+    @Nullable
+    public abstract Integer getDeflateLevel();
 }
 
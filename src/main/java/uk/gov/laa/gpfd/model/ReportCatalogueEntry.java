@@ -0,0 +1,33 @@
+package uk.gov.laa.gpfd.model;
+
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The fields of a report needed to list it and link to its download, without its queries or field
+ * attributes.
+ *
+ * @param id          the report's id
+ * @param name        the report's name
+ * @param description the report's description, may be null
+ * @param outputType  the report's output type, which decides its download URL
+ */
+public record ReportCatalogueEntry(UUID id, String name, String description, ReportOutputType outputType) {
+
+    public ReportCatalogueEntry {
+        requireNonNull(id, "Id cannot be null");
+        requireNonNull(name, "Name cannot be null");
+        requireNonNull(outputType, "Output type cannot be null");
+    }
+
+    /**
+     * Creates the catalogue entry of a fully loaded report.
+     *
+     * @param report the report
+     * @return the report's entry
+     */
+    public static ReportCatalogueEntry of(Report report) {
+        return new ReportCatalogueEntry(report.getId(), report.getName(), report.getDescription(), report.getOutputType());
+    }
+}
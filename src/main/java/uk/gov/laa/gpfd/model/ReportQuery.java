@@ -12,4 +12,12 @@ public abstract class ReportQuery implements Mapping, Identifiable {
     @Override
     public abstract ReportQuerySql getQuery();
 
+    /**
+     * Gets the parallel export configuration for this query, if any.
+     *
+     * @return the partitioning, or {@code null} when the query is read serially
+     */
+    @Nullable
+    public abstract QueryPartitioning getPartitioning();
+
 }
@@ -0,0 +1,85 @@
+package uk.gov.laa.gpfd.security;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable set of role names held as bits, so that checking whether two sets share a role is a
+ * single bitwise AND.
+ * <p>
+ * Role names are interned to small integer ids the first time they are seen, whether they come from
+ * {@code glad.roles} or a user's {@code LAA_APP_ROLES} claim. Ids are never reused or renumbered, so
+ * sets built at different times, such as a session's roles and a later metadata snapshot, can be
+ * compared. The roles are the few SILAS application roles, so the table stays small.
+ */
+public final class RoleBits {
+
+    public static final RoleBits EMPTY = new RoleBits(new BitSet());
+
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private final BitSet bits;
+
+    private RoleBits(BitSet bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * Creates the set of the given roles.
+     *
+     * @param roleNames the role names
+     * @return the set, {@link #EMPTY} if there are no roles
+     */
+    public static RoleBits of(Collection<String> roleNames) {
+        if (roleNames.isEmpty()) {
+            return EMPTY;
+        }
+        var bits = new BitSet();
+        for (var roleName : roleNames) {
+            bits.set(id(roleName));
+        }
+        return new RoleBits(bits);
+    }
+
+    /**
+     * Gets the id a role name is interned to, interning it if it hasn't been seen before.
+     *
+     * @param roleName the role name
+     * @return the role's id
+     */
+    static int id(String roleName) {
+        return IDS.computeIfAbsent(roleName, _ -> NEXT_ID.getAndIncrement());
+    }
+
+    /**
+     * Checks whether this set shares at least one role with another.
+     *
+     * @param other the other set
+     * @return {@code true} if a role is in both sets
+     */
+    public boolean intersects(RoleBits other) {
+        return bits.intersects(other.bits);
+    }
+
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RoleBits other && bits.equals(other.bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return bits.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RoleBits" + bits;
+    }
+}
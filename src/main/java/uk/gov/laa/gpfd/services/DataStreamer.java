@@ -2,17 +2,23 @@ package uk.gov.laa.gpfd.services;
 
 import org.apache.poi.ss.usermodel.Workbook;
 import org.springframework.jdbc.core.JdbcOperations;
+import uk.gov.laa.gpfd.dao.ExportSpool;
 import uk.gov.laa.gpfd.dao.JdbcDataStreamer;
+import uk.gov.laa.gpfd.dao.JdbcDataStreamer.CsvEncoding;
+import uk.gov.laa.gpfd.dao.PartitionedCsvStreamer;
 import uk.gov.laa.gpfd.dao.JdbcWorkbookDataStreamer;
+import uk.gov.laa.gpfd.dao.ParallelSheetStreamer;
 import uk.gov.laa.gpfd.exception.TemplateResourceException;
 import uk.gov.laa.gpfd.model.Report;
 import uk.gov.laa.gpfd.services.excel.ExcelCreationService;
 import uk.gov.laa.gpfd.services.excel.formatting.CellFormatter;
+import uk.gov.laa.gpfd.services.excel.workbook.AnalyticsParts;
 import uk.gov.laa.gpfd.utils.WorkbookOperations;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Objects;
+import java.util.Optional;
 
 import static uk.gov.laa.gpfd.exception.TemplateResourceException.ExcelTemplateCreationException;
 
@@ -31,40 +37,55 @@ public interface DataStreamer {
      * Creates a new JDBC-based {@link DataStreamer} instance.
      * <p>
      * The returned implementation uses Spring's {@link JdbcOperations} to execute SQL queries
-     * and stream results row-by-row to the output destination.
+     * and stream results row-by-row to the output destination. {@link CsvEncoding#DIRECT} encodes
+     * rows straight into a reusable byte buffer, while {@link CsvEncoding#JACKSON} keeps the
+     * original Jackson {@code SequenceWriter} path so the two can be compared. Reads go through the
+     * {@link ExportSpool}, and partitioned queries are read in parallel.
      *
      * @param jdbcOperations The configured JdbcOperations instance. Must not be null.
      * @param csvBufferFlushFrequency CSV buffer flush frequency
+     * @param encoding the CSV encoding engine to use. Must not be null.
+     * @param partitionedStreamer streams queries that declare a partitioning, may be null to always read serially
+     * @param spool decouples database reads from client writes. Must not be null.
      * @return A ready-to-use JDBC data streamer
-     * @throws IllegalArgumentException if jdbcTemplate is null
      * @see JdbcDataStreamer
      */
-    static DataStreamer createJdbcStreamer(JdbcOperations jdbcOperations, int csvBufferFlushFrequency) {
-        return new JdbcDataStreamer(jdbcOperations, csvBufferFlushFrequency);
+    static DataStreamer createJdbcStreamer(JdbcOperations jdbcOperations, int csvBufferFlushFrequency, CsvEncoding encoding,
+                                           PartitionedCsvStreamer partitionedStreamer, ExportSpool spool) {
+        return new JdbcDataStreamer(jdbcOperations, csvBufferFlushFrequency, encoding, partitionedStreamer, spool);
     }
 
     /**
-     * Creates a configured Excel {@link DataStreamer} instance with all required dependencies.
+     * Creates a configured Excel {@link DataStreamer} instance with all required dependencies. It
+     * can fill several data sheets of a report at the same time.
      *
      * @param templateLoader      Service for loading Excel templates (required)
      * @param dataFetcher         DAO for streaming data from source systems (required)
      * @param formatter           Component for formatting cells (required)
+     * @param spool               Records connection hold and response times (required)
+     * @param sheetStreamer       Runs the sheet queries, in parallel when connections allow (required)
      * @return A fully configured Excel data streamer implementation
      * @throws IllegalArgumentException if any argument is null
      */
     static DataStreamer createExcelStreamer(
             TemplateService templateLoader,
             JdbcWorkbookDataStreamer dataFetcher,
-            CellFormatter formatter
+            CellFormatter formatter,
+            ExportSpool spool,
+            ParallelSheetStreamer sheetStreamer
     ) {
         Objects.requireNonNull(templateLoader, "Template service must not be null");
         Objects.requireNonNull(dataFetcher, "Data fetcher must not be null");
         Objects.requireNonNull(formatter, "Cell formatter must not be null");
+        Objects.requireNonNull(spool, "Export spool must not be null");
+        Objects.requireNonNull(sheetStreamer, "Sheet streamer must not be null");
 
         return new ExcelCreationService(
                 templateLoader,
                 dataFetcher,
-                formatter
+                formatter,
+                spool,
+                sheetStreamer
         );
     }
 
@@ -103,12 +124,22 @@ public interface DataStreamer {
             Objects.requireNonNull(report, "Report must not be null");
             Objects.requireNonNull(output, "Output stream must not be null");
 
-            try (var analyticsSheets = resolveTemplate(report);
+            // Precompiled analytics sheets are spliced in as the workbook is written, so the template
+            // is only loaded when its sheets have to be copied
+            var analytics = resolveAnalytics(report);
+            try (var analyticsSheets = analytics.isPresent() ? null : resolveTemplate(report);
                  var target = createEmpty(report)) {
+                // Spliced before the data sheets are filled, so their pivot caches can be built from the rows
+                if (analytics.isPresent()) {
+                    spliceAnalyticSheets(analytics.get(), target, report.getSheetOrder());
+                }
+
                 stream(report, target);
 
-                transferAnalyticSheets(analyticsSheets, target);
-                sortWorkbookToTemplate(target, report.getSheetOrder());
+                if (analytics.isEmpty()) {
+                    transferAnalyticSheets(analyticsSheets, target);
+                    sortWorkbookToTemplate(target, report.getSheetOrder());
+                }
 
                 target.write(output);
             } catch (IOException e) {
@@ -138,6 +169,17 @@ public interface DataStreamer {
          */
         Workbook resolveTemplate(Report report);
 
+        /**
+         * Resolves the precompiled analytics sheets of the report's template. When present they
+         * are used instead of copying the sheets of {@link #resolveTemplate(Report)}.
+         *
+         * @param report The report requesting the template
+         * @return the compiled analytics sheets, or empty to copy them from the template
+         */
+        default Optional<AnalyticsParts> resolveAnalytics(Report report) {
+            return Optional.empty();
+        }
+
         /**
          * Creates a new empty {@link Workbook} for the specified report. The created workbook
          * will serve as a foundation for report generation
@@ -0,0 +1,113 @@
+package uk.gov.laa.gpfd.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import uk.gov.laa.gpfd.dao.MetadataCatalogue;
+import uk.gov.laa.gpfd.dao.MetadataSnapshot;
+import uk.gov.laa.gpfd.dao.ReportDao;
+import uk.gov.laa.gpfd.mapper.ResourceResponseMapper;
+import uk.gov.laa.gpfd.model.ReportCatalogueEntry;
+import uk.gov.laa.gpfd.model.ReportsGet200ResponseReportListInner;
+import uk.gov.laa.gpfd.utils.SecurityUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+import static uk.gov.laa.gpfd.exception.DatabaseReadException.DatabaseFetchException;
+
+/**
+ * Lists the reports the current user may access, each with its download URL, for both the
+ * {@code /reports} API and the UI's report list.
+ * <p>
+ * Entries come from {@link ReportDao#fetchCatalogue}, which reads only the report and output type
+ * columns. Users with the same roles see the same list, so the list is cached per distinct set of
+ * roles for as long as the {@link MetadataCatalogue} serves the same snapshot, and dropped as soon
+ * as a metadata change replaces it. Without a snapshot there is nothing to say when the metadata
+ * changed, so every request reads the database.
+ * <p>
+ * Lists served from the cache and lists read from the database for it are counted as
+ * {@code gpfd.catalogue.cache} with a {@code result} of {@code hit} or {@code miss}. Requests that
+ * miss at the same time each read the list, and the first one stored is kept.
+ */
+@Slf4j
+@Service
+public class ReportCatalogueService {
+    private final ReportDao reportDao;
+    private final MetadataCatalogue metadataCatalogue;
+    private final SecurityUtils securityUtils;
+    private final ResourceResponseMapper<ReportCatalogueEntry, ReportsGet200ResponseReportListInner> entryMapper;
+    private final Counter hits;
+    private final Counter misses;
+
+    private volatile CachedLists cache = new CachedLists(null, new ConcurrentHashMap<>());
+
+    public ReportCatalogueService(ReportDao reportDao,
+                                  MetadataCatalogue metadataCatalogue,
+                                  SecurityUtils securityUtils,
+                                  ResourceResponseMapper<ReportCatalogueEntry, ReportsGet200ResponseReportListInner> entryMapper,
+                                  MeterRegistry meterRegistry) {
+        this.reportDao = requireNonNull(reportDao, "ReportDao cannot be null");
+        this.metadataCatalogue = requireNonNull(metadataCatalogue, "MetadataCatalogue cannot be null");
+        this.securityUtils = requireNonNull(securityUtils, "SecurityUtils cannot be null");
+        this.entryMapper = requireNonNull(entryMapper, "Entry mapper cannot be null");
+        requireNonNull(meterRegistry, "MeterRegistry cannot be null");
+        this.hits = meterRegistry.counter("gpfd.catalogue.cache", "result", "hit");
+        this.misses = meterRegistry.counter("gpfd.catalogue.cache", "result", "miss");
+    }
+
+    /**
+     * Fetches the list entries of the reports the current user may access.
+     *
+     * @return the entries, ordered by report name
+     * @throws DatabaseFetchException if there is an error fetching data from the database
+     */
+    public List<ReportsGet200ResponseReportListInner> fetchReportListEntries() {
+        var roles = securityUtils.extractRoles();
+        var snapshot = metadataCatalogue.current();
+        if (snapshot.isEmpty()) {
+            return load(roles);
+        }
+
+        var lists = listsFor(snapshot.get());
+        var key = Set.copyOf(roles);
+        var cached = lists.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        // Read outside the map's lock, so a slow query never blocks lists for other roles
+        var loaded = load(roles);
+        misses.increment();
+        var raced = lists.putIfAbsent(key, loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    private Map<Set<String>, List<ReportsGet200ResponseReportListInner>> listsFor(MetadataSnapshot snapshot) {
+        var current = cache;
+        if (current.snapshot() != snapshot) {
+            log.debug("Metadata snapshot from {} replaced the cached report lists", snapshot.loadedAt());
+            current = new CachedLists(snapshot, new ConcurrentHashMap<>());
+            cache = current;
+        }
+        return current.lists();
+    }
+
+    private List<ReportsGet200ResponseReportListInner> load(List<String> roles) {
+        return reportDao.fetchCatalogue(roles).stream()
+                .map(entryMapper::map)
+                .toList();
+    }
+
+    /**
+     * The report lists built from one metadata snapshot, by the set of roles they were built for.
+     */
+    private record CachedLists(MetadataSnapshot snapshot,
+                               ConcurrentHashMap<Set<String>, List<ReportsGet200ResponseReportListInner>> lists) {
+    }
+}
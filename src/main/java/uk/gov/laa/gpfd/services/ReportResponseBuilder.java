@@ -1,19 +1,43 @@
 package uk.gov.laa.gpfd.services;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import uk.gov.laa.gpfd.model.FileExtension;
+import uk.gov.laa.gpfd.services.stream.RangeableResponseBody;
+import uk.gov.laa.gpfd.services.stream.ResponseCompression;
 
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.Optional;
 
 import static org.apache.poi.xdgf.util.Util.sanitizeFilename;
 import static uk.gov.laa.gpfd.services.stream.DataStream.APPLICATION_EXCEL;
+import static uk.gov.laa.gpfd.services.stream.DataStream.APPLICATION_ZIP;
 
 @Component
 public class ReportResponseBuilder {
 
+    private final ResponseCompression compression;
+
+    public ReportResponseBuilder() {
+        this(ResponseCompression.disabled());
+    }
+
+    @Autowired
+    public ReportResponseBuilder(ResponseCompression compression) {
+        this.compression = compression;
+    }
+
     public ResponseEntity<StreamingResponseBody> buildResponse(StreamingResponseBody trackedStream,
                                                                String filename, FileExtension fileExtension) {
         return buildResponseInternal(trackedStream, filename, fileExtension, Optional.empty());
@@ -29,16 +53,117 @@ public class ReportResponseBuilder {
     private ResponseEntity<StreamingResponseBody> buildResponseInternal(StreamingResponseBody trackedStream,
                                                                         String filename, FileExtension fileExtension,
                                                                         Optional<Long> contentLength) {
+        // Ranges are served from stored output as is, so they take precedence over compression
+        if (trackedStream instanceof RangeableResponseBody rangeable) {
+            var range = requestedRange(rangeable);
+            if (range.isPresent()) {
+                return buildPartialResponse(rangeable, range.get(), filename, fileExtension);
+            }
+        }
+
         var builder = ResponseEntity.ok()
                 .header("Content-Disposition", createContentDisposition(filename))
                 .contentType(getContentType(fileExtension));
 
+        // The compressed length is unknown until the body has been written, so a negotiated
+        // coding replaces the Content-Length header
+        var coding = compression.negotiate(currentAcceptEncoding(), fileExtension, contentLength.orElse(null));
+        if (coding.isPresent()) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, coding.get().getToken())
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            return builder.body(compression.compress(trackedStream, coding.get(), fileExtension));
+        }
+
         contentLength.ifPresent(builder::contentLength);
+        if (trackedStream instanceof RangeableResponseBody rangeable) {
+            addRangeHeaders(builder, rangeable);
+        }
 
         return builder.body(trackedStream);
 
     }
 
+    private ResponseEntity<StreamingResponseBody> buildPartialResponse(RangeableResponseBody body, HttpRange range,
+                                                                       String filename, FileExtension fileExtension) {
+        var length = body.contentLength();
+        long start;
+        long end;
+        try {
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length);
+        } catch (IllegalArgumentException e) {
+            start = length;
+            end = -1;
+        }
+
+        if (start > end) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */%d".formatted(length))
+                    .build();
+        }
+
+        var builder = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .header("Content-Disposition", createContentDisposition(filename))
+                .contentType(getContentType(fileExtension))
+                .header(HttpHeaders.CONTENT_RANGE, "bytes %d-%d/%d".formatted(start, end, length))
+                .contentLength(end - start + 1);
+        addRangeHeaders(builder, body);
+
+        var offset = start;
+        var count = end - start + 1;
+        return builder.body(output -> body.writeRange(output, offset, count));
+    }
+
+    /**
+     * Finds the single byte range the client asked for. Requests for several ranges, malformed
+     * headers and ranges whose {@code If-Range} validator no longer matches get the full body.
+     */
+    private Optional<HttpRange> requestedRange(RangeableResponseBody body) {
+        var rangeHeader = currentHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !ifRangeMatches(currentHeader(HttpHeaders.IF_RANGE), body)) {
+            return Optional.empty();
+        }
+
+        try {
+            var ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? Optional.of(ranges.getFirst()) : Optional.empty();
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static boolean ifRangeMatches(String ifRange, RangeableResponseBody body) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(body.entityTag());
+        }
+        try {
+            var date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return date.equals(body.lastModified().truncatedTo(ChronoUnit.SECONDS));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static void addRangeHeaders(ResponseEntity.BodyBuilder builder, RangeableResponseBody body) {
+        builder.header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(body.entityTag())
+                .lastModified(body.lastModified());
+    }
+
+    private String currentAcceptEncoding() {
+        return currentHeader(HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    private static String currentHeader(String name) {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            return attributes.getRequest().getHeader(name);
+        }
+        return null;
+    }
+
     private String createContentDisposition(String filename) {
         return "attachment; filename=\"%s\"".formatted(sanitizeFilename(filename));
     }
@@ -46,6 +171,7 @@ public class ReportResponseBuilder {
     private MediaType getContentType(FileExtension fileExtension) {
         return switch (fileExtension) {
             case XLSX -> MediaType.valueOf(APPLICATION_EXCEL);
+            case ZIP -> MediaType.valueOf(APPLICATION_ZIP);
             case CSV, S3STORAGE -> MediaType.APPLICATION_OCTET_STREAM;
         };
     }
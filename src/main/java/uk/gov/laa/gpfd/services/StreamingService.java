@@ -1,13 +1,19 @@
 package uk.gov.laa.gpfd.services;
 
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.dao.ReportDao;
 import uk.gov.laa.gpfd.model.FileExtension;
 import uk.gov.laa.gpfd.exception.ReportOutputTypeNotFoundException;
+import uk.gov.laa.gpfd.model.Report;
 import uk.gov.laa.gpfd.services.stream.DataStream;
+import uk.gov.laa.gpfd.services.stream.ExportCoalescer;
+import uk.gov.laa.gpfd.services.stream.ExportScheduler;
+import uk.gov.laa.gpfd.services.stream.ReportResultCache;
 
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * A service that handles streaming of reports in various file formats.
@@ -41,6 +47,19 @@ public interface StreamingService {
      */
     StreamingResponseBody stream(UUID id, FileExtension format);
 
+    /**
+     * Streams a report the caller has already loaded, so services that need its metadata do not
+     * fetch it again.
+     *
+     * @param report The report to stream
+     * @param format The desired output format for the report
+     * @return The report data as a {@link StreamingResponseBody}
+     * @see #stream(UUID, FileExtension)
+     */
+    default StreamingResponseBody stream(Report report, FileExtension format) {
+        return stream(report.getId(), format);
+    }
+
     record DefaultStreamingService(Map<FileExtension, DataStream> strategies) implements StreamingService {
 
         public DefaultStreamingService {
@@ -52,4 +71,78 @@ public interface StreamingService {
             return strategies.get(format).stream(id);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Serves reports from a {@link ReportResultCache} when the same version has been generated
+     * before, and caches the output of every other request. Identical requests that miss the cache
+     * at the same time share a single generation through the {@link ExportCoalescer}.
+     * <p>
+     * A version is identified by the report's last database refresh timestamp, so reports without
+     * one are always generated by the delegate. The report is only fetched when the caller streams
+     * by id rather than passing the report it has already loaded.
+     */
+    record CachingStreamingService(StreamingService delegate, ReportDao reportDao,
+                                   ReportResultCache cache, ExportCoalescer coalescer) implements StreamingService {
+
+        public CachingStreamingService {
+            Objects.requireNonNull(delegate, "Delegate cannot be null");
+            Objects.requireNonNull(reportDao, "ReportDao cannot be null");
+            Objects.requireNonNull(cache, "Cache cannot be null");
+            Objects.requireNonNull(coalescer, "Coalescer cannot be null");
+        }
+
+        public CachingStreamingService(StreamingService delegate, ReportDao reportDao, ReportResultCache cache) {
+            this(delegate, reportDao, cache, ExportCoalescer.disabled());
+        }
+
+        @Override
+        public StreamingResponseBody stream(UUID id, FileExtension format) {
+            if (!cache.isEnabled() && !coalescer.isEnabled()) {
+                return delegate.stream(id, format);
+            }
+            return reportDao.fetchReportById(id)
+                    .map(report -> stream(report, format))
+                    .orElseGet(() -> delegate.stream(id, format));
+        }
+
+        @Override
+        public StreamingResponseBody stream(Report report, FileExtension format) {
+            var id = report.getId();
+            var refreshed = report.getLastDatabaseRefreshDate();
+            if ((!cache.isEnabled() && !coalescer.isEnabled()) || refreshed == null) {
+                return delegate.stream(id, format);
+            }
+
+            var key = new ReportResultCache.Key(id, format, refreshed.toInstant());
+            return cache.lookup(key)
+                    .<StreamingResponseBody>map(hit -> hit)
+                    .orElseGet(() -> coalescer.join(key, () -> cache.populate(key, delegate.stream(id, format))));
+        }
+    }
+
+    /**
+     * Only starts generating a report once the {@link ExportScheduler} has admitted it, so the
+     * number of exports running at once is bounded per cost class and queued fairly per user. The
+     * export waits for its slot when its body is written, not on the request thread.
+     * <p>
+     * Sits behind the cache and coalescing, so cache hits and requests that join a running
+     * generation are never queued.
+     */
+    record AdmissionControlledStreamingService(StreamingService delegate, ExportScheduler scheduler,
+                                               Supplier<UUID> currentUser) implements StreamingService {
+
+        public AdmissionControlledStreamingService {
+            Objects.requireNonNull(delegate, "Delegate cannot be null");
+            Objects.requireNonNull(scheduler, "Scheduler cannot be null");
+            Objects.requireNonNull(currentUser, "Current user supplier cannot be null");
+        }
+
+        @Override
+        public StreamingResponseBody stream(UUID id, FileExtension format) {
+            if (!scheduler.isEnabled()) {
+                return delegate.stream(id, format);
+            }
+            return scheduler.admit(id, format, currentUser.get(), () -> delegate.stream(id, format));
+        }
+    }
+}
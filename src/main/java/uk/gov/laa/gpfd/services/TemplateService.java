@@ -5,7 +5,11 @@ import uk.gov.laa.gpfd.exception.TemplateResourceException;
 import uk.gov.laa.gpfd.model.Report;
 import uk.gov.laa.gpfd.model.excel.ExcelTemplate;
 import uk.gov.laa.gpfd.services.excel.template.TemplateClient;
+import uk.gov.laa.gpfd.services.excel.workbook.AnalyticsParts;
+import uk.gov.laa.gpfd.services.excel.workbook.ParallelDeflate;
+import uk.gov.laa.gpfd.services.excel.workbook.PivotCacheGenerator;
 import uk.gov.laa.gpfd.services.excel.workbook.ReportWorkbook;
+import uk.gov.laa.gpfd.services.excel.workbook.SheetStorage;
 import uk.gov.laa.gpfd.services.excel.workbook.StyleManager;
 import uk.gov.laa.gpfd.utils.SecurityPolicy;
 import uk.gov.laa.gpfd.utils.WorkbookFactory;
@@ -13,6 +17,9 @@ import uk.gov.laa.gpfd.utils.WorkbookFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
 
 import static uk.gov.laa.gpfd.exception.TemplateResourceException.ExcelTemplateCreationException;
 
@@ -42,7 +49,25 @@ public sealed interface TemplateService permits TemplateService.ExcelTemplateSer
      */
     Workbook createEmpty(Report report);
 
-    record ExcelTemplateService(TemplateClient repository, WorkbookFactory streamingFactory, WorkbookFactory factory, StyleManager styleManager) implements TemplateService {
+    /**
+     * Retrieves the analytics sheets of an Excel template compiled for splicing into generated
+     * workbooks, see {@link AnalyticsParts}.
+     *
+     * @param template the template to retrieve
+     * @return the compiled sheets, or empty if the sheets have to be copied from {@link #findTemplateById(ExcelTemplate)}
+     */
+    Optional<AnalyticsParts> findAnalyticsById(ExcelTemplate template);
+
+    record ExcelTemplateService(TemplateClient repository, WorkbookFactory streamingFactory, WorkbookFactory factory, boolean directRows,
+                                Function<UUID, Optional<AnalyticsParts>> analytics, SheetStorage sheetStorage,
+                                ParallelDeflate deflate, PivotCacheGenerator pivotCaches) implements TemplateService {
+
+        public ExcelTemplateService {
+            Objects.requireNonNull(analytics, "Analytics must not be null");
+            Objects.requireNonNull(sheetStorage, "Sheet storage must not be null");
+            Objects.requireNonNull(deflate, "Parallel deflate must not be null");
+            Objects.requireNonNull(pivotCaches, "Pivot cache generator must not be null");
+        }
 
         /**
          * Retrieves an Excel template as a {@link Workbook} using the provided {@link TemplateClient} and unique identifier.
@@ -63,18 +88,43 @@ public sealed interface TemplateService permits TemplateService.ExcelTemplateSer
             }
         }
 
+        /**
+         * Creates an empty {@link ReportWorkbook} with its own {@link StyleManager}, so concurrent
+         * exports never share styles. Its sheet data is kept in the {@link SheetStorage} until the
+         * workbook is closed, its package is compressed with the {@link ParallelDeflate}, and the
+         * pivot caches of spliced analytics sheets are built by the {@link PivotCacheGenerator}.
+         *
+         * @param report the report for which to create an empty workbook
+         * @return a new empty {@link ReportWorkbook}
+         */
         @Override
         public Workbook createEmpty(Report report) {
-            return new ReportWorkbook(report, styleManager);
+            return new ReportWorkbook.Builder()
+                    .report(report)
+                    .withStyleManager(StyleManager.create())
+                    .withDirectRows(directRows)
+                    .withSheetStorage(sheetStorage)
+                    .withParallelDeflate(deflate)
+                    .withPivotCacheGenerator(pivotCaches)
+                    .build();
+        }
+
+        @Override
+        public Optional<AnalyticsParts> findAnalyticsById(ExcelTemplate template) {
+            return template == null ? Optional.empty() : analytics.apply(template.getId());
         }
 
         public static final class Builder  {
             private TemplateClient repository;
             private WorkbookFactory factory;
-            private StyleManager styleManager;
             private SecurityPolicy<InputStream> security = SecurityPolicy.zipBombProtection(1.0E-04);
             private boolean streamingEnabled = false;
             private int streamingWindowSize = 100;
+            private boolean directRows = false;
+            private Function<UUID, Optional<AnalyticsParts>> analytics = _ -> Optional.empty();
+            private SheetStorage sheetStorage = SheetStorage.unbounded();
+            private ParallelDeflate deflate = ParallelDeflate.disabled();
+            private PivotCacheGenerator pivotCaches = PivotCacheGenerator.disabled();
 
             public Builder repository(TemplateClient repository) {
                 this.repository = repository;
@@ -91,11 +141,6 @@ public sealed interface TemplateService permits TemplateService.ExcelTemplateSer
                 return this;
             }
 
-            public Builder withStyleManager(StyleManager styleManager) {
-                this.styleManager = styleManager;
-                return this;
-            }
-
             public Builder withAdditionalTransformation(SecurityPolicy<InputStream> transformer) {
                 this.security = this.security.compose(transformer);
                 return this;
@@ -107,6 +152,31 @@ public sealed interface TemplateService permits TemplateService.ExcelTemplateSer
                 return this;
             }
 
+            public Builder withDirectRows(boolean directRows) {
+                this.directRows = directRows;
+                return this;
+            }
+
+            public Builder withAnalytics(Function<UUID, Optional<AnalyticsParts>> analytics) {
+                this.analytics = analytics;
+                return this;
+            }
+
+            public Builder withSheetStorage(SheetStorage sheetStorage) {
+                this.sheetStorage = sheetStorage;
+                return this;
+            }
+
+            public Builder withParallelDeflate(ParallelDeflate deflate) {
+                this.deflate = deflate;
+                return this;
+            }
+
+            public Builder withPivotCacheGenerator(PivotCacheGenerator pivotCaches) {
+                this.pivotCaches = pivotCaches;
+                return this;
+            }
+
             public ExcelTemplateService build() {
                 Objects.requireNonNull(repository, "Repository must be provided");
                 Objects.requireNonNull(factory, "Factory must be provided");
@@ -114,7 +184,8 @@ public sealed interface TemplateService permits TemplateService.ExcelTemplateSer
                 var configuredFactory = streamingEnabled ?
                     factory.asStreamed(streamingWindowSize).withTransformation(security) : factory.withTransformation(security);
 
-                return new ExcelTemplateService(repository, configuredFactory, factory.withTransformation(security), styleManager);
+                return new ExcelTemplateService(repository, configuredFactory, factory.withTransformation(security), directRows, analytics,
+                        sheetStorage, deflate, pivotCaches);
             }
         }
     }
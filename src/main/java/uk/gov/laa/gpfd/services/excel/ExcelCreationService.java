@@ -3,15 +3,23 @@ package uk.gov.laa.gpfd.services.excel;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import uk.gov.laa.gpfd.dao.ExportSpool;
 import uk.gov.laa.gpfd.dao.JdbcWorkbookDataStreamer;
+import uk.gov.laa.gpfd.dao.ParallelSheetStreamer;
+import uk.gov.laa.gpfd.dao.ParallelSheetStreamer.SheetQuery;
+import uk.gov.laa.gpfd.model.FileExtension;
 import uk.gov.laa.gpfd.model.Mapping;
 import uk.gov.laa.gpfd.model.Report;
 import uk.gov.laa.gpfd.services.TemplateService;
 import uk.gov.laa.gpfd.services.DataStreamer.WorkbookDataStreamer;
 import uk.gov.laa.gpfd.services.excel.formatting.CellFormatter;
+import uk.gov.laa.gpfd.services.excel.workbook.AnalyticsParts;
 
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * The class is a Spring component responsible for generating Excel workbooks
@@ -23,19 +31,39 @@ import java.util.Objects;
  *     <li>{@link TemplateService} for loading Excel templates.</li>
  *     <li>{@link JdbcWorkbookDataStreamer<Map<String, Object>>} for fetching data from the database based on report queries.</li>
  * </ul>
+ * <p>Rows are written to the workbook's temporary files as they are read, so every connection has
+ * been released before the workbook is sent to the client. The {@link ExportSpool} only records how
+ * long the queries and the whole response take.
+ * <p>Every data sheet and its header are created first, then the {@link ParallelSheetStreamer} runs
+ * the sheet queries, several at once when connections allow. Sheets are put in the template's order
+ * when the workbook is written.
+ * <p>When the template's analytics sheets have been precompiled they are spliced into the workbook
+ * as it is written, otherwise they are copied from the template workbook.
  */
 @Slf4j
 public record ExcelCreationService(
         TemplateService templateLoader,
         JdbcWorkbookDataStreamer jdbcWorkbookDataStreamer,
-        CellFormatter formatter
+        CellFormatter formatter,
+        ExportSpool spool,
+        ParallelSheetStreamer sheetStreamer
 ) implements WorkbookDataStreamer {
 
+    public ExcelCreationService {
+        Objects.requireNonNull(spool, "Export spool must not be null");
+        Objects.requireNonNull(sheetStreamer, "Sheet streamer must not be null");
+    }
+
     @Override
     public Workbook resolveTemplate(Report report) {
         return templateLoader.findTemplateById(report.getTemplateDocument());
     }
 
+    @Override
+    public Optional<AnalyticsParts> resolveAnalytics(Report report) {
+        return templateLoader.findAnalyticsById(report.getTemplateDocument());
+    }
+
     @Override
     public Workbook createEmpty(Report report) {
         return templateLoader.createEmpty(report);
@@ -51,11 +79,21 @@ public record ExcelCreationService(
      */
     @Override
     public void stream(Report report, Workbook workbook) {
-        for (var query : report.extractAllMappings()) {
-            var sheet = workbook.createSheet(query.getExcelSheet().getName());
-            setupSheetHeader(sheet, query);
-            jdbcWorkbookDataStreamer.queryToSheet(sheet, query);
-        }
+        spool.holding(FileExtension.XLSX, () -> {
+            var sheets = new ArrayList<SheetQuery>();
+            for (var query : report.extractAllMappings()) {
+                var sheet = workbook.createSheet(query.getExcelSheet().getName());
+                setupSheetHeader(sheet, query);
+                sheets.add(new SheetQuery(sheet, query));
+            }
+            sheetStreamer.populate(sheets, jdbcWorkbookDataStreamer);
+            log.debug("Workbook for report '{}' has {} cell styles", report.getName(), workbook.getNumCellStyles());
+        });
+    }
+
+    @Override
+    public void stream(Report report, OutputStream output) {
+        spool.measure(FileExtension.XLSX, () -> WorkbookDataStreamer.super.stream(report, output));
     }
 
     private void setupSheetHeader(Sheet sheet, Mapping query) {
@@ -3,7 +3,10 @@ package uk.gov.laa.gpfd.services.excel.editor;
 import org.apache.poi.ss.usermodel.Cell;
 
 import java.math.BigDecimal;
+import java.sql.Date;
 import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -42,12 +45,10 @@ public enum CellValueHandler implements BiConsumer<Cell, Object> {
      * to appropriate numeric cell values. Other strings are stored as-is.
      */
     STRING(String.class) {
-        private static final String NUMBER_PATTERN = "-?\\d+(\\.\\d+)?";
-
         @Override
         public void accept(Cell cell, Object value) {
             String strVal = (String) value;
-            if (strVal.matches(NUMBER_PATTERN)) {
+            if (isPlainNumber(strVal)) {
                 try {
                     cell.setCellValue(strVal.contains(".") ? parseDouble(strVal) : parseLong(strVal));
                 } catch (NumberFormatException e) {
@@ -79,6 +80,16 @@ public enum CellValueHandler implements BiConsumer<Cell, Object> {
         }
     },
 
+    /**
+     * Handler for long values. Stores values as numeric cells without going through {@link Number}.
+     */
+    LONG(Long.class) {
+        @Override
+        public void accept(Cell cell, Object value) {
+            cell.setCellValue((Long) value);
+        }
+    },
+
     /**
      * Handler for double values. Stores values as floating-point numbers.
      */
@@ -115,7 +126,37 @@ public enum CellValueHandler implements BiConsumer<Cell, Object> {
     TIMESTAMP(Timestamp.class) {
         @Override
         public void accept(Cell cell, Object value) {
-            cell.setCellValue((Timestamp) value);
+            cell.setCellValue(((Timestamp) value).toLocalDateTime());
+        }
+    },
+
+    /**
+     * Handler for SQL date values. Stores values as Excel date cells.
+     */
+    DATE(Date.class) {
+        @Override
+        public void accept(Cell cell, Object value) {
+            cell.setCellValue(((Date) value).toLocalDate());
+        }
+    },
+
+    /**
+     * Handler for local date-time values. Stores values as Excel date/time cells.
+     */
+    LOCAL_DATE_TIME(LocalDateTime.class) {
+        @Override
+        public void accept(Cell cell, Object value) {
+            cell.setCellValue((LocalDateTime) value);
+        }
+    },
+
+    /**
+     * Handler for local date values. Stores values as Excel date cells.
+     */
+    LOCAL_DATE(LocalDate.class) {
+        @Override
+        public void accept(Cell cell, Object value) {
+            cell.setCellValue((LocalDate) value);
         }
     },
 
@@ -146,4 +187,46 @@ public enum CellValueHandler implements BiConsumer<Cell, Object> {
     CellValueHandler(Class<?> targetType) {
         this.targetType = targetType;
     }
+
+    /**
+     * Returns the handler registered for the runtime type of {@code value}, {@link #EMPTY} for
+     * {@code null} and {@link #OBJECT} for types without a dedicated handler.
+     *
+     * @param value the value to find a handler for
+     * @return the handler to use, never {@code null}
+     */
+    public static CellValueHandler forValue(Object value) {
+        return value == null ? EMPTY : CellValueHandlerMap.getOrDefault(value.getClass(), OBJECT);
+    }
+
+    /**
+     * Checks whether {@code value} is an optionally negative run of ASCII digits, optionally
+     * followed by a fractional part. Equivalent to matching {@code -?\d+(\.\d+)?} without
+     * compiling a regular expression for every cell.
+     */
+    private static boolean isPlainNumber(String value) {
+        var length = value.length();
+        var i = length > 0 && value.charAt(0) == '-' ? 1 : 0;
+        var integerStart = i;
+        while (i < length && isAsciiDigit(value.charAt(i))) {
+            i++;
+        }
+        if (i == integerStart) {
+            return false;
+        }
+        if (i == length) {
+            return true;
+        }
+        if (value.charAt(i++) != '.' || i == length) {
+            return false;
+        }
+        while (i < length && isAsciiDigit(value.charAt(i))) {
+            i++;
+        }
+        return i == length;
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
 }
\ No newline at end of file
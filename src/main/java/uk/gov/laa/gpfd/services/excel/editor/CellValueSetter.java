@@ -4,7 +4,7 @@ import org.apache.poi.ss.usermodel.Cell;
 
 import java.util.function.BiConsumer;
 
-import static uk.gov.laa.gpfd.services.excel.editor.CellValueHandler.CellValueHandlerMap;
+import static uk.gov.laa.gpfd.services.excel.editor.CellValueHandler.forValue;
 
 /**
  * The {@code CellValueSetter} interface provides a mechanism to set values in a {@link Cell} object
@@ -19,12 +19,13 @@ public interface CellValueSetter {
      * <p>This method retrieves the appropriate handler from the {@link CellValueHandler} map based on the
      * runtime type of the value and applies it to the cell. If no specific handler is found for the
      * value's type, the default handler for {@link Object} is used, which converts the value to a string.
+     * A {@code null} value is written as an empty string.
      *
      * @param cell  the cell in which the value is to be set
      * @param value the value to be set in the cell
      */
     default void setCellValue(Cell cell, Object value) {
-        CellValueHandlerMap.get(value.getClass()).accept(cell, value);
+        forValue(value).accept(cell, value);
     }
 
 }
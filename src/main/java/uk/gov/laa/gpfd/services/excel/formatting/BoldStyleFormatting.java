@@ -1,17 +1,15 @@
 package uk.gov.laa.gpfd.services.excel.formatting;
 
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import uk.gov.laa.gpfd.model.excel.ExcelMappingProjection;
+import uk.gov.laa.gpfd.services.excel.workbook.StyleManager;
 
 /**
  * A {@link Formatting} implementation that applies bold styling to Excel cells.
  * <p>
- * This formatter creates and applies a cell style with bold font formatting to the target cell.
- * The style is created on-demand for each cell to avoid potential issues with shared styles.
+ * Every bold cell of a workbook shares one cell style and font, created by the workbook's
+ * {@link StyleManager} the first time it is needed.
  * </p>
  */
 public interface BoldStyleFormatting extends Formatting {
@@ -19,8 +17,8 @@ public interface BoldStyleFormatting extends Formatting {
     /**
      * Applies bold formatting to the specified cell.
      * <p>
-     * Creates a new cell style with bold font and applies it to the target cell.
-     * The original cell content and other formatting attributes are preserved.
+     * Applies the workbook's shared bold style to the target cell.
+     * The original cell content is preserved.
      * </p>
      *
      * @param sheet the parent sheet of the cell (used to access the workbook)
@@ -30,18 +28,7 @@ public interface BoldStyleFormatting extends Formatting {
      */
     @Override
     default void apply(Sheet sheet, Cell cell, ExcelMappingProjection fieldAttribute) {
-        cell.setCellStyle(createBoldStyle(sheet.getWorkbook()));
-    }
-
-    private CellStyle createBoldStyle(Workbook workbook) {
-        var style = workbook.createCellStyle();
-        style.setFont(createBoldFont(workbook));
-        return style;
-    }
-
-    private Font createBoldFont(Workbook workbook) {
-        var font = workbook.createFont();
-        font.setBold(true);
-        return font;
+        var workbook = sheet.getWorkbook();
+        cell.setCellStyle(StyleManager.of(workbook).getBoldStyle(workbook));
     }
 }
@@ -1,7 +1,6 @@
 package uk.gov.laa.gpfd.services.excel.formatting;
 
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Sheet;
 import uk.gov.laa.gpfd.model.excel.ExcelMappingProjection;
 import uk.gov.laa.gpfd.services.excel.workbook.StyleManager;
@@ -15,16 +14,10 @@ import static uk.gov.laa.gpfd.utils.ConsumerUtil.applyIfPresent;
  */
 public abstract class CellFormatting implements Formatting {
 
-    private final StyleManager styleManager;
-
-    protected CellFormatting(StyleManager styleManager) {
-        this.styleManager = styleManager;
-    }
-
     /**
      * Applies cell formatting to the specified {@link Cell} based on the format string provided by the
-     * {@link ExcelMappingProjection}. If a format string is present, a new {@link CellStyle} is created and applied
-     * to the cell.
+     * {@link ExcelMappingProjection}. If a format string is present, the workbook's style for that format
+     * is recorded in its {@link StyleManager} as the style of the cell's column.
      *
      * @param sheet         the sheet containing the cell
      * @param cell          the cell to which formatting will be applied
@@ -34,9 +27,8 @@ public abstract class CellFormatting implements Formatting {
     public void apply(Sheet sheet, Cell cell, ExcelMappingProjection fieldAttribute) {
         var workbook = sheet.getWorkbook();
         applyIfPresent(fieldAttribute.getFormat(), format -> {
-            var cellStyle = workbook.createCellStyle();
-            cellStyle.setDataFormat(workbook.createDataFormat().getFormat(format));
-            styleManager.setColumnStyle(cell.getColumnIndex(), sheet.getSheetName(), cellStyle);
+            var styleManager = StyleManager.of(workbook);
+            styleManager.setColumnStyle(cell.getColumnIndex(), sheet.getSheetName(), styleManager.getDataFormatStyle(workbook, format));
         });
     }
 
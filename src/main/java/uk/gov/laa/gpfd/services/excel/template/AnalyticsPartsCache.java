@@ -0,0 +1,118 @@
+package uk.gov.laa.gpfd.services.excel.template;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.laa.gpfd.services.excel.workbook.AnalyticsParts;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps the analytics sheets of each Excel template compiled into {@link AnalyticsParts}, so
+ * downloads splice them into the workbook instead of copying them through POI.
+ * <p>
+ * Templates are read through the {@link TemplateCache} and compiled again whenever it returns a
+ * different version. A template that cannot be compiled, for example because it has a chart sheet,
+ * is remembered as such and its reports keep copying the sheets through POI.
+ * <p>
+ * Templates are inflated under the same {@code excel.security.compression-ratio} as POI applies
+ * when it opens them, and may not inflate beyond {@code gpfd.excel.precompiled-analytics.max-size}
+ * bytes in total.
+ * <p>
+ * Compile times are recorded as the {@code gpfd.excel.analytics.compile} metric.
+ */
+@Slf4j
+@Component
+public class AnalyticsPartsCache {
+
+    /**
+     * The compiled parts of one version of a template.
+     *
+     * @param source the template file the parts were compiled from
+     * @param parts  the compiled parts, or null if the template cannot be spliced
+     */
+    private record Compiled(byte[] source, AnalyticsParts parts) {
+        boolean compiledFrom(byte[] content) {
+            return source == content || Arrays.equals(source, content);
+        }
+    }
+
+    private final TemplateCache templateCache;
+    @Getter
+    private final boolean enabled;
+    private final double minInflateRatio;
+    private final long maxSize;
+    private final Timer compileTimer;
+    private final Map<UUID, Compiled> compiled = new ConcurrentHashMap<>();
+
+    public AnalyticsPartsCache(TemplateCache templateCache,
+                               @Value("${gpfd.excel.precompiled-analytics.enabled:false}") boolean enabled,
+                               @Value("${excel.security.compression-ratio:0.001}") double minInflateRatio,
+                               @Value("${gpfd.excel.precompiled-analytics.max-size:104857600}") long maxSize,
+                               MeterRegistry meterRegistry) {
+        if (minInflateRatio <= 0 || maxSize <= 0) {
+            throw new IllegalArgumentException("Template inflation limits must be positive");
+        }
+        this.templateCache = requireNonNull(templateCache, "TemplateCache cannot be null");
+        this.enabled = enabled;
+        this.minInflateRatio = minInflateRatio;
+        this.maxSize = maxSize;
+        this.compileTimer = Timer.builder("gpfd.excel.analytics.compile")
+                .description("Time taken to compile the analytics sheets of a template")
+                .register(requireNonNull(meterRegistry, "MeterRegistry cannot be null"));
+    }
+
+    /**
+     * Creates an instance that never compiles templates.
+     *
+     * @param templateCache the template cache
+     * @return a disabled cache
+     */
+    public static AnalyticsPartsCache disabled(TemplateCache templateCache) {
+        return new AnalyticsPartsCache(templateCache, false, 0.001, 104_857_600, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Gets the compiled analytics sheets of a template.
+     *
+     * @param id the unique identifier of the template
+     * @return the compiled sheets, or empty if disabled, the report has no template file or the
+     * template cannot be spliced
+     */
+    public Optional<AnalyticsParts> findById(UUID id) {
+        if (!enabled || id == null) {
+            return Optional.empty();
+        }
+        var content = templateCache.findContentById(id);
+        if (content == null) {
+            compiled.remove(id);
+            return Optional.empty();
+        }
+
+        var current = compiled.get(id);
+        if (current == null || !current.compiledFrom(content)) {
+            current = new Compiled(content, compile(id, content));
+            compiled.put(id, current);
+        }
+        return Optional.ofNullable(current.parts());
+    }
+
+    private AnalyticsParts compile(UUID id, byte[] content) {
+        try {
+            return compileTimer.record(() -> AnalyticsParts.compile(content, minInflateRatio, maxSize));
+        } catch (IllegalArgumentException e) {
+            log.warn("Template {} cannot be precompiled, its analytics sheets will be copied", id, e);
+            return null;
+        }
+    }
+}
@@ -32,4 +32,22 @@ public record S3TemplateClient(S3ClientWrapper s3Client, TemplateFileNameResolve
         return fileAsStream;
     }
 
+    /**
+     * Fetches the template with a conditional GET, so a copy whose entity tag still matches the
+     * object in S3 is revalidated without downloading it again.
+     */
+    @Override
+    public Fetch fetch(UUID id, String eTag) {
+
+        var filename = templateFileNameResolver.getFileNameFromId(id);
+
+        if (filename == null) {
+            return new Fetch.Absent();
+        }
+
+        return s3Client.getTemplateIfChanged(filename, eTag)
+                .<Fetch>map(file -> new Fetch.Modified(file.asByteArrayUnsafe(), file.response().eTag()))
+                .orElseGet(Fetch.NotModified::new);
+    }
+
 }
@@ -0,0 +1,255 @@
+package uk.gov.laa.gpfd.services.excel.template;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import uk.gov.laa.gpfd.exception.TemplateResourceException.ExcelTemplateCreationException;
+import uk.gov.laa.gpfd.services.excel.template.TemplateClient.Fetch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps Excel template files on the heap so that downloads do not fetch them from the template
+ * store every time.
+ * <p>
+ * Entries hold the template bytes together with the entity tag of the version they came from.
+ * After {@code gpfd.template-cache.revalidate-after} an entry is revalidated with a conditional
+ * fetch, which for S3 is a {@code GET} with {@code If-None-Match} that returns no body while the
+ * template is unchanged. Templates read from the classpath have no entity tag and are never
+ * revalidated. If revalidation fails the cached version keeps being served.
+ * <p>
+ * Entries are evicted least recently used first once they exceed {@code gpfd.template-cache.max-bytes},
+ * and templates larger than that are never cached. With {@code gpfd.template-cache.preload} every
+ * known template is loaded when the application is ready, so the first downloads do not pay for it.
+ * <p>
+ * Each download still parses its own workbook from the cached bytes, because POI workbooks are
+ * mutable and the report data is written into them.
+ * <p>
+ * Hits and misses, revalidation outcomes, load times and the bytes held are recorded as
+ * {@code gpfd.template.cache.*} metrics.
+ */
+@Slf4j
+@Component
+public class TemplateCache {
+
+    /**
+     * A cached version of a template.
+     *
+     * @param content     the template file, never modified once cached
+     * @param eTag        the entity tag of this version, or null if it cannot be revalidated
+     * @param validatedAt when the version was last fetched or revalidated, in {@link System#nanoTime()} terms
+     */
+    private record Entry(byte[] content, String eTag, long validatedAt) {
+    }
+
+    private final TemplateClient client;
+    private final TemplateFileNameResolver resolver;
+    @Getter
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long revalidateAfterNanos;
+    private final boolean preload;
+    private final MeterRegistry meterRegistry;
+    private final Timer loadTimer;
+
+    private final Map<UUID, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    public TemplateCache(TemplateClient client,
+                         TemplateFileNameResolver resolver,
+                         @Value("${gpfd.template-cache.enabled:false}") boolean enabled,
+                         @Value("${gpfd.template-cache.max-bytes:67108864}") long maxBytes,
+                         @Value("${gpfd.template-cache.revalidate-after:5m}") Duration revalidateAfter,
+                         @Value("${gpfd.template-cache.preload:false}") boolean preload,
+                         MeterRegistry meterRegistry) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Template cache size cannot be negative");
+        }
+        if (revalidateAfter.isNegative()) {
+            throw new IllegalArgumentException("Template revalidation interval cannot be negative");
+        }
+        this.client = requireNonNull(client, "TemplateClient cannot be null");
+        this.resolver = resolver;
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.revalidateAfterNanos = revalidateAfter.toNanos();
+        this.preload = preload;
+        this.meterRegistry = requireNonNull(meterRegistry, "MeterRegistry cannot be null");
+        this.loadTimer = Timer.builder("gpfd.template.cache.load")
+                .description("Time taken to fetch a template from the template store")
+                .register(meterRegistry);
+
+        Gauge.builder("gpfd.template.cache.size", this, TemplateCache::bytes)
+                .description("Bytes of template files held by the template cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("gpfd.template.cache.entries", this, TemplateCache::size)
+                .description("Templates held by the template cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Creates an instance that reads every template from the client.
+     *
+     * @param client the template store
+     * @return a disabled cache
+     */
+    public static TemplateCache disabled(TemplateClient client) {
+        return new TemplateCache(client, null, false, 0, Duration.ZERO, false, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Gets a template, from the cache when it holds a current version.
+     *
+     * @param id the unique identifier of the template
+     * @return the template, or null if the report has no template file
+     */
+    public InputStream findTemplateById(UUID id) {
+        if (!enabled) {
+            return client.findTemplateById(id);
+        }
+        var content = findContentById(id);
+        return content == null ? null : new ByteArrayInputStream(content);
+    }
+
+    /**
+     * Gets the content of a template, from the cache when it holds a current version. While a
+     * version is cached the same array is returned, so callers can tell versions apart by identity.
+     *
+     * @param id the unique identifier of the template
+     * @return the template file, which must not be modified, or null if the report has no template file
+     */
+    public byte[] findContentById(UUID id) {
+        if (!enabled) {
+            try (var input = client.findTemplateById(id)) {
+                return input == null ? null : input.readAllBytes();
+            } catch (IOException e) {
+                throw new ExcelTemplateCreationException("Failed to read template for ID: " + id, e);
+            }
+        }
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(id);
+        }
+        meterRegistry.counter("gpfd.template.cache.requests", "result", entry != null ? "hit" : "miss").increment();
+
+        if (entry == null) {
+            entry = load(id, null);
+        } else if (entry.eTag() != null && System.nanoTime() - entry.validatedAt() >= revalidateAfterNanos) {
+            entry = revalidate(id, entry);
+        }
+        return entry == null ? null : entry.content();
+    }
+
+    /**
+     * Loads every known template when the application has started, if preloading is enabled.
+     * Templates that cannot be loaded are logged and fetched again on first use.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        if (!enabled || !preload || resolver == null) {
+            return;
+        }
+        for (var id : resolver.getTemplateIds()) {
+            try {
+                load(id, null);
+            } catch (RuntimeException e) {
+                log.warn("Failed to preload template {}", id, e);
+            }
+        }
+        log.info("Preloaded {} templates ({} bytes)", size(), bytes());
+    }
+
+    private Entry revalidate(UUID id, Entry entry) {
+        try {
+            var revalidated = load(id, entry);
+            var unchanged = revalidated != null && revalidated.content() == entry.content();
+            meterRegistry.counter("gpfd.template.cache.revalidations", "result", unchanged ? "unchanged" : "changed").increment();
+            return revalidated;
+        } catch (RuntimeException e) {
+            meterRegistry.counter("gpfd.template.cache.revalidations", "result", "failed").increment();
+            log.warn("Failed to revalidate template {}, serving the cached version", id, e);
+            return entry;
+        }
+    }
+
+    /**
+     * Fetches a template, conditionally when there is a cached version, and stores the result.
+     *
+     * @return the current entry, or null if the report has no template file
+     */
+    private Entry load(UUID id, Entry cached) {
+        var start = System.nanoTime();
+        Fetch fetch;
+        try {
+            fetch = client.fetch(id, cached == null ? null : cached.eTag());
+        } catch (IOException e) {
+            throw new ExcelTemplateCreationException("Failed to read template for ID: " + id, e);
+        } finally {
+            loadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        var now = System.nanoTime();
+        return switch (fetch) {
+            case Fetch.Modified(var content, var eTag) -> put(id, new Entry(content, eTag, now));
+            case Fetch.NotModified() when cached != null -> put(id, new Entry(cached.content(), cached.eTag(), now));
+            case Fetch.NotModified() -> throw new IllegalStateException("Template store reported no change for an unconditional fetch of " + id);
+            case Fetch.Absent() -> {
+                remove(id);
+                yield null;
+            }
+        };
+    }
+
+    private synchronized Entry put(UUID id, Entry entry) {
+        if (entry.content().length > maxBytes) {
+            log.debug("Not caching template {} of {} bytes, it is larger than the cache", id, entry.content().length);
+            remove(id);
+            return entry;
+        }
+
+        var previous = entries.put(id, entry);
+        bytes += entry.content().length - (previous == null ? 0 : previous.content().length);
+
+        var iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            var eldest = iterator.next();
+            iterator.remove();
+            bytes -= eldest.getValue().content().length;
+            meterRegistry.counter("gpfd.template.cache.evictions").increment();
+        }
+        return entry;
+    }
+
+    private synchronized void remove(UUID id) {
+        var previous = entries.remove(id);
+        if (previous != null) {
+            bytes -= previous.content().length;
+        }
+    }
+
+    private synchronized long bytes() {
+        return bytes;
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+}
@@ -2,9 +2,12 @@ package uk.gov.laa.gpfd.services.excel.template;
 
 import org.apache.poi.ss.usermodel.Workbook;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.UUID;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * The interface is a functional interface designed to retrieve an Excel template
  * as an {@link InputStream} based on a unique identifier. It provides a single method, {@link #findTemplateById(UUID)},
@@ -13,6 +16,36 @@ import java.util.UUID;
 @FunctionalInterface
 public interface TemplateClient {
 
+    /**
+     * The outcome of a conditional template fetch.
+     */
+    sealed interface Fetch permits Fetch.Modified, Fetch.NotModified, Fetch.Absent {
+
+        /**
+         * The template differs from the caller's copy.
+         *
+         * @param content the whole template file
+         * @param eTag    the entity tag of this version, or null if the store cannot revalidate it
+         */
+        record Modified(byte[] content, String eTag) implements Fetch {
+            public Modified {
+                requireNonNull(content, "Content cannot be null");
+            }
+        }
+
+        /**
+         * The caller's copy is still the current version.
+         */
+        record NotModified() implements Fetch {
+        }
+
+        /**
+         * The report has no template file.
+         */
+        record Absent() implements Fetch {
+        }
+    }
+
     /**
      * Retrieves an Excel template as an {@link InputStream} based on the provided unique identifier.
      * The method is responsible for locating the template and returning it in a format suitable for
@@ -22,4 +55,19 @@ public interface TemplateClient {
      * @return an {@link InputStream} containing the template data
      */
     InputStream findTemplateById(UUID id);
-}
\ No newline at end of file
+
+    /**
+     * Reads a template unless the caller's copy, identified by its entity tag, is still current.
+     * Stores that cannot revalidate always return the whole template without an entity tag.
+     *
+     * @param id   the unique identifier of the template
+     * @param eTag the entity tag of the caller's copy, or null to always fetch
+     * @return the template, {@link Fetch.NotModified} or {@link Fetch.Absent}
+     * @throws IOException if the template cannot be read
+     */
+    default Fetch fetch(UUID id, String eTag) throws IOException {
+        try (var input = findTemplateById(id)) {
+            return input == null ? new Fetch.Absent() : new Fetch.Modified(input.readAllBytes(), null);
+        }
+    }
+}
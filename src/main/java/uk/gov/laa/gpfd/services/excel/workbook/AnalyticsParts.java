@@ -0,0 +1,1340 @@
+package uk.gov.laa.gpfd.services.excel.workbook;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.ZipFile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Map.Entry.comparingByValue;
+
+/**
+ * The analytics sheets of an Excel template, compiled once into package parts that are spliced
+ * into each generated workbook as it is written.
+ * <p>
+ * Every sheet of a template is an analytics sheet, usually holding pivot tables over the data
+ * sheets of the report. Instead of copying them into every workbook cell by cell and style by
+ * style, {@link #compile(byte[], double, long)} takes the sheet parts, the parts they relate to (pivot tables,
+ * pivot cache definitions, drawings) and the template's styles and prepares them once:
+ * <ul>
+ *   <li>parts are renamed with a {@code template-} prefix so they never clash with generated parts</li>
+ *   <li>shared strings become inline strings, since the generated workbook has its own string table</li>
+ *   <li>pivot cache records are emptied and caches are refreshed when the workbook is opened</li>
+ *   <li>references into the styles table, number formats and pivot cache ids are marked so they
+ *   can be shifted past the styles and caches of the generated workbook</li>
+ * </ul>
+ * {@link #splice(PartSource, Map)} then only has to append the styles, register the sheets and
+ * caches in the workbook, order the sheets and render the prepared parts with the right offsets.
+ * <p>
+ * Pivot caches over a range of a data sheet can instead be built from the report's rows by the
+ * {@link PivotCacheGenerator}, see {@link #pivotSources()}. Their definitions, records and pivot
+ * tables are then rendered with the generated shared items when the workbook is written.
+ * <p>
+ * Instances are immutable and can be shared by concurrent downloads.
+ */
+public final class AnalyticsParts {
+
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String CONTENT_TYPES_NS = "http://schemas.openxmlformats.org/package/2006/content-types";
+    private static final String OFFICE_DOCUMENT_REL = REL_NS + "/officeDocument";
+    private static final String WORKSHEET_REL = REL_NS + "/worksheet";
+    private static final String PIVOT_CACHE_REL = REL_NS + "/pivotCacheDefinition";
+    private static final String PIVOT_RECORDS_REL = REL_NS + "/pivotCacheRecords";
+    private static final String SHARED_STRINGS_REL = REL_NS + "/sharedStrings";
+    private static final String STYLES_REL = REL_NS + "/styles";
+    private static final String WORKSHEET_TYPE = ".worksheet+xml";
+    private static final String PIVOT_TABLE_TYPE = ".pivotTable+xml";
+    private static final String PIVOT_CACHE_TYPE = ".pivotCacheDefinition+xml";
+    private static final String PIVOT_RECORDS_TYPE = ".pivotCacheRecords+xml";
+    private static final String CONTENT_TYPES_PART = "[Content_Types].xml";
+    private static final String ROOT_RELS_PART = "_rels/.rels";
+    private static final String PART_PREFIX = "template-";
+    private static final int FIRST_CUSTOM_NUM_FMT = 164;
+    private static final List<String> STYLE_SHEET_ORDER = List.of(
+            "numFmts", "fonts", "fills", "borders", "cellStyleXfs", "cellXfs", "cellStyles", "dxfs",
+            "tableStyles", "colors", "extLst");
+    private static final List<String> AFTER_PIVOT_CACHES = List.of(
+            "smartTagPr", "smartTagTypes", "webPublishing", "fileRecoveryPr", "webPublishObjects", "extLst");
+    private static final char MARK_START = '\uE000';
+    private static final char MARK_END = '\uE001';
+    private static final int GRACE_PART_SIZE = 100 * 1024;
+
+    // Neither factory is thread-safe, and compiles and splices run for concurrent downloads
+    private static final ThreadLocal<DocumentBuilderFactory> DOCUMENTS =
+            ThreadLocal.withInitial(AnalyticsParts::documentBuilderFactory);
+    private static final ThreadLocal<TransformerFactory> TRANSFORMERS =
+            ThreadLocal.withInitial(TransformerFactory::newInstance);
+
+    /**
+     * Reads a part of the generated workbook package.
+     */
+    @FunctionalInterface
+    public interface PartSource {
+
+        /**
+         * @param name the part name, without a leading slash
+         * @return the part, or null if the package has no such part
+         * @throws IOException if the part cannot be read
+         */
+        byte[] read(String name) throws IOException;
+    }
+
+    /**
+     * The package parts that change when the analytics sheets are spliced into a workbook.
+     *
+     * @param replaced parts of the generated workbook with new content, by part name
+     * @param added    parts to add to the package, by part name in the order they should be written
+     * @param streamed pivot cache parts built from the report's rows, which take the place of the
+     *                 added part with the same name
+     */
+    public record Splice(Map<String, byte[]> replaced, Map<String, byte[]> added,
+                         Map<String, ParallelDeflate.Content> streamed) {
+        public Splice(Map<String, byte[]> replaced, Map<String, byte[]> added) {
+            this(replaced, added, Map.of());
+        }
+    }
+
+    /**
+     * The range of a data sheet a pivot cache summarises, with what the template says about its
+     * fields.
+     *
+     * @param cachePart   the cache definition part
+     * @param sheet       the name of the data sheet
+     * @param firstRow    the 0-based header row of the range
+     * @param lastRow     the 0-based last row of the range
+     * @param firstColumn the 0-based column of the first field
+     * @param fields      the cache fields, one for each column of the range
+     */
+    record PivotSource(String cachePart, String sheet, int firstRow, int lastRow, int firstColumn, List<CacheField> fields) {
+    }
+
+    /**
+     * A field of a pivot cache.
+     *
+     * @param name   the field name
+     * @param shared whether records refer to shared items instead of holding their values
+     * @param date   whether numbers are dates
+     * @param items  the shared items of the template, in order
+     */
+    record CacheField(String name, boolean shared, boolean date, List<CacheItem> items) {
+    }
+
+    /**
+     * A shared item of the template.
+     *
+     * @param type  the element name, such as {@code s} for text or {@code m} for a blank
+     * @param value the value, empty for a blank
+     */
+    record CacheItem(String type, String value) {
+    }
+
+    /**
+     * A reference to something numbered in the target workbook.
+     */
+    private enum Ref {
+        XF, DXF, FONT, FILL, BORDER, NUM_FMT, CACHE_ID
+    }
+
+    @FunctionalInterface
+    private interface Remap {
+        int apply(Ref ref, int value);
+    }
+
+    /**
+     * An analytics sheet, in template order.
+     */
+    private record Sheet(String name, String part) {
+    }
+
+    /**
+     * A pivot cache that is registered in the workbook under {@code cacheId}.
+     *
+     * @param recordsPart the cache records part, or null if the cache has none
+     * @param source      the data sheet range of the cache, or null if it cannot be built from rows
+     */
+    private record PivotCache(int cacheId, String part, String recordsPart, PivotSource source) {
+    }
+
+    /**
+     * A prepared part, either markup with references to shift or bytes to copy.
+     */
+    private record Part(String name, String contentType, boolean override, Markup markup, byte[] bytes) {
+        byte[] render(Remap remap) {
+            return markup == null ? bytes : markup.render(remap).getBytes(UTF_8);
+        }
+    }
+
+    private final List<Sheet> sheets;
+    private final List<PivotCache> pivotCaches;
+    private final Map<String, String> pivotTableCaches;
+    private final List<Part> parts;
+    private final Map<Integer, String> numberFormats;
+    private final Map<String, Markup> styles;
+    private final Map<String, Integer> styleCounts;
+
+    private AnalyticsParts(List<Sheet> sheets, List<PivotCache> pivotCaches, Map<String, String> pivotTableCaches,
+                           List<Part> parts, Map<Integer, String> numberFormats, Map<String, Markup> styles,
+                           Map<String, Integer> styleCounts) {
+        this.sheets = List.copyOf(sheets);
+        this.pivotCaches = List.copyOf(pivotCaches);
+        this.pivotTableCaches = Map.copyOf(pivotTableCaches);
+        this.parts = List.copyOf(parts);
+        this.numberFormats = Collections.unmodifiableMap(new LinkedHashMap<>(numberFormats));
+        this.styles = Map.copyOf(styles);
+        this.styleCounts = Map.copyOf(styleCounts);
+    }
+
+    /**
+     * Gets the names of the analytics sheets, in template order.
+     *
+     * @return the sheet names
+     */
+    public List<String> sheetNames() {
+        return sheets.stream().map(Sheet::name).toList();
+    }
+
+    /**
+     * Gets the pivot caches that can be built from the rows of a data sheet. Caches over named
+     * ranges, with grouped or calculated fields, or that do not save their records are left out.
+     *
+     * @return the source range of each cache that can be built
+     */
+    List<PivotSource> pivotSources() {
+        return pivotCaches.stream().map(PivotCache::source).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Compiles the sheets of an Excel template.
+     * <p>
+     * The package is inflated under the same zip bomb protection POI applies when it opens a
+     * template: a part larger than {@value #GRACE_PART_SIZE} bytes must not inflate beyond
+     * {@code minInflateRatio}, and the parts together must not inflate beyond {@code maxSize} bytes.
+     *
+     * @param template        the template file
+     * @param minInflateRatio the smallest ratio of compressed to inflated size allowed for a part
+     * @param maxSize         the most bytes the parts of the template may inflate to
+     * @return the compiled parts
+     * @throws IllegalArgumentException if the template is not an xlsx package, inflates beyond the
+     *                                  limits or uses a feature that cannot be spliced, such as chart
+     *                                  sheets or external pivot sources
+     */
+    public static AnalyticsParts compile(byte[] template, double minInflateRatio, long maxSize) {
+        try {
+            return new Compiler(unzip(template, minInflateRatio, maxSize)).compile();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Template is not a readable xlsx package", e);
+        }
+    }
+
+    /**
+     * Works out how the package parts of a generated workbook change when the analytics sheets are
+     * added. Sheets are put in {@code sheetOrder}, moving each listed sheet to its position in turn.
+     *
+     * @param target     reads the parts of the generated workbook
+     * @param sheetOrder the position of each sheet by name
+     * @return the replaced and added parts
+     * @throws IOException if a part of the generated workbook cannot be read or parsed
+     */
+    public Splice splice(PartSource target, Map<String, Integer> sheetOrder) throws IOException {
+        return splice(target, sheetOrder, Map.of());
+    }
+
+    /**
+     * Works out how the package parts of a generated workbook change when the analytics sheets are
+     * added, with the given pivot caches built from the report's rows.
+     *
+     * @param target      reads the parts of the generated workbook
+     * @param sheetOrder  the position of each sheet by name
+     * @param caches     finished caches by {@link PivotSource#cachePart()}
+     * @return the replaced, added and streamed parts
+     * @throws IOException if a part of the generated workbook cannot be read or parsed, or a cache
+     *                     cannot be written
+     */
+    Splice splice(PartSource target, Map<String, Integer> sheetOrder,
+                  Map<String, PivotCacheGenerator.Cache> caches) throws IOException {
+        var rootRels = parse(require(target, ROOT_RELS_PART));
+        var workbookPart = relationshipTarget(rootRels, "", OFFICE_DOCUMENT_REL);
+        if (workbookPart == null) {
+            throw new IOException("Generated package has no workbook part");
+        }
+        var workbookRelsPart = relsPart(workbookPart);
+        var workbook = parse(require(target, workbookPart));
+        var workbookRels = parse(require(target, workbookRelsPart));
+        var contentTypes = parse(require(target, CONTENT_TYPES_PART));
+        var stylesPart = relationshipTarget(workbookRels, directory(workbookPart), STYLES_REL);
+        var styleSheet = stylesPart == null ? null : parse(require(target, stylesPart));
+
+        var replaced = new LinkedHashMap<String, byte[]>();
+        var remap = styleSheet == null ? null : mergeStyles(styleSheet);
+        if (remap == null) {
+            throw new IOException("Generated package has no styles part");
+        }
+        var cacheIds = registerSheets(workbook, workbookRels, directory(workbookPart), sheetOrder);
+        Remap offsets = (ref, value) -> ref == Ref.CACHE_ID ? cacheIds.getOrDefault(value, value) : remap.apply(ref, value);
+
+        var built = new HashMap<String, PivotCacheGenerator.Cache>();
+        for (var cache : pivotCaches) {
+            var generated = cache.source() == null ? null : caches.get(cache.part());
+            if (generated != null) {
+                built.put(cache.part(), generated);
+            }
+        }
+
+        var added = new LinkedHashMap<String, byte[]>();
+        var streamed = new LinkedHashMap<String, ParallelDeflate.Content>();
+        for (var part : parts) {
+            var rendered = part.render(offsets);
+            var cache = built.get(part.name());
+            if (cache != null) {
+                streamed.put(part.name(), populateCache(rendered, cache));
+            }
+            var table = built.get(pivotTableCaches.get(part.name()));
+            if (table != null) {
+                rendered = listItems(rendered, table);
+            }
+            added.put(part.name(), rendered);
+        }
+        for (var cache : pivotCaches) {
+            if (built.containsKey(cache.part())) {
+                streamed.put(cache.recordsPart(), built.get(cache.part()).records());
+            }
+        }
+        registerContentTypes(contentTypes);
+
+        replaced.put(workbookPart, serialize(workbook));
+        replaced.put(workbookRelsPart, serialize(workbookRels));
+        replaced.put(stylesPart, serialize(styleSheet));
+        replaced.put(CONTENT_TYPES_PART, serialize(contentTypes));
+        return new Splice(replaced, added, streamed);
+    }
+
+    /**
+     * Writes a cache definition with the shared items of a cache built from the report's rows.
+     * The items are written straight into the definition, since a field may have as many items as
+     * the sheet has rows.
+     */
+    private static ParallelDeflate.Content populateCache(byte[] template, PivotCacheGenerator.Cache cache) throws IOException {
+        var document = parse(template);
+        var definition = document.getDocumentElement();
+        definition.setAttribute("recordCount", Integer.toString(cache.recordCount()));
+        if (!cache.isRefreshOnLoad()) {
+            definition.removeAttribute("refreshOnLoad");
+        }
+        var cacheFields = childElements(child(definition, "cacheFields"));
+        for (int i = 0; i < cacheFields.size(); i++) {
+            var field = cacheFields.get(i);
+            var sharedItems = child(field, "sharedItems");
+            if (sharedItems == null) {
+                sharedItems = element(definition, "sharedItems");
+                field.insertBefore(sharedItems, field.getFirstChild());
+            }
+            while (sharedItems.hasChildNodes()) {
+                sharedItems.removeChild(sharedItems.getFirstChild());
+            }
+            while (sharedItems.getAttributes().getLength() > 0) {
+                sharedItems.removeAttributeNode((Attr) sharedItems.getAttributes().item(0));
+            }
+            cache.sharedItemsAttributes(i).forEach(sharedItems::setAttribute);
+        }
+
+        var xml = serializeToString(document);
+        var tag = "<" + (definition.getPrefix() == null ? "" : definition.getPrefix() + ":") + "sharedItems";
+        return cache.stage(out -> {
+            var position = 0;
+            for (int i = 0; i < cacheFields.size(); i++) {
+                var start = xml.indexOf(tag, position);
+                var end = xml.indexOf('>', start);
+                var selfClosing = xml.charAt(end - 1) == '/';
+                if (cache.itemCount(i) == 0) {
+                    out.write(xml, position, end + 1 - position);
+                    position = end + 1;
+                    continue;
+                }
+                out.write(xml, position, (selfClosing ? end - 1 : end) - position);
+                out.write('>');
+                cache.writeSharedItems(i, out);
+                if (selfClosing) {
+                    out.write("</" + tag.substring(1) + ">");
+                }
+                position = end + 1;
+            }
+            out.write(xml, position, xml.length() - position);
+        });
+    }
+
+    /**
+     * Lists every shared item of a built cache in the pivot fields that list their items, and
+     * marks the items the report's rows do not have as missing. New items go after the template's
+     * data items, so the positions the pivot table's formats refer to stay the same.
+     */
+    private static byte[] listItems(byte[] template, PivotCacheGenerator.Cache cache) throws IOException {
+        var document = parse(template);
+        var definition = document.getDocumentElement();
+        var pivotFields = child(definition, "pivotFields");
+        if (pivotFields == null) {
+            return template;
+        }
+        var fields = childElements(pivotFields);
+        for (int i = 0; i < fields.size() && i < cache.fieldCount(); i++) {
+            var items = child(fields.get(i), "items");
+            if (items == null || !cache.isShared(i)) {
+                continue;
+            }
+            var listed = new HashSet<Integer>();
+            Element firstSubtotal = null;
+            for (var item : childElements(items)) {
+                var type = item.getAttribute("t");
+                if (!type.isEmpty() && !"data".equals(type)) {
+                    firstSubtotal = firstSubtotal == null ? item : firstSubtotal;
+                } else if (item.hasAttribute("x")) {
+                    var index = Integer.parseInt(item.getAttribute("x"));
+                    listed.add(index);
+                    if (index < cache.itemCount(i) && cache.isUsed(i, index)) {
+                        item.removeAttribute("m");
+                    } else {
+                        item.setAttribute("m", "1");
+                    }
+                }
+            }
+            for (int index = 0; index < cache.itemCount(i); index++) {
+                if (!listed.contains(index)) {
+                    var item = element(definition, "item");
+                    item.setAttribute("x", Integer.toString(index));
+                    if (!cache.isUsed(i, index)) {
+                        item.setAttribute("m", "1");
+                    }
+                    items.insertBefore(item, firstSubtotal);
+                }
+            }
+            items.setAttribute("count", Integer.toString(childElements(items).size()));
+        }
+        return serialize(document);
+    }
+
+    /**
+     * Appends the template's styles to the generated workbook's styles.
+     *
+     * @return shifts style references of the prepared parts to the appended styles
+     */
+    private Remap mergeStyles(Document document) throws IOException {
+        var styleSheet = document.getDocumentElement();
+        var offsets = new HashMap<String, Integer>();
+        for (var name : List.of("fonts", "fills", "borders", "cellXfs", "dxfs")) {
+            var container = container(styleSheet, name);
+            offsets.put(name, childElements(container).size());
+        }
+
+        var numberFormatIds = mergeNumberFormats(styleSheet);
+        Remap remap = (ref, value) -> switch (ref) {
+            case XF -> value + offsets.get("cellXfs");
+            case DXF -> value + offsets.get("dxfs");
+            case FONT -> value + offsets.get("fonts");
+            case FILL -> value + offsets.get("fills");
+            case BORDER -> value + offsets.get("borders");
+            case NUM_FMT -> value < FIRST_CUSTOM_NUM_FMT ? value : numberFormatIds.getOrDefault(value, 0);
+            case CACHE_ID -> value;
+        };
+
+        for (var name : List.of("fonts", "fills", "borders", "cellXfs", "dxfs")) {
+            var fragment = styles.get(name);
+            if (fragment == null || styleCounts.getOrDefault(name, 0) == 0) {
+                continue;
+            }
+            var container = container(styleSheet, name);
+            var rendered = parse(fragment.render(remap).getBytes(UTF_8)).getDocumentElement();
+            for (var child : childElements(rendered)) {
+                container.appendChild(document.importNode(child, true));
+            }
+            container.setAttribute("count", Integer.toString(childElements(container).size()));
+        }
+        return remap;
+    }
+
+    /**
+     * Adds the template's custom number formats, reusing formats the workbook already has.
+     *
+     * @return the number format id in the workbook for each custom id of the template
+     */
+    private Map<Integer, Integer> mergeNumberFormats(Element styleSheet) {
+        var ids = new HashMap<Integer, Integer>();
+        if (numberFormats.isEmpty()) {
+            return ids;
+        }
+
+        var container = container(styleSheet, "numFmts");
+        var existing = new HashMap<String, Integer>();
+        var next = FIRST_CUSTOM_NUM_FMT;
+        for (var numFmt : childElements(container)) {
+            var id = Integer.parseInt(numFmt.getAttribute("numFmtId"));
+            existing.putIfAbsent(numFmt.getAttribute("formatCode"), id);
+            next = Math.max(next, id + 1);
+        }
+        for (var format : numberFormats.entrySet()) {
+            var id = existing.get(format.getValue());
+            if (id == null) {
+                id = next++;
+                var numFmt = element(styleSheet, "numFmt");
+                numFmt.setAttribute("numFmtId", Integer.toString(id));
+                numFmt.setAttribute("formatCode", format.getValue());
+                container.appendChild(numFmt);
+                existing.put(format.getValue(), id);
+            }
+            ids.put(format.getKey(), id);
+        }
+        container.setAttribute("count", Integer.toString(childElements(container).size()));
+        return ids;
+    }
+
+    /**
+     * Adds the analytics sheets and pivot caches to the workbook part and its relationships, then
+     * orders the sheets.
+     *
+     * @return the workbook cache id for each cache id of the template
+     */
+    private Map<Integer, Integer> registerSheets(Document workbookDocument, Document relsDocument,
+                                                 String workbookDirectory, Map<String, Integer> sheetOrder) throws IOException {
+        var workbook = workbookDocument.getDocumentElement();
+        var relationships = relsDocument.getDocumentElement();
+        var relIds = new HashSet<String>();
+        for (var relationship : childElements(relationships)) {
+            relIds.add(relationship.getAttribute("Id"));
+        }
+        var relPrefix = relationshipPrefix(workbook);
+
+        var sheetsElement = child(workbook, "sheets");
+        if (sheetsElement == null) {
+            throw new IOException("Generated workbook has no sheets element");
+        }
+        var activeTab = activeSheetName(workbook, sheetsElement);
+        var names = new ArrayList<String>();
+        var sheetElements = new HashMap<String, Element>();
+        var nextSheetId = 1;
+        for (var sheet : childElements(sheetsElement)) {
+            names.add(sheet.getAttribute("name"));
+            sheetElements.put(sheet.getAttribute("name"), sheet);
+            nextSheetId = Math.max(nextSheetId, Integer.parseInt(sheet.getAttribute("sheetId")) + 1);
+        }
+        var originalNames = List.copyOf(names);
+
+        for (var sheet : sheets) {
+            if (sheetElements.containsKey(sheet.name())) {
+                throw new IOException("Generated workbook already has a sheet named '" + sheet.name() + "'");
+            }
+            var relId = addRelationship(relsDocument, relIds, WORKSHEET_REL, relativeTo(workbookDirectory, sheet.part()));
+            var element = element(workbook, "sheet");
+            element.setAttribute("name", sheet.name());
+            element.setAttribute("sheetId", Integer.toString(nextSheetId++));
+            element.setAttributeNS(REL_NS, relPrefix + ":id", relId);
+            names.add(sheet.name());
+            sheetElements.put(sheet.name(), element);
+        }
+
+        var cacheIds = new HashMap<Integer, Integer>();
+        if (!pivotCaches.isEmpty()) {
+            var cachesElement = child(workbook, "pivotCaches");
+            if (cachesElement == null) {
+                cachesElement = element(workbook, "pivotCaches");
+                workbook.insertBefore(cachesElement, firstChild(workbook, AFTER_PIVOT_CACHES));
+            }
+            var nextCacheId = 1;
+            for (var cache : childElements(cachesElement)) {
+                nextCacheId = Math.max(nextCacheId, Integer.parseInt(cache.getAttribute("cacheId")) + 1);
+            }
+            for (var cache : pivotCaches) {
+                var relId = addRelationship(relsDocument, relIds, PIVOT_CACHE_REL, relativeTo(workbookDirectory, cache.part()));
+                var element = element(workbook, "pivotCache");
+                element.setAttribute("cacheId", Integer.toString(nextCacheId));
+                element.setAttributeNS(REL_NS, relPrefix + ":id", relId);
+                cachesElement.appendChild(element);
+                cacheIds.put(cache.cacheId(), nextCacheId++);
+            }
+        }
+
+        sheetOrder.entrySet().stream()
+                .sorted(comparingByValue())
+                .forEach(entry -> {
+                    if (names.remove(entry.getKey())) {
+                        names.add(Math.max(0, Math.min(entry.getValue(), names.size())), entry.getKey());
+                    }
+                });
+        while (sheetsElement.hasChildNodes()) {
+            sheetsElement.removeChild(sheetsElement.getFirstChild());
+        }
+        names.forEach(name -> sheetsElement.appendChild(sheetElements.get(name)));
+
+        updateSheetIndexes(workbook, originalNames, names, activeTab);
+        return cacheIds;
+    }
+
+    private static String activeSheetName(Element workbook, Element sheetsElement) {
+        var view = activeView(workbook);
+        var index = view == null || view.getAttribute("activeTab").isEmpty() ? 0 : Integer.parseInt(view.getAttribute("activeTab"));
+        var sheetList = childElements(sheetsElement);
+        return index < sheetList.size() ? sheetList.get(index).getAttribute("name") : null;
+    }
+
+    private static Element activeView(Element workbook) {
+        var bookViews = child(workbook, "bookViews");
+        return bookViews == null ? null : child(bookViews, "workbookView");
+    }
+
+    /**
+     * Keeps the active tab and sheet-scoped defined names on the same sheets after reordering.
+     */
+    private static void updateSheetIndexes(Element workbook, List<String> originalNames, List<String> names, String activeTab) {
+        var view = activeView(workbook);
+        if (view != null && activeTab != null) {
+            view.setAttribute("activeTab", Integer.toString(names.indexOf(activeTab)));
+        }
+        var definedNames = child(workbook, "definedNames");
+        if (definedNames == null) {
+            return;
+        }
+        for (var definedName : childElements(definedNames)) {
+            var localSheetId = definedName.getAttribute("localSheetId");
+            if (!localSheetId.isEmpty()) {
+                var index = Integer.parseInt(localSheetId);
+                if (index < originalNames.size()) {
+                    definedName.setAttribute("localSheetId", Integer.toString(names.indexOf(originalNames.get(index))));
+                }
+            }
+        }
+    }
+
+    private void registerContentTypes(Document document) {
+        var types = document.getDocumentElement();
+        var defaults = new HashMap<String, String>();
+        for (var type : childElements(types)) {
+            if ("Default".equals(type.getLocalName())) {
+                defaults.put(type.getAttribute("Extension").toLowerCase(), type.getAttribute("ContentType"));
+            }
+        }
+        for (var part : parts) {
+            var extension = extension(part.name());
+            if (!part.override() && part.contentType().equals(defaults.get(extension))) {
+                continue;
+            }
+            if (!part.override() && !defaults.containsKey(extension)) {
+                var type = document.createElementNS(CONTENT_TYPES_NS, "Default");
+                type.setAttribute("Extension", extension);
+                type.setAttribute("ContentType", part.contentType());
+                types.insertBefore(type, types.getFirstChild());
+                defaults.put(extension, part.contentType());
+                continue;
+            }
+            var type = document.createElementNS(CONTENT_TYPES_NS, "Override");
+            type.setAttribute("PartName", "/" + part.name());
+            type.setAttribute("ContentType", part.contentType());
+            types.appendChild(type);
+        }
+    }
+
+    private static String addRelationship(Document document, Set<String> ids, String type, String target) {
+        var next = ids.size() + 1;
+        while (ids.contains("rId" + next)) {
+            next++;
+        }
+        var id = "rId" + next;
+        ids.add(id);
+        var relationship = document.createElementNS(PACKAGE_REL_NS, "Relationship");
+        relationship.setAttribute("Id", id);
+        relationship.setAttribute("Type", type);
+        relationship.setAttribute("Target", target);
+        document.getDocumentElement().appendChild(relationship);
+        return id;
+    }
+
+    private static String relationshipPrefix(Element root) {
+        var prefix = root.lookupPrefix(REL_NS);
+        if (prefix == null) {
+            prefix = "r";
+            root.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:r", REL_NS);
+        }
+        return prefix;
+    }
+
+    /**
+     * Prepares the sheets of a template.
+     */
+    private static final class Compiler {
+        private final Map<String, byte[]> entries;
+        private final Map<String, String> overrides = new HashMap<>();
+        private final Map<String, String> defaults = new HashMap<>();
+        private final Map<Integer, String> numberFormats = new LinkedHashMap<>();
+        private final Map<String, Markup> styles = new HashMap<>();
+        private final Map<String, Integer> styleCounts = new HashMap<>();
+        private List<Element> sharedStrings = List.of();
+
+        Compiler(Map<String, byte[]> entries) {
+            this.entries = entries;
+        }
+
+        AnalyticsParts compile() throws IOException {
+            readContentTypes();
+            var rootRels = parse(require(ROOT_RELS_PART));
+            var workbookPart = relationshipTarget(rootRels, "", OFFICE_DOCUMENT_REL);
+            if (workbookPart == null) {
+                throw new IllegalArgumentException("Template has no workbook part");
+            }
+            var workbookDirectory = directory(workbookPart);
+            var workbook = parse(require(workbookPart)).getDocumentElement();
+            requireMainNamespace(workbook);
+            var workbookRels = parse(require(relsPart(workbookPart)));
+
+            var sharedStringsPart = relationshipTarget(workbookRels, workbookDirectory, SHARED_STRINGS_REL);
+            if (sharedStringsPart != null) {
+                sharedStrings = childElements(parse(require(sharedStringsPart)).getDocumentElement());
+            }
+            var stylesPart = relationshipTarget(workbookRels, workbookDirectory, STYLES_REL);
+            if (stylesPart != null) {
+                readStyles(parse(require(stylesPart)).getDocumentElement());
+            }
+
+            var relationshipsById = relationships(workbookRels, workbookDirectory);
+            var cacheIds = new HashMap<String, Integer>();
+            var cachesElement = child(workbook, "pivotCaches");
+            if (cachesElement != null) {
+                for (var cache : childElements(cachesElement)) {
+                    var relationship = relationshipsById.get(cache.getAttributeNS(REL_NS, "id"));
+                    if (relationship != null) {
+                        cacheIds.put(relationship[1], Integer.parseInt(cache.getAttribute("cacheId")));
+                    }
+                }
+            }
+
+            var sheets = new ArrayList<Sheet>();
+            var pivotCaches = new ArrayList<PivotCache>();
+            var parts = new ArrayList<Part>();
+            var visited = new HashSet<String>();
+            var sheetsElement = child(workbook, "sheets");
+            for (var sheet : sheetsElement == null ? List.<Element>of() : childElements(sheetsElement)) {
+                var relationship = relationshipsById.get(sheet.getAttributeNS(REL_NS, "id"));
+                if (relationship == null || !WORKSHEET_REL.equals(relationship[0])) {
+                    throw new IllegalArgumentException("Template sheet '" + sheet.getAttribute("name") + "' is not a worksheet");
+                }
+                sheets.add(new Sheet(sheet.getAttribute("name"), renamed(relationship[1])));
+                collect(relationship[1], visited, parts);
+            }
+
+            var pivotTableCaches = new HashMap<String, String>();
+            var pivotTables = new HashMap<String, List<Element>>();
+            for (var part : parts) {
+                if (part.contentType().endsWith(PIVOT_TABLE_TYPE)) {
+                    var original = originalName(part.name());
+                    var rels = entries.get(relsPart(original));
+                    var cachePart = rels == null ? null : relationshipTarget(parse(rels), directory(original), PIVOT_CACHE_REL);
+                    if (cachePart != null) {
+                        pivotTableCaches.put(part.name(), renamed(cachePart));
+                        pivotTables.computeIfAbsent(cachePart, _ -> new ArrayList<>())
+                                .add(parse(require(original)).getDocumentElement());
+                    }
+                }
+            }
+            for (var part : parts) {
+                if (part.contentType().endsWith(PIVOT_CACHE_TYPE)) {
+                    var original = originalName(part.name());
+                    var cacheId = cacheIds.get(original);
+                    if (cacheId == null) {
+                        throw new IllegalArgumentException("Pivot cache " + original + " is not registered in the template workbook");
+                    }
+                    var rels = entries.get(relsPart(original));
+                    var recordsPart = rels == null ? null : relationshipTarget(parse(rels), directory(original), PIVOT_RECORDS_REL);
+                    var source = recordsPart == null ? null : pivotSource(part.name(),
+                            parse(require(original)).getDocumentElement(), pivotTables.getOrDefault(original, List.of()));
+                    pivotCaches.add(new PivotCache(cacheId, part.name(), recordsPart == null ? null : renamed(recordsPart), source));
+                }
+            }
+            return new AnalyticsParts(sheets, pivotCaches, pivotTableCaches, parts, numberFormats, styles, styleCounts);
+        }
+
+        /**
+         * Works out the data sheet range of a pivot cache, and which of its fields share items.
+         * Fields share items when the template has some, or when a pivot table lists or lays out
+         * their items.
+         *
+         * @return the source range, or null if the cache cannot be built from rows
+         */
+        private static PivotSource pivotSource(String part, Element definition, List<Element> pivotTables) {
+            var worksheetSource = child(child(definition, "cacheSource"), "worksheetSource");
+            if (worksheetSource == null || !worksheetSource.hasAttribute("sheet") || !worksheetSource.hasAttribute("ref")
+                    || "0".equals(definition.getAttribute("saveData"))) {
+                return null;
+            }
+            CellRangeAddress range;
+            try {
+                range = CellRangeAddress.valueOf(worksheetSource.getAttribute("ref"));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            var cacheFields = child(definition, "cacheFields");
+            var fields = new ArrayList<CacheField>();
+            for (var field : cacheFields == null ? List.<Element>of() : childElements(cacheFields)) {
+                if (field.hasAttribute("formula") || "0".equals(field.getAttribute("databaseField"))
+                        || child(field, "fieldGroup") != null) {
+                    return null;
+                }
+                var index = fields.size();
+                var sharedItems = child(field, "sharedItems");
+                var items = new ArrayList<CacheItem>();
+                for (var item : sharedItems == null ? List.<Element>of() : childElements(sharedItems)) {
+                    items.add(new CacheItem(item.getLocalName(), item.getAttribute("v")));
+                }
+                var shared = !items.isEmpty()
+                        || (sharedItems != null && !"0".equals(sharedItems.getAttribute("containsString")))
+                        || pivotTables.stream().anyMatch(table -> listsItems(table, index));
+                var date = items.stream().anyMatch(item -> "d".equals(item.type()))
+                        || (sharedItems != null && "1".equals(sharedItems.getAttribute("containsDate"))
+                        && "0".equals(sharedItems.getAttribute("containsNonDate")))
+                        || isDateFormat(field.getAttribute("numFmtId"));
+                fields.add(new CacheField(field.getAttribute("name"), shared, date, items));
+            }
+            if (fields.isEmpty() || fields.size() != range.getLastColumn() - range.getFirstColumn() + 1) {
+                return null;
+            }
+            return new PivotSource(part, worksheetSource.getAttribute("sheet"), range.getFirstRow(),
+                    range.getLastRow(), range.getFirstColumn(), fields);
+        }
+
+        private static boolean listsItems(Element pivotTable, int field) {
+            var pivotFields = child(pivotTable, "pivotFields");
+            if (pivotFields == null) {
+                return false;
+            }
+            var fields = childElements(pivotFields);
+            if (field >= fields.size()) {
+                return false;
+            }
+            return fields.get(field).hasAttribute("axis") || child(fields.get(field), "items") != null;
+        }
+
+        private static boolean isDateFormat(String numFmtId) {
+            if (numFmtId.isEmpty()) {
+                return false;
+            }
+            var id = Integer.parseInt(numFmtId);
+            return (id >= 14 && id <= 22) || (id >= 45 && id <= 47);
+        }
+
+        /**
+         * Prepares a part and everything it relates to, depth first.
+         */
+        private void collect(String start, Set<String> visited, List<Part> parts) throws IOException {
+            var pending = new ArrayDeque<String>();
+            pending.push(start);
+            while (!pending.isEmpty()) {
+                var name = pending.pop();
+                if (!visited.add(name)) {
+                    continue;
+                }
+                var content = entries.get(name);
+                if (content == null) {
+                    throw new IllegalArgumentException("Template part " + name + " is missing");
+                }
+                var contentType = contentType(name);
+                parts.add(prepare(name, contentType, content));
+
+                var relsName = relsPart(name);
+                var rels = entries.get(relsName);
+                if (rels == null) {
+                    continue;
+                }
+                var relsDocument = parse(rels);
+                for (var relationship : childElements(relsDocument.getDocumentElement())) {
+                    if ("External".equals(relationship.getAttribute("TargetMode"))) {
+                        continue;
+                    }
+                    var target = relationship.getAttribute("Target");
+                    pending.push(resolve(directory(name), target));
+                    relationship.setAttribute("Target", renamedTarget(target));
+                }
+                parts.add(new Part(renamed(relsName), contentType(relsName), overrides.containsKey(relsName), null, serialize(relsDocument)));
+            }
+        }
+
+        private Part prepare(String name, String contentType, byte[] content) throws IOException {
+            var renamed = renamed(name);
+            var override = overrides.containsKey(name);
+            if (contentType.endsWith(WORKSHEET_TYPE)) {
+                return new Part(renamed, contentType, override, prepareWorksheet(parse(content)), null);
+            }
+            if (contentType.endsWith(PIVOT_TABLE_TYPE)) {
+                return new Part(renamed, contentType, override, preparePivotTable(parse(content)), null);
+            }
+            if (contentType.endsWith(PIVOT_CACHE_TYPE)) {
+                return new Part(renamed, contentType, override, preparePivotCache(parse(content)), null);
+            }
+            if (contentType.endsWith(PIVOT_RECORDS_TYPE)) {
+                var records = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                        + "<pivotCacheRecords xmlns=\"" + MAIN_NS + "\" count=\"0\"/>";
+                return new Part(renamed, contentType, override, null, records.getBytes(UTF_8));
+            }
+            return new Part(renamed, contentType, override, null, content);
+        }
+
+        private Markup prepareWorksheet(Document document) {
+            var worksheet = document.getDocumentElement();
+            requireMainNamespace(worksheet);
+            for (var view : descendants(worksheet, "sheetView")) {
+                // The generated workbook decides which sheet is selected
+                view.removeAttribute("tabSelected");
+            }
+            for (var cell : descendants(worksheet, "c")) {
+                mark(cell, "s", Ref.XF);
+                if ("s".equals(cell.getAttribute("t"))) {
+                    inlineSharedString(cell);
+                }
+            }
+            for (var row : descendants(worksheet, "row")) {
+                mark(row, "s", Ref.XF);
+            }
+            for (var column : descendants(worksheet, "col")) {
+                mark(column, "style", Ref.XF);
+            }
+            for (var rule : descendants(worksheet, "cfRule")) {
+                mark(rule, "dxfId", Ref.DXF);
+            }
+            return Markup.of(serializeToString(document));
+        }
+
+        private void inlineSharedString(Element cell) {
+            var value = child(cell, "v");
+            if (value == null) {
+                return;
+            }
+            var index = Integer.parseInt(value.getTextContent().trim());
+            if (index >= sharedStrings.size()) {
+                throw new IllegalArgumentException("Template cell " + cell.getAttribute("r") + " refers to a missing shared string");
+            }
+            var document = cell.getOwnerDocument();
+            var inline = element(cell, "is");
+            for (var part : childElements(sharedStrings.get(index))) {
+                inline.appendChild(document.importNode(part, true));
+            }
+            cell.replaceChild(inline, value);
+            cell.setAttribute("t", "inlineStr");
+        }
+
+        private Markup preparePivotTable(Document document) {
+            var definition = document.getDocumentElement();
+            requireMainNamespace(definition);
+            mark(definition, "cacheId", Ref.CACHE_ID);
+            for (var element : descendants(definition, "*")) {
+                mark(element, "dxfId", Ref.DXF);
+                mark(element, "numFmtId", Ref.NUM_FMT);
+            }
+            return Markup.of(serializeToString(document));
+        }
+
+        private Markup preparePivotCache(Document document) {
+            var definition = document.getDocumentElement();
+            requireMainNamespace(definition);
+            var source = child(definition, "cacheSource");
+            if (source == null || !"worksheet".equals(source.getAttribute("type"))) {
+                throw new IllegalArgumentException("Only pivot caches over worksheet ranges can be spliced");
+            }
+            definition.setAttribute("refreshOnLoad", "1");
+            for (var field : descendants(definition, "cacheField")) {
+                mark(field, "numFmtId", Ref.NUM_FMT);
+            }
+            return Markup.of(serializeToString(document));
+        }
+
+        private void readStyles(Element styleSheet) {
+            var numFmts = child(styleSheet, "numFmts");
+            if (numFmts != null) {
+                for (var numFmt : childElements(numFmts)) {
+                    addNumberFormat(numFmt);
+                }
+            }
+            for (var name : List.of("fonts", "fills", "borders", "cellXfs", "dxfs")) {
+                var container = child(styleSheet, name);
+                if (container == null) {
+                    continue;
+                }
+                for (var element : childElements(container)) {
+                    if ("cellXfs".equals(name)) {
+                        mark(element, "numFmtId", Ref.NUM_FMT);
+                        mark(element, "fontId", Ref.FONT);
+                        mark(element, "fillId", Ref.FILL);
+                        mark(element, "borderId", Ref.BORDER);
+                        // Named cell styles are not copied, so every style is based on the default one
+                        element.setAttribute("xfId", "0");
+                    } else if ("dxfs".equals(name)) {
+                        for (var numFmt : descendants(element, "numFmt")) {
+                            addNumberFormat(numFmt);
+                            mark(numFmt, "numFmtId", Ref.NUM_FMT);
+                        }
+                    }
+                }
+                styleCounts.put(name, childElements(container).size());
+                styles.put(name, Markup.of(serializeToString(container)));
+            }
+        }
+
+        private void addNumberFormat(Element numFmt) {
+            var id = Integer.parseInt(numFmt.getAttribute("numFmtId"));
+            if (id >= FIRST_CUSTOM_NUM_FMT) {
+                numberFormats.putIfAbsent(id, numFmt.getAttribute("formatCode"));
+            }
+        }
+
+        private void readContentTypes() throws IOException {
+            for (var type : childElements(parse(require(CONTENT_TYPES_PART)).getDocumentElement())) {
+                if ("Override".equals(type.getLocalName())) {
+                    overrides.put(type.getAttribute("PartName").substring(1), type.getAttribute("ContentType"));
+                } else if ("Default".equals(type.getLocalName())) {
+                    defaults.put(type.getAttribute("Extension").toLowerCase(), type.getAttribute("ContentType"));
+                }
+            }
+        }
+
+        private String contentType(String name) {
+            var contentType = overrides.getOrDefault(name, defaults.get(extension(name)));
+            if (contentType == null) {
+                throw new IllegalArgumentException("Template part " + name + " has no content type");
+            }
+            return contentType;
+        }
+
+        /**
+         * @return the type and target part of each relationship by id
+         */
+        private static Map<String, String[]> relationships(Document rels, String directory) {
+            var relationships = new HashMap<String, String[]>();
+            for (var relationship : childElements(rels.getDocumentElement())) {
+                if (!"External".equals(relationship.getAttribute("TargetMode"))) {
+                    relationships.put(relationship.getAttribute("Id"), new String[]{
+                            relationship.getAttribute("Type"), resolve(directory, relationship.getAttribute("Target"))});
+                }
+            }
+            return relationships;
+        }
+
+        private byte[] require(String name) {
+            var content = entries.get(name);
+            if (content == null) {
+                throw new IllegalArgumentException("Template has no " + name + " part");
+            }
+            return content;
+        }
+
+        private static void requireMainNamespace(Element element) {
+            if (!MAIN_NS.equals(element.getNamespaceURI())) {
+                throw new IllegalArgumentException("Template part uses unsupported namespace " + element.getNamespaceURI());
+            }
+        }
+    }
+
+    /**
+     * Replaces a numeric attribute with a marker that {@link Markup} renders through a {@link Remap}.
+     */
+    private static void mark(Element element, String attribute, Ref ref) {
+        if (element.hasAttribute(attribute)) {
+            var value = Integer.parseInt(element.getAttribute(attribute).trim());
+            element.setAttribute(attribute, "" + MARK_START + ref.ordinal() + ':' + value + MARK_END);
+        }
+    }
+
+    /**
+     * Serialized XML with marked references, rendered with the offsets of one workbook.
+     */
+    private static final class Markup {
+        private static final Ref[] REFS = Ref.values();
+        private final String[] texts;
+        private final Ref[] refs;
+        private final int[] values;
+
+        private Markup(String[] texts, Ref[] refs, int[] values) {
+            this.texts = texts;
+            this.refs = refs;
+            this.values = values;
+        }
+
+        static Markup of(String marked) {
+            var texts = new ArrayList<String>();
+            var refs = new ArrayList<Ref>();
+            var values = new ArrayList<Integer>();
+            var position = 0;
+            int start;
+            while ((start = marked.indexOf(MARK_START, position)) >= 0) {
+                var separator = marked.indexOf(':', start);
+                var end = marked.indexOf(MARK_END, separator);
+                texts.add(marked.substring(position, start));
+                refs.add(REFS[Integer.parseInt(marked.substring(start + 1, separator))]);
+                values.add(Integer.parseInt(marked.substring(separator + 1, end)));
+                position = end + 1;
+            }
+            texts.add(marked.substring(position));
+            return new Markup(texts.toArray(String[]::new), refs.toArray(Ref[]::new),
+                    values.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        String render(Remap remap) {
+            var length = 0;
+            for (var text : texts) {
+                length += text.length();
+            }
+            var out = new StringBuilder(length + refs.length * 4);
+            for (int i = 0; i < refs.length; i++) {
+                out.append(texts[i]).append(remap.apply(refs[i], values[i]));
+            }
+            return out.append(texts[refs.length]).toString();
+        }
+    }
+
+    /**
+     * Reads the parts of a package through its central directory. Packages written by POI use
+     * Zip64 data descriptors, which {@link java.util.zip.ZipInputStream} cannot read.
+     */
+    private static Map<String, byte[]> unzip(byte[] template, double minInflateRatio, long maxSize) throws IOException {
+        var file = Files.createTempFile("gpfd-template", ".xlsx");
+        try {
+            Files.write(file, template);
+            var entries = new LinkedHashMap<String, byte[]>();
+            var remaining = maxSize;
+            try (var zip = new ZipFile(file.toFile())) {
+                for (var iterator = zip.entries(); iterator.hasMoreElements(); ) {
+                    var entry = iterator.nextElement();
+                    if (!entry.isDirectory()) {
+                        var name = entry.getName().startsWith("/") ? entry.getName().substring(1) : entry.getName();
+                        try (var input = zip.getInputStream(entry)) {
+                            var content = inflate(name, input, entry.getCompressedSize(), minInflateRatio, remaining);
+                            remaining -= content.length;
+                            entries.put(name, content);
+                        }
+                    }
+                }
+            }
+            if (entries.isEmpty()) {
+                throw new IOException("Template package is empty");
+            }
+            return entries;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Reads a part, failing as soon as it inflates past {@code maxSize} bytes or, once past
+     * {@value #GRACE_PART_SIZE} bytes, below {@code minInflateRatio}.
+     */
+    private static byte[] inflate(String name, InputStream input, long compressedSize,
+                                  double minInflateRatio, long maxSize) throws IOException {
+        var out = new ByteArrayOutputStream();
+        var buffer = new byte[8192];
+        for (int read; (read = input.read(buffer)) != -1; ) {
+            out.write(buffer, 0, read);
+            var size = out.size();
+            if (size > maxSize) {
+                throw new IOException("Template part " + name + " inflates beyond the " + maxSize + " bytes left for the template");
+            }
+            if (size > GRACE_PART_SIZE && compressedSize >= 0 && (double) compressedSize / size < minInflateRatio) {
+                throw new IOException("Template part " + name + " inflates beyond the allowed compression ratio " + minInflateRatio);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] require(PartSource target, String name) throws IOException {
+        var content = target.read(name);
+        if (content == null) {
+            throw new IOException("Generated package has no " + name + " part");
+        }
+        return content;
+    }
+
+    private static String relationshipTarget(Document rels, String directory, String type) {
+        for (var relationship : childElements(rels.getDocumentElement())) {
+            if (type.equals(relationship.getAttribute("Type")) && !"External".equals(relationship.getAttribute("TargetMode"))) {
+                return resolve(directory, relationship.getAttribute("Target"));
+            }
+        }
+        return null;
+    }
+
+    private static String renamed(String part) {
+        var slash = part.lastIndexOf('/');
+        return part.substring(0, slash + 1) + PART_PREFIX + part.substring(slash + 1);
+    }
+
+    private static String renamedTarget(String target) {
+        var slash = target.lastIndexOf('/');
+        return target.substring(0, slash + 1) + PART_PREFIX + target.substring(slash + 1);
+    }
+
+    private static String originalName(String renamed) {
+        var slash = renamed.lastIndexOf('/');
+        return renamed.substring(0, slash + 1) + renamed.substring(slash + 1 + PART_PREFIX.length());
+    }
+
+    private static String relsPart(String part) {
+        var slash = part.lastIndexOf('/');
+        return part.substring(0, slash + 1) + "_rels/" + part.substring(slash + 1) + ".rels";
+    }
+
+    private static String directory(String part) {
+        var slash = part.lastIndexOf('/');
+        return slash < 0 ? "" : part.substring(0, slash);
+    }
+
+    private static String extension(String part) {
+        var dot = part.lastIndexOf('.');
+        return dot < 0 ? "" : part.substring(dot + 1).toLowerCase();
+    }
+
+    /**
+     * Resolves a relationship target against the directory of its source part.
+     */
+    private static String resolve(String directory, String target) {
+        var path = new ArrayList<String>();
+        if (!target.startsWith("/") && !directory.isEmpty()) {
+            Collections.addAll(path, directory.split("/"));
+        }
+        for (var segment : target.split("/")) {
+            if (segment.isEmpty() || ".".equals(segment)) {
+                continue;
+            }
+            if ("..".equals(segment)) {
+                if (!path.isEmpty()) {
+                    path.remove(path.size() - 1);
+                }
+            } else {
+                path.add(segment);
+            }
+        }
+        return String.join("/", path);
+    }
+
+    private static String relativeTo(String directory, String part) {
+        return !directory.isEmpty() && part.startsWith(directory + "/") ? part.substring(directory.length() + 1) : "/" + part;
+    }
+
+    private static Element element(Element context, String localName) {
+        var prefix = context.getOwnerDocument().getDocumentElement().getPrefix();
+        return context.getOwnerDocument().createElementNS(MAIN_NS, prefix == null ? localName : prefix + ":" + localName);
+    }
+
+    /**
+     * Gets a direct child of the style sheet, creating it in schema order when it is missing.
+     */
+    private static Element container(Element styleSheet, String name) {
+        var container = child(styleSheet, name);
+        if (container == null) {
+            container = element(styleSheet, name);
+            container.setAttribute("count", "0");
+            var later = STYLE_SHEET_ORDER.subList(STYLE_SHEET_ORDER.indexOf(name) + 1, STYLE_SHEET_ORDER.size());
+            styleSheet.insertBefore(container, firstChild(styleSheet, later));
+        }
+        return container;
+    }
+
+    private static Element firstChild(Element parent, List<String> names) {
+        for (var child : childElements(parent)) {
+            if (names.contains(child.getLocalName())) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static Element child(Element parent, String name) {
+        for (var child : childElements(parent)) {
+            if (name.equals(child.getLocalName())) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> childElements(Element parent) {
+        var children = new ArrayList<Element>();
+        for (var node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    private static List<Element> descendants(Element parent, String localName) {
+        var nodes = parent.getElementsByTagNameNS(MAIN_NS, localName);
+        var elements = new ArrayList<Element>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            elements.add((Element) nodes.item(i));
+        }
+        return elements;
+    }
+
+    private static Document parse(byte[] content) throws IOException {
+        try {
+            return DOCUMENTS.get().newDocumentBuilder().parse(new ByteArrayInputStream(content));
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Invalid package part", e);
+        }
+    }
+
+    private static byte[] serialize(Document document) {
+        return serializeToString(document).getBytes(UTF_8);
+    }
+
+    private static String serializeToString(Node node) {
+        try {
+            var transformer = TRANSFORMERS.get().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            if (node instanceof Document document) {
+                document.setXmlStandalone(true);
+            } else {
+                transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            }
+            var out = new StringWriter();
+            transformer.transform(new DOMSource(node), new StreamResult(out));
+            return out.toString();
+        } catch (TransformerException e) {
+            throw new UncheckedIOException(new IOException("Cannot serialize package part", e));
+        }
+    }
+
+    private static DocumentBuilderFactory documentBuilderFactory() {
+        try {
+            var factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setExpandEntityReferences(false);
+            return factory;
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("XML parser does not support secure processing", e);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package uk.gov.laa.gpfd.services.excel.workbook;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import uk.gov.laa.gpfd.model.Report;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes the parts of an xlsx package with each part deflated on a shared pool, so the sheets of a
+ * workbook are compressed at the same time instead of one after another on the request thread.
+ * <p>
+ * Every part is deflated into the workbook's {@link SheetStorage} while its CRC and sizes are
+ * worked out, then copied into the zip as a raw entry, in package order, as soon as it is ready.
+ * The entries are plain deflated zip entries with their sizes in the local header, the same as
+ * the ones Excel writes itself.
+ * <p>
+ * The deflate level is the report's own when it has one, otherwise {@code defaultLevel}.
+ */
+@Slf4j
+public final class ParallelDeflate {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Opens the uncompressed content of a package part.
+     */
+    @FunctionalInterface
+    public interface Content {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * A package part to be written.
+     *
+     * @param name    the part's entry name in the zip
+     * @param time    the entry's modification time, or -1 if not known
+     * @param content the part's uncompressed content
+     */
+    public record Part(String name, long time, Content content) {
+        public Part {
+            requireNonNull(name, "Part name cannot be null");
+            requireNonNull(content, "Part content cannot be null");
+        }
+    }
+
+    /**
+     * A part deflated into staging storage.
+     */
+    private record Deflated(ZipArchiveEntry entry, SheetStorage.Sheet staged) {
+    }
+
+    private final Executor executor;
+    @Getter
+    private final boolean enabled;
+    private final int defaultLevel;
+
+    /**
+     * Creates a writer that deflates parts on the given executor.
+     *
+     * @param executor     runs the deflating, it should be bounded to the cores it may use
+     * @param enabled      whether parts are deflated in parallel, when false only reports with their
+     *                     own level are written here, on the calling thread
+     * @param defaultLevel the deflate level of reports without one, -1 for the zlib default
+     */
+    public ParallelDeflate(Executor executor, boolean enabled, int defaultLevel) {
+        if (!isLevel(defaultLevel)) {
+            throw new IllegalArgumentException("Deflate level must be between -1 and 9");
+        }
+        this.executor = requireNonNull(executor, "Executor cannot be null");
+        this.enabled = enabled;
+        this.defaultLevel = defaultLevel;
+    }
+
+    /**
+     * Creates an instance that leaves every workbook to be written by POI.
+     *
+     * @return a disabled writer
+     */
+    public static ParallelDeflate disabled() {
+        return new ParallelDeflate(Runnable::run, false, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Checks whether a report's workbook is written here rather than by POI.
+     *
+     * @param report the report, may be null
+     * @return true when parallel deflate is enabled or the report has its own level
+     */
+    public boolean appliesTo(Report report) {
+        return enabled || reportLevel(report) != null;
+    }
+
+    /**
+     * Gets the deflate level of a report's workbook.
+     *
+     * @param report the report, may be null
+     * @return the report's own level when valid, otherwise the default
+     */
+    public int levelOf(Report report) {
+        var level = reportLevel(report);
+        return level == null ? defaultLevel : level;
+    }
+
+    /**
+     * Writes the parts as a zip, deflating them at the given level. When a part fails, the parts
+     * not yet written are cancelled and those being deflated are waited for before it is thrown.
+     *
+     * @param parts   the package parts in the order they are written
+     * @param level   the deflate level
+     * @param staging storage for the deflated parts until they are written
+     * @param out     the stream the zip is written to, left open
+     * @throws IOException if a part cannot be read, staged or written
+     */
+    public void write(List<Part> parts, int level, SheetStorage.Export staging, OutputStream out) throws IOException {
+        var start = System.nanoTime();
+        var abandoned = new AtomicBoolean();
+        var running = new Phaser(1);
+        var pending = new ArrayList<CompletableFuture<Deflated>>(parts.size());
+        for (var part : parts) {
+            pending.add(submit(() -> deflate(part, level, staging, abandoned), staging, running));
+        }
+
+        var zip = new ZipArchiveOutputStream(out);
+        var written = 0;
+        try {
+            for (var future : pending) {
+                var deflated = await(future);
+                written++;
+                try (var raw = deflated.staged().read()) {
+                    zip.addRawArchiveEntry(deflated.entry(), raw);
+                } finally {
+                    staging.release(deflated.staged());
+                }
+            }
+            zip.finish();
+        } catch (IOException | RuntimeException | Error e) {
+            abandon(pending.subList(written, pending.size()), abandoned, running, staging);
+            throw e;
+        }
+        log.debug("Deflated {} package parts at level {} in {} ms", parts.size(), level,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Runs a part's deflate on the pool, registered with {@code running} until it has returned. A
+     * part that finishes after its future was cancelled releases its staged data itself.
+     */
+    private CompletableFuture<Deflated> submit(Supplier<Deflated> task, SheetStorage.Export staging, Phaser running) {
+        var future = new CompletableFuture<Deflated>();
+        running.register();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!future.isDone()) {
+                        var deflated = task.get();
+                        if (!future.complete(deflated)) {
+                            staging.release(deflated.staged());
+                        }
+                    }
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    running.arriveAndDeregister();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.arriveAndDeregister();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Cancels the parts that were not written and waits for the ones already deflating, so none of
+     * them is still using the staging storage once the failure reaches the caller.
+     */
+    private static void abandon(List<CompletableFuture<Deflated>> unwritten, AtomicBoolean abandoned, Phaser running,
+                                SheetStorage.Export staging) {
+        abandoned.set(true);
+        unwritten.forEach(future -> future.cancel(false));
+        // Parts still deflating stop at their next chunk
+        running.arriveAndAwaitAdvance();
+        for (var future : unwritten) {
+            if (future.state() == Future.State.SUCCESS) {
+                staging.release(future.resultNow().staged());
+            }
+        }
+    }
+
+    private static Deflated deflate(Part part, int level, SheetStorage.Export staging, AtomicBoolean abandoned) {
+        try {
+            var staged = staging.newBuffer();
+            var crc = new CRC32();
+            var size = 0L;
+            long compressedSize;
+            var deflater = new Deflater(level, true);
+            try (var in = part.content().open();
+                 var out = new DeflaterOutputStream(staged.output(), deflater, BUFFER_SIZE)) {
+                var chunk = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    if (abandoned.get()) {
+                        throw new IOException("Workbook write was abandoned");
+                    }
+                    crc.update(chunk, 0, read);
+                    out.write(chunk, 0, read);
+                    size += read;
+                }
+                out.finish();
+                compressedSize = deflater.getBytesWritten();
+            } finally {
+                deflater.end();
+            }
+
+            var entry = new ZipArchiveEntry(part.name());
+            entry.setMethod(ZipEntry.DEFLATED);
+            entry.setCrc(crc.getValue());
+            entry.setSize(size);
+            entry.setCompressedSize(compressedSize);
+            if (part.time() >= 0) {
+                entry.setTime(part.time());
+            }
+            return new Deflated(entry, staged);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to deflate package part " + part.name(), e);
+        }
+    }
+
+    private static Deflated await(CompletableFuture<Deflated> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            switch (e.getCause()) {
+                case UncheckedIOException io -> throw io.getCause();
+                case RuntimeException re -> throw re;
+                case Error error -> throw error;
+                default -> throw new IOException("Failed to deflate package part", e.getCause());
+            }
+        }
+    }
+
+    private static Integer reportLevel(Report report) {
+        var level = report == null ? null : report.getDeflateLevel();
+        if (level != null && !isLevel(level)) {
+            log.warn("Ignoring deflate level {} of report {}", level, report.getName());
+            return null;
+        }
+        return level;
+    }
+
+    private static boolean isLevel(int level) {
+        return level >= Deflater.DEFAULT_COMPRESSION && level <= Deflater.BEST_COMPRESSION;
+    }
+}
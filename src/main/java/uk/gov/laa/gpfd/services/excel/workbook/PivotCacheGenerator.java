@@ -0,0 +1,553 @@
+package uk.gov.laa.gpfd.services.excel.workbook;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Builds the pivot caches of spliced analytics sheets on the server, from the rows of the data
+ * sheets they summarise, instead of leaving them empty for Excel to rebuild when the workbook is
+ * opened.
+ * <p>
+ * When enabled, {@link ReportWorkbook} starts a {@link Cache} for every pivot cache of the template
+ * whose source range is on one of the report's data sheets. The cache sees each row of the range
+ * as the sheet's writer writes it, gives the values of shared fields their shared item index and
+ * writes the cache records to the workbook's {@link SheetStorage}. Caches are built on the threads
+ * filling their sheets, so sheets filled in parallel build their caches in parallel. When the
+ * package is written {@link AnalyticsParts} replaces the template's empty cache with a definition
+ * holding the shared items, the records, and pivot fields that list every item.
+ * <p>
+ * The shared items of the template keep their positions, since the pivot tables refer to them by
+ * index, and items the data does not have are marked unused. A cache whose shared items would go
+ * past {@code maxItems} is abandoned and left for Excel to refresh.
+ * <p>
+ * The cells of a pivot table are not laid out here, so the caches still refresh when the workbook
+ * is opened unless {@code refreshOnLoad} is false. Viewers that read the cache rather than
+ * recalculate, and Excel's field lists and filters, show the data either way.
+ * <p>
+ * Build times are recorded as the {@code gpfd.excel.pivot-cache.build} metric, abandoned caches
+ * as {@code gpfd.excel.pivot-cache.abandoned}.
+ */
+@Slf4j
+@Component
+public class PivotCacheGenerator {
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final int LONG_TEXT = 255;
+    private static final Object MISSING = new Object();
+
+    /**
+     * Writes a part of the package.
+     */
+    @FunctionalInterface
+    public interface PartWriter {
+        void write(Writer out) throws IOException;
+    }
+
+    /**
+     * An error value, such as {@code #N/A}.
+     */
+    private record ErrorValue(String text) {
+    }
+
+    @Getter
+    private final boolean enabled;
+    @Getter
+    private final boolean refreshOnLoad;
+    private final int maxItems;
+    private final Timer buildTimer;
+    private final Counter abandoned;
+
+    public PivotCacheGenerator(@Value("${gpfd.excel.pivot-cache.server-side:false}") boolean enabled,
+                               @Value("${gpfd.excel.pivot-cache.refresh-on-load:true}") boolean refreshOnLoad,
+                               @Value("${gpfd.excel.pivot-cache.max-items:1000000}") int maxItems,
+                               MeterRegistry meterRegistry) {
+        if (maxItems <= 0) {
+            throw new IllegalArgumentException("Pivot cache item limit must be positive");
+        }
+        requireNonNull(meterRegistry, "MeterRegistry cannot be null");
+        this.enabled = enabled;
+        this.refreshOnLoad = refreshOnLoad;
+        this.maxItems = maxItems;
+        this.buildTimer = Timer.builder("gpfd.excel.pivot-cache.build")
+                .description("Time spent building a pivot cache from the rows of its data sheet")
+                .register(meterRegistry);
+        this.abandoned = Counter.builder("gpfd.excel.pivot-cache.abandoned")
+                .description("Pivot caches left for Excel to refresh because they had too many items")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Creates an instance that leaves every pivot cache for Excel to refresh.
+     *
+     * @return a disabled generator
+     */
+    public static PivotCacheGenerator disabled() {
+        return new PivotCacheGenerator(false, true, 1, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Starts building a pivot cache.
+     *
+     * @param source  the data sheet range of the cache
+     * @param storage where the records are kept until the workbook is written
+     * @return the cache, which is given every row of its sheet
+     */
+    Cache start(AnalyticsParts.PivotSource source, SheetStorage.Export storage) {
+        return new Cache(source, storage);
+    }
+
+    /**
+     * A pivot cache being built from the rows of its data sheet.
+     */
+    public final class Cache {
+        private final AnalyticsParts.PivotSource source;
+        private final SheetStorage.Export storage;
+        private final Field[] fields;
+        private SheetStorage.Sheet records;
+        private Writer out;
+        private int recordCount;
+        private int itemCount;
+        private long nanos;
+        private boolean finished;
+        private boolean abandonedCache;
+
+        private Cache(AnalyticsParts.PivotSource source, SheetStorage.Export storage) {
+            this.source = source;
+            this.storage = storage;
+            this.fields = new Field[source.fields().size()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = new Field(source.fields().get(i));
+                itemCount += fields[i].items.size();
+            }
+        }
+
+        /**
+         * Adds a row of the data sheet to the cache when it is in the source range.
+         *
+         * @param rownum the 0-based row number
+         * @param row    the row as it is written
+         * @throws IOException if the record cannot be stored
+         */
+        void add(int rownum, Row row) throws IOException {
+            if (abandonedCache || rownum <= source.firstRow() || rownum > source.lastRow()) {
+                return;
+            }
+            var start = System.nanoTime();
+            if (out == null) {
+                records = storage.newSheet();
+                out = records.writer();
+            }
+            out.write("<r>");
+            for (int i = 0; i < fields.length; i++) {
+                var field = fields[i];
+                var value = value(row.getCell(source.firstColumn() + i), field.date);
+                if (field.shared) {
+                    var index = field.index(value);
+                    if (abandonedCache) {
+                        return;
+                    }
+                    out.write("<x v=\"");
+                    out.write(Integer.toString(index));
+                    out.write("\"/>");
+                } else {
+                    field.observe(value);
+                    write(out, value, false);
+                }
+            }
+            out.write("</r>");
+            recordCount++;
+            nanos += System.nanoTime() - start;
+        }
+
+        /**
+         * Stops adding rows, recording how long the cache took to build.
+         *
+         * @return true if the cache was built, false if it has to be refreshed by Excel
+         * @throws IOException if the records cannot be stored
+         */
+        boolean finish() throws IOException {
+            if (!finished && !abandonedCache) {
+                finished = true;
+                if (out != null) {
+                    out.close();
+                }
+                buildTimer.record(nanos, TimeUnit.NANOSECONDS);
+                log.debug("Built pivot cache over '{}' with {} records in {} ms", source.sheet(), recordCount,
+                        TimeUnit.NANOSECONDS.toMillis(nanos));
+            }
+            return !abandonedCache;
+        }
+
+        /**
+         * Gets the number of records in the cache.
+         *
+         * @return the record count
+         */
+        int recordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Checks whether the cache is still refreshed when the workbook is opened.
+         *
+         * @return the generator's {@code refreshOnLoad}
+         */
+        boolean isRefreshOnLoad() {
+            return refreshOnLoad;
+        }
+
+        /**
+         * Gets the number of cache fields.
+         *
+         * @return the field count
+         */
+        int fieldCount() {
+            return fields.length;
+        }
+
+        /**
+         * Checks whether the records of a field refer to shared items.
+         *
+         * @param field the field index
+         * @return true when the field has shared items
+         */
+        boolean isShared(int field) {
+            return fields[field].shared;
+        }
+
+        /**
+         * Gets the number of shared items of a field.
+         *
+         * @param field the field index
+         * @return the item count, 0 when the field is not shared
+         */
+        int itemCount(int field) {
+            return fields[field].shared ? fields[field].items.size() : 0;
+        }
+
+        /**
+         * Checks whether a shared item is a value of some record.
+         *
+         * @param field the field index
+         * @param item  the item index
+         * @return true when the item is in the data
+         */
+        boolean isUsed(int field, int item) {
+            return fields[field].used.get(item);
+        }
+
+        /**
+         * Gets the attributes of the sharedItems element of a field.
+         *
+         * @param field the field index
+         * @return the attributes that differ from their defaults
+         */
+        Map<String, String> sharedItemsAttributes(int field) {
+            return fields[field].attributes();
+        }
+
+        /**
+         * Writes the shared items of a field.
+         *
+         * @param field the field index
+         * @param target the definition being written
+         * @throws IOException if the items cannot be written
+         */
+        void writeSharedItems(int field, Writer target) throws IOException {
+            var items = fields[field];
+            for (int i = 0; i < items.items.size(); i++) {
+                write(target, items.items.get(i), !items.used.get(i));
+            }
+        }
+
+        /**
+         * Writes a part of the package to the cache's storage.
+         *
+         * @param writer writes the part
+         * @return the part's content
+         * @throws IOException if the part cannot be written
+         */
+        ParallelDeflate.Content stage(PartWriter writer) throws IOException {
+            var part = storage.newSheet();
+            try (var target = part.writer()) {
+                writer.write(target);
+            }
+            return part::read;
+        }
+
+        /**
+         * Gets the cache records part.
+         *
+         * @return the part's content
+         */
+        ParallelDeflate.Content records() {
+            return () -> {
+                var header = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                        + "<pivotCacheRecords xmlns=\"" + MAIN_NS + "\" count=\"" + recordCount + "\">";
+                var body = records == null ? InputStream.nullInputStream() : records.read();
+                return new SequenceInputStream(Collections.enumeration(List.of(
+                        new ByteArrayInputStream(header.getBytes(UTF_8)),
+                        body,
+                        new ByteArrayInputStream("</pivotCacheRecords>".getBytes(UTF_8)))));
+            };
+        }
+
+        /**
+         * Gives up on the cache, which Excel then refreshes when the workbook is opened.
+         */
+        private void abandon() {
+            abandonedCache = true;
+            abandoned.increment();
+            log.warn("Pivot cache over '{}' has more than {} items, it will be refreshed when the workbook is opened",
+                    source.sheet(), maxItems);
+            if (records != null) {
+                storage.release(records);
+                records = null;
+                out = null;
+            }
+        }
+
+        /**
+         * A cache field, with its shared items and what kinds of value it has.
+         */
+        private final class Field {
+            private final boolean shared;
+            private final boolean date;
+            private final List<Object> items = new ArrayList<>();
+            private final Map<Object, Integer> indexes = new HashMap<>();
+            private final BitSet used = new BitSet();
+            private boolean string;
+            private boolean number;
+            private boolean integer = true;
+            private boolean dates;
+            private boolean blank;
+            private boolean bool;
+            private boolean error;
+            private boolean longText;
+            private double minValue = Double.POSITIVE_INFINITY;
+            private double maxValue = Double.NEGATIVE_INFINITY;
+            private LocalDateTime minDate;
+            private LocalDateTime maxDate;
+
+            Field(AnalyticsParts.CacheField field) {
+                this.shared = field.shared();
+                this.date = field.date();
+                if (shared) {
+                    for (var item : field.items()) {
+                        var value = parse(item);
+                        // Excel never shares the same value twice, a duplicate keeps the first index
+                        indexes.putIfAbsent(key(value), items.size());
+                        items.add(value);
+                        observe(value);
+                    }
+                }
+            }
+
+            int index(Object value) {
+                var key = key(value);
+                var index = indexes.get(key);
+                if (index == null) {
+                    if (++itemCount > maxItems) {
+                        abandon();
+                        return 0;
+                    }
+                    index = items.size();
+                    indexes.put(key, index);
+                    items.add(value);
+                    observe(value);
+                }
+                used.set(index);
+                return index;
+            }
+
+            void observe(Object value) {
+                switch (value) {
+                    case String text -> {
+                        string = true;
+                        longText |= text.length() > LONG_TEXT;
+                    }
+                    case Double numeric -> {
+                        number = true;
+                        integer &= numeric == Math.rint(numeric);
+                        minValue = Math.min(minValue, numeric);
+                        maxValue = Math.max(maxValue, numeric);
+                    }
+                    case LocalDateTime dateTime -> {
+                        dates = true;
+                        minDate = minDate == null || dateTime.isBefore(minDate) ? dateTime : minDate;
+                        maxDate = maxDate == null || dateTime.isAfter(maxDate) ? dateTime : maxDate;
+                    }
+                    case Boolean _ -> bool = true;
+                    case ErrorValue _ -> error = true;
+                    default -> blank = true;
+                }
+            }
+
+            Map<String, String> attributes() {
+                var attributes = new LinkedHashMap<String, String>();
+                var kinds = (string ? 1 : 0) + (number ? 1 : 0) + (dates ? 1 : 0) + (bool ? 1 : 0) + (error ? 1 : 0);
+                if (!string && !blank && !bool && !error) {
+                    attributes.put("containsSemiMixedTypes", "0");
+                }
+                if (!string && !number && !bool && !error) {
+                    attributes.put("containsNonDate", "0");
+                }
+                if (dates) {
+                    attributes.put("containsDate", "1");
+                }
+                if (!string) {
+                    attributes.put("containsString", "0");
+                }
+                if (blank) {
+                    attributes.put("containsBlank", "1");
+                }
+                if (kinds > 1) {
+                    attributes.put("containsMixedTypes", "1");
+                }
+                if (number) {
+                    attributes.put("containsNumber", "1");
+                    if (integer) {
+                        attributes.put("containsInteger", "1");
+                    }
+                    attributes.put("minValue", number(minValue));
+                    attributes.put("maxValue", number(maxValue));
+                }
+                if (dates) {
+                    attributes.put("minDate", DATE_TIME.format(minDate));
+                    attributes.put("maxDate", DATE_TIME.format(maxDate));
+                }
+                if (shared) {
+                    attributes.put("count", Integer.toString(items.size()));
+                }
+                if (longText) {
+                    attributes.put("longText", "1");
+                }
+                return attributes;
+            }
+        }
+    }
+
+    /**
+     * Reads the value of a cell as the pivot cache holds it.
+     */
+    private static Object value(Cell cell, boolean date) {
+        if (cell == null) {
+            return MISSING;
+        }
+        var type = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+        return switch (type) {
+            case STRING -> cell.getStringCellValue();
+            case NUMERIC -> date
+                    ? DateUtil.getLocalDateTime(cell.getNumericCellValue()).truncatedTo(ChronoUnit.SECONDS)
+                    : normalise(cell.getNumericCellValue());
+            case BOOLEAN -> cell.getBooleanCellValue();
+            case ERROR -> new ErrorValue(FormulaError.forInt(cell.getErrorCellValue()).getString());
+            default -> MISSING;
+        };
+    }
+
+    /**
+     * Reads a shared item of the template.
+     */
+    private static Object parse(AnalyticsParts.CacheItem item) {
+        return switch (item.type()) {
+            case "s" -> item.value();
+            case "n" -> normalise(Double.parseDouble(item.value()));
+            case "d" -> LocalDateTime.parse(item.value()).truncatedTo(ChronoUnit.SECONDS);
+            case "b" -> "1".equals(item.value()) || "true".equals(item.value());
+            case "e" -> new ErrorValue(item.value());
+            default -> MISSING;
+        };
+    }
+
+    private static Double normalise(double value) {
+        // 0.0 and -0.0 are the same item
+        return value == 0 ? 0.0 : value;
+    }
+
+    /**
+     * Gets the key that identifies a shared item. Excel compares text ignoring case, so values
+     * differing only in case share an item.
+     */
+    private static Object key(Object value) {
+        return value instanceof String text ? text.toLowerCase(Locale.ROOT) : value;
+    }
+
+    private static void write(Writer out, Object value, boolean unused) throws IOException {
+        switch (value) {
+            case String text -> element(out, "s", text, unused);
+            case Double numeric -> element(out, "n", number(numeric), unused);
+            case LocalDateTime dateTime -> element(out, "d", DATE_TIME.format(dateTime), unused);
+            case Boolean flag -> element(out, "b", flag ? "1" : "0", unused);
+            case ErrorValue errorValue -> element(out, "e", errorValue.text(), unused);
+            default -> out.write(unused ? "<m u=\"1\"/>" : "<m/>");
+        }
+    }
+
+    private static void element(Writer out, String name, String value, boolean unused) throws IOException {
+        out.write('<');
+        out.write(name);
+        out.write(" v=\"");
+        escape(out, value);
+        out.write(unused ? "\" u=\"1\"/>" : "\"/>");
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    /**
+     * Writes text as an attribute value, dropping characters XML cannot hold.
+     */
+    private static void escape(Writer out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.write("&amp;");
+                case '<' -> out.write("&lt;");
+                case '>' -> out.write("&gt;");
+                case '"' -> out.write("&quot;");
+                case '\n' -> out.write("&#10;");
+                case '\r' -> out.write("&#13;");
+                case '\t' -> out.write("&#9;");
+                default -> {
+                    if (c >= ' ' && c != '\uFFFE' && c != '\uFFFF') {
+                        out.write(c);
+                    }
+                }
+            }
+        }
+    }
+}
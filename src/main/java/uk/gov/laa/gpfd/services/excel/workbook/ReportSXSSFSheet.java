@@ -16,6 +16,11 @@ import java.util.TreeMap;
  * <p>This implementation provides more direct control over row flushing behavior compared to
  * the standard {@link SXSSFSheet}, particularly for memory-constrained environments where
  * precise control over row retention is required.</p>
+ *
+ * <p>A sheet created with direct rows enabled also lets pure data sheets skip the row window
+ * altogether: a single row from {@link #createDirectRow()} is refilled for every data row and
+ * written straight to the sheet's temporary file with {@link #writeDirectRow(int, SXSSFRow)}, so no
+ * {@link SXSSFRow} or cell objects are created, boxed into the rows map or flushed per data row.</p>
  */
 public class ReportSXSSFSheet extends SXSSFSheet {
 
@@ -47,6 +52,8 @@ public class ReportSXSSFSheet extends SXSSFSheet {
         }
     }
 
+    private final boolean directRows;
+
     /**
      * Creates a new ReportSXSSFSheet backed by the specified XSSFSheet.
      *
@@ -55,7 +62,61 @@ public class ReportSXSSFSheet extends SXSSFSheet {
      * @throws IOException if the sheet cannot be created
      */
     public ReportSXSSFSheet(SXSSFWorkbook workbook, XSSFSheet xSheet) throws IOException {
+        this(workbook, xSheet, false);
+    }
+
+    /**
+     * Creates a new ReportSXSSFSheet backed by the specified XSSFSheet.
+     *
+     * @param workbook   the parent workbook
+     * @param xSheet     the backing XSSFSheet
+     * @param directRows whether data rows may be written with {@link #writeDirectRow(int, SXSSFRow)}
+     * @throws IOException if the sheet cannot be created
+     */
+    public ReportSXSSFSheet(SXSSFWorkbook workbook, XSSFSheet xSheet, boolean directRows) throws IOException {
         super(workbook, xSheet);
+        this.directRows = directRows;
+    }
+
+    /**
+     * Returns whether data rows should be written with {@link #writeDirectRow(int, SXSSFRow)}.
+     *
+     * @return true if direct rows are enabled for this sheet
+     */
+    public boolean isDirectRows() {
+        return directRows;
+    }
+
+    /**
+     * Creates a row that is not held by the sheet, to be refilled and passed to
+     * {@link #writeDirectRow(int, SXSSFRow)} for every data row. Rows already created through
+     * {@link #createRow(int)}, such as the header, are flushed first so direct rows follow them.
+     *
+     * @return a detached row
+     * @throws IOException if an error occurs while flushing the existing rows
+     */
+    public SXSSFRow createDirectRow() throws IOException {
+        var rows = getRows();
+        while (!rows.isEmpty()) {
+            flushOneRow(rows);
+        }
+        return new SXSSFRow(this);
+    }
+
+    /**
+     * Writes a row from {@link #createDirectRow()} to the sheet's temporary file as row
+     * {@code rownum}. The row is not kept, so it can be refilled for the next data row.
+     *
+     * @param rownum the 0-based row index, after every row already written
+     * @param row    the row to write
+     * @throws IOException if an error occurs while writing the row
+     * @throws IllegalArgumentException if the row number has already been written
+     */
+    public void writeDirectRow(int rownum, SXSSFRow row) throws IOException {
+        if (rownum <= _writer.getLastFlushedRow()) {
+            throw new IllegalArgumentException("Row " + rownum + " has already been written to the sheet");
+        }
+        _writer.writeRow(rownum, row);
     }
 
     /**
@@ -6,12 +6,15 @@ import org.apache.poi.ss.usermodel.FormulaError;
 import org.apache.poi.ss.usermodel.RichTextString;
 import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.streaming.SXSSFRow;
 import org.apache.poi.xssf.streaming.SheetDataWriter;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
 import uk.gov.laa.gpfd.model.ReportQuery;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * A high-performance Excel sheet data writer that extends {@link SheetDataWriter} with optimized
@@ -19,9 +22,9 @@ import java.lang.reflect.Field;
  *
  * <p>This implementation provides significant performance improvements for writing Excel files by:</p>
  * <ul>
- *   <li>Using direct memory access to internal writer state</li>
- *   <li>Pre-caching common XML tags and values</li>
- *   <li>Implementing optimized number formatting</li>
+ *   <li>Tracking the row number itself rather than reading internal writer state</li>
+ *   <li>Pre-caching cell references and styles per column, once per sheet</li>
+ *   <li>Implementing optimized number formatting into reused buffers</li>
  *   <li>Providing efficient string escaping</li>
  * </ul>
  * <p><strong>Formatting Approach:</strong></p>
@@ -32,7 +35,7 @@ import java.lang.reflect.Field;
  * <ol>
  * <li>Determine the column index of each cell being written</li>
  * <li>Apply formatting based on pre-defined column styles</li>
- * <li>Maintain a column-to-style mapping for efficient lookup</li>
+ * <li>Resolve each column's style from the {@link StyleManager} the first time the column is written</li>
  * </ol>
  * <p>This approach provides several advantages:</p>
  * <ul>
@@ -43,22 +46,17 @@ import java.lang.reflect.Field;
  * </ul>
  * <p>Note that this design assumes formatting consistency within columns, which is typical
  * for most data-oriented Excel files.</p>
+ * <p>A writer created with a {@link SheetStorage.Sheet} keeps the sheet's XML there rather than in
+ * a temporary file of its own.</p>
+ * <p>Every row written is also given to the {@link PivotCacheGenerator.Cache pivot caches} built
+ * from the sheet, so they are filled on the same thread as the sheet.</p>
  */
 public final class ReportSheetDataWriter extends SheetDataWriter {
 
     /**
-     * Cached reflection field for the row number field.
+     * Longest text of a double written by {@link StringBuilder#append(double)}, or of an int.
      */
-    private static final Field ROWNUM_FIELD;
-
-    static {
-        try {
-            ROWNUM_FIELD = SheetDataWriter.class.getDeclaredField("_rownum");
-            ROWNUM_FIELD.setAccessible(true);
-        } catch (NoSuchFieldException e) {
-            throw new ExceptionInInitializerError(e);
-        }
-    }
+    private static final int MAX_NUMBER_LENGTH = 32;
 
     /**
      * Shared strings table reference (null if using inline strings).
@@ -66,6 +64,27 @@ public final class ReportSheetDataWriter extends SheetDataWriter {
     private final SharedStringsTable _sharedStringSource;
     private final ReportQuery report;
     private final StyleManager styleManager;
+    private final SheetStorage.Sheet storage;
+    private final List<PivotCacheGenerator.Cache> pivotCaches;
+
+    /**
+     * Per column {@code <c r="AB} openings and {@code " s="12"} closings of the cell reference,
+     * resolved the first time each column is written.
+     */
+    private char[][] cellPrefixes = new char[0][];
+    private char[][] cellSuffixes = new char[0][];
+
+    /**
+     * Row number of the row being written, formatted once per row for every cell in it.
+     */
+    private final char[] rowDigits = new char[MAX_NUMBER_LENGTH];
+    private int rowDigitsStart;
+
+    /**
+     * Reused to format numeric values without creating a String per cell.
+     */
+    private final StringBuilder number = new StringBuilder(MAX_NUMBER_LENGTH);
+    private final char[] numberChars = new char[MAX_NUMBER_LENGTH];
 
     /**
      * Creates a new ReportSheetDataWriter with the specified shared strings table.
@@ -80,14 +99,81 @@ public final class ReportSheetDataWriter extends SheetDataWriter {
         this._sharedStringSource = sharedStringSource;
         this.report = report;
         this.styleManager = styleManager;
+        this.storage = null;
+        this.pivotCaches = List.of();
+        this.rowDigitsStart = formatInt(1, rowDigits);
+    }
+
+    /**
+     * Creates a new ReportSheetDataWriter that keeps the sheet's XML in the given storage.
+     *
+     * @param sharedStringSource the shared strings table to use
+     * @param report the report query we are getting data for
+     * @param styleManager the styleManager to use for this workbook
+     * @param storage where the sheet's XML is written
+     * @throws IOException if the writer cannot be initialized
+     */
+    public ReportSheetDataWriter(SharedStringsTable sharedStringSource, ReportQuery report, StyleManager styleManager,
+                                 SheetStorage.Sheet storage) throws IOException {
+        this(sharedStringSource, report, styleManager, storage, List.of());
+    }
+
+    /**
+     * Creates a new ReportSheetDataWriter that keeps the sheet's XML in the given storage and
+     * builds pivot caches from the rows it writes.
+     *
+     * @param sharedStringSource the shared strings table to use
+     * @param report the report query we are getting data for
+     * @param styleManager the styleManager to use for this workbook
+     * @param storage where the sheet's XML is written
+     * @param pivotCaches the pivot caches over this sheet
+     * @throws IOException if the writer cannot be initialized
+     */
+    public ReportSheetDataWriter(SharedStringsTable sharedStringSource, ReportQuery report, StyleManager styleManager,
+                                 SheetStorage.Sheet storage, List<PivotCacheGenerator.Cache> pivotCaches) throws IOException {
+        super(storage.writer());
+        this._sharedStringSource = sharedStringSource;
+        this.report = report;
+        this.styleManager = styleManager;
+        this.storage = storage;
+        this.pivotCaches = List.copyOf(pivotCaches);
+        this.rowDigitsStart = formatInt(1, rowDigits);
+    }
+
+    /**
+     * Reads the sheet's XML back, from its storage when it has one.
+     *
+     * @return the sheet's XML
+     * @throws IOException if the XML cannot be read
+     */
+    @Override
+    public InputStream getWorksheetXMLInputStream() throws IOException {
+        return storage == null ? super.getWorksheetXMLInputStream() : storage.read();
+    }
+
+    /**
+     * Writes a row, keeping its number for the cell references written by {@link #writeCell}, and
+     * adds it to the pivot caches over the sheet.
+     *
+     * @param rownum the row index (0-based)
+     * @param row    the row to write
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeRow(int rownum, SXSSFRow row) throws IOException {
+        rowDigitsStart = formatInt(rownum + 1, rowDigits);
+        super.writeRow(rownum, row);
+        for (var cache : pivotCaches) {
+            cache.add(rownum, row);
+        }
     }
 
     /**
      * Writes a cell to the output stream with optimized formatting.
      *
-     * <p><strong>Performance Note:</strong> This method employs reflection to read the private
-     * {@code _rownum} field from the parent {@link SheetDataWriter} to achieve optimal performance
-     * in high-volume spreadsheet generation scenarios.</p>
+     * <p><strong>Performance Note:</strong> This method is called for every cell of every row, so
+     * it writes the cell reference and style from arrays prepared once per column, and formats
+     * numbers into reused buffers, rather than creating objects for each cell.</p>
      *
      * @param columnIndex the column index (0-based)
      * @param cell        the cell to write
@@ -102,19 +188,12 @@ public final class ReportSheetDataWriter extends SheetDataWriter {
         if (cell == null) {
             return;
         }
-        int rownum;
-        try {
-            rownum = (int) ROWNUM_FIELD.get(this);
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException("Failed to read _rownum field", e);
-        }
-        String ref = new CellReference(rownum, columnIndex).formatAsString();
-        _out.write("<c");
-        writeXml("r", ref);
-        int columnStyle = styleManager.getColumnStyle(columnIndex, report.getExcelSheet().getName());
-        if (columnStyle != -1) {
-            writeXml("s", Integer.toString(columnStyle));
+        if (columnIndex >= cellPrefixes.length) {
+            prepareColumns(columnIndex);
         }
+        _out.write(cellPrefixes[columnIndex]);
+        _out.write(rowDigits, rowDigitsStart, rowDigits.length - rowDigitsStart);
+        _out.write(cellSuffixes[columnIndex]);
 
         // The following code replicates org.apache.poi.xssf.streaming.SheetDataWriter.writeCell internals
         CellType cellType = cell.getCellType();
@@ -148,7 +227,7 @@ public final class ReportSheetDataWriter extends SheetDataWriter {
                         double nval = cell.getNumericCellValue();
                         if (!Double.isNaN(nval)) {
                             _out.write("<v>");
-                            _out.write(Double.toString(nval));
+                            writeDouble(nval);
                             _out.write("</v>");
                         }
                         break;
@@ -186,32 +265,28 @@ public final class ReportSheetDataWriter extends SheetDataWriter {
 
                     writeXml("t", STCellType.S.toString());
                     _out.write("><v>");
-                    _out.write(String.valueOf(sRef));
+                    writeInt(sRef);
                     _out.write("</v>");
                 } else {
-                    writeXml("t", "inlineStr");
-                    _out.write("><is><t");
-                    if (checkLeadingTrailingSpaces(cell.getStringCellValue())) {
-                        writeXml("xml:space", "preserve");
+                    String value = cell.getStringCellValue();
+                    if (checkLeadingTrailingSpaces(value)) {
+                        _out.write(" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+                    } else {
+                        _out.write(" t=\"inlineStr\"><is><t>");
                     }
-                    _out.write(">");
-                    outputEscapedString(cell.getStringCellValue());
+                    outputEscapedString(value);
                     _out.write("</t></is>");
                 }
                 break;
             }
             case NUMERIC: {
-                writeXml("t", "n");
-                _out.write("><v>");
-                _out.write(Double.toString(cell.getNumericCellValue()));
+                _out.write(" t=\"n\"><v>");
+                writeDouble(cell.getNumericCellValue());
                 _out.write("</v>");
                 break;
             }
             case BOOLEAN: {
-                writeXml("t", "b");
-                _out.write("><v>");
-                _out.write(cell.getBooleanCellValue() ? "1" : "0");
-                _out.write("</v>");
+                _out.write(cell.getBooleanCellValue() ? " t=\"b\"><v>1</v>" : " t=\"b\"><v>0</v>");
                 break;
             }
             case ERROR: {
@@ -230,6 +305,55 @@ public final class ReportSheetDataWriter extends SheetDataWriter {
         _out.write("</c>");
     }
 
+    /**
+     * Resolves the cell reference and style markup of every column up to the given one.
+     */
+    private void prepareColumns(int columnIndex) {
+        int prepared = cellPrefixes.length;
+        int size = Math.max(columnIndex + 1, prepared * 2);
+        cellPrefixes = Arrays.copyOf(cellPrefixes, size);
+        cellSuffixes = Arrays.copyOf(cellSuffixes, size);
+        String sheetName = report == null ? null : report.getExcelSheet().getName();
+        for (int column = prepared; column < size; column++) {
+            cellPrefixes[column] = ("<c r=\"" + CellReference.convertNumToColString(column)).toCharArray();
+            int columnStyle = sheetName == null ? -1 : styleManager.getColumnStyle(column, sheetName);
+            cellSuffixes[column] = (columnStyle == -1 ? "\"" : "\" s=\"" + columnStyle + "\"").toCharArray();
+        }
+    }
+
+    /**
+     * Writes a number as {@link Double#toString(double)} would, without creating the String.
+     */
+    private void writeDouble(double value) throws IOException {
+        number.setLength(0);
+        number.append(value);
+        int length = number.length();
+        number.getChars(0, length, numberChars, 0);
+        _out.write(numberChars, 0, length);
+    }
+
+    /**
+     * Writes a non-negative int without creating a String.
+     */
+    private void writeInt(int value) throws IOException {
+        int start = formatInt(value, numberChars);
+        _out.write(numberChars, start, numberChars.length - start);
+    }
+
+    /**
+     * Formats a non-negative int into the end of the buffer.
+     *
+     * @return the index of the first digit
+     */
+    private static int formatInt(int value, char[] buffer) {
+        int position = buffer.length;
+        do {
+            buffer[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        return position;
+    }
+
     /**
      * Replicates private org.apache.poi.xssf.streaming.SheetDataWriter.writeAttribute internals
      */
@@ -1,14 +1,29 @@
 package uk.gov.laa.gpfd.services.excel.workbook;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.poi.openxml4j.util.ZipArchiveThresholdInputStream;
+import org.apache.poi.openxml4j.util.ZipEntrySource;
 import org.apache.poi.xssf.streaming.SXSSFSheet;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.streaming.SheetDataWriter;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import uk.gov.laa.gpfd.model.Report;
 import uk.gov.laa.gpfd.model.ReportQuery;
+import uk.gov.laa.gpfd.services.excel.workbook.AnalyticsParts.Splice;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -17,6 +32,19 @@ import java.util.Objects;
  * additional functionality for report generation. This class provides optimized sheet creation
  * and maintains bidirectional mappings between streaming sheets (SXSSF) and their backing
  * XSSF sheets using low-level memory operations.
+ * <p>
+ * Analytics sheets compiled into {@link AnalyticsParts} can be spliced into the package as it is
+ * written, see {@link #spliceAnalytics(AnalyticsParts, Map)}.
+ * <p>
+ * Sheet data is kept in a {@link SheetStorage}, which deletes it when the workbook is closed. The
+ * package is written by {@link ParallelDeflate} when it applies to the report, otherwise by POI.
+ * <p>
+ * The pivot caches of the analytics sheets are built from the rows of their data sheets by the
+ * {@link PivotCacheGenerator} when it is enabled and the data sheets are created after the
+ * analytics are spliced.
+ * <p>
+ * Data sheets that outgrow Excel's row limit continue in rollover sheets, see
+ * {@link #createRolloverSheet(String, String)}, which are kept next to the sheet they continue.
  */
 public class ReportWorkbook extends SXSSFWorkbook {
     private static final String SX_FROM_X_FIELD = "_sxFromXHash";
@@ -25,6 +53,15 @@ public class ReportWorkbook extends SXSSFWorkbook {
     private static final Field X_FROM_SX_FIELD_REF;
     private final Report report;
     private final StyleManager styleManager;
+    private final boolean directRows;
+    private final SheetStorage.Export storage;
+    private final ParallelDeflate deflate;
+    private final PivotCacheGenerator pivotCacheGenerator;
+    private AnalyticsParts analytics;
+    private Map<String, Integer> analyticsOrder = Map.of();
+    private final Map<String, PivotCacheGenerator.Cache> pivotCaches = new LinkedHashMap<>();
+    private final Map<String, List<PivotCacheGenerator.Cache>> sheetPivotCaches = new HashMap<>();
+    private final Map<String, List<String>> rolloverSheets = new LinkedHashMap<>();
 
     static {
         try {
@@ -37,9 +74,22 @@ public class ReportWorkbook extends SXSSFWorkbook {
         }
     }
 
-    public ReportWorkbook(Report report, StyleManager styleManager) {
-        this.report = report;
-        this.styleManager = styleManager;
+    private ReportWorkbook(Builder builder) {
+        this.report = builder.report;
+        this.styleManager = Objects.requireNonNullElseGet(builder.styleManager, StyleManager::create);
+        this.directRows = builder.directRows;
+        this.storage = Objects.requireNonNull(builder.sheetStorage, "Sheet storage must not be null").open();
+        this.deflate = Objects.requireNonNull(builder.deflate, "Parallel deflate must not be null");
+        this.pivotCacheGenerator = Objects.requireNonNull(builder.pivotCaches, "Pivot cache generator must not be null");
+    }
+
+    /**
+     * Gets the styles of this workbook.
+     *
+     * @return the style manager
+     */
+    public StyleManager getStyleManager() {
+        return styleManager;
     }
 
     /**
@@ -66,6 +116,7 @@ public class ReportWorkbook extends SXSSFWorkbook {
     }
 
     ReportQuery reportQuery;
+    private List<PivotCacheGenerator.Cache> newSheetPivotCaches = List.of();
 
     /**
      * Creates and registers a new SXSSFSheet from the specified XSSFSheet.
@@ -74,14 +125,20 @@ public class ReportWorkbook extends SXSSFWorkbook {
      * @return the newly created SXSSFSheet
      * @throws IllegalStateException if sheet creation fails
      */
-    private SXSSFSheet createAndRegisterSheet(XSSFSheet xSheet) {
+    private synchronized SXSSFSheet createAndRegisterSheet(XSSFSheet xSheet) {
+        return createAndRegisterSheet(xSheet, xSheet.getSheetName());
+    }
+
+    private SXSSFSheet createAndRegisterSheet(XSSFSheet xSheet, String querySheetName) {
         try {
             reportQuery = report.extractAllMappings()
                     .stream()
-                    .filter(e -> Objects.equals(e.getExcelSheet().getName(), xSheet.getSheetName()))
+                    .filter(e -> Objects.equals(e.getExcelSheet().getName(), querySheetName))
                     .findFirst()
                     .orElse(null);
-            var sxSheet = new ReportSXSSFSheet(this, xSheet);
+            newSheetPivotCaches = sheetPivotCaches.getOrDefault(xSheet.getSheetName(), List.of());
+            // Sheets without a query of their own, such as analytics sheets, keep the POI row window
+            var sxSheet = new ReportSXSSFSheet(this, xSheet, directRows && reportQuery != null);
             registerMapping(sxSheet, xSheet);
             return sxSheet;
         } catch (IOException ioe) {
@@ -89,6 +146,42 @@ public class ReportWorkbook extends SXSSFWorkbook {
         }
     }
 
+    /**
+     * Creates a sheet that continues the rows of a data sheet which has reached Excel's row limit.
+     * Its cells are styled as the data sheet's are, and it is written straight after the data sheet
+     * and any earlier rollover sheets of it. Pivot caches built by the {@link PivotCacheGenerator}
+     * only hold the rows of the data sheet itself.
+     *
+     * @param dataSheetName the name of the data sheet being continued
+     * @param sheetName     the name of the new sheet
+     * @return the newly created SXSSFSheet
+     * @throws IllegalStateException if sheet creation fails
+     */
+    public synchronized SXSSFSheet createRolloverSheet(String dataSheetName, String sheetName) {
+        var sxSheet = createAndRegisterSheet(_wb.createSheet(sheetName), dataSheetName);
+        rolloverSheets.computeIfAbsent(dataSheetName, _ -> new ArrayList<>()).add(sheetName);
+        return sxSheet;
+    }
+
+    /**
+     * Adds the rollover sheets of this workbook to a sheet order, each one straight after the sheet
+     * it continues, moving the sheets after them along.
+     *
+     * @param sheetOrder the position of each sheet by name
+     * @return the position of each sheet including rollover sheets, in position order
+     */
+    public synchronized LinkedHashMap<String, Integer> withRolloverSheets(Map<String, Integer> sheetOrder) {
+        var expanded = new LinkedHashMap<String, Integer>();
+        var shift = 0;
+        for (var entry : sheetOrder.entrySet().stream().sorted(Map.Entry.comparingByValue()).toList()) {
+            expanded.put(entry.getKey(), entry.getValue() + shift);
+            for (var rollover : rolloverSheets.getOrDefault(entry.getKey(), List.of())) {
+                expanded.put(rollover, entry.getValue() + ++shift);
+            }
+        }
+        return expanded;
+    }
+
     /**
      * Creates a specialized SheetDataWriter for this workbook.
      *
@@ -97,7 +190,252 @@ public class ReportWorkbook extends SXSSFWorkbook {
      */
     @Override
     protected SheetDataWriter createSheetDataWriter() throws IOException {
-        return new ReportSheetDataWriter(_sharedStringSource, reportQuery, styleManager);
+        return new ReportSheetDataWriter(_sharedStringSource, reportQuery, styleManager, storage.newSheet(), newSheetPivotCaches);
+    }
+
+    /**
+     * Gets the bytes of sheet data this workbook holds in temporary files.
+     *
+     * @return the bytes in use
+     */
+    public long getSheetBytesInUse() {
+        return storage.bytesInUse();
+    }
+
+    /**
+     * Closes the workbook and deletes its sheet data.
+     *
+     * @throws IOException if the backing workbook cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            storage.close();
+        }
+    }
+
+    /**
+     * Deletes the sheet data of this workbook, which can no longer be written afterwards.
+     *
+     * @return always true, files that cannot be deleted are logged
+     */
+    @Override
+    public boolean dispose() {
+        storage.close();
+        return true;
+    }
+
+    /**
+     * Adds the analytics sheets to the package when the workbook is written, then puts every sheet
+     * in the given order. The analytics sheets are never part of the workbook model, so they cannot
+     * be looked up or changed through it.
+     * <p>
+     * When the pivot cache generator is enabled, the pivot caches over data sheets that have not
+     * been created yet are built from the rows written to them.
+     *
+     * @param analytics  the compiled analytics sheets of the report's template
+     * @param sheetOrder the position of each sheet by name
+     */
+    public void spliceAnalytics(AnalyticsParts analytics, Map<String, Integer> sheetOrder) {
+        this.analytics = Objects.requireNonNull(analytics, "Analytics parts must not be null");
+        this.analyticsOrder = new LinkedHashMap<>(Objects.requireNonNull(sheetOrder, "Sheet order must not be null"));
+        pivotCaches.clear();
+        sheetPivotCaches.clear();
+        if (!pivotCacheGenerator.isEnabled()) {
+            return;
+        }
+        for (var source : analytics.pivotSources()) {
+            // Rows already written to a sheet cannot be added, so its caches are left to Excel
+            if (getSheet(source.sheet()) == null) {
+                var cache = pivotCacheGenerator.start(source, storage);
+                pivotCaches.put(source.cachePart(), cache);
+                sheetPivotCaches.computeIfAbsent(source.sheet(), _ -> new ArrayList<>()).add(cache);
+            }
+        }
+    }
+
+    /**
+     * Writes the package, with the analytics sheets spliced in when there are any.
+     *
+     * @param zipEntrySource the package written by the backing XSSF workbook
+     * @param out            the stream to write the workbook to
+     * @throws IOException if the package cannot be read or written
+     */
+    @Override
+    protected void injectData(ZipEntrySource zipEntrySource, OutputStream out) throws IOException {
+        var source = zipEntrySource;
+        if (analytics != null) {
+            var built = new HashMap<String, PivotCacheGenerator.Cache>();
+            for (var cache : pivotCaches.entrySet()) {
+                if (cache.getValue().finish()) {
+                    built.put(cache.getKey(), cache.getValue());
+                }
+            }
+            var splice = analytics.splice(name -> read(zipEntrySource, name), withRolloverSheets(analyticsOrder), built);
+            // POI copies the size of every entry, parallel deflate works it out as it writes them
+            source = new SplicedZipEntrySource(zipEntrySource, splice, !deflate.appliesTo(report));
+        }
+        if (!deflate.appliesTo(report)) {
+            super.injectData(source, out);
+            return;
+        }
+        try {
+            deflate.write(parts(source), deflate.levelOf(report), storage, out);
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Lists the parts of the package, with the rows of each streamed sheet put into its worksheet
+     * part as {@link SXSSFWorkbook} does. Sheet data is only read when its part is deflated.
+     */
+    private List<ParallelDeflate.Part> parts(ZipEntrySource source) throws IOException {
+        var worksheets = new HashMap<String, SXSSFSheet>();
+        for (int i = 0; i < getNumberOfSheets(); i++) {
+            worksheets.put(_wb.getSheetAt(i).getPackagePart().getPartName().getName().substring(1), getSheetAt(i));
+        }
+
+        var parts = new ArrayList<ParallelDeflate.Part>();
+        for (var entries = source.getEntries(); entries.hasMoreElements(); ) {
+            var entry = entries.nextElement();
+            var streamed = source instanceof SplicedZipEntrySource spliced ? spliced.streamed(entry.getName()) : null;
+            if (streamed != null) {
+                parts.add(new ParallelDeflate.Part(entry.getName(), entry.getTime(), streamed));
+                continue;
+            }
+            var content = read(source, entry);
+            var sheet = worksheets.get(entry.getName());
+            parts.add(new ParallelDeflate.Part(entry.getName(), entry.getTime(), sheet == null
+                    ? () -> new ByteArrayInputStream(content)
+                    : () -> injectWorksheet(content, sheet.getWorksheetXMLInputStream())));
+        }
+        return parts;
+    }
+
+    /**
+     * Puts the rows of a streamed sheet into the sheetData element of its worksheet part, after any
+     * rows the part already has.
+     */
+    private static InputStream injectWorksheet(byte[] worksheetPart, InputStream rows) throws IOException {
+        var xml = new String(worksheetPart, StandardCharsets.UTF_8);
+        String head;
+        String tail;
+        var empty = xml.indexOf("<sheetData/>");
+        if (empty >= 0) {
+            head = xml.substring(0, empty) + "<sheetData>";
+            tail = "</sheetData>" + xml.substring(empty + "<sheetData/>".length());
+        } else {
+            var end = xml.indexOf("</sheetData>");
+            if (end < 0) {
+                rows.close();
+                throw new IOException("Worksheet part has no sheetData element");
+            }
+            head = xml.substring(0, end);
+            tail = xml.substring(end);
+        }
+        return new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(head.getBytes(StandardCharsets.UTF_8)),
+                rows,
+                new ByteArrayInputStream(tail.getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    private static byte[] read(ZipEntrySource source, String name) throws IOException {
+        var entry = source.getEntry(name);
+        return entry == null ? null : read(source, entry);
+    }
+
+    private static byte[] read(ZipEntrySource source, ZipArchiveEntry entry) throws IOException {
+        try (var input = source.getInputStream(entry)) {
+            // The parts were just written by POI, as in SXSSFWorkbook they are not checked for zip bombs
+            if (input instanceof ZipArchiveThresholdInputStream threshold) {
+                threshold.setGuardState(false);
+            }
+            return input.readAllBytes();
+        }
+    }
+
+    /**
+     * A package with some entries replaced and others appended. Streamed entries are read from
+     * their content each time they are opened.
+     */
+    private static final class SplicedZipEntrySource implements ZipEntrySource {
+        private final ZipEntrySource source;
+        private final Map<String, byte[]> contents = new LinkedHashMap<>();
+        private final Map<String, ParallelDeflate.Content> streamed;
+        private final Map<String, ZipArchiveEntry> added = new LinkedHashMap<>();
+
+        SplicedZipEntrySource(ZipEntrySource source, Splice splice, boolean sized) throws IOException {
+            this.source = source;
+            this.contents.putAll(splice.replaced());
+            this.contents.putAll(splice.added());
+            this.streamed = splice.streamed();
+            for (var part : splice.added().entrySet()) {
+                var content = streamed.get(part.getKey());
+                if (content == null) {
+                    added.put(part.getKey(), entry(part.getKey(), part.getValue()));
+                } else {
+                    var entry = new ZipArchiveEntry(part.getKey());
+                    if (sized) {
+                        try (var input = content.open()) {
+                            entry.setSize(input.transferTo(OutputStream.nullOutputStream()));
+                        }
+                    }
+                    added.put(part.getKey(), entry);
+                }
+            }
+        }
+
+        ParallelDeflate.Content streamed(String name) {
+            return streamed.get(name);
+        }
+
+        @Override
+        public Enumeration<? extends ZipArchiveEntry> getEntries() {
+            var entries = new ArrayList<ZipArchiveEntry>();
+            for (var iterator = source.getEntries(); iterator.hasMoreElements(); ) {
+                var entry = iterator.nextElement();
+                var content = contents.get(entry.getName());
+                // Replaced entries need their new size, POI copies it to the written entry
+                entries.add(content == null ? entry : entry(entry.getName(), content));
+            }
+            entries.addAll(added.values());
+            return Collections.enumeration(entries);
+        }
+
+        @Override
+        public ZipArchiveEntry getEntry(String path) {
+            var entry = added.get(path);
+            return entry != null ? entry : source.getEntry(path);
+        }
+
+        @Override
+        public InputStream getInputStream(ZipArchiveEntry entry) throws IOException {
+            var streamedContent = streamed.get(entry.getName());
+            if (streamedContent != null) {
+                return streamedContent.open();
+            }
+            var content = contents.get(entry.getName());
+            return content != null ? new ByteArrayInputStream(content) : source.getInputStream(entry);
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return source.isClosed();
+        }
+
+        private static ZipArchiveEntry entry(String name, byte[] content) {
+            var entry = new ZipArchiveEntry(name);
+            entry.setSize(content.length);
+            return entry;
+        }
     }
 
     /**
@@ -129,4 +467,78 @@ public class ReportWorkbook extends SXSSFWorkbook {
             throw new IllegalStateException("Failed to update sheet mapping for field: " + field.getName(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Builds a {@link ReportWorkbook}. Only the report is needed, every collaborator left unset is
+     * disabled: sheet data is kept without quotas, the package is written by POI, pivot caches are
+     * left to Excel, and the workbook gets styles of its own.
+     */
+    public static final class Builder {
+        private Report report;
+        private StyleManager styleManager;
+        private boolean directRows = false;
+        private SheetStorage sheetStorage = SheetStorage.unbounded();
+        private ParallelDeflate deflate = ParallelDeflate.disabled();
+        private PivotCacheGenerator pivotCaches = PivotCacheGenerator.disabled();
+
+        /**
+         * @param report the report the sheets are created for
+         * @return this builder
+         */
+        public Builder report(Report report) {
+            this.report = report;
+            return this;
+        }
+
+        /**
+         * @param styleManager the styles of the workbook, never shared with another workbook, or
+         *                     null for a new one
+         * @return this builder
+         */
+        public Builder withStyleManager(StyleManager styleManager) {
+            this.styleManager = styleManager;
+            return this;
+        }
+
+        /**
+         * @param directRows whether sheets holding report query data write their rows directly, see
+         *                   {@link ReportSXSSFSheet#createDirectRow()}
+         * @return this builder
+         */
+        public Builder withDirectRows(boolean directRows) {
+            this.directRows = directRows;
+            return this;
+        }
+
+        /**
+         * @param sheetStorage where the data of the sheets is kept until the workbook is written
+         * @return this builder
+         */
+        public Builder withSheetStorage(SheetStorage sheetStorage) {
+            this.sheetStorage = sheetStorage;
+            return this;
+        }
+
+        /**
+         * @param deflate compresses the package parts when it applies to the report
+         * @return this builder
+         */
+        public Builder withParallelDeflate(ParallelDeflate deflate) {
+            this.deflate = deflate;
+            return this;
+        }
+
+        /**
+         * @param pivotCaches builds the pivot caches of spliced analytics sheets
+         * @return this builder
+         */
+        public Builder withPivotCacheGenerator(PivotCacheGenerator pivotCaches) {
+            this.pivotCaches = pivotCaches;
+            return this;
+        }
+
+        public ReportWorkbook build() {
+            return new ReportWorkbook(this);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package uk.gov.laa.gpfd.services.excel.workbook;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Temporary storage for the sheet data of streamed workbooks, used by {@link ReportWorkbook}
+ * instead of the files {@link org.apache.poi.xssf.streaming.SXSSFWorkbook} leaves in the system
+ * temporary directory.
+ * <p>
+ * Each sheet's XML is kept on the heap until it reaches {@code memoryBytes}, then moves to a file
+ * under the configured directory, gzip compressed when enabled. Package parts that are already
+ * compressed, see {@link ParallelDeflate}, are staged the same way without the gzip layer. The
+ * bytes written to files are limited per export and across all exports, a write past either quota
+ * fails the export with a {@link QuotaExceededException}.
+ * <p>
+ * The files of an export are deleted when its {@link Export} is closed, which the workbook does
+ * when it is closed, so they are removed whether the download completes, fails or the client
+ * disconnects. Files left in a configured directory by a previous process are deleted at startup.
+ * <p>
+ * Bytes held in temporary files are published as the {@code gpfd.excel.sheet-storage.bytes} gauge.
+ */
+@Slf4j
+@Component
+public class SheetStorage {
+    private static final String FILE_PREFIX = "gpfd-sheet-";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final SheetStorage UNBOUNDED =
+            new SheetStorage("", 1024 * 1024, false, Long.MAX_VALUE, Long.MAX_VALUE, new SimpleMeterRegistry());
+
+    private final Path directory;
+    private final int memoryBytes;
+    private final boolean compress;
+    private final long exportQuotaBytes;
+    private final long totalQuotaBytes;
+    private final AtomicLong bytes = new AtomicLong();
+
+    public SheetStorage(@Value("${gpfd.excel.sheet-storage.directory:}") String directory,
+                        @Value("${gpfd.excel.sheet-storage.memory-bytes:1048576}") int memoryBytes,
+                        @Value("${gpfd.excel.sheet-storage.compress:true}") boolean compress,
+                        @Value("${gpfd.excel.sheet-storage.export-quota-bytes:2147483648}") long exportQuotaBytes,
+                        @Value("${gpfd.excel.sheet-storage.total-quota-bytes:8589934592}") long totalQuotaBytes,
+                        MeterRegistry meterRegistry) {
+        if (memoryBytes < 0 || exportQuotaBytes < 0 || totalQuotaBytes < 0) {
+            throw new IllegalArgumentException("Sheet storage sizes cannot be negative");
+        }
+        this.directory = directory == null || directory.isBlank() ? null : createDirectory(directory);
+        this.memoryBytes = memoryBytes;
+        this.compress = compress;
+        this.exportQuotaBytes = exportQuotaBytes;
+        this.totalQuotaBytes = totalQuotaBytes;
+
+        Gauge.builder("gpfd.excel.sheet-storage.bytes", bytes, AtomicLong::get)
+                .description("Bytes of sheet data held in temporary files")
+                .baseUnit("bytes")
+                .register(requireNonNull(meterRegistry, "MeterRegistry cannot be null"));
+        if (this.directory != null) {
+            deleteLeftovers(this.directory);
+        }
+    }
+
+    /**
+     * Gets storage in the system temporary directory without quotas, for workbooks created outside
+     * the application context.
+     *
+     * @return storage without quotas
+     */
+    public static SheetStorage unbounded() {
+        return UNBOUNDED;
+    }
+
+    /**
+     * Starts the storage of one export.
+     *
+     * @return the export's storage, which must be closed to delete its files
+     */
+    public Export open() {
+        return new Export();
+    }
+
+    /**
+     * Gets the bytes currently held in temporary files by all exports.
+     *
+     * @return the bytes in use
+     */
+    public long bytesInUse() {
+        return bytes.get();
+    }
+
+    private static Path createDirectory(String directory) {
+        try {
+            return Files.createDirectories(Path.of(directory));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create sheet storage directory", e);
+        }
+    }
+
+    private static void deleteLeftovers(Path directory) {
+        try (var files = Files.newDirectoryStream(directory, FILE_PREFIX + "*")) {
+            for (var file : files) {
+                delete(file);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to remove old sheet files from {}", directory, e);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete sheet file {}", file, e);
+        }
+    }
+
+    /**
+     * Thrown when sheet data would take temporary storage past a quota.
+     */
+    public static final class QuotaExceededException extends IOException {
+        QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The sheet data of one export.
+     */
+    public final class Export implements Closeable {
+        private final List<Sheet> sheets = new ArrayList<>();
+        private final AtomicLong exportBytes = new AtomicLong();
+        private boolean closed;
+
+        private Export() {
+        }
+
+        /**
+         * Creates the storage of a new sheet.
+         *
+         * @return the sheet's storage
+         * @throws IOException if the export has been closed
+         */
+        public synchronized Sheet newSheet() throws IOException {
+            if (closed) {
+                throw new IOException("Sheet storage has been closed");
+            }
+            var sheet = new Sheet(this, compress);
+            sheets.add(sheet);
+            return sheet;
+        }
+
+        /**
+         * Creates the storage of bytes that are already compressed, written through
+         * {@link Sheet#output()}.
+         *
+         * @return the buffer
+         * @throws IOException if the export has been closed
+         */
+        public synchronized Sheet newBuffer() throws IOException {
+            if (closed) {
+                throw new IOException("Sheet storage has been closed");
+            }
+            var buffer = new Sheet(this, false);
+            sheets.add(buffer);
+            return buffer;
+        }
+
+        /**
+         * Deletes the storage of one sheet or buffer before the export is closed, releasing its
+         * bytes from the quotas.
+         *
+         * @param sheet the storage no longer needed
+         */
+        public synchronized void release(Sheet sheet) {
+            if (sheets.remove(sheet)) {
+                var charged = sheet.discard();
+                exportBytes.addAndGet(-charged);
+                bytes.addAndGet(-charged);
+            }
+        }
+
+        /**
+         * Gets the bytes this export holds in temporary files.
+         *
+         * @return the bytes in use
+         */
+        public long bytesInUse() {
+            return exportBytes.get();
+        }
+
+        /**
+         * Deletes the files of every sheet and releases their bytes from the quotas. Closing more
+         * than once has no effect.
+         */
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            sheets.forEach(Sheet::discard);
+            sheets.clear();
+            bytes.addAndGet(-exportBytes.getAndSet(0));
+        }
+
+        private void charge(int length) throws QuotaExceededException {
+            if (exportBytes.addAndGet(length) > exportQuotaBytes) {
+                exportBytes.addAndGet(-length);
+                throw new QuotaExceededException("Sheet data exceeds the export quota of " + exportQuotaBytes + " bytes");
+            }
+            if (bytes.addAndGet(length) > totalQuotaBytes) {
+                bytes.addAndGet(-length);
+                exportBytes.addAndGet(-length);
+                throw new QuotaExceededException("Sheet data exceeds the total quota of " + totalQuotaBytes + " bytes");
+            }
+        }
+    }
+
+    /**
+     * The XML of one sheet, written once through {@link #writer()} or {@link #output()} and then
+     * read back any number of times with {@link #read()}.
+     */
+    public final class Sheet {
+        private final Export export;
+        private final boolean gzip;
+        private final OutputStream output = new SheetOutputStream();
+        private final Writer writer;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private Path file;
+        private OutputStream fileStream;
+        private long charged;
+        private boolean closed;
+
+        private Sheet(Export export, boolean gzip) {
+            this.export = export;
+            this.gzip = gzip;
+            this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        }
+
+        /**
+         * Gets the writer of the sheet's XML, which must be closed before the sheet is read.
+         *
+         * @return the writer
+         */
+        public Writer writer() {
+            return writer;
+        }
+
+        /**
+         * Gets the stream of the sheet's bytes, which must be closed before the sheet is read. It
+         * is unbuffered, and must not be mixed with {@link #writer()}.
+         *
+         * @return the output stream
+         */
+        public OutputStream output() {
+            return output;
+        }
+
+        /**
+         * Reads the sheet's XML.
+         *
+         * @return the XML written to the sheet
+         * @throws IOException if the writer has not been closed or the file cannot be read
+         */
+        public synchronized InputStream read() throws IOException {
+            if (!closed) {
+                throw new IOException("Sheet data is still being written");
+            }
+            if (file == null) {
+                if (memory == null) {
+                    throw new IOException("Sheet storage has been closed");
+                }
+                return new ByteArrayInputStream(memory.toByteArray());
+            }
+            var input = Files.newInputStream(file);
+            try {
+                return gzip ? new GZIPInputStream(input, WRITE_BUFFER_SIZE) : input;
+            } catch (IOException e) {
+                input.close();
+                throw e;
+            }
+        }
+
+        private synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Sheet data has been closed");
+            }
+            if (file == null && memory.size() + len <= memoryBytes) {
+                memory.write(b, off, len);
+                return;
+            }
+            if (file == null) {
+                spill();
+            }
+            fileStream.write(b, off, len);
+        }
+
+        /**
+         * Moves the XML kept on the heap to a temporary file, which takes all later output.
+         */
+        private void spill() throws IOException {
+            var target = directory == null
+                    ? Files.createTempFile(FILE_PREFIX, gzip ? ".xml.gz" : ".tmp")
+                    : Files.createTempFile(directory, FILE_PREFIX, gzip ? ".xml.gz" : ".tmp");
+            file = target;
+            OutputStream out = new ChargedOutputStream(Files.newOutputStream(target));
+            fileStream = gzip ? new GZIPOutputStream(out, WRITE_BUFFER_SIZE) : out;
+            memory.writeTo(fileStream);
+            memory = null;
+            log.debug("Sheet data overflowed {} bytes to {}", memoryBytes, target);
+        }
+
+        private synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (fileStream != null) {
+                fileStream.close();
+            }
+        }
+
+        /**
+         * Deletes the sheet's data.
+         *
+         * @return the bytes that were charged to the quotas for it
+         */
+        private synchronized long discard() {
+            try {
+                close();
+            } catch (IOException e) {
+                log.debug("Sheet file {} not closed", file, e);
+            }
+            memory = null;
+            if (file != null) {
+                delete(file);
+            }
+            return charged;
+        }
+
+        private final class SheetOutputStream extends OutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                Sheet.this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                Sheet.this.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                Sheet.this.close();
+            }
+        }
+
+        /**
+         * Charges the bytes that reach the file to the export's quotas.
+         */
+        private final class ChargedOutputStream extends OutputStream {
+            private final OutputStream out;
+
+            ChargedOutputStream(OutputStream out) {
+                this.out = out;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                export.charge(1);
+                charged++;
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                export.charge(len);
+                charged += len;
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        }
+    }
+}
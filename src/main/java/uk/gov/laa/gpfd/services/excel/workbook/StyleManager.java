@@ -1,13 +1,18 @@
 package uk.gov.laa.gpfd.services.excel.workbook;
 
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Workbook;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Manages and stores cell styles for Excel columns with associated keys.
- * Provides methods to set and retrieve styles based on column index and key.
+ * Provides methods to set and retrieve styles based on column index and key, and creates the
+ * styles of a workbook so that identical styles are only added to it once.
+ * <p>
+ * A style manager belongs to a single workbook, see {@link #of(Workbook)}.
  */
 public interface StyleManager {
 
@@ -30,6 +35,32 @@ public interface StyleManager {
      */
     int getColumnStyle(int columnIndex, String key);
 
+    /**
+     * Gets the style that applies a data format, creating it the first time the format is used.
+     *
+     * @param workbook the workbook the style belongs to
+     * @param format the data format string
+     * @return a style shared by every cell with that format, which must not be modified
+     * @throws IllegalArgumentException if the manager already belongs to another workbook
+     */
+    CellStyle getDataFormatStyle(Workbook workbook, String format);
+
+    /**
+     * Gets the style with a bold font, creating it the first time it is used.
+     *
+     * @param workbook the workbook the style belongs to
+     * @return a style shared by every bold cell, which must not be modified
+     * @throws IllegalArgumentException if the manager already belongs to another workbook
+     */
+    CellStyle getBoldStyle(Workbook workbook);
+
+    /**
+     * Gets the number of styles this manager has added to its workbook.
+     *
+     * @return the number of styles created
+     */
+    int getStyleCount();
+
     /**
      * Creates and returns a new instance of StyleManager.
      *
@@ -40,35 +71,53 @@ public interface StyleManager {
     }
 
     /**
-     * Implementation of StyleManager interface that stores styles in a grid structure.
-     * Uses column indices and string keys to manage styles efficiently.
+     * Gets the style manager of a workbook. A {@link ReportWorkbook} keeps its own, for any other
+     * workbook a new one is created.
+     *
+     * @param workbook the workbook
+     * @return the workbook's style manager
+     */
+    static StyleManager of(Workbook workbook) {
+        return workbook instanceof ReportWorkbook reportWorkbook ? reportWorkbook.getStyleManager() : create();
+    }
+
+    /**
+     * Implementation of StyleManager interface that stores column styles in an open addressing
+     * hash table of primitive keys, so only the columns that have a style take up memory.
+     * Every method is synchronized, so sheets of the same workbook can be written concurrently.
      */
     class DefaultStyleManager implements StyleManager {
-        private final short[][] matrix = new short[MAX_COLUMNS][MAX_KEYS];
-        private final Map<String, Integer> keyIndex = new HashMap<>();
+        private static final int MAX_COLUMNS = 1 << 14;
+        private static final int MAX_KEYS = 1 << 16;
+        private static final int EMPTY = -1;
 
-        private static final int MAX_COLUMNS = 10_000;
-        private static final int MAX_KEYS = 256;
+        private final Map<String, Integer> keyIndex = new HashMap<>();
+        private int[] keys = emptyKeys(16);
+        private short[] styles = new short[16];
+        private int size;
 
+        private final Map<String, CellStyle> formatStyles = new HashMap<>();
+        private CellStyle boldStyle;
+        private Workbook workbook;
+        private int styleCount;
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public void setColumnStyle(int columnIndex, String key, CellStyle style) {
+        public synchronized void setColumnStyle(int columnIndex, String key, CellStyle style) {
             if (columnIndex < 0 || columnIndex >= MAX_COLUMNS) {
                 throw new IllegalArgumentException("Column index out of bounds");
             }
 
-            int keyIdx = getKeyIndex(key);
-            matrix[columnIndex][keyIdx] = style.getIndex();
+            put(getKeyIndex(key) * MAX_COLUMNS + columnIndex, style.getIndex());
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public int getColumnStyle(int columnIndex, String key) {
+        public synchronized int getColumnStyle(int columnIndex, String key) {
             if (columnIndex < 0 || columnIndex >= MAX_COLUMNS) {
                 return -1;
             }
@@ -78,8 +127,57 @@ public interface StyleManager {
                 return -1;
             }
 
+            var slot = slot(keyIdx * MAX_COLUMNS + columnIndex);
             // & 0xffff converts short to int
-            return matrix[columnIndex][keyIdx] & 0xffff;
+            return keys[slot] == EMPTY ? -1 : styles[slot] & 0xffff;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized CellStyle getDataFormatStyle(Workbook workbook, String format) {
+            checkWorkbook(workbook);
+            var style = formatStyles.get(format);
+            if (style == null) {
+                style = workbook.createCellStyle();
+                style.setDataFormat(workbook.createDataFormat().getFormat(format));
+                formatStyles.put(format, style);
+                styleCount++;
+            }
+            return style;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized CellStyle getBoldStyle(Workbook workbook) {
+            checkWorkbook(workbook);
+            if (boldStyle == null) {
+                var font = workbook.createFont();
+                font.setBold(true);
+                boldStyle = workbook.createCellStyle();
+                boldStyle.setFont(font);
+                styleCount++;
+            }
+            return boldStyle;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized int getStyleCount() {
+            return styleCount;
+        }
+
+        private void checkWorkbook(Workbook workbook) {
+            if (this.workbook == null) {
+                this.workbook = workbook;
+            } else if (this.workbook != workbook) {
+                throw new IllegalArgumentException("Style manager already belongs to another workbook");
+            }
         }
 
         /**
@@ -97,5 +195,51 @@ public interface StyleManager {
                 return keyIndex.size();
             });
         }
+
+        private void put(int key, short style) {
+            var slot = slot(key);
+            if (keys[slot] == EMPTY) {
+                if ((size + 1) * 4 > keys.length * 3) {
+                    grow();
+                    slot = slot(key);
+                }
+                keys[slot] = key;
+                size++;
+            }
+            styles[slot] = style;
+        }
+
+        /**
+         * Finds the slot holding a key, or the empty slot where it belongs.
+         */
+        private int slot(int key) {
+            var mask = keys.length - 1;
+            var hash = key * 0x9E3779B9;
+            var slot = (hash ^ hash >>> 16) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            var oldKeys = keys;
+            var oldStyles = styles;
+            keys = emptyKeys(oldKeys.length * 2);
+            styles = new short[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    var slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    styles[slot] = oldStyles[i];
+                }
+            }
+        }
+
+        private static int[] emptyKeys(int capacity) {
+            var keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
     }
-}
\ No newline at end of file
+}
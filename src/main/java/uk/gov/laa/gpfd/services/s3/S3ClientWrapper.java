@@ -2,11 +2,13 @@ package uk.gov.laa.gpfd.services.s3;
 
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.S3Object;
 import uk.gov.laa.gpfd.controller.GlobalExceptionHandler;
 
@@ -50,6 +52,32 @@ public class S3ClientWrapper {
         return s3Client.getObject(req);
     }
 
+    /**
+     * Fetches a template from the S3 bucket unless it still has the given entity tag, in which case
+     * S3 answers {@code 304 Not Modified} without a body.
+     * If there is an error, a {@link AwsServiceException} can be thrown. This will be caught by the {@link GlobalExceptionHandler}
+     *
+     * @param filename - template file name
+     * @param eTag     - entity tag of the copy held by the caller, or null to always fetch
+     * @return the file and its metadata, or empty if the caller's copy is current
+     */
+    public Optional<ResponseBytes<GetObjectResponse>> getTemplateIfChanged(String filename, String eTag) {
+        log.info("Attempting to fetch {}/{} from S3 bucket if it does not match {}", TEMPLATE_FOLDER, filename, eTag);
+        var req = GetObjectRequest.builder()
+                .bucket(s3Bucket)
+                .key(TEMPLATE_FOLDER + "/" + filename)
+                .ifNoneMatch(eTag)
+                .build();
+        try {
+            return Optional.of(s3Client.getObjectAsBytes(req));
+        } catch (S3Exception e) {
+            if (e.statusCode() == 304) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Used to return the stream and key back to the caller
      * The key is needed to name the file correctly when the user downloads it
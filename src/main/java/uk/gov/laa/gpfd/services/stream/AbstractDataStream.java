@@ -13,6 +13,7 @@ import static java.util.Objects.requireNonNull;
 import static uk.gov.laa.gpfd.exception.TransferException.StreamException.ExcelStreamWriteException;
 import static uk.gov.laa.gpfd.model.FileExtension.CSV;
 import static uk.gov.laa.gpfd.model.FileExtension.XLSX;
+import static uk.gov.laa.gpfd.model.FileExtension.ZIP;
 
 /**
  * Abstract base class for implementing {@link DataStream} with common response building functionality.
@@ -58,6 +59,19 @@ public abstract class AbstractDataStream implements DataStream {
         return new ExcelDataStream(requireNonNull(reportDao), requireNonNull(dataStreamer));
     }
 
+    /**
+     * Creates a new zipped CSV streaming strategy instance, for Excel reports too large to be
+     * exported as workbooks.
+     *
+     * @param reportDao the report data access object
+     * @param dataStreamer the zipped CSV data streaming component
+     * @return a configured zipped CSV streaming strategy
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public static DataStream createCsvZipStreamStrategy(ReportDao reportDao, DataStreamer dataStreamer) {
+        return new CsvZipDataStream(requireNonNull(reportDao), requireNonNull(dataStreamer));
+    }
+
     /**
      * CSV-specific streaming strategy implementation.
      * <p>
@@ -122,4 +136,36 @@ public abstract class AbstractDataStream implements DataStream {
             return XLSX;
         }
     }
+
+    /**
+     * Zipped CSV streaming strategy implementation.
+     * <p>
+     * Handles streaming each sheet query of an Excel report as a CSV file in a zip archive.
+     * </p>
+     */
+    @RequiredArgsConstructor
+    static class CsvZipDataStream extends AbstractDataStream {
+        private final ReportDao reportDao;
+        private final DataStreamer dataStreamer;
+
+        /**
+         * {@inheritDoc}
+         * @throws ReportIdNotFoundException if the requested report doesn't exist
+         */
+        @Override
+        public StreamingResponseBody stream(UUID uuid) {
+            var report = reportDao.fetchReportById(uuid)
+                    .orElseThrow(() -> new ReportIdNotFoundException(uuid));
+
+            return output -> dataStreamer.stream(report, output);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public FileExtension getFormat() {
+            return ZIP;
+        }
+    }
 }
@@ -18,6 +18,11 @@ public interface DataStream {
      */
     String APPLICATION_EXCEL = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
 
+    /**
+     * MIME type for zip archives, used for Excel reports exported as zipped CSV.
+     */
+    String APPLICATION_ZIP = "application/zip";
+
     /**
      * Streams a report as an HTTP response in the strategy's format.
      *
@@ -41,6 +46,7 @@ public interface DataStream {
      * </p>
      * <ul>
      *   <li>{@code application/vnd.openxmlformats-officedocument.spreadsheetml.sheet} for Excel</li>
+     *   <li>{@code application/zip} for zipped CSV</li>
      *   <li>{@code application/octet-stream} for CSV</li>
      * </ul>
      *
@@ -49,6 +55,7 @@ public interface DataStream {
     default MediaType getContentType() {
         return switch(getFormat()) {
             case XLSX -> MediaType.valueOf(APPLICATION_EXCEL);
+            case ZIP -> MediaType.valueOf(APPLICATION_ZIP);
             case CSV, S3STORAGE -> MediaType.APPLICATION_OCTET_STREAM;
         };
     }
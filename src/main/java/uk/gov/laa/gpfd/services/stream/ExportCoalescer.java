@@ -0,0 +1,165 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.dao.TailSpool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs at most one generation of each report version at a time and shares its output with every
+ * request that arrives while it is running.
+ * <p>
+ * The first request for a {@link ReportResultCache.Key} starts a <em>flight</em>: the report is
+ * generated on a streaming executor thread into a {@link TailSpool} file. That request, and every
+ * identical request that joins before the flight completes, streams the spool to its client at its
+ * own pace, waiting for more output whenever it catches up with the generator. Late joiners replay
+ * the spool from the start instead of running the query again. As the flight already decouples the
+ * database read from the clients, the export it runs is not spooled a second time.
+ * <p>
+ * Flights run on the same bounded executor as the downloads that follow them. A flight is always
+ * submitted before its first follower, so the executor's fair limit never leaves followers waiting
+ * for a flight that cannot start.
+ * <p>
+ * A generation failure is rethrown to every subscriber. A client that disconnects only stops its
+ * own download; the flight carries on for the others. The spool is deleted once the flight has
+ * completed and its last subscriber has finished.
+ * <p>
+ * Every request that joins an existing flight is counted as coalesced.
+ */
+@Slf4j
+@Component
+public class ExportCoalescer implements AutoCloseable {
+
+    private final Map<ReportResultCache.Key, TailSpool> flights = new ConcurrentHashMap<>();
+
+    @Getter
+    private final boolean enabled;
+    private final Executor executor;
+    private final Path directory;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Creates a coalescer.
+     *
+     * @param enabled       whether identical exports share a generation
+     * @param executor      runs the generations, the bounded streaming executor in the application
+     * @param meterRegistry records active flights and coalesced requests
+     */
+    public ExportCoalescer(@Value("${gpfd.export.coalescing.enabled:false}") boolean enabled,
+                           @Qualifier("streamingTaskExecutor") Executor executor,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.executor = executor;
+        this.directory = enabled ? createDirectory() : null;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("gpfd.export.flights.active", flights, Map::size)
+                .description("Report generations currently shared by coalesced requests")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Creates an instance that never coalesces.
+     *
+     * @return a disabled coalescer
+     */
+    public static ExportCoalescer disabled() {
+        return new ExportCoalescer(false, Runnable::run, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Joins the running generation of a report version, or starts one.
+     *
+     * @param key       the report version
+     * @param generator creates the body that generates the report, only called to start a flight
+     * @return a body that streams the shared output
+     */
+    public StreamingResponseBody join(ReportResultCache.Key key, Supplier<StreamingResponseBody> generator) {
+        if (!enabled) {
+            return generator.get();
+        }
+
+        while (true) {
+            var flight = flights.get(key);
+            if (flight == null) {
+                var started = new TailSpool(0, directory);
+                started.subscribe();
+                if (flights.putIfAbsent(key, started) == null) {
+                    start(key, started, generator);
+                    return started::tailTo;
+                }
+                continue;
+            }
+
+            if (flight.subscribe()) {
+                meterRegistry.counter("gpfd.export.coalesced", "format", key.format().getExtension()).increment();
+                log.debug("Joining running export of report {} as {}", key.reportId(), key.format());
+                return flight::tailTo;
+            }
+            // The flight finished between the lookup and the subscription, the cache now serves it
+            // or a new flight must be started
+            flights.remove(key, flight);
+        }
+    }
+
+    private void start(ReportResultCache.Key key, TailSpool flight, Supplier<StreamingResponseBody> generator) {
+        try {
+            var body = generator.get();
+            executor.execute(() -> generate(key, flight, body));
+        } catch (RuntimeException e) {
+            // The caller never gets a body to follow, so its subscription is dropped here
+            flights.remove(key, flight);
+            flight.fail(e);
+            flight.unsubscribe();
+            throw e;
+        }
+    }
+
+    private void generate(ReportResultCache.Key key, TailSpool flight, StreamingResponseBody body) {
+        try {
+            flight.fill(body::writeTo);
+            log.debug("Shared export of report {} as {} finished, {} bytes", key.reportId(), key.format(), flight.size());
+        } catch (IOException | RuntimeException | Error e) {
+            log.warn("Shared export of report {} as {} failed", key.reportId(), key.format(), e);
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Deletes the spool directory once it is empty. The executor is not owned by the coalescer.
+     */
+    @Override
+    public void close() {
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                log.debug("Export spool directory {} not removed", directory, e);
+            }
+        }
+    }
+
+    private static Path createDirectory() {
+        try {
+            return Files.createTempDirectory("gpfd-export-spool-");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create export spool directory", e);
+        }
+    }
+}
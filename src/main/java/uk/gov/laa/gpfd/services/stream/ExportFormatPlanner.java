@@ -0,0 +1,97 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.laa.gpfd.dao.RowEstimator;
+import uk.gov.laa.gpfd.model.FileExtension;
+import uk.gov.laa.gpfd.model.Queryable;
+import uk.gov.laa.gpfd.model.Report;
+
+import static java.util.Objects.requireNonNull;
+import static uk.gov.laa.gpfd.model.FileExtension.XLSX;
+import static uk.gov.laa.gpfd.model.FileExtension.ZIP;
+
+/**
+ * Picks the format an Excel report is exported in before any of it is generated.
+ * <p>
+ * When {@code gpfd.excel.csv-zip.above-rows} is set, the optimizer's estimate of each sheet
+ * query's rows is taken from the {@link RowEstimator}, and a report with a sheet estimated above
+ * that many rows is exported as a zip of CSV files instead of a workbook. Reports whose queries
+ * cannot be estimated stay as workbooks, where sheets past Excel's row limit roll over into new
+ * sheets. Reports switched to zipped CSV are counted as {@code gpfd.excel.csv-zip}.
+ * <p>
+ * A version of the report already held by the {@link ReportResultCache} is served in the format
+ * it was cached in, without estimating its queries again.
+ */
+@Slf4j
+@Component
+public class ExportFormatPlanner {
+    private final RowEstimator rowEstimator;
+    private final ReportResultCache cache;
+    private final long aboveRows;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Creates a planner that exports reports with a sheet estimated above {@code aboveRows} as
+     * zipped CSV.
+     *
+     * @param rowEstimator  estimates the rows of each query
+     * @param cache         holds reports that no longer need estimating
+     * @param aboveRows     the estimated rows of a sheet above which the report is zipped CSV, 0 to
+     *                      always export workbooks
+     * @param meterRegistry counts reports exported as zipped CSV
+     */
+    public ExportFormatPlanner(RowEstimator rowEstimator,
+                               ReportResultCache cache,
+                               @Value("${gpfd.excel.csv-zip.above-rows:0}") long aboveRows,
+                               MeterRegistry meterRegistry) {
+        if (aboveRows < 0) {
+            throw new IllegalArgumentException("Zipped CSV row threshold cannot be negative");
+        }
+        this.rowEstimator = requireNonNull(rowEstimator, "RowEstimator cannot be null");
+        this.cache = requireNonNull(cache, "Cache cannot be null");
+        this.aboveRows = aboveRows;
+        this.meterRegistry = requireNonNull(meterRegistry, "MeterRegistry cannot be null");
+    }
+
+    /**
+     * Gets the format an Excel report is exported in.
+     *
+     * @param report the report being exported
+     * @return {@link FileExtension#ZIP} when a sheet is estimated to be too large, otherwise
+     *         {@link FileExtension#XLSX}
+     */
+    public FileExtension excelFormat(Report report) {
+        if (aboveRows == 0) {
+            return XLSX;
+        }
+        var refreshed = report.getLastDatabaseRefreshDate();
+        if (refreshed != null) {
+            if (cache.contains(new ReportResultCache.Key(report.getId(), ZIP, refreshed.toInstant()))) {
+                return ZIP;
+            }
+            if (cache.contains(new ReportResultCache.Key(report.getId(), XLSX, refreshed.toInstant()))) {
+                return XLSX;
+            }
+        }
+        if (!exceedsThreshold(report)) {
+            return XLSX;
+        }
+        meterRegistry.counter("gpfd.excel.csv-zip").increment();
+        return ZIP;
+    }
+
+    private boolean exceedsThreshold(Report report) {
+        for (var query : Queryable.processor(report).presentOnly().allMappings()) {
+            var estimate = rowEstimator.estimate(query.getQuery().value());
+            if (estimate.isPresent() && estimate.getAsLong() > aboveRows) {
+                log.info("Sheet {} of report '{}' is estimated at {} rows, exporting as zipped CSV",
+                        query.getExcelSheet().getName(), report.getName(), estimate.getAsLong());
+                return true;
+            }
+        }
+        return false;
+    }
+}
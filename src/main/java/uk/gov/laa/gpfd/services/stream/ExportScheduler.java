@@ -0,0 +1,401 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.dao.ExportSpool;
+import uk.gov.laa.gpfd.exception.ExportRejectedException;
+import uk.gov.laa.gpfd.model.FileExtension;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Admission control for report generation.
+ * <p>
+ * Every report is given a {@link CostClass} per format from the durations and output sizes of its
+ * previous generations; reports that have not been generated since startup are treated as
+ * {@link CostClass#MEDIUM}. Each class has a fixed number of slots, so a burst of large exports
+ * cannot take every read-only connection away from small ones.
+ * <p>
+ * When a class has no free slot the request waits in a queue that is FIFO per user and served
+ * round-robin across users, so one user queueing many exports does not delay everybody else. A
+ * request is rejected with an {@link ExportRejectedException}, carrying a suggested retry delay,
+ * when the queue is full or the request has waited longer than {@code gpfd.export.admission.queue.max-wait}.
+ * <p>
+ * An export takes its slot when its body starts being written and keeps it until its database
+ * reads have finished, as reported by the {@link ExportSpool}. With spooling enabled that is before
+ * a slow client has received the body, so a slot always stands for a read-only connection in use,
+ * which is what the {@link uk.gov.laa.gpfd.config.ReadOnlyConnectionBudget} assumes. Queue depth and active slots are exposed as gauges per class, time spent queueing
+ * as a timer per class and outcome.
+ */
+@Slf4j
+@Component
+public class ExportScheduler {
+
+    /**
+     * How expensive a report is to generate.
+     */
+    public enum CostClass {
+        SMALL, MEDIUM, LARGE;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final double SMOOTHING = 0.3;
+
+    @Getter
+    private final boolean enabled;
+    private final int maxQueued;
+    private final Duration maxWait;
+    private final Duration smallBelow;
+    private final Duration largeAbove;
+    private final long smallBelowBytes;
+    private final long largeAboveBytes;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<CostClass, Lane> lanes = new EnumMap<>(CostClass.class);
+    private final Map<Workload, Estimate> estimates = new ConcurrentHashMap<>();
+
+    public ExportScheduler(@Value("${gpfd.export.admission.enabled:false}") boolean enabled,
+                           @Value("${gpfd.export.admission.slots.small:3}") int smallSlots,
+                           @Value("${gpfd.export.admission.slots.medium:2}") int mediumSlots,
+                           @Value("${gpfd.export.admission.slots.large:1}") int largeSlots,
+                           @Value("${gpfd.export.admission.queue.max-depth:20}") int maxQueued,
+                           @Value("${gpfd.export.admission.queue.max-wait:20s}") Duration maxWait,
+                           @Value("${gpfd.export.admission.cost.small-below:10s}") Duration smallBelow,
+                           @Value("${gpfd.export.admission.cost.large-above:2m}") Duration largeAbove,
+                           @Value("${gpfd.export.admission.cost.small-below-bytes:10485760}") long smallBelowBytes,
+                           @Value("${gpfd.export.admission.cost.large-above-bytes:268435456}") long largeAboveBytes,
+                           MeterRegistry meterRegistry) {
+        if (smallSlots < 1 || mediumSlots < 1 || largeSlots < 1) {
+            throw new IllegalArgumentException("Every export cost class needs at least one slot");
+        }
+        if (maxQueued < 0 || maxWait.isNegative()) {
+            throw new IllegalArgumentException("Export queue limits cannot be negative");
+        }
+        this.enabled = enabled;
+        this.maxQueued = maxQueued;
+        this.maxWait = maxWait;
+        this.smallBelow = smallBelow;
+        this.largeAbove = largeAbove;
+        this.smallBelowBytes = smallBelowBytes;
+        this.largeAboveBytes = largeAboveBytes;
+        this.meterRegistry = meterRegistry;
+
+        lanes.put(CostClass.SMALL, new Lane(CostClass.SMALL, smallSlots, smallBelow));
+        lanes.put(CostClass.MEDIUM, new Lane(CostClass.MEDIUM, mediumSlots, largeAbove));
+        lanes.put(CostClass.LARGE, new Lane(CostClass.LARGE, largeSlots, largeAbove.multipliedBy(2)));
+        lanes.values().forEach(lane -> {
+            Gauge.builder("gpfd.export.queue.depth", lane, Lane::queued)
+                    .description("Exports waiting for a slot")
+                    .tag("class", lane.costClass.tag())
+                    .register(meterRegistry);
+            Gauge.builder("gpfd.export.slots.active", lane, Lane::active)
+                    .description("Exports currently holding a slot")
+                    .tag("class", lane.costClass.tag())
+                    .register(meterRegistry);
+        });
+    }
+
+    /**
+     * Creates an instance that admits every export immediately.
+     *
+     * @return a disabled scheduler
+     */
+    public static ExportScheduler disabled() {
+        return new ExportScheduler(false, 1, 1, 1, 0, Duration.ZERO, Duration.ZERO, Duration.ZERO, 0, 0,
+                new SimpleMeterRegistry());
+    }
+
+    /**
+     * Creates the export and wraps it in a body that waits for a slot in the report's cost class
+     * when it is written.
+     * <p>
+     * The slot is taken by the thread that writes the body and released once its database reads
+     * have finished, or the body has been written if that comes first, so a body that is never written, because the request failed or the client went away
+     * first, holds no slot, and servlet threads never wait for one. A rejection is thrown before
+     * anything has been written, so it can still be answered with a 429.
+     *
+     * @param reportId the report being exported
+     * @param format   the output format, as each format of a report has its own cost
+     * @param userId   the user requesting it, used for fair queueing
+     * @param export   creates the body that generates the report
+     * @return a body that holds a slot while it reads the report, and throws {@link ExportRejectedException}
+     *         if no slot became free in time
+     */
+    public StreamingResponseBody admit(UUID reportId, FileExtension format, UUID userId,
+                                       Supplier<StreamingResponseBody> export) {
+        var body = export.get();
+        if (!enabled) {
+            return body;
+        }
+        var workload = new Workload(reportId, format);
+        return output -> run(workload, userId, body, output);
+    }
+
+    /**
+     * Gets the number of exports that can run at once, each holding one read-only connection.
+     *
+     * @return the slots of every cost class together, 0 when admission is disabled
+     */
+    public int totalSlots() {
+        return enabled ? lanes.values().stream().mapToInt(lane -> lane.slots).sum() : 0;
+    }
+
+    /**
+     * Gets the cost class a report is currently admitted under in a format.
+     *
+     * @param reportId the report
+     * @param format   the output format
+     * @return its cost class
+     */
+    public CostClass classify(UUID reportId, FileExtension format) {
+        var estimate = estimates.get(new Workload(reportId, format));
+        if (estimate == null) {
+            return CostClass.MEDIUM;
+        }
+        if (estimate.nanos() > largeAbove.toNanos() || estimate.bytes() > largeAboveBytes) {
+            return CostClass.LARGE;
+        }
+        if (estimate.nanos() < smallBelow.toNanos() && estimate.bytes() < smallBelowBytes) {
+            return CostClass.SMALL;
+        }
+        return CostClass.MEDIUM;
+    }
+
+    private void run(Workload workload, UUID userId, StreamingResponseBody body, OutputStream output) throws IOException {
+        var lane = lanes.get(classify(workload.reportId(), workload.format()));
+        lane.acquire(userId);
+        var slot = new Slot(lane, System.nanoTime());
+        var counting = new CountingOutputStream(output);
+        try {
+            ExportSpool.writeNotifying(slot::release, body::writeTo, counting);
+            slot.release();
+            estimates.merge(workload, new Estimate(slot.heldNanos, counting.count), Estimate::blend);
+        } finally {
+            slot.release();
+        }
+    }
+
+    /**
+     * A slot held by one export, released once by whichever of the spool's read callback and the
+     * writing thread gets there first.
+     */
+    private static final class Slot {
+        private final Lane lane;
+        private final long acquired;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long heldNanos;
+
+        Slot(Lane lane, long acquired) {
+            this.lane = lane;
+            this.acquired = acquired;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                heldNanos = System.nanoTime() - acquired;
+                lane.completed(heldNanos);
+                lane.release();
+            }
+        }
+    }
+
+    /**
+     * A report in one output format, which is estimated on its own.
+     */
+    private record Workload(UUID reportId, FileExtension format) {
+    }
+
+    /**
+     * Smoothed cost of a report's previous generations.
+     */
+    private record Estimate(double nanos, double bytes) {
+        Estimate blend(Estimate latest) {
+            return new Estimate(nanos + SMOOTHING * (latest.nanos - nanos), bytes + SMOOTHING * (latest.bytes - bytes));
+        }
+    }
+
+    /**
+     * The slots and wait queue of one cost class.
+     */
+    private final class Lane {
+        private final CostClass costClass;
+        private final int slots;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<UUID, ArrayDeque<CompletableFuture<Void>>> waiting = new LinkedHashMap<>();
+        private int active;
+        private int queued;
+        private volatile double averageNanos;
+
+        Lane(CostClass costClass, int slots, Duration expected) {
+            this.costClass = costClass;
+            this.slots = slots;
+            this.averageNanos = expected.toNanos();
+        }
+
+        void acquire(UUID userId) {
+            var started = System.nanoTime();
+            CompletableFuture<Void> grant;
+            lock.lock();
+            try {
+                if (active < slots && queued == 0) {
+                    active++;
+                    record(started, "admitted");
+                    return;
+                }
+                if (queued >= maxQueued) {
+                    throw reject(started, "queue_full");
+                }
+                grant = new CompletableFuture<>();
+                waiting.computeIfAbsent(userId, _ -> new ArrayDeque<>()).add(grant);
+                queued++;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                grant.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+                record(started, "admitted");
+            } catch (TimeoutException | InterruptedException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                abandon(userId, grant, started);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Export slot grant failed", e);
+            }
+        }
+
+        private void abandon(UUID userId, CompletableFuture<Void> grant, long started) {
+            lock.lock();
+            try {
+                if (grant.isDone()) {
+                    // A slot was handed over just as the wait ended, keep it
+                    record(started, "admitted");
+                    return;
+                }
+                var queue = waiting.get(userId);
+                queue.remove(grant);
+                if (queue.isEmpty()) {
+                    waiting.remove(userId);
+                }
+                queued--;
+                throw reject(started, "timeout");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Hands the slot to the next waiter, taking users in turn, or frees it.
+         */
+        void release() {
+            lock.lock();
+            try {
+                var iterator = waiting.entrySet().iterator();
+                if (!iterator.hasNext()) {
+                    active--;
+                    return;
+                }
+                var next = iterator.next();
+                iterator.remove();
+                var grant = next.getValue().poll();
+                if (!next.getValue().isEmpty()) {
+                    waiting.put(next.getKey(), next.getValue());
+                }
+                queued--;
+                grant.complete(null);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void completed(long nanos) {
+            averageNanos += SMOOTHING * (nanos - averageNanos);
+        }
+
+        int queued() {
+            lock.lock();
+            try {
+                return queued;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int active() {
+            lock.lock();
+            try {
+                return active;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private ExportRejectedException reject(long started, String reason) {
+            record(started, "rejected");
+            meterRegistry.counter("gpfd.export.rejected", "class", costClass.tag(), "reason", reason).increment();
+            // Roughly how long it takes the slots to work through everything queued ahead
+            var seconds = Math.ceil(averageNanos * (queued + 1) / slots / TimeUnit.SECONDS.toNanos(1));
+            var retryAfter = Duration.ofSeconds(Math.max(1, (long) seconds));
+            log.warn("Rejected {} export ({}), {} queued, retry after {}", costClass.tag(), reason, queued, retryAfter);
+            return new ExportRejectedException("Too many %s exports in progress".formatted(costClass.tag()), retryAfter);
+        }
+
+        private void record(long started, String outcome) {
+            Timer.builder("gpfd.export.queue.wait")
+                    .description("Time exports spend waiting for a slot")
+                    .tags("class", costClass.tag(), "outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Counts the bytes of an export as they are written.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * A {@link StreamingResponseBody} whose exact length is known before it is written, so the
+ * response can carry a {@code Content-Length} header.
+ */
+public interface KnownLengthResponseBody extends StreamingResponseBody {
+
+    /**
+     * Gets the number of bytes {@link #writeTo} will write.
+     *
+     * @return the body length in bytes
+     */
+    long contentLength();
+}
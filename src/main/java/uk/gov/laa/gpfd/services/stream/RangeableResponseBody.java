@@ -0,0 +1,41 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+
+/**
+ * A {@link KnownLengthResponseBody} backed by stored output, so any byte range of it can be
+ * written on its own. Used to answer HTTP {@code Range} requests for resumed or segmented downloads.
+ */
+public interface RangeableResponseBody extends KnownLengthResponseBody {
+
+    /**
+     * Writes {@code length} bytes of the body, starting at {@code start}.
+     *
+     * @param output the stream to write to
+     * @param start  the 0-based offset of the first byte
+     * @param length the number of bytes to write
+     * @throws IOException if writing fails
+     */
+    void writeRange(OutputStream output, long start, long length) throws IOException;
+
+    /**
+     * Gets a strong entity tag, including the quotes, that changes whenever the stored output does.
+     *
+     * @return the entity tag
+     */
+    String entityTag();
+
+    /**
+     * Gets the time the stored output was last changed.
+     *
+     * @return the last modification time
+     */
+    Instant lastModified();
+
+    @Override
+    default void writeTo(OutputStream output) throws IOException {
+        writeRange(output, 0, contentLength());
+    }
+}
@@ -0,0 +1,536 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.model.FileExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Two-tier cache of generated report files.
+ * <p>
+ * Generated output only changes when the report's data is refreshed, so entries are keyed by
+ * report id, output format and {@code LAST_DATABASE_REFRESH_DATETIME}. When a report is refreshed
+ * its older entries are superseded and dropped as soon as the new version is stored.
+ * <ul>
+ *   <li>outputs up to {@code gpfd.report-cache.memory.max-entry-bytes} are kept on the heap, within
+ *   a total of {@code gpfd.report-cache.memory.max-bytes}</li>
+ *   <li>larger outputs are kept as files in {@code gpfd.report-cache.disk.directory}, within a
+ *   quota of {@code gpfd.report-cache.disk.max-bytes}</li>
+ * </ul>
+ * Both tiers evict the least recently used entries first. A miss is captured while it is streamed
+ * to the client and only stored once the report has been written completely.
+ * <p>
+ * Hits know their exact length up front and are returned as {@link RangeableResponseBody}, so they
+ * can also answer {@code Range} requests. Disk hits are copied with {@link FileChannel#transferTo},
+ * which avoids user-space copies whenever the servlet container exposes a channel that supports it.
+ * A disk entry evicted while a hit is being written is deleted once that write finishes.
+ * <p>
+ * Hits, misses and bytes served from the cache are recorded per report, and evictions per tier
+ * and cause.
+ */
+@Slf4j
+@Component
+public class ReportResultCache implements AutoCloseable {
+
+    private static final String MEMORY = "memory";
+    private static final String DISK = "disk";
+
+    /**
+     * Identifies one version of a generated report.
+     *
+     * @param reportId    the report id
+     * @param format      the output format
+     * @param refreshedAt when the report's data was last refreshed
+     */
+    public record Key(UUID reportId, FileExtension format, Instant refreshedAt) {
+        public Key {
+            requireNonNull(reportId, "Report id cannot be null");
+            requireNonNull(format, "Format cannot be null");
+            requireNonNull(refreshedAt, "Refresh timestamp cannot be null");
+        }
+
+        /**
+         * Gets a strong entity tag for this version of the report.
+         *
+         * @return the quoted entity tag
+         */
+        public String entityTag() {
+            return "\"%s-%s-%d\"".formatted(reportId, format.getExtension(), refreshedAt.toEpochMilli());
+        }
+
+        boolean supersedes(Key other) {
+            return reportId.equals(other.reportId) && format == other.format && !refreshedAt.equals(other.refreshedAt);
+        }
+    }
+
+    @Getter
+    private final boolean enabled;
+    private final long memoryMaxBytes;
+    private final long memoryMaxEntryBytes;
+    private final long diskMaxBytes;
+    private final Path directory;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Key, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, DiskEntry> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    public ReportResultCache(@Value("${gpfd.report-cache.enabled:false}") boolean enabled,
+                             @Value("${gpfd.report-cache.memory.max-bytes:67108864}") long memoryMaxBytes,
+                             @Value("${gpfd.report-cache.memory.max-entry-bytes:1048576}") long memoryMaxEntryBytes,
+                             @Value("${gpfd.report-cache.disk.max-bytes:2147483648}") long diskMaxBytes,
+                             @Value("${gpfd.report-cache.disk.directory:}") String directory,
+                             MeterRegistry meterRegistry) {
+        if (memoryMaxBytes < 0 || memoryMaxEntryBytes < 0 || diskMaxBytes < 0) {
+            throw new IllegalArgumentException("Report cache sizes cannot be negative");
+        }
+        this.enabled = enabled;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.memoryMaxEntryBytes = Math.min(memoryMaxEntryBytes, memoryMaxBytes);
+        this.diskMaxBytes = diskMaxBytes;
+        this.directory = enabled ? createDirectory(directory) : null;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("gpfd.report.cache.size", this, cache -> cache.bytes(MEMORY))
+                .description("Bytes held by the report result cache")
+                .baseUnit("bytes")
+                .tag("tier", MEMORY)
+                .register(meterRegistry);
+        Gauge.builder("gpfd.report.cache.size", this, cache -> cache.bytes(DISK))
+                .description("Bytes held by the report result cache")
+                .baseUnit("bytes")
+                .tag("tier", DISK)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Creates an instance that never caches.
+     *
+     * @return a disabled cache
+     */
+    public static ReportResultCache disabled() {
+        return new ReportResultCache(false, 0, 0, 0, null, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Looks up a generated report and records a hit or a miss.
+     *
+     * @param key the report version
+     * @return a body replaying the cached report, or empty on a miss
+     */
+    public Optional<RangeableResponseBody> lookup(Key key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        RangeableResponseBody hit = null;
+        synchronized (this) {
+            var bytes = memory.get(key);
+            if (bytes != null) {
+                hit = new MemoryBody(key, bytes);
+            } else {
+                var entry = disk.get(key);
+                if (entry != null) {
+                    hit = new DiskBody(key, entry);
+                }
+            }
+        }
+
+        var tags = new String[]{"report", key.reportId().toString(), "format", key.format().getExtension()};
+        meterRegistry.counter("gpfd.report.cache.requests", withResult(tags, hit != null ? "hit" : "miss")).increment();
+        if (hit == null) {
+            return Optional.empty();
+        }
+        meterRegistry.counter("gpfd.report.cache.bytes.saved", tags).increment(hit.contentLength());
+        log.debug("Serving report {} as {} from cache ({} bytes)", key.reportId(), key.format(), hit.contentLength());
+        return Optional.of(hit);
+    }
+
+    /**
+     * Checks whether a generated report is held, without counting a hit or a miss or touching its
+     * recency.
+     *
+     * @param key the report version
+     * @return whether a lookup would currently hit
+     */
+    public synchronized boolean contains(Key key) {
+        return enabled && (memory.containsKey(key) || disk.containsKey(key));
+    }
+
+    /**
+     * Wraps a freshly generated report so that its output is stored under {@code key} once it has
+     * been written completely. Output that fails part way through is discarded.
+     *
+     * @param key  the report version being generated
+     * @param body the generating body
+     * @return a body that streams to the client and populates the cache
+     */
+    public StreamingResponseBody populate(Key key, StreamingResponseBody body) {
+        if (!enabled) {
+            return body;
+        }
+        return output -> {
+            try (var capture = new Capture()) {
+                body.writeTo(new TeeOutputStream(output, capture));
+                store(key, capture);
+            }
+        };
+    }
+
+    private void store(Key key, Capture capture) {
+        if (capture.discarded) {
+            return;
+        }
+        if (capture.spill == null) {
+            putMemory(key, capture.buffer.toByteArray());
+        } else if (capture.finishSpill()) {
+            putDisk(key, capture.spill, capture.size);
+            capture.spill = null;
+        }
+    }
+
+    private synchronized void putMemory(Key key, byte[] bytes) {
+        removeSuperseded(key);
+        var previous = memory.put(key, bytes);
+        memoryBytes += bytes.length - (previous == null ? 0 : previous.length);
+
+        var iterator = memory.entrySet().iterator();
+        while (memoryBytes > memoryMaxBytes && iterator.hasNext()) {
+            var eldest = iterator.next();
+            iterator.remove();
+            memoryBytes -= eldest.getValue().length;
+            evicted(MEMORY, "size");
+        }
+    }
+
+    private synchronized void putDisk(Key key, Path file, long size) {
+        removeSuperseded(key);
+        var previous = disk.put(key, new DiskEntry(file, size));
+        diskBytes += size;
+        if (previous != null) {
+            drop(previous);
+        }
+
+        var iterator = disk.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && iterator.hasNext()) {
+            var eldest = iterator.next().getValue();
+            iterator.remove();
+            drop(eldest);
+            evicted(DISK, "size");
+        }
+    }
+
+    private void removeSuperseded(Key key) {
+        var memoryIterator = memory.entrySet().iterator();
+        while (memoryIterator.hasNext()) {
+            var entry = memoryIterator.next();
+            if (key.supersedes(entry.getKey())) {
+                memoryIterator.remove();
+                memoryBytes -= entry.getValue().length;
+                evicted(MEMORY, "superseded");
+            }
+        }
+
+        var diskIterator = disk.entrySet().iterator();
+        while (diskIterator.hasNext()) {
+            var entry = diskIterator.next();
+            if (key.supersedes(entry.getKey())) {
+                diskIterator.remove();
+                drop(entry.getValue());
+                evicted(DISK, "superseded");
+            }
+        }
+    }
+
+    private void drop(DiskEntry entry) {
+        diskBytes -= entry.size;
+        entry.evicted = true;
+        if (entry.pins == 0) {
+            entry.deleted = true;
+            delete(entry.file);
+        }
+    }
+
+    private synchronized boolean pin(DiskEntry entry) {
+        if (entry.deleted) {
+            return false;
+        }
+        entry.pins++;
+        return true;
+    }
+
+    private synchronized void release(DiskEntry entry) {
+        entry.pins--;
+        if (entry.evicted && entry.pins == 0) {
+            entry.deleted = true;
+            delete(entry.file);
+        }
+    }
+
+    private void evicted(String tier, String cause) {
+        meterRegistry.counter("gpfd.report.cache.evictions", "tier", tier, "cause", cause).increment();
+    }
+
+    private synchronized long bytes(String tier) {
+        return MEMORY.equals(tier) ? memoryBytes : diskBytes;
+    }
+
+    /**
+     * Drops every entry and deletes the cached files that are not being served.
+     */
+    @Override
+    public synchronized void close() {
+        memory.clear();
+        memoryBytes = 0;
+        new ArrayList<>(disk.values()).forEach(this::drop);
+        disk.clear();
+    }
+
+    private static Path createDirectory(String directory) {
+        try {
+            return directory == null || directory.isBlank()
+                    ? Files.createTempDirectory("gpfd-report-cache-")
+                    : Files.createDirectories(Path.of(directory));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create report cache directory", e);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached report {}", file, e);
+        }
+    }
+
+    private static String[] withResult(String[] tags, String result) {
+        var all = new String[tags.length + 2];
+        System.arraycopy(tags, 0, all, 0, tags.length);
+        all[tags.length] = "result";
+        all[tags.length + 1] = result;
+        return all;
+    }
+
+    /**
+     * A report file held in the disk tier. Guarded by the cache's lock.
+     */
+    private static final class DiskEntry {
+        private final Path file;
+        private final long size;
+        private int pins;
+        private boolean evicted;
+        private boolean deleted;
+
+        DiskEntry(Path file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    private record MemoryBody(Key key, byte[] bytes) implements RangeableResponseBody {
+        @Override
+        public long contentLength() {
+            return bytes.length;
+        }
+
+        @Override
+        public void writeRange(OutputStream output, long start, long length) throws IOException {
+            output.write(bytes, Math.toIntExact(start), Math.toIntExact(length));
+            output.flush();
+        }
+
+        @Override
+        public String entityTag() {
+            return key.entityTag();
+        }
+
+        @Override
+        public Instant lastModified() {
+            return key.refreshedAt();
+        }
+    }
+
+    private final class DiskBody implements RangeableResponseBody {
+        private final Key key;
+        private final DiskEntry entry;
+
+        DiskBody(Key key, DiskEntry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @Override
+        public long contentLength() {
+            return entry.size;
+        }
+
+        @Override
+        public void writeRange(OutputStream output, long start, long length) throws IOException {
+            if (!pin(entry)) {
+                throw new FileNotFoundException("Cached report " + entry.file + " was evicted before it was served");
+            }
+            try (var channel = FileChannel.open(entry.file, StandardOpenOption.READ)) {
+                var target = Channels.newChannel(output);
+                var position = start;
+                var end = start + length;
+                while (position < end) {
+                    var transferred = channel.transferTo(position, end - position, target);
+                    if (transferred <= 0) {
+                        throw new EOFException("Cached report " + entry.file + " is shorter than expected");
+                    }
+                    position += transferred;
+                }
+                output.flush();
+            } finally {
+                release(entry);
+            }
+        }
+
+        @Override
+        public String entityTag() {
+            return key.entityTag();
+        }
+
+        @Override
+        public Instant lastModified() {
+            return key.refreshedAt();
+        }
+    }
+
+    /**
+     * Captures a report while it is generated, on the heap until it outgrows the memory tier and
+     * in a spill file after that. Capture problems never fail the download, the output is just
+     * not cached.
+     */
+    private final class Capture extends OutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private Path spill;
+        private OutputStream spillStream;
+        private long size;
+        private boolean discarded;
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (discarded) {
+                return;
+            }
+            size += len;
+            if (size > diskMaxBytes && size > memoryMaxEntryBytes) {
+                discard("it is larger than the disk quota");
+                return;
+            }
+
+            try {
+                if (spill == null && size > memoryMaxEntryBytes) {
+                    spill = Files.createTempFile(directory, "report-", ".cache");
+                    spillStream = Files.newOutputStream(spill);
+                    buffer.writeTo(spillStream);
+                    buffer.reset();
+                }
+                if (spill == null) {
+                    buffer.write(b, off, len);
+                } else {
+                    spillStream.write(b, off, len);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to capture report output for the cache", e);
+                discard("it could not be written");
+            }
+        }
+
+        boolean finishSpill() {
+            try {
+                spillStream.close();
+                return true;
+            } catch (IOException e) {
+                log.warn("Failed to capture report output for the cache", e);
+                discard("it could not be written");
+                return false;
+            }
+        }
+
+        private void discard(String reason) {
+            log.debug("Not caching report output because {}", reason);
+            discarded = true;
+            buffer.reset();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spillStream != null) {
+                spillStream.close();
+            }
+            if (spill != null) {
+                Files.deleteIfExists(spill);
+            }
+        }
+    }
+
+    /**
+     * Writes to the client first and the capture second, so the download is never slowed by a
+     * failing capture.
+     */
+    private static final class TeeOutputStream extends OutputStream {
+        private final OutputStream client;
+        private final Capture capture;
+
+        TeeOutputStream(OutputStream client, Capture capture) {
+            this.client = client;
+            this.capture = capture;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            client.write(b);
+            capture.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            client.write(b, off, len);
+            capture.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            client.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            client.flush();
+        }
+    }
+}
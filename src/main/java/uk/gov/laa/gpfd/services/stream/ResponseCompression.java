@@ -0,0 +1,288 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.model.FileExtension;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Negotiates and applies HTTP content coding for streamed report downloads.
+ * <p>
+ * The coding is chosen from the request's {@code Accept-Encoding} header when the response headers
+ * are built, and the {@link StreamingResponseBody} is then wrapped so report data is compressed as
+ * it is produced. Only formats listed in {@code gpfd.compression.formats} are compressed; XLSX is
+ * already a deflated zip package and gains almost nothing from a second pass.
+ * <p>
+ * The minimum size threshold can only be checked when the length is known before streaming starts
+ * (for example S3 downloads). Generated reports have no length up front and are compressed
+ * whenever the client accepts it.
+ * <p>
+ * Each compressed response records the bytes in and out, the compression ratio and the time spent
+ * in the deflater. Deflating cannot park, so on the virtual threads that stream downloads that
+ * time is close to the CPU time, which those threads cannot measure themselves.
+ */
+@Slf4j
+@Component
+public class ResponseCompression {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_LEVEL = 6;
+
+    /**
+     * Content codings this service can produce, in order of preference.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public enum ContentCoding {
+        GZIP("gzip");
+
+        private final String token;
+
+        /**
+         * Picks the preferred coding accepted by the given {@code Accept-Encoding} header value.
+         * Codings with a quality of zero are treated as refused, and {@code *} accepts any coding
+         * not explicitly listed.
+         *
+         * @param acceptEncoding the header value, may be {@code null}
+         * @return the coding to use, or empty if the client accepts none of them
+         */
+        public static Optional<ContentCoding> negotiate(String acceptEncoding) {
+            if (acceptEncoding == null || acceptEncoding.isBlank()) {
+                return Optional.empty();
+            }
+
+            for (var coding : values()) {
+                var quality = coding.quality(acceptEncoding);
+                if (quality > 0) {
+                    return Optional.of(coding);
+                }
+            }
+            return Optional.empty();
+        }
+
+        private double quality(String acceptEncoding) {
+            var wildcard = 0d;
+            for (var entry : acceptEncoding.split(",")) {
+                var parts = entry.split(";");
+                var name = parts[0].trim().toLowerCase(Locale.ROOT);
+                var quality = parseQuality(parts);
+                if (name.equals(token)) {
+                    return quality;
+                }
+                if (name.equals("*")) {
+                    wildcard = quality;
+                }
+            }
+            return wildcard;
+        }
+
+        private static double parseQuality(String[] parameters) {
+            for (int i = 1; i < parameters.length; i++) {
+                var parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException _) {
+                        return 0;
+                    }
+                }
+            }
+            return 1;
+        }
+    }
+
+    private final boolean enabled;
+    private final int level;
+    private final long minimumSize;
+    private final Set<FileExtension> formats;
+    private final MeterRegistry meterRegistry;
+
+    public ResponseCompression(@Value("${gpfd.compression.enabled:true}") boolean enabled,
+                               @Value("${gpfd.compression.level:6}") int level,
+                               @Value("${gpfd.compression.minimum-size:8192}") long minimumSize,
+                               @Value("${gpfd.compression.formats:CSV,S3STORAGE}") List<FileExtension> formats,
+                               MeterRegistry meterRegistry) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9");
+        }
+        this.enabled = enabled;
+        this.level = level;
+        this.minimumSize = minimumSize;
+        this.formats = formats.isEmpty() ? EnumSet.noneOf(FileExtension.class) : EnumSet.copyOf(formats);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Creates an instance that never compresses.
+     *
+     * @return a disabled compression stage
+     */
+    public static ResponseCompression disabled() {
+        return new ResponseCompression(false, DEFAULT_LEVEL, 0, List.of(), new SimpleMeterRegistry());
+    }
+
+    /**
+     * Decides whether a response should be compressed, and with which coding.
+     *
+     * @param acceptEncoding the request's {@code Accept-Encoding} header, may be {@code null}
+     * @param fileExtension  the format being returned
+     * @param contentLength  the uncompressed length if known, otherwise {@code null}
+     * @return the coding to apply, or empty to send the body as is
+     */
+    public Optional<ContentCoding> negotiate(String acceptEncoding, FileExtension fileExtension, Long contentLength) {
+        if (!enabled || !formats.contains(fileExtension)) {
+            return Optional.empty();
+        }
+        if (contentLength != null && contentLength < minimumSize) {
+            return Optional.empty();
+        }
+        return ContentCoding.negotiate(acceptEncoding);
+    }
+
+    /**
+     * Wraps a response body so everything it writes is compressed with the given coding.
+     * The compressed stream is finished, but the servlet output stream is left open.
+     *
+     * @param body          the body to compress
+     * @param coding        the negotiated coding
+     * @param fileExtension the format being returned, used to tag metrics
+     * @return the compressing body
+     */
+    public StreamingResponseBody compress(StreamingResponseBody body, ContentCoding coding, FileExtension fileExtension) {
+        return output -> {
+            var counted = new CountingOutputStream(output);
+            var deflater = new MeteredGzipOutputStream(counted, level);
+            var buffered = new BufferedOutputStream(deflater, BUFFER_SIZE);
+
+            try {
+                body.writeTo(buffered);
+                buffered.flush();
+                deflater.finish();
+            } finally {
+                deflater.release();
+            }
+            output.flush();
+
+            record(coding, fileExtension, deflater.bytesIn, counted.count, deflater.deflateNanos());
+        };
+    }
+
+    private void record(ContentCoding coding, FileExtension fileExtension, long bytesIn, long bytesOut, long deflateNanos) {
+        var codingTag = coding.getToken();
+        var formatTag = fileExtension.getExtension();
+
+        meterRegistry.counter("gpfd.response.compression.bytes.in", "coding", codingTag, "format", formatTag)
+                .increment(bytesIn);
+        meterRegistry.counter("gpfd.response.compression.bytes.out", "coding", codingTag, "format", formatTag)
+                .increment(bytesOut);
+        DistributionSummary.builder("gpfd.response.compression.ratio")
+                .description("Uncompressed bytes divided by compressed bytes per response")
+                .tags("coding", codingTag, "format", formatTag)
+                .register(meterRegistry)
+                .record(bytesOut == 0 ? 0 : (double) bytesIn / bytesOut);
+        Timer.builder("gpfd.response.compression.time")
+                .description("Wall-clock time spent in the deflater compressing a response, excluding writes to the client")
+                .tags("coding", codingTag, "format", formatTag)
+                .register(meterRegistry)
+                .record(deflateNanos, TimeUnit.NANOSECONDS);
+
+        log.debug("Compressed {} response with {}: {} -> {} bytes in {} ms deflating",
+                formatTag, codingTag, bytesIn, bytesOut, TimeUnit.NANOSECONDS.toMillis(deflateNanos));
+    }
+
+    /**
+     * GZIP stream that counts uncompressed bytes and times its deflater.
+     * Closing it does not close the underlying stream.
+     */
+    private static final class MeteredGzipOutputStream extends GZIPOutputStream {
+        private final TimedDeflater deflater;
+        private long bytesIn;
+
+        MeteredGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            // Only the header has been written, so the default deflater is swapped before it is used
+            def.end();
+            deflater = new TimedDeflater(level);
+            def = deflater;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            bytesIn += len;
+        }
+
+        long deflateNanos() {
+            return deflater.nanos;
+        }
+
+        void release() {
+            def.end();
+        }
+    }
+
+    /**
+     * Raw deflater, as GZIP writes its own header and trailer, that adds up the time spent
+     * compressing. Writing the compressed output to the client is not included.
+     */
+    private static final class TimedDeflater extends Deflater {
+        private long nanos;
+
+        TimedDeflater(int level) {
+            super(level, true);
+        }
+
+        @Override
+        public int deflate(byte[] output, int off, int len, int flush) {
+            var start = System.nanoTime();
+            try {
+                return super.deflate(output, off, len, flush);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes written to the underlying stream.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -4,10 +4,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
-import uk.gov.laa.gpfd.dao.ReportTrackingDao;
+import uk.gov.laa.gpfd.dao.ReportTrackingPipeline;
 import uk.gov.laa.gpfd.exception.StreamErrorException;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
 import java.util.UUID;
 
 @Component
@@ -15,7 +17,7 @@ import java.util.UUID;
 @Slf4j
 public class TrackedStreamService {
 
-    private final ReportTrackingDao reportTrackingDao;
+    private final ReportTrackingPipeline reportTrackingPipeline;
 
     /**
      * This tracked stream is basically just wrapping the stream in a try/catch so we can spot any server-side errors
@@ -27,11 +29,14 @@ public class TrackedStreamService {
      * @return stream with a light-tracking wrapper around it
      */
     public StreamingResponseBody wrapStream(StreamingResponseBody rawStream, UUID reportId, UUID userId){
+        if (rawStream instanceof RangeableResponseBody rangeable) {
+            return new TrackedRangeableResponseBody(rangeable, reportId, userId);
+        }
         return output -> {
             try {
                 rawStream.writeTo(output);
                 output.flush();
-                reportTrackingDao.insertTrackingRow(reportId, userId);
+                reportTrackingPipeline.track(reportId, userId);
             } catch (IOException e) {
                 throw new StreamErrorException(e.getMessage(), reportId);
             } finally {
@@ -40,4 +45,51 @@ public class TrackedStreamService {
         };
     }
 
+    /**
+     * Keeps stored output rangeable once tracked. Only a range starting at the first byte is logged
+     * as a download, so resuming or fetching a file in segments counts once.
+     */
+    private final class TrackedRangeableResponseBody implements RangeableResponseBody {
+        private final RangeableResponseBody rawStream;
+        private final UUID reportId;
+        private final UUID userId;
+
+        TrackedRangeableResponseBody(RangeableResponseBody rawStream, UUID reportId, UUID userId) {
+            this.rawStream = rawStream;
+            this.reportId = reportId;
+            this.userId = userId;
+        }
+
+        @Override
+        public void writeRange(OutputStream output, long start, long length) {
+            try {
+                rawStream.writeRange(output, start, length);
+                output.flush();
+                if (start == 0) {
+                    reportTrackingPipeline.track(reportId, userId);
+                }
+            } catch (IOException e) {
+                throw new StreamErrorException(e.getMessage(), reportId);
+            } finally {
+                log.debug("Completed server-side response stream for report {} (bytes {}-{})",
+                        reportId, start, start + length - 1);
+            }
+        }
+
+        @Override
+        public long contentLength() {
+            return rawStream.contentLength();
+        }
+
+        @Override
+        public String entityTag() {
+            return rawStream.entityTag();
+        }
+
+        @Override
+        public Instant lastModified() {
+            return rawStream.lastModified();
+        }
+    }
+
 }
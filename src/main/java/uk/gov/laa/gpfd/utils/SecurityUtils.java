@@ -1,10 +1,13 @@
 package uk.gov.laa.gpfd.utils;
 
+import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.AuthenticationIsNullException;
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.NoAttributesOnTokenException;
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.NoOidSetOnTokenException;
@@ -12,6 +15,7 @@ import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.NoRolesExcept
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.NoRolesInAttributeException;
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.PrincipalIsNullException;
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.UnexpectedAuthClassException;
+import uk.gov.laa.gpfd.security.RoleBits;
 
 import java.util.Arrays;
 import java.util.List;
@@ -23,6 +27,7 @@ import java.util.UUID;
 public class SecurityUtils {
 
     private static final String ROLE_CLAIM = "LAA_APP_ROLES";
+    private static final String SESSION_ROLES = SecurityUtils.class.getName() + ".ROLES";
 
     /**
      * Extracts the current user's application roles from the OIDC authentication token.
@@ -36,6 +41,36 @@ public class SecurityUtils {
      * the user is not authenticated or no roles are present.
      */
     public List<String> extractRoles() {
+        return parseRequiredRoles(extractRoleClaim());
+    }
+
+    /**
+     * Extracts the current user's application roles as {@link RoleBits}.
+     * <p>
+     * The roles are parsed once per HTTP session and kept in it for as long as the session holds the
+     * same {@code LAA_APP_ROLES} claim. Without a session they are parsed on every call.
+     *
+     * @return the current user's roles
+     * @throws uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException as {@link #extractRoles()}
+     */
+    public RoleBits extractRoleBits() {
+        Object claim = extractRoleClaim();
+        HttpSession session = RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? attributes.getRequest().getSession(false)
+                : null;
+        if (session == null) {
+            return RoleBits.of(parseRequiredRoles(claim));
+        }
+
+        if (session.getAttribute(SESSION_ROLES) instanceof SessionRoles cached && cached.claim() == claim) {
+            return cached.roles();
+        }
+        RoleBits roles = RoleBits.of(parseRequiredRoles(claim));
+        session.setAttribute(SESSION_ROLES, new SessionRoles(claim, roles));
+        return roles;
+    }
+
+    private Object extractRoleClaim() {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth == null) {
             throw new AuthenticationIsNullException();
@@ -53,12 +88,7 @@ public class SecurityUtils {
                     throw new NoRolesInAttributeException();
                 }
 
-                Object rawRoles = attributes.get(ROLE_CLAIM);
-                List<String> parsedRoles = parseRoles(rawRoles);
-                if (parsedRoles.isEmpty()) {
-                    throw new NoRolesException();
-                }
-                yield parsedRoles;
+                yield attributes.get(ROLE_CLAIM);
             }
             case null -> throw new PrincipalIsNullException();
             default -> throw new UnexpectedAuthClassException("Unexpected Auth Type: " + auth.getClass().getName());
@@ -66,6 +96,14 @@ public class SecurityUtils {
 
     }
 
+    private List<String> parseRequiredRoles(Object rawRoles) {
+        List<String> parsedRoles = parseRoles(rawRoles);
+        if (parsedRoles.isEmpty()) {
+            throw new NoRolesException();
+        }
+        return parsedRoles;
+    }
+
     /**
      * Get Entra Unique User ID from the token supplied by SiLAS (contained in the `oid` field)
      * @return User ID
@@ -132,4 +170,11 @@ public class SecurityUtils {
         return reportRoles.stream().anyMatch(userRoles::contains);
     }
 
+    /**
+     * A session's parsed roles and the claim they were parsed from. Not serializable, so a session
+     * restored from disk parses its roles again rather than reusing ids from another process.
+     */
+    private record SessionRoles(Object claim, RoleBits roles) {
+    }
+
 }
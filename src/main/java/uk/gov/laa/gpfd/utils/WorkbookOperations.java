@@ -1,8 +1,11 @@
 package uk.gov.laa.gpfd.utils;
 
 import org.apache.poi.ss.usermodel.Workbook;
+import uk.gov.laa.gpfd.exception.ReportGenerationException.InvalidWorkbookTypeException;
 import uk.gov.laa.gpfd.services.excel.copier.PivotStyleCopier;
 import uk.gov.laa.gpfd.services.excel.copier.SheetCopier;
+import uk.gov.laa.gpfd.services.excel.workbook.AnalyticsParts;
+import uk.gov.laa.gpfd.services.excel.workbook.ReportWorkbook;
 
 import java.util.LinkedHashMap;
 import java.util.function.BiFunction;
@@ -81,7 +84,26 @@ public interface WorkbookOperations {
      * @param template The template containing the desired order
      */
     default void sortWorkbookToTemplate(Workbook workbook, LinkedHashMap<String, Integer> template) {
-        defaultSorter().sort(workbook, template);
+        // Rollover sheets are not in the template, they follow the sheet they continue
+        defaultSorter().sort(workbook, workbook instanceof ReportWorkbook reportWorkbook
+                ? reportWorkbook.withRolloverSheets(template)
+                : template);
+    }
+
+    /**
+     * Splices precompiled analytics sheets into a workbook when it is written, and sorts all of
+     * its sheets to match the expected template's sheet order.
+     *
+     * @param analytics      the compiled analytics sheets
+     * @param targetWorkbook the workbook to receive the sheets
+     * @param template       the desired sheet order
+     * @throws InvalidWorkbookTypeException if the workbook is not a {@link ReportWorkbook}
+     */
+    default void spliceAnalyticSheets(AnalyticsParts analytics, Workbook targetWorkbook, LinkedHashMap<String, Integer> template) {
+        if (!(targetWorkbook instanceof ReportWorkbook reportWorkbook)) {
+            throw new InvalidWorkbookTypeException("Target workbook must be ReportWorkbook but was " + targetWorkbook.getClass().getSimpleName());
+        }
+        reportWorkbook.spliceAnalytics(analytics, template);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+-- =============================================================
+-- V3__add_query_partitioning.sql
+-- Opt-in parallel CSV export per report query.
+--
+-- parallel_slices    number of ORA_HASH slices to read in parallel (NULL or < 2 = serial)
+-- parallel_slice_key column hashed to assign rows to slices (NULL = ROWID)
+-- parallel_ordered   stitch slices back in slice order (NULL = true)
+-- =============================================================
+
+ALTER TABLE report_queries ADD COLUMN IF NOT EXISTS parallel_slices INT;
+ALTER TABLE report_queries ADD COLUMN IF NOT EXISTS parallel_slice_key VARCHAR(128);
+ALTER TABLE report_queries ADD COLUMN IF NOT EXISTS parallel_ordered BOOLEAN;
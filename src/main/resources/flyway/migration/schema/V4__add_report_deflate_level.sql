@@ -0,0 +1,8 @@
+-- =============================================================
+-- V4__add_report_deflate_level.sql
+-- Optional deflate level of a report's xlsx package.
+--
+-- deflate_level 0 (stored) to 9 (smallest), NULL = gpfd.excel.parallel-deflate.level
+-- =============================================================
+
+ALTER TABLE reports ADD COLUMN IF NOT EXISTS deflate_level INT;
@@ -0,0 +1,45 @@
+-- =============================================================
+-- V5__notify_metadata_changes.sql
+-- Notifies the gpfd_metadata channel when report metadata changes,
+-- so the in-memory metadata snapshot is reloaded.
+--
+-- Statement-level triggers send one notification per statement,
+-- the payload is the changed table's name.
+-- =============================================================
+
+CREATE OR REPLACE FUNCTION notify_metadata_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('gpfd_metadata', TG_TABLE_NAME);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS reports_notify_metadata_change ON reports;
+CREATE TRIGGER reports_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON reports
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_metadata_change();
+
+DROP TRIGGER IF EXISTS report_queries_notify_metadata_change ON report_queries;
+CREATE TRIGGER report_queries_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON report_queries
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_metadata_change();
+
+DROP TRIGGER IF EXISTS field_attributes_notify_metadata_change ON field_attributes;
+CREATE TRIGGER field_attributes_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON field_attributes
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_metadata_change();
+
+DROP TRIGGER IF EXISTS report_output_types_notify_metadata_change ON report_output_types;
+CREATE TRIGGER report_output_types_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON report_output_types
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_metadata_change();
+
+DROP TRIGGER IF EXISTS roles_notify_metadata_change ON roles;
+CREATE TRIGGER roles_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON roles
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_metadata_change();
+
+DROP TRIGGER IF EXISTS report_roles_notify_metadata_change ON report_roles;
+CREATE TRIGGER report_roles_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON report_roles
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_metadata_change();
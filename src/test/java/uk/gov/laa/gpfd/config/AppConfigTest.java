@@ -12,6 +12,7 @@ import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.web.client.RestTemplate;
 import uk.gov.laa.gpfd.dao.sql.core.StatementPolicy;
@@ -22,7 +23,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -79,6 +82,20 @@ class AppConfigTest {
         assertNotNull(dataSource, "Metadata data source should be created.");
     }
 
+    @Test
+    void shouldOpenMetadataListenerConnectionsOutsideThePool() {
+        var dataSource = applicationContext.getBean("metadataListenerDataSource", DataSource.class);
+
+        assertInstanceOf(DriverManagerDataSource.class, dataSource, "Listener connections should not be pooled.");
+    }
+
+    @Test
+    void shouldOnlyPollForMetadataChangesWhenThePoolIsUnknown() {
+        var dataSource = new AppConfig().metadataListenerDataSource(mock(DataSource.class));
+
+        assertNull(dataSource, "Listener connections cannot be opened without the pool's connection details.");
+    }
+
     @Test
     void shouldHaveARestTemplateBeanAndMessageConverters() {
         // Given
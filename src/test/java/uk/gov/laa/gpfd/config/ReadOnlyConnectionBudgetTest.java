@@ -0,0 +1,37 @@
+package uk.gov.laa.gpfd.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReadOnlyConnectionBudgetTest {
+
+    @Test
+    void shouldKeepCapsThatFitBesideAdmissionSlots() {
+        assertEquals(new ReadOnlyConnectionBudget(2, 2), ReadOnlyConnectionBudget.allocate(10, 6, 2, 2));
+    }
+
+    @Test
+    void shouldSplitWhatAdmissionSlotsLeaveInProportion() {
+        var budget = ReadOnlyConnectionBudget.allocate(10, 4, 4, 4);
+
+        assertEquals(new ReadOnlyConnectionBudget(3, 3), budget);
+    }
+
+    @Test
+    void shouldGiveSheetsCsvShareTooSmallForTwoSlices() {
+        assertEquals(new ReadOnlyConnectionBudget(0, 3), ReadOnlyConnectionBudget.allocate(10, 7, 4, 4));
+        assertEquals(new ReadOnlyConnectionBudget(0, 0), ReadOnlyConnectionBudget.allocate(10, 9, 4, 0));
+    }
+
+    @Test
+    void shouldLeaveNothingWhenSlotsFillThePool() {
+        assertEquals(new ReadOnlyConnectionBudget(0, 0), ReadOnlyConnectionBudget.allocate(10, 12, 2, 2));
+    }
+
+    @Test
+    void shouldRejectNegativeCaps() {
+        assertThrows(IllegalStateException.class, () -> ReadOnlyConnectionBudget.allocate(10, 7, -1, 2));
+    }
+}
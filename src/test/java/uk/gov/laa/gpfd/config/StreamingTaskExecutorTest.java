@@ -0,0 +1,72 @@
+package uk.gov.laa.gpfd.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingTaskExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StreamingTaskExecutor executor = new StreamingTaskExecutor(1, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void shouldRunTasksOnVirtualThreads() throws Exception {
+        var virtual = executor.submit(() -> Thread.currentThread().isVirtual());
+
+        assertTrue(virtual.get(5, TimeUnit.SECONDS));
+        assertEquals(1, meterRegistry.get("gpfd.stream.tasks.duration").timer().count());
+    }
+
+    @Test
+    void shouldParkTasksOverTheConcurrencyLimit() throws Exception {
+        var release = new CountDownLatch(1);
+        var first = executor.submit(() -> {
+            release.await();
+            return "first";
+        });
+        var second = executor.submit(() -> "second");
+        awaitGauge("gpfd.stream.tasks.waiting", 1);
+
+        assertEquals(1, meterRegistry.get("gpfd.stream.tasks.running").gauge().value());
+        release.countDown();
+
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        awaitGauge("gpfd.stream.tasks.running", 0);
+    }
+
+    @Test
+    void shouldRejectTasksOnceClosed() {
+        executor.close();
+
+        assertThrows(TaskRejectedException.class, () -> executor.execute(() -> { }));
+    }
+
+    @Test
+    void shouldRejectInvalidConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> new StreamingTaskExecutor(0, meterRegistry));
+    }
+
+    private void awaitGauge(String name, double value) {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get(name).gauge().value() != value) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException(name + " never reached " + value);
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package uk.gov.laa.gpfd.config.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class VirtualThreadPinningBinderTest {
+
+    @Test
+    void shouldRegisterPinnedTimer() {
+        var registry = new SimpleMeterRegistry();
+
+        try (var binder = new VirtualThreadPinningBinder(Duration.ofMillis(20))) {
+            binder.bindTo(registry);
+
+            var timer = registry.find("gpfd.virtual.threads.pinned").timer();
+            assertNotNull(timer);
+            assertEquals(0, timer.count());
+        }
+    }
+
+    @Test
+    void shouldCloseWithoutBinding() {
+        var binder = new VirtualThreadPinningBinder(Duration.ofMillis(20));
+
+        assertDoesNotThrow(binder::close);
+    }
+}
@@ -0,0 +1,46 @@
+package uk.gov.laa.gpfd.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import uk.gov.laa.gpfd.exception.ExportRejectedException;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DownloadHeadersResetResolverTest {
+
+    private final DownloadHeadersResetResolver resolver = new DownloadHeadersResetResolver();
+    private final HttpServletRequest request = mock(HttpServletRequest.class);
+    private final HttpServletResponse response = mock(HttpServletResponse.class);
+    private final Exception rejected = new ExportRejectedException("Too many exports", Duration.ofSeconds(5));
+
+    @Test
+    void shouldClearDownloadHeadersAndLeaveResolutionToOtherResolvers() {
+        assertNull(resolver.resolveException(request, response, null, rejected));
+
+        verify(response).setHeader(HttpHeaders.CONTENT_DISPOSITION, null);
+        verify(response).setHeader(HttpHeaders.ETAG, null);
+        verify(response).setHeader(HttpHeaders.CONTENT_ENCODING, null);
+        verify(response).resetBuffer();
+        verify(response).setContentType(null);
+        verify(response).setContentLengthLong(-1);
+    }
+
+    @Test
+    void shouldLeaveCommittedResponsesAlone() {
+        when(response.isCommitted()).thenReturn(true);
+
+        assertNull(resolver.resolveException(request, response, null, rejected));
+
+        verify(response, never()).setHeader(HttpHeaders.CONTENT_DISPOSITION, null);
+        verify(response, never()).setContentType(null);
+        verify(response, never()).resetBuffer();
+    }
+}
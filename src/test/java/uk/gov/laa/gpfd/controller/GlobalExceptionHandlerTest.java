@@ -20,6 +20,7 @@ import uk.gov.laa.gpfd.exception.CsvGenerationException.MetadataInvalidException
 import uk.gov.laa.gpfd.exception.CsvGenerationException.WritingToCsvException;
 import uk.gov.laa.gpfd.exception.DatabaseReadException;
 import uk.gov.laa.gpfd.exception.DatabaseWriteException;
+import uk.gov.laa.gpfd.exception.ExportRejectedException;
 import uk.gov.laa.gpfd.exception.FileDownloadException.InvalidDownloadFormatException;
 import uk.gov.laa.gpfd.exception.FileDownloadException.ReportNotSupportedForDownloadException;
 import uk.gov.laa.gpfd.exception.FileDownloadException.S3BucketHasNoCopiesOfReportException;
@@ -48,6 +49,7 @@ import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.UnexpectedAut
 import uk.gov.laa.gpfd.utils.RequestLogUtils;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -60,6 +62,7 @@ import static org.springframework.http.HttpStatus.FORBIDDEN;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
 import static org.springframework.http.HttpStatus.NOT_IMPLEMENTED;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
 import static uk.gov.laa.gpfd.exception.DatabaseReadException.DatabaseFetchException;
 import static uk.gov.laa.gpfd.exception.DatabaseReadException.MappingException;
 import static uk.gov.laa.gpfd.exception.DatabaseReadException.SqlFormatException;
@@ -446,6 +449,17 @@ class GlobalExceptionHandlerTest {
                 response.getBody().getError());
     }
 
+    @Test
+    void shouldHandleExportRejectedExceptionWithRetryAfter() {
+        var exception = new ExportRejectedException("Too many large exports in progress", Duration.ofSeconds(42));
+
+        var response = globalExceptionHandler.handleExportRejectedException(exception);
+
+        assertEquals(TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("42", response.getHeaders().getFirst("Retry-After"));
+        assertEquals("Too many large exports in progress", response.getBody().getError());
+    }
+
     @ParameterizedTest
     @MethodSource("reportGenerationExceptionProvider")
     void shouldHandleReportGenerationExceptionProvider(ReportGenerationException exception, String expectedMessage) {
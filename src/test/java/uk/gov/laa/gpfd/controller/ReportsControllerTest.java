@@ -1,5 +1,6 @@
 package uk.gov.laa.gpfd.controller;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -26,18 +27,24 @@ import uk.gov.laa.gpfd.exception.InvalidReportFormatException;
 import uk.gov.laa.gpfd.exception.ReportAccessException;
 import uk.gov.laa.gpfd.model.FileExtension;
 import uk.gov.laa.gpfd.model.GetReportById200Response;
+import uk.gov.laa.gpfd.model.Report;
 import uk.gov.laa.gpfd.model.ReportsGet200ResponseReportListInner;
+import uk.gov.laa.gpfd.services.ReportCatalogueService;
 import uk.gov.laa.gpfd.services.ReportManagementService;
 import uk.gov.laa.gpfd.services.ReportResponseBuilder;
 import uk.gov.laa.gpfd.services.StreamingService;
 import uk.gov.laa.gpfd.services.s3.FileDownloadService;
 import uk.gov.laa.gpfd.services.s3.S3ClientWrapper;
+import uk.gov.laa.gpfd.services.stream.ExportFormatPlanner;
+import uk.gov.laa.gpfd.services.stream.KnownLengthResponseBody;
 import uk.gov.laa.gpfd.services.stream.TrackedStreamService;
 import uk.gov.laa.gpfd.utils.BaseMvcTest;
 import uk.gov.laa.gpfd.utils.SecurityUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -74,6 +81,9 @@ class ReportsControllerTest extends BaseMvcTest {
     @MockitoBean
     ReportManagementService reportManagementServiceMock;
 
+    @MockitoBean
+    ReportCatalogueService reportCatalogueService;
+
     @MockitoBean
     StreamingService streamingService;
 
@@ -92,6 +102,14 @@ class ReportsControllerTest extends BaseMvcTest {
     @MockitoBean
     TrackedStreamService trackedStreamService;
 
+    @MockitoBean
+    ExportFormatPlanner exportFormatPlanner;
+
+    @BeforeEach
+    void stubExcelFormat() {
+        when(exportFormatPlanner.excelFormat(any())).thenReturn(FileExtension.XLSX);
+    }
+
     @TestConfiguration
     static class AsyncTestConfig implements WebMvcConfigurer {
         @Override
@@ -122,7 +140,7 @@ class ReportsControllerTest extends BaseMvcTest {
                         .body(responseStream);
 
         doNothing().when(reportDao).verifyUserCanAccessReport(reportId);
-        when(streamingService.stream(reportId, FileExtension.CSV)).thenReturn(responseStream);
+        when(streamingService.stream(report, FileExtension.CSV)).thenReturn(responseStream);
         when(reportDao.fetchReportById(reportId)).thenReturn(Optional.of(report));
         when(securityUtils.extractUserId()).thenReturn(USER_ID);
         when(trackedStreamService.wrapStream(any(), any(), any())).thenReturn(responseStream);
@@ -136,12 +154,45 @@ class ReportsControllerTest extends BaseMvcTest {
 
         assertEquals("1,John,Doe\n2,Jane,Smith\n", response.getResponse().getContentAsString());
 
-        verify(streamingService).stream(reportId, FileExtension.CSV);
+        verify(streamingService).stream(report, FileExtension.CSV);
+        verify(reportDao).fetchReportById(reportId);
         verify(trackedStreamService).wrapStream(responseStream, reportId, USER_ID);
         verify(reportResponseBuilder).buildResponse(responseStream, "Test Report.csv", FileExtension.CSV);
         verify(reportManagementServiceMock).validateReportFormat(reportId, FileExtension.CSV);
     }
 
+    @Test
+    void downloadCachedCsvPassesContentLength() throws Exception {
+        var report = createTestReportWithOutputType(csvReportOutput);
+        var reportId = report.getId();
+        var cached = new KnownLengthResponseBody() {
+            @Override
+            public long contentLength() {
+                return 11;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                outputStream.write("1,John,Doe\n".getBytes());
+            }
+        };
+
+        doNothing().when(reportDao).verifyUserCanAccessReport(reportId);
+        when(streamingService.stream(report, FileExtension.CSV)).thenReturn(cached);
+        when(reportDao.fetchReportById(reportId)).thenReturn(Optional.of(report));
+        when(securityUtils.extractUserId()).thenReturn(USER_ID);
+        when(trackedStreamService.wrapStream(any(), any(), any())).thenReturn(cached);
+        when(reportResponseBuilder.buildResponse(any(), any(), any(), any())).thenReturn(ResponseEntity.ok()
+                .contentLength(11)
+                .body(cached));
+
+        var response = performAuthenticatedStreamingGet("/reports/" + reportId + "/csv", List.of(FINANCIAL));
+
+        assertEquals(200, response.getResponse().getStatus());
+        assertEquals("1,John,Doe\n", response.getResponse().getContentAsString());
+        verify(reportResponseBuilder).buildResponse(cached, "Test Report.csv", FileExtension.CSV, 11L);
+    }
+
     @Test
     void getReportListReturnsCorrectResponseEntity() throws Exception {
         //Create Mock Response objects
@@ -151,7 +202,7 @@ class ReportsControllerTest extends BaseMvcTest {
         //Add mock response objects to a list
         List<ReportsGet200ResponseReportListInner> reportListResponseMockList = Arrays.asList(reportListEntryMock1, reportListEntryMock2);
         // Mock the Service call
-        when(reportManagementServiceMock.fetchReportListEntries()).thenReturn(reportListResponseMockList);
+        when(reportCatalogueService.fetchReportListEntries()).thenReturn(reportListResponseMockList);
 
         // Perform request and assert results
         performAuthenticatedGet("/reports", List.of(FINANCIAL))
@@ -159,7 +210,7 @@ class ReportsControllerTest extends BaseMvcTest {
                 .andExpect(jsonPath("$.reportList[0].id").value(String.valueOf(reportListEntryMock1.getId())))
                 .andExpect(jsonPath("$.reportList[1].id").value(String.valueOf(reportListEntryMock2.getId())));
 
-        verify(reportManagementServiceMock, times(1)).fetchReportListEntries();
+        verify(reportCatalogueService, times(1)).fetchReportListEntries();
     }
 
     @Test
@@ -249,7 +300,7 @@ class ReportsControllerTest extends BaseMvcTest {
                 .validateReportFormat(uuid, FileExtension.XLSX);
 
         verify(streamingService, never())
-                .stream(uuid, FileExtension.XLSX);
+                .stream(any(Report.class), eq(FileExtension.XLSX));
     }
 
     @ParameterizedTest(name = "Rejects invalid filetype {1} for CSV download")
@@ -276,7 +327,7 @@ class ReportsControllerTest extends BaseMvcTest {
                 .validateReportFormat(uuid, FileExtension.CSV);
 
         verify(streamingService, never())
-                .stream(uuid, FileExtension.CSV);
+                .stream(any(Report.class), eq(FileExtension.CSV));
     }
 
     @Test
@@ -300,7 +351,7 @@ class ReportsControllerTest extends BaseMvcTest {
 
         // Validation passes (no exception thrown)
         doNothing().when(reportManagementServiceMock).validateReportFormat(excelReportId, FileExtension.XLSX);
-        when(streamingService.stream(excelReportId, FileExtension.XLSX)).thenReturn(responseBody);
+        when(streamingService.stream(report, FileExtension.XLSX)).thenReturn(responseBody);
         when(securityUtils.extractUserId()).thenReturn(USER_ID);
         when(trackedStreamService.wrapStream(any(), any(), any())).thenReturn(responseBody);
         when(reportResponseBuilder.buildResponse(any(), any(), any())).thenReturn(mockResponseEntity);
@@ -314,11 +365,32 @@ class ReportsControllerTest extends BaseMvcTest {
         assertEquals("attachment; filename=report.xlsx", result.getResponse().getHeader(HttpHeaders.CONTENT_DISPOSITION));
 
         verify(reportManagementServiceMock).validateReportFormat(excelReportId, FileExtension.XLSX);
-        verify(streamingService).stream(excelReportId, FileExtension.XLSX);
+        verify(streamingService).stream(report, FileExtension.XLSX);
         verify(trackedStreamService).wrapStream(responseBody, excelReportId, USER_ID);
         verify(reportResponseBuilder).buildResponse(responseBody, "Test Report.xlsx", FileExtension.XLSX);
     }
 
+    @Test
+    void downloadExcelStreamsZippedCsvWhenEstimatedTooLarge() throws Exception {
+        var report = ReportsTestDataFactory.createTestReportWithOutputType(xlsxReportOutput);
+        var excelReportId = report.getId();
+        StreamingResponseBody responseBody = outputStream -> outputStream.write("mock-zip-data".getBytes());
+
+        when(exportFormatPlanner.excelFormat(report)).thenReturn(FileExtension.ZIP);
+        when(streamingService.stream(report, FileExtension.ZIP)).thenReturn(responseBody);
+        when(securityUtils.extractUserId()).thenReturn(USER_ID);
+        when(trackedStreamService.wrapStream(any(), any(), any())).thenReturn(responseBody);
+        when(reportResponseBuilder.buildResponse(any(), any(), any())).thenReturn(ResponseEntity.ok().body(responseBody));
+        when(reportDao.fetchReportById(excelReportId)).thenReturn(Optional.of(report));
+
+        var result = performAuthenticatedStreamingGet("/reports/" + excelReportId + "/excel", List.of(FINANCIAL));
+
+        assertEquals(200, result.getResponse().getStatus());
+        verify(reportManagementServiceMock).validateReportFormat(excelReportId, FileExtension.XLSX);
+        verify(streamingService, never()).stream(report, FileExtension.XLSX);
+        verify(reportResponseBuilder).buildResponse(responseBody, "Test Report.zip", FileExtension.ZIP);
+    }
+
     @ParameterizedTest(name = "Rejects invalid filetype {1} for S3STORAGE download")
     @CsvSource({
             "f46b4d3d-c100-429a-bf9a-6c3305dbdbfa, CSV",
@@ -413,12 +485,12 @@ class ReportsControllerTest extends BaseMvcTest {
                 .body(responseStream);
 
         doNothing().when(reportDao).verifyUserCanAccessReport(reportId);
-        when(streamingService.stream(reportId, FileExtension.CSV)).thenReturn(responseStream);
         when(reportDao.fetchReportById(reportId)).thenReturn(Optional.empty());
         when(securityUtils.extractUserId()).thenReturn(USER_ID);
 
         performAuthenticatedGet("/reports/" + reportId + "/csv", List.of(FINANCIAL))
                 .andExpect(status().isNotFound());
+        verify(streamingService, never()).stream(any(Report.class), eq(FileExtension.CSV));
 
     }
 
@@ -443,13 +515,13 @@ class ReportsControllerTest extends BaseMvcTest {
 
         // Validation passes (no exception thrown)
         doNothing().when(reportManagementServiceMock).validateReportFormat(excelReportId, FileExtension.XLSX);
-        when(streamingService.stream(excelReportId, FileExtension.XLSX)).thenReturn(responseBody);
         when(securityUtils.extractUserId()).thenReturn(USER_ID);
         when(reportDao.fetchReportById(excelReportId)).thenReturn(Optional.empty());
 
         // Perform the GET request
         performAuthenticatedGet("/reports/" + excelReportId + "/excel", List.of(FINANCIAL))
                 .andExpect(status().isNotFound());
+        verify(streamingService, never()).stream(any(Report.class), any(FileExtension.class));
     }
 
     @Test
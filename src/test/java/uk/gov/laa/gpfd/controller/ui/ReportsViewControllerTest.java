@@ -1,36 +1,31 @@
 package uk.gov.laa.gpfd.controller.ui;
 
-import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ui.Model;
-import uk.gov.laa.gpfd.controller.ReportsController;
-import uk.gov.laa.gpfd.model.GetReportById200Response;
-import uk.gov.laa.gpfd.model.ReportsGet200Response;
 import uk.gov.laa.gpfd.model.ReportsGet200ResponseReportListInner;
+import uk.gov.laa.gpfd.services.ReportCatalogueService;
 import uk.gov.laa.gpfd.utils.UrlBuilder;
 
 import java.net.URI;
 import java.util.List;
+import java.util.UUID;
 
 import static java.util.UUID.randomUUID;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.any;
-import static org.mockito.Mockito.anyList;
-import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.springframework.http.ResponseEntity.ok;
 
 @ExtendWith(MockitoExtension.class)
 class ReportsViewControllerTest {
 
     @Mock
-    ReportsController reportsApiController;
+    ReportCatalogueService reportCatalogueService;
 
     @Mock
     Model model;
@@ -48,59 +43,53 @@ class ReportsViewControllerTest {
     }
 
     @Test
-    @SneakyThrows
+    @SuppressWarnings({"rawtypes", "unchecked"})
     void getAllReports_shouldReturnCorrectViewName() {
         when(urlBuilder.getServiceUrl()).thenReturn("http://example.com/");
 
         var reportId1 = randomUUID();
         var reportId2 = randomUUID();
-
-        var reportsResponse = new ReportsGet200Response() {{
-            setReportList(List.of(
-                    new ReportsGet200ResponseReportListInner() {{
-                        setId(reportId1);
-                        setReportName("Report 1");
-                        setDescription("Description 1");
-                    }},
-                    new ReportsGet200ResponseReportListInner() {{
-                        setId(reportId2);
-                        setReportName("Report 2");
-                        setDescription("Description 2");
-                    }})
-            );
-        }};
-
-        when(reportsApiController.reportsGet()).thenReturn(ok(reportsResponse));
-        when(reportsApiController.getReportById(reportId1)).thenReturn(ok(new GetReportById200Response() {{
-            setReportDownloadUrl(new URI("http://example.com/report1"));
-        }}));
-        when(reportsApiController.getReportById(reportId2)).thenReturn(ok(new GetReportById200Response() {{
-            setReportDownloadUrl(new URI("http://example.com/report2"));
-        }}));
+        when(reportCatalogueService.fetchReportListEntries()).thenReturn(List.of(
+                entry(reportId1, "Report 1", URI.create("http://example.com/reports/" + reportId1 + "/excel")),
+                entry(reportId2, "Report 2", URI.create("http://example.com/reports/" + reportId2 + "/csv"))));
 
         var viewName = reportsViewController.getAllReports(model);
 
         assertEquals("reports/list", viewName);
-        verify(model).addAttribute(eq("reportListResponse"), anyList());
-        verify(reportsApiController).reportsGet();
-        verify(reportsApiController).getReportById(reportId1);
-        verify(reportsApiController).getReportById(reportId2);
+        ArgumentCaptor<List> reports = ArgumentCaptor.forClass(List.class);
+        verify(model).addAttribute(eq("reportListResponse"), reports.capture());
+        assertEquals(2, reports.getValue().size());
+        assertEquals("xlsx", fileExtension(reports.getValue().getFirst()));
+        assertEquals("csv", fileExtension(reports.getValue().get(1)));
+        verify(reportCatalogueService).fetchReportListEntries();
     }
 
     @Test
     void getAllReports_shouldHandleEmptyReportList() {
         when(urlBuilder.getServiceUrl()).thenReturn("http://example.com/");
-
-        when(reportsApiController.reportsGet()).thenReturn(ok(new ReportsGet200Response() {{
-            setReportList(List.of());
-        }}));
+        when(reportCatalogueService.fetchReportListEntries()).thenReturn(List.of());
 
         var viewName = reportsViewController.getAllReports(model);
 
         assertEquals("reports/list", viewName);
         verify(model).addAttribute("reportListResponse", List.of());
-        verify(reportsApiController).reportsGet();
-        verify(reportsApiController, never()).getReportById(any());
+        verify(reportCatalogueService).fetchReportListEntries();
     }
 
-}
\ No newline at end of file
+    private static ReportsGet200ResponseReportListInner entry(UUID id, String name, URI downloadUrl) {
+        var entry = new ReportsGet200ResponseReportListInner();
+        entry.setId(id);
+        entry.setReportName(name);
+        entry.setDescription("Description of " + name);
+        entry.setReportDownloadUrl(downloadUrl);
+        return entry;
+    }
+
+    private static String fileExtension(Object report) {
+        try {
+            return (String) report.getClass().getMethod("fileExtension").invoke(report);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
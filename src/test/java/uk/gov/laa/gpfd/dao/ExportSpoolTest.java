@@ -0,0 +1,249 @@
+package uk.gov.laa.gpfd.dao;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import uk.gov.laa.gpfd.exception.DatabaseReadException.DatabaseFetchException;
+import uk.gov.laa.gpfd.model.FileExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportSpoolTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldWriteStraightToClientWhenDisabled() throws IOException {
+        var spool = new ExportSpool(false, 1024, executor, meterRegistry);
+        var output = new ByteArrayOutputStream();
+
+        spool.stream(FileExtension.CSV, out -> out.write("ID\n".getBytes(UTF_8)), output);
+
+        assertEquals("ID\n", output.toString(UTF_8));
+        assertEquals(1, timerCount("gpfd.export.connection.hold"));
+        assertEquals(1, timerCount("gpfd.export.response.duration"));
+    }
+
+    @Test
+    void shouldSpoolOutputThatFitsInMemory() throws IOException {
+        var spool = new ExportSpool(true, 1024, executor, meterRegistry);
+        var output = new ByteArrayOutputStream();
+
+        spool.stream(FileExtension.CSV, out -> {
+            out.write("ID\n".getBytes(UTF_8));
+            out.write('1');
+        }, output);
+
+        assertEquals("ID\n1", output.toString(UTF_8));
+        assertEquals(1, timerCount("gpfd.export.connection.hold"));
+        assertEquals(1, timerCount("gpfd.export.response.duration"));
+    }
+
+    @Test
+    void shouldOverflowLargeOutputToFile() throws IOException {
+        var spool = new ExportSpool(true, 100, executor, meterRegistry);
+        var expected = bytes(300_000);
+        var output = new ByteArrayOutputStream();
+
+        spool.stream(FileExtension.CSV, out -> {
+            for (int offset = 0; offset < expected.length; offset += 7_000) {
+                out.write(expected, offset, Math.min(7_000, expected.length - offset));
+            }
+        }, output);
+
+        assertArrayEquals(expected, output.toByteArray());
+    }
+
+    @Test
+    void shouldFinishReadingBeforeSlowClientHasCaughtUp() throws Exception {
+        var spool = new ExportSpool(true, 16, executor, meterRegistry);
+        var readFinished = new CountDownLatch(1);
+        var client = new BlockingOutputStream();
+
+        var download = CompletableFuture.runAsync(() -> {
+            try {
+                spool.stream(FileExtension.CSV, out -> {
+                    out.write(bytes(1_000));
+                    readFinished.countDown();
+                }, client);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertTrue(readFinished.await(5, TimeUnit.SECONDS));
+        assertFalse(download.isDone());
+        client.release.countDown();
+        download.get(5, TimeUnit.SECONDS);
+        assertEquals(1_000, client.written.size());
+    }
+
+    @Test
+    void shouldNotifyOnceSpooledReadHasFinishedBeforeClientHasCaughtUp() throws Exception {
+        var spool = new ExportSpool(true, 16, executor, meterRegistry);
+        var readFinished = new CountDownLatch(1);
+        var client = new BlockingOutputStream();
+
+        var download = CompletableFuture.runAsync(() -> {
+            try {
+                ExportSpool.writeNotifying(readFinished::countDown,
+                        out -> spool.stream(FileExtension.CSV, producer -> producer.write(bytes(1_000)), out), client);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertTrue(readFinished.await(5, TimeUnit.SECONDS));
+        assertFalse(download.isDone());
+        client.release.countDown();
+        download.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shouldNotifyOnceHeldWorkHasFinished() throws IOException {
+        var spool = new ExportSpool(false, 0, executor, meterRegistry);
+        var notified = new boolean[1];
+
+        ExportSpool.writeNotifying(() -> notified[0] = true,
+                _ -> spool.holding(FileExtension.XLSX, () -> assertFalse(notified[0])), new ByteArrayOutputStream());
+
+        assertTrue(notified[0]);
+    }
+
+    @Test
+    void shouldRethrowReadFailureAfterWritingEarlierOutput() {
+        var spool = new ExportSpool(true, 1024, executor, meterRegistry);
+        var failure = new DatabaseFetchException("ORA-01555");
+        var output = new ByteArrayOutputStream();
+
+        assertSame(failure, assertThrows(DatabaseFetchException.class, () -> spool.stream(FileExtension.CSV, out -> {
+            out.write("ID\n".getBytes(UTF_8));
+            throw failure;
+        }, output)));
+        assertEquals("ID\n", output.toString(UTF_8));
+    }
+
+    @Test
+    void shouldStopReadingWhenClientDisconnects() throws Exception {
+        var spool = new ExportSpool(true, 1024, executor, meterRegistry);
+        var clientFailed = new CountDownLatch(1);
+        var readFailure = new CompletableFuture<Throwable>();
+        OutputStream client = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                clientFailed.countDown();
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThrows(IOException.class, () -> spool.stream(FileExtension.CSV, out -> {
+            out.write(1);
+            try {
+                clientFailed.await(5, TimeUnit.SECONDS);
+                // The client side marks the spool abandoned just after its write fails
+                for (int i = 0; i < 500; i++) {
+                    out.write(2);
+                    Thread.sleep(10);
+                }
+            } catch (IOException | InterruptedException e) {
+                readFailure.complete(e);
+                return;
+            }
+            readFailure.complete(null);
+        }, client));
+
+        assertInstanceOf(IOException.class, readFailure.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldWriteStraightThroughWhenAlreadyFillingAnotherSpool() throws IOException {
+        var spool = new ExportSpool(true, 1024, _ -> {
+            throw new IllegalStateException("Output is spooled twice");
+        }, meterRegistry);
+        var outer = new TailSpool(1024, null);
+        outer.subscribe();
+
+        outer.fill(out -> spool.stream(FileExtension.CSV, producer -> producer.write("ID\n".getBytes(UTF_8)), out));
+
+        var output = new ByteArrayOutputStream();
+        outer.tailTo(output);
+        assertEquals("ID\n", output.toString(UTF_8));
+        assertEquals(1, timerCount("gpfd.export.connection.hold"));
+    }
+
+    @Test
+    void shouldRecordTimingsOfWorkThatIsNotSpooled() {
+        var spool = new ExportSpool(false, 0, executor, meterRegistry);
+
+        spool.holding(FileExtension.XLSX, () -> { });
+        spool.measure(FileExtension.XLSX, () -> { });
+
+        assertEquals(1, meterRegistry.get("gpfd.export.connection.hold").tag("format", "xlsx").timer().count());
+        assertEquals(1, meterRegistry.get("gpfd.export.response.duration").tag("format", "xlsx").timer().count());
+    }
+
+    @Test
+    void shouldRejectNegativeMemory() {
+        assertThrows(IllegalArgumentException.class, () -> new ExportSpool(true, -1, executor, meterRegistry));
+    }
+
+    private double timerCount(String name) {
+        return meterRegistry.get(name).tag("format", "csv").timer().count();
+    }
+
+    private static byte[] bytes(int length) {
+        var bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+
+    /**
+     * A client that does not read anything until released.
+     */
+    private static final class BlockingOutputStream extends OutputStream {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                if (!release.await(5, TimeUnit.SECONDS)) {
+                    throw new IOException("Timed out waiting for test");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            written.write(b, off, len);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package uk.gov.laa.gpfd.dao;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,17 +9,28 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import uk.gov.laa.gpfd.dao.JdbcDataStreamer.CsvEncoding;
+import uk.gov.laa.gpfd.model.QueryPartitioning;
 
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReport;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReportWithPartitionedQuery;
 import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReportWithQuery;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,7 +43,7 @@ class JdbcDataStreamerTest {
 
     @BeforeEach
     void beforeEach() {
-        jdbcDataStreamer = new JdbcDataStreamer(jdbcOperations, 100);
+        jdbcDataStreamer = new JdbcDataStreamer(jdbcOperations, 100, CsvEncoding.DIRECT, null, ExportSpool.disabled());
     }
 
     @Test
@@ -77,6 +89,95 @@ class JdbcDataStreamerTest {
         verify(outputStream).flush();
     }
 
+    @SneakyThrows
+    @Test
+    void shouldExecuteQueryWithJacksonEncoding() {
+        var streamer = new JdbcDataStreamer(jdbcOperations, 100, CsvEncoding.JACKSON, null, ExportSpool.disabled());
+        var outputStream = mock(ByteArrayOutputStream.class);
+
+        streamer.stream(createTestReportWithQuery(), outputStream);
+
+        verify(jdbcOperations).query(eq("SELECT * FROM ANY_REPORT.DATA"), any(ResultSetExtractor.class));
+        verify(outputStream).flush();
+    }
+
+    @Test
+    void shouldRejectNullEncoding() {
+        assertThrows(NullPointerException.class, () -> new JdbcDataStreamer(jdbcOperations, 100, null, null, ExportSpool.disabled()));
+    }
+
+    @SneakyThrows
+    @Test
+    void shouldDelegatePartitionedQueryToPartitionedStreamer() {
+        var partitioning = new QueryPartitioning(4, null, true);
+        var partitioned = mock(PartitionedCsvStreamer.class);
+        var streamer = new JdbcDataStreamer(jdbcOperations, 100, CsvEncoding.DIRECT, partitioned, ExportSpool.disabled());
+        var outputStream = mock(ByteArrayOutputStream.class);
+        when(partitioned.stream("SELECT * FROM ANY_REPORT.DATA", partitioning, outputStream)).thenReturn(true);
+
+        streamer.stream(createTestReportWithPartitionedQuery(partitioning), outputStream);
+
+        verify(jdbcOperations, never()).query(anyString(), any(ResultSetExtractor.class));
+        verify(outputStream).flush();
+    }
+
+    @SneakyThrows
+    @Test
+    void shouldReadSeriallyWhenPartitionedStreamerDeclines() {
+        var partitioning = new QueryPartitioning(4, null, true);
+        var partitioned = mock(PartitionedCsvStreamer.class);
+        var streamer = new JdbcDataStreamer(jdbcOperations, 100, CsvEncoding.DIRECT, partitioned, ExportSpool.disabled());
+        var outputStream = new ByteArrayOutputStream();
+
+        streamer.stream(createTestReportWithPartitionedQuery(partitioning), outputStream);
+
+        verify(partitioned).stream("SELECT * FROM ANY_REPORT.DATA", partitioning, outputStream);
+        verify(jdbcOperations).query(eq("SELECT * FROM ANY_REPORT.DATA"), any(ResultSetExtractor.class));
+    }
+
+    @SneakyThrows
+    @Test
+    void shouldReadPartitionedQuerySeriallyWithJacksonEncoding() {
+        var partitioned = mock(PartitionedCsvStreamer.class);
+        var streamer = new JdbcDataStreamer(jdbcOperations, 100, CsvEncoding.JACKSON, partitioned, ExportSpool.disabled());
+
+        streamer.stream(createTestReportWithPartitionedQuery(new QueryPartitioning(4, null, true)),
+                new ByteArrayOutputStream());
+
+        verifyNoInteractions(partitioned);
+        verify(jdbcOperations).query(eq("SELECT * FROM ANY_REPORT.DATA"), any(ResultSetExtractor.class));
+    }
+
+    @SneakyThrows
+    @Test
+    void shouldStreamThroughSpoolWhenEnabled() {
+        var partitioning = new QueryPartitioning(4, null, true);
+        var partitioned = mock(PartitionedCsvStreamer.class);
+        var spool = new ExportSpool(true, 1024, Runnable::run, new SimpleMeterRegistry());
+        var streamer = new JdbcDataStreamer(jdbcOperations, 100, CsvEncoding.DIRECT, partitioned, spool);
+        var outputStream = new ByteArrayOutputStream();
+        when(partitioned.stream(eq("SELECT * FROM ANY_REPORT.DATA"), eq(partitioning), any(OutputStream.class)))
+                .thenAnswer(invocation -> {
+                    invocation.getArgument(2, OutputStream.class).write("ID\n1\n".getBytes(UTF_8));
+                    return true;
+                });
+
+        streamer.stream(createTestReportWithPartitionedQuery(partitioning), outputStream);
+
+        assertEquals("ID\n1\n", outputStream.toString(UTF_8));
+    }
+
+    @Test
+    void shouldRethrowDatabaseFailureThroughSpool() {
+        var spool = new ExportSpool(true, 1024, Runnable::run, new SimpleMeterRegistry());
+        var streamer = new JdbcDataStreamer(jdbcOperations, 100, CsvEncoding.DIRECT, null, spool);
+        var failure = new RuntimeException("DB error");
+        doThrow(failure).when(jdbcOperations).query(anyString(), any(ResultSetExtractor.class));
+
+        assertSame(failure, assertThrows(RuntimeException.class,
+                () -> streamer.stream(createTestReportWithQuery(), new ByteArrayOutputStream())));
+    }
+
     @Test
     void shouldThrowRuntimeExceptionWhenDatabaseAccessFails() {
         var testReport = createTestReportWithQuery();
@@ -0,0 +1,181 @@
+package uk.gov.laa.gpfd.dao;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.postgresql.PGConnection;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import uk.gov.laa.gpfd.dao.support.ReportMetadataHydrator;
+import uk.gov.laa.gpfd.dao.support.ReportWithQueriesAndFieldAttributesExtractor;
+import uk.gov.laa.gpfd.exception.ReportAccessException;
+import uk.gov.laa.gpfd.model.Report;
+import uk.gov.laa.gpfd.security.RoleBits;
+import uk.gov.laa.gpfd.utils.SecurityUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static uk.gov.laa.gpfd.dao.MetadataCatalogue.SELECT_REPORT_ROLES_SQL;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReport;
+
+@ExtendWith(MockitoExtension.class)
+class MetadataCatalogueTest {
+
+    private static final UUID REPORT_ID = UUID.randomUUID();
+
+    @Mock
+    private JdbcClient metadataClient;
+
+    @Mock
+    private ReportMetadataHydrator hydrator;
+
+    @Mock
+    private ReportWithQueriesAndFieldAttributesExtractor extractor;
+
+    @Mock
+    private SecurityUtils securityUtils;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Report report = createTestReport(REPORT_ID);
+
+    private JdbcClient.StatementSpec rolesSpec;
+
+    @BeforeEach
+    void setUp() {
+        rolesSpec = mock(JdbcClient.StatementSpec.class);
+    }
+
+    @Test
+    void current_shouldBeEmptyUntilLoaded() {
+        var catalogue = catalogue(true);
+
+        assertTrue(catalogue.current().isEmpty());
+        assertTrue(Double.isNaN(meterRegistry.get("gpfd.metadata.snapshot.age").gauge().value()));
+    }
+
+    @Test
+    void reload_shouldIndexReportsAndRoles() throws Exception {
+        stubCatalogue();
+        var catalogue = catalogue(true);
+
+        catalogue.reload("test");
+
+        var snapshot = catalogue.current().orElseThrow();
+        assertEquals(report, snapshot.report(REPORT_ID).orElseThrow());
+        assertEquals(List.of("REP000"), snapshot.requiredRoles(REPORT_ID));
+        assertEquals(1, meterRegistry.get("gpfd.metadata.snapshot.reports").gauge().value());
+        assertEquals(1, meterRegistry.get("gpfd.metadata.snapshot.reload").tag("trigger", "test").timer().count());
+    }
+
+    @Test
+    void start_shouldKeepServingTheDatabaseWhenTheFirstLoadFails() {
+        when(hydrator.hydrateAll()).thenThrow(new DataAccessResourceFailureException("down"));
+        var catalogue = catalogue(true);
+
+        try (catalogue) {
+            catalogue.start();
+            assertTrue(catalogue.current().isEmpty());
+            assertEquals(1, meterRegistry.get("gpfd.metadata.snapshot.reload.failures")
+                    .tag("trigger", "startup").counter().count());
+        }
+    }
+
+    @Test
+    void start_shouldDoNothingWhenDisabled() {
+        var catalogue = catalogue(false);
+
+        catalogue.start();
+
+        assertTrue(catalogue.current().isEmpty());
+        verifyNoInteractions(metadataClient, hydrator);
+    }
+
+    @Test
+    void reportDao_shouldServeLookupsFromTheSnapshot() throws Exception {
+        stubCatalogue();
+        var catalogue = catalogue(true);
+        catalogue.reload("test");
+        when(securityUtils.extractRoleBits()).thenReturn(RoleBits.of(List.of("REP000")));
+        when(securityUtils.extractRoles()).thenReturn(List.of("REP000"));
+        var reportDao = new ReportDao(extractor, metadataClient, securityUtils, catalogue);
+
+        assertEquals(report, reportDao.fetchReportById(REPORT_ID).orElseThrow());
+        assertEquals(List.of(report), List.copyOf(reportDao.fetchReports()));
+        verify(hydrator, times(1)).hydrateAll();
+        verify(metadataClient, times(1)).sql(SELECT_REPORT_ROLES_SQL);
+    }
+
+    @Test
+    void reportDao_shouldDenyReportsTheSnapshotDoesNotGrant() throws Exception {
+        stubCatalogue();
+        var catalogue = catalogue(true);
+        catalogue.reload("test");
+        when(securityUtils.extractRoleBits()).thenReturn(RoleBits.of(List.of("OTHER")));
+        var reportDao = new ReportDao(extractor, metadataClient, securityUtils, catalogue);
+
+        assertThrows(ReportAccessException.class, () -> reportDao.fetchReportById(REPORT_ID));
+    }
+
+    @Test
+    void shouldStopListeningAndCloseConnectionWhenListeningFails() throws Exception {
+        var listenerDataSource = mock(DataSource.class);
+        var connection = mock(Connection.class);
+        var statement = mock(Statement.class);
+        when(listenerDataSource.getConnection()).thenReturn(connection);
+        when(connection.unwrap(PGConnection.class)).thenThrow(new SQLException("Not a Postgres connection"));
+        when(connection.createStatement()).thenReturn(statement);
+        var catalogue = new MetadataCatalogue(metadataClient, listenerDataSource, hydrator, true, true,
+                Duration.ofMinutes(5), meterRegistry);
+
+        catalogue.start();
+
+        verify(statement, timeout(5000)).execute("UNLISTEN *");
+        verify(connection, timeout(5000)).close();
+        catalogue.close();
+    }
+
+    @Test
+    void shouldRejectNonPositiveMaximumAge() {
+        assertThrows(IllegalArgumentException.class, () -> new MetadataCatalogue(metadataClient, null, hydrator,
+                true, false, Duration.ZERO, meterRegistry));
+    }
+
+    private MetadataCatalogue catalogue(boolean enabled) {
+        return new MetadataCatalogue(metadataClient, null, hydrator, enabled, false, Duration.ofMinutes(5),
+                meterRegistry);
+    }
+
+    private void stubCatalogue() throws Exception {
+        when(hydrator.hydrateAll()).thenReturn(List.of(report));
+        when(metadataClient.sql(SELECT_REPORT_ROLES_SQL)).thenReturn(rolesSpec);
+        var resultSet = mock(ResultSet.class);
+        when(resultSet.getString("REPORT_ID")).thenReturn(REPORT_ID.toString());
+        when(resultSet.getString("ROLE_NAME")).thenReturn("REP000");
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(0).processRow(resultSet);
+            return null;
+        }).when(rolesSpec).query(any(RowCallbackHandler.class));
+    }
+}
@@ -0,0 +1,81 @@
+package uk.gov.laa.gpfd.dao;
+
+import org.junit.jupiter.api.Test;
+import uk.gov.laa.gpfd.model.ImmutableReport;
+import uk.gov.laa.gpfd.model.Report;
+import uk.gov.laa.gpfd.security.RoleBits;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReport;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReportWithMultipleFieldAttributes;
+
+class MetadataSnapshotTest {
+
+    private static final Instant LOADED_AT = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void shouldLookUpReportsAndRolesById() {
+        var report = createTestReport(UUID.randomUUID());
+        var snapshot = MetadataSnapshot.of(List.of(report), Map.of(report.getId(), List.of("REP000")), LOADED_AT);
+
+        assertEquals(report, snapshot.report(report.getId()).orElseThrow());
+        assertEquals(List.of("REP000"), snapshot.requiredRoles(report.getId()));
+        assertTrue(snapshot.report(UUID.randomUUID()).isEmpty());
+        assertEquals(List.of(), snapshot.requiredRoles(UUID.randomUUID()));
+        assertEquals(LOADED_AT, snapshot.loadedAt());
+    }
+
+    @Test
+    void shouldListActiveReportsForAnyOfTheRolesInCatalogueOrder() {
+        var first = createTestReport(UUID.randomUUID());
+        var second = createTestReport(UUID.randomUUID());
+        var inactive = ImmutableReport.copyOf(createTestReport(UUID.randomUUID())).withActive(false);
+        var unshared = createTestReport(UUID.randomUUID());
+        var snapshot = MetadataSnapshot.of(List.of(first, second, inactive, unshared), Map.of(
+                first.getId(), List.of("REP000", "RECONCILIATION"),
+                second.getId(), List.of("RECONCILIATION"),
+                inactive.getId(), List.of("REP000"),
+                unshared.getId(), List.of("OTHER")), LOADED_AT);
+
+        assertEquals(List.of(first, second), snapshot.activeReportsFor(List.of("RECONCILIATION", "REP000")));
+        assertEquals(List.of(first), snapshot.activeReportsFor(List.of("REP000")));
+        assertEquals(List.<Report>of(), snapshot.activeReportsFor(List.of("UNKNOWN")));
+        assertEquals(List.of("REP000"), snapshot.requiredRoles(inactive.getId()));
+    }
+
+    @Test
+    void grants_shouldRequireOneOfTheReportsRoles() {
+        var report = createTestReport(UUID.randomUUID());
+        var snapshot = MetadataSnapshot.of(List.of(report),
+                Map.of(report.getId(), List.of("REP000", "RECONCILIATION")), LOADED_AT);
+
+        assertTrue(snapshot.grants(report.getId(), RoleBits.of(List.of("OTHER", "RECONCILIATION"))));
+        assertFalse(snapshot.grants(report.getId(), RoleBits.of(List.of("OTHER"))));
+        assertFalse(snapshot.grants(UUID.randomUUID(), RoleBits.of(List.of("REP000"))));
+    }
+
+    @Test
+    void shouldNotBeChangedByTheCollectionsItWasBuiltFrom() {
+        var report = createTestReportWithMultipleFieldAttributes();
+        var roles = new ArrayList<>(List.of("REP000"));
+        var snapshot = MetadataSnapshot.of(List.of(report), Map.of(report.getId(), roles), LOADED_AT);
+        roles.add("OTHER");
+
+        var held = snapshot.report(report.getId()).orElseThrow();
+        assertEquals(List.of("REP000"), snapshot.requiredRoles(report.getId()));
+        assertThrows(UnsupportedOperationException.class, () -> held.getQueries().clear());
+        var fieldAttributes = held.getQueries().iterator().next().getExcelSheet().getFieldAttributes();
+        assertEquals(2, fieldAttributes.size());
+        assertThrows(UnsupportedOperationException.class, fieldAttributes::clear);
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.reports().clear());
+    }
+}
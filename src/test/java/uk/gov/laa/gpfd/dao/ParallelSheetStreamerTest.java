@@ -0,0 +1,106 @@
+package uk.gov.laa.gpfd.dao;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import uk.gov.laa.gpfd.dao.ParallelSheetStreamer.SheetQuery;
+import uk.gov.laa.gpfd.exception.DatabaseReadException.DatabaseFetchException;
+import uk.gov.laa.gpfd.model.Mapping;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ParallelSheetStreamerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final JdbcWorkbookDataStreamer jdbcStreamer = mock(JdbcWorkbookDataStreamer.class);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldFillSheetsAtTheSameTime() {
+        var sheets = sheets(3);
+        var started = new CountDownLatch(3);
+        doAnswer(_ -> {
+            started.countDown();
+            assertTrue(started.await(5, TimeUnit.SECONDS), "Every sheet query should run at once");
+            return null;
+        }).when(jdbcStreamer).queryToSheet(any(), any());
+
+        new ParallelSheetStreamer(executor, 2, 3, meterRegistry).populate(sheets, jdbcStreamer);
+
+        assertEquals(3, timerCount("parallel"));
+    }
+
+    @Test
+    void shouldFillSheetsInOrderWhenNoConnectionsAreAvailable() {
+        var sheets = sheets(3);
+        var filled = new CopyOnWriteArrayList<Sheet>();
+        doAnswer(invocation -> filled.add(invocation.getArgument(0)))
+                .when(jdbcStreamer).queryToSheet(any(), any());
+
+        new ParallelSheetStreamer(executor, 0, 3, meterRegistry).populate(sheets, jdbcStreamer);
+
+        assertEquals(sheets.stream().map(SheetQuery::sheet).toList(), filled);
+        assertEquals(3, timerCount("serial"));
+    }
+
+    @Test
+    void shouldReleaseConnectionsForLaterExports() {
+        var streamer = new ParallelSheetStreamer(executor, 1, 2, meterRegistry);
+
+        streamer.populate(sheets(2), jdbcStreamer);
+        streamer.populate(sheets(2), jdbcStreamer);
+
+        assertEquals(4, timerCount("parallel"));
+    }
+
+    @Test
+    void shouldSkipRemainingSheetsAfterFailure() {
+        var sheets = sheets(2);
+        var failure = new DatabaseFetchException("ORA-00942");
+        doThrow(failure).when(jdbcStreamer).queryToSheet(sheets.getFirst().sheet(), sheets.getFirst().mapping());
+
+        var thrown = assertThrows(DatabaseFetchException.class,
+                () -> ParallelSheetStreamer.disabled().populate(sheets, jdbcStreamer));
+
+        assertSame(failure, thrown);
+        verify(jdbcStreamer, never()).queryToSheet(sheets.getLast().sheet(), sheets.getLast().mapping());
+    }
+
+    @Test
+    void shouldRejectPerExportLimitBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelSheetStreamer(executor, 1, 0, meterRegistry));
+    }
+
+    private static List<SheetQuery> sheets(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(_ -> new SheetQuery(mock(Sheet.class), mock(Mapping.class)))
+                .toList();
+    }
+
+    private double timerCount(String mode) {
+        return meterRegistry.get("gpfd.excel.sheet.duration").tag("mode", mode).timer().count();
+    }
+}
@@ -0,0 +1,200 @@
+package uk.gov.laa.gpfd.dao;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import uk.gov.laa.gpfd.model.QueryPartitioning;
+import uk.gov.laa.gpfd.services.excel.workbook.SheetStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PartitionedCsvStreamerTest {
+
+    private static final String SQL = "SELECT * FROM ANY_REPORT.DATA";
+
+    private final JdbcOperations jdbc = mock(JdbcOperations.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final SheetStorage storage = SheetStorage.unbounded();
+
+    @TempDir
+    private Path spillDirectory;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldStitchSlicesInOrderWithSingleHeader() throws Exception {
+        var slices = givenSlices(3, 200);
+        var output = new ByteArrayOutputStream();
+
+        var streamed = new PartitionedCsvStreamer(jdbc, executor, 4, storage)
+                .stream(SQL, new QueryPartitioning(3, null, true), output);
+
+        assertTrue(streamed);
+        assertEquals("ID,SLICE\n" + String.join("", slices), output.toString(UTF_8));
+    }
+
+    @Test
+    void shouldWriteEveryRowOnceWhenUnordered() throws Exception {
+        var slices = givenSlices(4, 50);
+        var output = new ByteArrayOutputStream();
+
+        new PartitionedCsvStreamer(jdbc, executor, 4, storage).stream(SQL, new QueryPartitioning(4, null, false), output);
+
+        var lines = output.toString(UTF_8).split("\n");
+        assertEquals("ID,SLICE", lines[0]);
+        var rows = Arrays.asList(lines).subList(1, lines.length).stream().sorted().toList();
+        var expected = String.join("", slices).lines().sorted().toList();
+        assertEquals(expected, rows);
+    }
+
+    @Test
+    void shouldRunEverySliceWhenFewerConnectionsThanSlices() throws Exception {
+        var slices = givenSlices(5, 10);
+        var output = new ByteArrayOutputStream();
+
+        new PartitionedCsvStreamer(jdbc, executor, 2, storage).stream(SQL, new QueryPartitioning(5, null, true), output);
+
+        assertEquals("ID,SLICE\n" + String.join("", slices), output.toString(UTF_8));
+    }
+
+    @Test
+    void shouldSpillEarlySlicesToSheetStorageAndRemoveThem() throws Exception {
+        var slices = givenSlices(4, 100);
+        var spillStorage = new SheetStorage(spillDirectory.toString(), 0, true, Long.MAX_VALUE, Long.MAX_VALUE,
+                new SimpleMeterRegistry());
+        var output = new ByteArrayOutputStream();
+
+        new PartitionedCsvStreamer(jdbc, executor, 4, spillStorage)
+                .stream(SQL, new QueryPartitioning(4, null, true), output);
+
+        assertEquals("ID,SLICE\n" + String.join("", slices), output.toString(UTF_8));
+        assertEquals(0, spillStorage.bytesInUse());
+        try (var files = Files.list(spillDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void shouldRunSliceQueryWithHashPredicate() throws Exception {
+        givenSlices(2, 1);
+
+        new PartitionedCsvStreamer(jdbc, executor, 2, storage)
+                .stream(SQL, new QueryPartitioning(2, "ID", true), new ByteArrayOutputStream());
+
+        verify(jdbc, times(2)).query(eq("SELECT * FROM (" + SQL + ") WHERE ORA_HASH(ID, 1) = ?"),
+                any(PreparedStatementSetter.class), any(ResultSetExtractor.class));
+    }
+
+    @Test
+    void shouldFallBackWhenFewerThanTwoConnectionsAreAvailable() throws Exception {
+        var output = new ByteArrayOutputStream();
+
+        var streamed = new PartitionedCsvStreamer(jdbc, executor, 1, storage)
+                .stream(SQL, new QueryPartitioning(4, null, true), output);
+
+        assertFalse(streamed);
+        assertEquals(0, output.size());
+        verify(jdbc, never()).query(anyString(), any(PreparedStatementSetter.class), any(ResultSetExtractor.class));
+    }
+
+    @Test
+    void shouldPropagateSliceFailure() {
+        var failure = new DataAccessResourceFailureException("ORA-01555");
+        doAnswer(_ -> {
+            throw failure;
+        }).when(jdbc).query(anyString(), any(PreparedStatementSetter.class), any(ResultSetExtractor.class));
+        var streamer = new PartitionedCsvStreamer(jdbc, executor, 2, storage);
+        var partitioning = new QueryPartitioning(2, null, true);
+        var output = new ByteArrayOutputStream();
+
+        var thrown = assertThrows(DataAccessResourceFailureException.class,
+                () -> streamer.stream(SQL, partitioning, output));
+
+        assertSame(failure, thrown);
+    }
+
+    @Test
+    void shouldRejectNegativeConnectionLimit() {
+        assertThrows(IllegalArgumentException.class, () -> new PartitionedCsvStreamer(jdbc, executor, -1, storage));
+    }
+
+    /**
+     * Stubs the slice queries and returns the CSV rows each slice produces, in slice order.
+     */
+    private List<String> givenSlices(int count, int rowsPerSlice) throws SQLException {
+        var metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(metaData.getColumnName(1)).thenReturn("ID");
+        when(metaData.getColumnName(2)).thenReturn("SLICE");
+        when(metaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+        when(metaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+
+        var resultSets = new ArrayList<ResultSet>();
+        var expected = new ArrayList<String>();
+        for (int slice = 0; slice < count; slice++) {
+            var rs = mock(ResultSet.class);
+            when(rs.getMetaData()).thenReturn(metaData);
+            var next = new Boolean[rowsPerSlice];
+            var ids = new String[rowsPerSlice];
+            Arrays.fill(next, true);
+            next[rowsPerSlice - 1] = false;
+            var rows = new StringBuilder();
+            for (int row = 0; row < rowsPerSlice; row++) {
+                ids[row] = slice + "-" + row;
+                rows.append(ids[row]).append(',').append(slice).append('\n');
+            }
+            when(rs.next()).thenReturn(true, next);
+            when(rs.getString(1)).thenReturn(ids[0], Arrays.copyOfRange(ids, 1, ids.length));
+            when(rs.getString(2)).thenReturn(String.valueOf(slice));
+            resultSets.add(rs);
+            expected.add(rows.toString());
+        }
+
+        doAnswer(invocation -> {
+            var statement = mock(PreparedStatement.class);
+            invocation.<PreparedStatementSetter>getArgument(1).setValues(statement);
+            var slice = ArgumentCaptor.forClass(Integer.class);
+            verify(statement).setInt(eq(1), slice.capture());
+            return invocation.<ResultSetExtractor<?>>getArgument(2).extractData(resultSets.get(slice.getValue()));
+        }).when(jdbc).query(anyString(), any(PreparedStatementSetter.class), any(ResultSetExtractor.class));
+
+        return expected;
+    }
+}
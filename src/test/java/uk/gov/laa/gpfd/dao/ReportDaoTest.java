@@ -9,11 +9,13 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.simple.JdbcClient;
 import uk.gov.laa.gpfd.dao.support.ReportWithQueriesAndFieldAttributesExtractor;
 import uk.gov.laa.gpfd.data.ReportsTestDataFactory;
 import uk.gov.laa.gpfd.exception.ReportAccessException;
 import uk.gov.laa.gpfd.model.Report;
+import uk.gov.laa.gpfd.model.ReportCatalogueEntry;
 import uk.gov.laa.gpfd.utils.SecurityUtils;
 
 import java.sql.ResultSet;
@@ -146,6 +148,29 @@ class ReportDaoTest {
         assertDoesNotThrow(() -> reportDao.fetchReports());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void fetchCatalogue_shouldReturnEntriesForRoles() {
+        var roles = List.of(REP000);
+        var entry = ReportCatalogueEntry.of(testReport);
+        JdbcClient.MappedQuerySpec<ReportCatalogueEntry> mapped = mock(JdbcClient.MappedQuerySpec.class);
+        when(statementSpec.query(any(RowMapper.class))).thenReturn(mapped);
+        when(mapped.list()).thenReturn(List.of(entry));
+
+        var result = reportDao.fetchCatalogue(roles);
+
+        assertEquals(List.of(entry), result);
+        verify(metadataClient).sql(ReportDao.SELECT_REPORT_CATALOGUE_SQL);
+        verify(statementSpec).param("roles", roles);
+    }
+
+    @Test
+    void fetchCatalogue_shouldThrowDatabaseFetchExceptionOnDataAccessError() {
+        when(statementSpec.query(any(RowMapper.class))).thenThrow(new DataAccessException("Database error") {});
+
+        assertThrows(DatabaseFetchException.class, () -> reportDao.fetchCatalogue(List.of(REP000)));
+    }
+
     @Test
     void verifyUserCanAccessReport_whenAuthorized_shouldNotThrow() {
         List<String> userRoles = List.of(REP000);
@@ -3,6 +3,7 @@ package uk.gov.laa.gpfd.dao;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -11,13 +12,18 @@ import org.springframework.jdbc.core.JdbcOperations;
 import uk.gov.laa.gpfd.exception.DatabaseWriteException;
 
 import java.sql.Timestamp;
+import java.util.List;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static uk.gov.laa.gpfd.dao.ReportTrackingDao.INSERT_INTO_TRACKING_SQL;
 
@@ -36,20 +42,33 @@ class ReportTrackingDaoTest {
     }
 
     @Test
-    void insertTrackingRow_shouldUpdateDbWithCorrectValues() {
-        var reportId = UUID.randomUUID();
-        var userId = UUID.randomUUID();
-        reportTrackingDao.insertTrackingRow(reportId, userId);
+    @SuppressWarnings("unchecked")
+    void insertTrackingRows_shouldBatchUpdateDbWithCorrectValues() {
+        var first = TrackingEvent.now(UUID.randomUUID(), UUID.randomUUID());
+        var second = TrackingEvent.now(UUID.randomUUID(), UUID.randomUUID());
+        reportTrackingDao.insertTrackingRows(List.of(first, second));
 
-        verify(trackingJdbcTemplate).update(eq(INSERT_INTO_TRACKING_SQL), any(UUID.class), eq(reportId), eq(userId), any(Timestamp.class));
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(trackingJdbcTemplate).batchUpdate(eq(INSERT_INTO_TRACKING_SQL), rows.capture());
+        assertEquals(2, rows.getValue().size());
+        assertArrayEquals(new Object[]{first.id(), first.reportId(), first.userId(), Timestamp.from(first.downloadTime())},
+                rows.getValue().getFirst());
+        assertArrayEquals(new Object[]{second.id(), second.reportId(), second.userId(), Timestamp.from(second.downloadTime())},
+                rows.getValue().get(1));
     }
 
     @Test
-    void insertTrackingRow_shouldRethrowExceptionsFromJdbc() {
-        var reportId = UUID.randomUUID();
-        var userId = UUID.randomUUID();
-        when(trackingJdbcTemplate.update(any(), any(), any(), any(), any())).thenThrow(new DuplicateKeyException("Error :("));
-        assertThrows(DatabaseWriteException.class, () -> reportTrackingDao.insertTrackingRow(reportId, userId));
+    void insertTrackingRows_shouldDoNothingWithoutEvents() {
+        reportTrackingDao.insertTrackingRows(List.of());
+
+        verifyNoInteractions(trackingJdbcTemplate);
+    }
+
+    @Test
+    void insertTrackingRows_shouldRethrowExceptionsFromJdbc() {
+        var events = List.of(TrackingEvent.now(UUID.randomUUID(), UUID.randomUUID()));
+        when(trackingJdbcTemplate.batchUpdate(any(String.class), anyList())).thenThrow(new DuplicateKeyException("Error :("));
+        assertThrows(DatabaseWriteException.class, () -> reportTrackingDao.insertTrackingRows(events));
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,138 @@
+package uk.gov.laa.gpfd.dao;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.laa.gpfd.exception.DatabaseWriteException;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class ReportTrackingPipelineTest {
+
+    private static final UUID REPORT_ID = UUID.randomUUID();
+    private static final UUID USER_ID = UUID.randomUUID();
+
+    @TempDir
+    Path journalDirectory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReportTrackingDao trackingDao = mock(ReportTrackingDao.class);
+    private final List<List<TrackingEvent>> written = new ArrayList<>();
+
+    @Test
+    void track_shouldNotWriteUntilFlushed() {
+        var pipeline = pipeline(16, 10, Duration.ofMinutes(1));
+
+        pipeline.track(REPORT_ID, USER_ID);
+
+        verifyNoInteractions(trackingDao);
+        assertEquals(1, meterRegistry.get("gpfd.tracking.buffered").gauge().value());
+    }
+
+    @Test
+    void flush_shouldWriteBufferedEventsInBatches() {
+        recordWrites();
+        var pipeline = pipeline(16, 2, Duration.ofMinutes(1));
+        for (var i = 0; i < 5; i++) {
+            pipeline.track(REPORT_ID, USER_ID);
+        }
+
+        pipeline.flush();
+
+        assertEquals(List.of(2, 2, 1), written.stream().map(List::size).toList());
+        var event = written.getFirst().getFirst();
+        assertEquals(REPORT_ID, event.reportId());
+        assertEquals(USER_ID, event.userId());
+        assertEquals(5, meterRegistry.get("gpfd.tracking.inserted").counter().count());
+        assertEquals(3, meterRegistry.get("gpfd.tracking.batch.size").summary().count());
+        assertEquals(5, meterRegistry.get("gpfd.tracking.lag").timer().count());
+    }
+
+    @Test
+    void flusher_shouldWriteOnceABatchHasFilled() {
+        var pipeline = pipeline(16, 2, Duration.ofMinutes(1));
+        try (pipeline) {
+            pipeline.start();
+            pipeline.track(REPORT_ID, USER_ID);
+            pipeline.track(REPORT_ID, USER_ID);
+
+            verify(trackingDao, timeout(5_000)).insertTrackingRows(anyCollection());
+        }
+    }
+
+    @Test
+    void track_shouldJournalEventsThatOverflowTheBufferAndReplayThem() {
+        var pipeline = pipeline(1, 10, Duration.ofMinutes(1));
+        pipeline.track(REPORT_ID, USER_ID);
+        pipeline.track(REPORT_ID, USER_ID);
+        assertEquals(1, meterRegistry.get("gpfd.tracking.journaled").tag("reason", "overflow").counter().count());
+
+        recordWrites();
+        assertEquals(1, pipeline.replayJournal());
+
+        assertEquals(1, written.size());
+        assertEquals(1, meterRegistry.get("gpfd.tracking.replayed").counter().count());
+        assertEquals(0, pipeline.replayJournal());
+    }
+
+    @Test
+    void flush_shouldJournalBatchesThatCannotBeWritten() {
+        doThrow(new DatabaseWriteException("down")).when(trackingDao).insertTrackingRows(anyCollection());
+        var pipeline = pipeline(16, 10, Duration.ofMinutes(1));
+        pipeline.track(REPORT_ID, USER_ID);
+        pipeline.track(REPORT_ID, USER_ID);
+
+        pipeline.flush();
+        assertEquals(2, meterRegistry.get("gpfd.tracking.journaled").tag("reason", "failure").counter().count());
+        assertEquals(0, pipeline.replayJournal());
+
+        recordWrites();
+        assertEquals(2, pipeline.replayJournal());
+        assertEquals(2, written.getFirst().size());
+    }
+
+    @Test
+    void close_shouldWriteTheEventsStillBuffered() {
+        recordWrites();
+        var pipeline = pipeline(16, 10, Duration.ofMinutes(1));
+        pipeline.start();
+        pipeline.track(REPORT_ID, USER_ID);
+
+        pipeline.close();
+
+        assertEquals(1, written.size());
+    }
+
+    @Test
+    void shouldRejectInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> pipeline(16, 0, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> pipeline(16, 10, Duration.ZERO));
+    }
+
+    private ReportTrackingPipeline pipeline(int bufferSize, int batchSize, Duration flushInterval) {
+        return new ReportTrackingPipeline(trackingDao, bufferSize, batchSize, flushInterval, Duration.ofMinutes(1),
+                journalDirectory.toString(), meterRegistry);
+    }
+
+    private void recordWrites() {
+        doAnswer(invocation -> {
+            written.add(List.copyOf(invocation.<Collection<TrackingEvent>>getArgument(0)));
+            return null;
+        }).when(trackingDao).insertTrackingRows(anyCollection());
+    }
+}
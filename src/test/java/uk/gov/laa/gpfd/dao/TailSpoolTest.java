@@ -0,0 +1,138 @@
+package uk.gov.laa.gpfd.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.laa.gpfd.exception.DatabaseReadException.DatabaseFetchException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TailSpoolTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void shouldLetEveryReaderTailOutputWhileItIsWritten() throws Exception {
+        var spool = new TailSpool(0, directory);
+        var release = new CountDownLatch(1);
+        assertTrue(spool.subscribe());
+        assertTrue(spool.subscribe());
+
+        var writer = CompletableFuture.runAsync(() -> {
+            try {
+                spool.fill(out -> {
+                    out.write("id\n".getBytes(UTF_8));
+                    await(release);
+                    out.write("1\n".getBytes(UTF_8));
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        var first = CompletableFuture.supplyAsync(() -> tail(spool));
+        var second = CompletableFuture.supplyAsync(() -> tail(spool));
+        release.countDown();
+
+        assertEquals("id\n1\n", first.get(5, TimeUnit.SECONDS));
+        assertEquals("id\n1\n", second.get(5, TimeUnit.SECONDS));
+        writer.get(5, TimeUnit.SECONDS);
+        assertFalse(spool.subscribe());
+    }
+
+    @Test
+    void shouldOverflowToFileAndRemoveItOnceReadersHaveFinished() throws Exception {
+        var spool = new TailSpool(100, directory);
+        var expected = new byte[200_000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) ('a' + i % 26);
+        }
+        spool.subscribe();
+
+        spool.fill(out -> out.write(expected));
+
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        var output = new ByteArrayOutputStream();
+        spool.tailTo(output);
+        assertArrayEquals(expected, output.toByteArray());
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void shouldRethrowWriterFailureAfterEarlierOutput() {
+        var spool = new TailSpool(1024, directory);
+        var failure = new DatabaseFetchException("ORA-01555");
+        spool.subscribe();
+
+        assertSame(failure, assertThrows(DatabaseFetchException.class, () -> spool.fill(out -> {
+            out.write("partial".getBytes(UTF_8));
+            throw failure;
+        })));
+
+        var output = new ByteArrayOutputStream();
+        assertSame(failure, assertThrows(DatabaseFetchException.class, () -> spool.tailTo(output)));
+        assertEquals("partial", output.toString(UTF_8));
+    }
+
+    @Test
+    void shouldFailWriterOnceAbandoned() {
+        var spool = new TailSpool(1024, directory);
+        spool.abandon();
+
+        assertThrows(IOException.class, () -> spool.fill(out -> out.write(1)));
+    }
+
+    @Test
+    void shouldOnlyReportFillingInsideFill() throws IOException {
+        var spool = new TailSpool(0, directory);
+        var filling = new boolean[1];
+
+        spool.fill(_ -> filling[0] = TailSpool.isFilling());
+
+        assertTrue(filling[0]);
+        assertFalse(TailSpool.isFilling());
+    }
+
+    @Test
+    void shouldRejectNegativeMemory() {
+        assertThrows(IllegalArgumentException.class, () -> new TailSpool(-1, directory));
+    }
+
+    private static String tail(TailSpool spool) {
+        var output = new ByteArrayOutputStream();
+        try {
+            spool.tailTo(output);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return output.toString(UTF_8);
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IOException("Timed out waiting for test");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
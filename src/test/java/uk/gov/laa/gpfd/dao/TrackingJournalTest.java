@@ -0,0 +1,73 @@
+package uk.gov.laa.gpfd.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrackingJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replay_shouldWriteJournaledEventsInBatchesAndEmptyTheJournal() throws Exception {
+        var journal = new TrackingJournal(directory);
+        var events = List.of(event(), event(), event());
+        journal.append(events.subList(0, 2));
+        journal.append(events.subList(2, 3));
+        assertTrue(journal.hasEvents());
+
+        var batches = new ArrayList<List<TrackingEvent>>();
+        assertEquals(3, journal.replay(2, batches::add));
+
+        assertEquals(List.of(events.subList(0, 2), events.subList(2, 3)), batches);
+        assertFalse(journal.hasEvents());
+    }
+
+    @Test
+    void replay_shouldKeepTheJournalWhenWritingFails() throws Exception {
+        var journal = new TrackingJournal(directory);
+        var event = event();
+        journal.append(List.of(event));
+
+        assertThrows(IllegalStateException.class, () -> journal.replay(10, _ -> {
+            throw new IllegalStateException("database down");
+        }));
+        journal.append(List.of(event()));
+
+        var replayed = new ArrayList<TrackingEvent>();
+        assertEquals(2, journal.replay(10, replayed::addAll));
+        assertEquals(event, replayed.getFirst());
+        assertFalse(journal.hasEvents());
+    }
+
+    @Test
+    void replay_shouldSkipUnreadableLines() throws Exception {
+        var journal = new TrackingJournal(directory);
+        var event = event();
+        Files.writeString(directory.resolve(TrackingJournal.ACTIVE_FILE), "not an event\n" + event.toJournalLine() + "\n");
+
+        var replayed = new ArrayList<TrackingEvent>();
+        assertEquals(1, journal.replay(10, replayed::addAll));
+        assertEquals(List.of(event), replayed);
+    }
+
+    @Test
+    void hasEvents_shouldBeFalseWithoutAJournal() throws Exception {
+        assertFalse(new TrackingJournal(directory.resolve("missing")).hasEvents());
+    }
+
+    private static TrackingEvent event() {
+        return TrackingEvent.now(UUID.randomUUID(), UUID.randomUUID());
+    }
+}
@@ -0,0 +1,84 @@
+package uk.gov.laa.gpfd.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrackingRingBufferTest {
+
+    @Test
+    void shouldRoundCapacityUpToAPowerOfTwo() {
+        assertEquals(1, new TrackingRingBuffer<>(1).capacity());
+        assertEquals(8, new TrackingRingBuffer<>(5).capacity());
+        assertEquals(8, new TrackingRingBuffer<>(8).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new TrackingRingBuffer<>(0));
+    }
+
+    @Test
+    void shouldReturnElementsInOrderAndRejectWhenFull() {
+        var buffer = new TrackingRingBuffer<Integer>(4);
+        for (var i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+
+        assertEquals(0, buffer.poll());
+        assertTrue(buffer.offer(4));
+        var drained = new ArrayList<Integer>();
+        assertEquals(3, buffer.drainTo(drained, 3));
+        assertEquals(List.of(1, 2, 3), drained);
+        assertEquals(4, buffer.poll());
+        assertNull(buffer.poll());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void shouldHandEveryElementOverOnceBetweenThreads() throws Exception {
+        var buffer = new TrackingRingBuffer<Integer>(64);
+        var producers = 4;
+        var perProducer = 10_000;
+        var received = ConcurrentHashMap.<Integer>newKeySet();
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(producers + 1)) {
+            for (var p = 0; p < producers; p++) {
+                var first = p * perProducer;
+                executor.submit(() -> {
+                    start.await();
+                    for (var i = first; i < first + perProducer; i++) {
+                        while (!buffer.offer(i)) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                    return null;
+                });
+            }
+            var consumer = executor.submit(() -> {
+                start.await();
+                while (received.size() < producers * perProducer) {
+                    var element = buffer.poll();
+                    if (element != null) {
+                        assertTrue(received.add(element));
+                    }
+                }
+                return null;
+            });
+            start.countDown();
+            consumer.get();
+        }
+
+        assertEquals(producers * perProducer, received.size());
+        assertNull(buffer.poll());
+    }
+}
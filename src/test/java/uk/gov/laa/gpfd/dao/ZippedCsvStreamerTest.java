@@ -0,0 +1,105 @@
+package uk.gov.laa.gpfd.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import uk.gov.laa.gpfd.model.ImmutableReportQuery;
+import uk.gov.laa.gpfd.model.ReportQuery;
+import uk.gov.laa.gpfd.model.ReportQuerySql;
+import uk.gov.laa.gpfd.model.excel.ImmutableExcelSheet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReport;
+
+@ExtendWith(MockitoExtension.class)
+class ZippedCsvStreamerTest {
+
+    @Mock
+    private JdbcOperations jdbcOperations;
+
+    private ZippedCsvStreamer streamer;
+
+    @BeforeEach
+    void beforeEach() {
+        streamer = new ZippedCsvStreamer(jdbcOperations, 100, ExportSpool.disabled());
+    }
+
+    @Test
+    void stream_shouldWriteEachSheetQueryAsACsvEntry() throws Exception {
+        var report = createTestReport(UUID.randomUUID().toString(), List.of(
+                query("Claims", "SELECT 'claim' AS NAME FROM DUAL"),
+                query("Bills/Costs", "SELECT 'bill' AS NAME FROM DUAL")));
+        when(jdbcOperations.query(anyString(), any(ResultSetExtractor.class))).thenAnswer(invocation -> {
+            var sql = invocation.<String>getArgument(0);
+            var value = sql.contains("claim") ? "claim" : "bill";
+            return invocation.<ResultSetExtractor<?>>getArgument(1).extractData(resultSet(value));
+        });
+
+        var output = new ByteArrayOutputStream();
+        streamer.stream(report, output);
+
+        var entries = unzip(output.toByteArray());
+        assertEquals(List.of("Claims.csv", "Bills_Costs.csv"), List.copyOf(entries.keySet()));
+        assertEquals("NAME\nclaim\n", entries.get("Claims.csv"));
+        assertEquals("NAME\nbill\n", entries.get("Bills_Costs.csv"));
+    }
+
+    @Test
+    void stream_shouldRejectReportsWithoutQueries() {
+        var report = createTestReport();
+        var output = new ByteArrayOutputStream();
+
+        assertThrows(IllegalArgumentException.class, () -> streamer.stream(report, output));
+    }
+
+    private static ReportQuery query(String sheetName, String sql) {
+        return ImmutableReportQuery.builder()
+                .excelSheet(ImmutableExcelSheet.builder().name(sheetName).build())
+                .query(ReportQuerySql.of(sql))
+                .build();
+    }
+
+    private static ResultSet resultSet(String value) throws Exception {
+        var resultSet = mock(ResultSet.class);
+        var metaData = mock(ResultSetMetaData.class);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(resultSet.getString(1)).thenReturn(value);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnName(1)).thenReturn("NAME");
+        when(metaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+        return resultSet;
+    }
+
+    private static Map<String, String> unzip(byte[] archive) throws IOException {
+        var entries = new LinkedHashMap<String, String>();
+        try (var zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), UTF_8));
+            }
+        }
+        return entries;
+    }
+}
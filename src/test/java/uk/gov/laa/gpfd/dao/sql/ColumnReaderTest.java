@@ -0,0 +1,192 @@
+package uk.gov.laa.gpfd.dao.sql;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ColumnReaderTest {
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private ResultSetMetaData metaData;
+
+    @Mock
+    private Cell cell;
+
+    @ParameterizedTest
+    @MethodSource("provideColumnTypes")
+    void shouldBindReaderFromColumnMetadata(int sqlType, int precision, int scale, ColumnReader expected) throws SQLException {
+        when(metaData.getColumnType(1)).thenReturn(sqlType);
+        when(metaData.getPrecision(1)).thenReturn(precision);
+        when(metaData.getScale(1)).thenReturn(scale);
+
+        assertEquals(expected, ColumnReader.forColumn(metaData, 1));
+    }
+
+    private static Stream<Arguments> provideColumnTypes() {
+        return Stream.of(
+                Arguments.of(Types.NUMERIC, 10, 0, ColumnReader.LONG),
+                Arguments.of(Types.NUMERIC, 18, 0, ColumnReader.LONG),
+                Arguments.of(Types.NUMERIC, 19, 0, ColumnReader.DOUBLE),
+                Arguments.of(Types.NUMERIC, 10, 2, ColumnReader.DOUBLE),
+                Arguments.of(Types.NUMERIC, 0, -127, ColumnReader.DOUBLE),
+                Arguments.of(Types.INTEGER, 10, 0, ColumnReader.LONG),
+                Arguments.of(Types.BIGINT, 19, 0, ColumnReader.LONG),
+                Arguments.of(Types.DOUBLE, 0, 0, ColumnReader.DOUBLE),
+                Arguments.of(Types.TIMESTAMP, 0, 0, ColumnReader.TIMESTAMP),
+                Arguments.of(Types.DATE, 0, 0, ColumnReader.DATE),
+                Arguments.of(Types.BOOLEAN, 0, 0, ColumnReader.BOOLEAN),
+                Arguments.of(Types.VARCHAR, 100, 0, ColumnReader.STRING),
+                Arguments.of(Types.NVARCHAR, 100, 0, ColumnReader.STRING),
+                Arguments.of(Types.CLOB, 0, 0, ColumnReader.OBJECT)
+        );
+    }
+
+    @Test
+    void shouldBindReaderForEveryColumn() throws SQLException {
+        when(metaData.getColumnCount()).thenReturn(3);
+        when(metaData.getColumnType(1)).thenReturn(Types.INTEGER);
+        when(metaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+        when(metaData.getColumnType(3)).thenReturn(Types.TIMESTAMP);
+
+        var readers = ColumnReader.forColumns(metaData);
+
+        assertArrayEquals(new ColumnReader[]{ColumnReader.LONG, ColumnReader.STRING, ColumnReader.TIMESTAMP}, readers);
+    }
+
+    @Test
+    void shouldWriteLongAsNumericCellWithoutBoxing() throws SQLException {
+        when(resultSet.getLong(1)).thenReturn(42L);
+
+        ColumnReader.LONG.write(resultSet, 1, cell);
+
+        verify(cell).setCellValue(42.0);
+        verify(resultSet, never()).getObject(anyInt());
+    }
+
+    @Test
+    void shouldWriteEmptyCellForNullLong() throws SQLException {
+        when(resultSet.getLong(1)).thenReturn(0L);
+        when(resultSet.wasNull()).thenReturn(true);
+
+        ColumnReader.LONG.write(resultSet, 1, cell);
+
+        verify(cell).setCellValue("");
+    }
+
+    @Test
+    void shouldWriteDoubleAsNumericCell() throws SQLException {
+        when(resultSet.getDouble(1)).thenReturn(12.5);
+
+        ColumnReader.DOUBLE.write(resultSet, 1, cell);
+
+        verify(cell).setCellValue(12.5);
+    }
+
+    @Test
+    void shouldWriteTimestampAsLocalDateTime() throws SQLException {
+        var value = LocalDateTime.of(2024, 3, 1, 13, 45, 10);
+        when(resultSet.getObject(1, LocalDateTime.class)).thenReturn(value);
+
+        ColumnReader.TIMESTAMP.write(resultSet, 1, cell);
+
+        verify(cell).setCellValue(value);
+    }
+
+    @Test
+    void shouldWriteDateAsLocalDate() throws SQLException {
+        var value = LocalDate.of(2024, 3, 1);
+        when(resultSet.getObject(1, LocalDate.class)).thenReturn(value);
+
+        ColumnReader.DATE.write(resultSet, 1, cell);
+
+        verify(cell).setCellValue(value);
+    }
+
+    @Test
+    void shouldWriteEmptyCellForNullTimestamp() throws SQLException {
+        ColumnReader.TIMESTAMP.write(resultSet, 1, cell);
+
+        verify(cell).setCellValue("");
+    }
+
+    @Test
+    void shouldKeepNumericTextConversionForStrings() throws SQLException {
+        when(resultSet.getString(1)).thenReturn("1232", "Test Value");
+
+        ColumnReader.STRING.write(resultSet, 1, cell);
+        ColumnReader.STRING.write(resultSet, 1, cell);
+
+        verify(cell).setCellValue(1232.0);
+        verify(cell).setCellValue("Test Value");
+    }
+
+    @Test
+    void shouldFallBackToObjectHandlerForOtherTypes() throws SQLException {
+        when(resultSet.getObject(1)).thenReturn(new BigDecimal("123.45"));
+
+        ColumnReader.OBJECT.write(resultSet, 1, cell);
+
+        verify(cell).setCellValue(123.45);
+    }
+
+    @Test
+    void shouldEncodeLongCsvFieldsWithoutReadingText() throws Exception {
+        var out = new ByteArrayOutputStream();
+        var encoder = new CsvRowEncoder(out);
+        var nullable = mock(ResultSet.class);
+        when(nullable.getLong(1)).thenReturn(-7L, 0L);
+        when(nullable.wasNull()).thenReturn(false, true);
+
+        ColumnReader.LONG.write(nullable, 1, encoder);
+        ColumnReader.LONG.write(nullable, 1, encoder);
+        encoder.endRow();
+        encoder.drain();
+
+        assertEquals("-7,\n", out.toString(UTF_8));
+        verify(nullable, never()).getString(anyInt());
+    }
+
+    @Test
+    void shouldEncodeDriverTextForOtherCsvFields() throws Exception {
+        var out = new ByteArrayOutputStream();
+        var encoder = new CsvRowEncoder(out);
+        when(resultSet.getString(1)).thenReturn("2024-03-01 13:45:10");
+
+        ColumnReader.TIMESTAMP.write(resultSet, 1, encoder);
+        encoder.endRow();
+        encoder.drain();
+
+        assertEquals("2024-03-01 13:45:10\n", out.toString(UTF_8));
+    }
+}
@@ -0,0 +1,164 @@
+package uk.gov.laa.gpfd.dao.sql;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class CsvRowEncoderTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Test
+    void shouldSeparateFieldsAndTerminateRows() throws IOException {
+        var encoder = new CsvRowEncoder(out);
+
+        encoder.field("a");
+        encoder.field("b");
+        encoder.endRow();
+        encoder.field("c");
+        encoder.field("d");
+        encoder.endRow();
+        encoder.drain();
+
+        assertEquals("a,b\nc,d\n", out.toString(UTF_8));
+    }
+
+    @Test
+    void shouldWriteNullAsEmptyField() throws IOException {
+        var encoder = new CsvRowEncoder(out);
+
+        encoder.field(null);
+        encoder.field("x");
+        encoder.field(null);
+        encoder.endRow();
+        encoder.drain();
+
+        assertEquals(",x,\n", out.toString(UTF_8));
+    }
+
+    @Test
+    void shouldQuoteOnlyWhenRequired() throws IOException {
+        var encoder = new CsvRowEncoder(out);
+
+        encoder.field("plain text");
+        encoder.field("a,b");
+        encoder.field("say \"hi\"");
+        encoder.field("line\nbreak");
+        encoder.field("carriage\rreturn");
+        encoder.endRow();
+        encoder.drain();
+
+        assertEquals("plain text,\"a,b\",\"say \"\"hi\"\"\",\"line\nbreak\",\"carriage\rreturn\"\n", out.toString(UTF_8));
+    }
+
+    @Test
+    void shouldEncodeMultiByteCharactersAsUtf8() throws IOException {
+        var value = "café € 😀";
+        var encoder = new CsvRowEncoder(out);
+
+        encoder.field(value);
+        encoder.field("\"" + value + "\"");
+        encoder.endRow();
+        encoder.drain();
+
+        assertEquals(value + ",\"\"\"" + value + "\"\"\"\n", out.toString(UTF_8));
+    }
+
+    @Test
+    void shouldReplaceUnpairedSurrogates() throws IOException {
+        var encoder = new CsvRowEncoder(out);
+
+        encoder.field("a\uD83Db");
+        encoder.field("\uDE00");
+        encoder.endRow();
+        encoder.drain();
+
+        assertEquals("a?b,?\n", out.toString(UTF_8));
+    }
+
+    @Test
+    void shouldEncodeLongFieldsAsDecimalDigits() throws IOException {
+        var encoder = new CsvRowEncoder(out);
+
+        encoder.field(0L);
+        encoder.field(7L);
+        encoder.field(-42L);
+        encoder.field(1234567890123L);
+        encoder.field(Long.MAX_VALUE);
+        encoder.field(Long.MIN_VALUE);
+        encoder.endRow();
+        encoder.drain();
+
+        assertEquals("0,7,-42,1234567890123,9223372036854775807,-9223372036854775808\n", out.toString(UTF_8));
+    }
+
+    @Test
+    void shouldDrainBeforeLongFieldThatDoesNotFit() throws IOException {
+        var encoder = new CsvRowEncoder(out, 20);
+
+        encoder.field("abcdefghijklmnop");
+        encoder.field(Long.MAX_VALUE);
+        encoder.endRow();
+        encoder.drain();
+
+        assertEquals("abcdefghijklmnop,9223372036854775807\n", out.toString(UTF_8));
+    }
+
+    @Test
+    void shouldDrainWhenBufferFills() throws IOException {
+        var encoder = new CsvRowEncoder(out, 20);
+
+        encoder.field("abcdefghijklmnopqrstuvwxyz");
+        assertEquals("abcdefghijklmnopqrst", out.toString(UTF_8));
+
+        encoder.field("€€");
+        encoder.endRow();
+        encoder.drain();
+
+        assertEquals("abcdefghijklmnopqrstuvwxyz,€€\n", out.toString(UTF_8));
+    }
+
+    @Test
+    void shouldNotFlushUnderlyingStreamOnDrain() throws IOException {
+        var stream = mock(OutputStream.class);
+        var encoder = new CsvRowEncoder(stream);
+
+        encoder.field("a");
+        encoder.drain();
+
+        verify(stream).write(any(byte[].class), eq(0), eq(1));
+        verify(stream, never()).flush();
+    }
+
+    @Test
+    void shouldFlushUnderlyingStreamOnFlush() throws IOException {
+        var stream = mock(OutputStream.class);
+        var encoder = new CsvRowEncoder(stream);
+
+        encoder.field("a");
+        encoder.flush();
+
+        verify(stream).flush();
+    }
+
+    @Test
+    void shouldRejectTooSmallBuffer() {
+        assertThrows(IllegalArgumentException.class, () -> new CsvRowEncoder(out, 19));
+    }
+
+    @Test
+    void shouldRejectNullStream() {
+        assertThrows(NullPointerException.class, () -> new CsvRowEncoder(null));
+    }
+}
@@ -0,0 +1,129 @@
+package uk.gov.laa.gpfd.dao.sql;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.EncodedStreamChannelRowHandler;
+import uk.gov.laa.gpfd.exception.CsvGenerationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.forEncodedStream;
+
+@ExtendWith(MockitoExtension.class)
+class EncodedStreamChannelRowHandlerTest {
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private ResultSetMetaData metaData;
+
+    private ByteArrayOutputStream output;
+
+    @BeforeEach
+    void setUp() {
+        output = new ByteArrayOutputStream();
+    }
+
+    @Test
+    void shouldCreateEncodedStreamHandler() {
+        assertInstanceOf(EncodedStreamChannelRowHandler.class, forEncodedStream(output, 10));
+    }
+
+    @Test
+    void shouldRejectNullStream() {
+        assertThrows(NullPointerException.class, () -> forEncodedStream(null, 10));
+    }
+
+    @Test
+    void shouldWriteHeaderOnceFollowedByRows() throws Exception {
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(metaData.getColumnName(1)).thenReturn("ID");
+        when(metaData.getColumnName(2)).thenReturn("NAME");
+        when(resultSet.getString(1)).thenReturn("1", "2");
+        when(resultSet.getString(2)).thenReturn("Smith, J", null);
+
+        var handler = forEncodedStream(output, 10);
+        handler.processRow(resultSet);
+        handler.processRow(resultSet);
+        handler.complete();
+
+        assertEquals("ID,NAME\n1,\"Smith, J\"\n2,\n", output.toString(UTF_8));
+        verify(resultSet, times(1)).getMetaData();
+    }
+
+    @Test
+    void shouldFlushStreamAtConfiguredFrequency() throws Exception {
+        var stream = mock(OutputStream.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnName(1)).thenReturn("ID");
+        when(resultSet.getString(1)).thenReturn("1");
+
+        var handler = forEncodedStream(stream, 2);
+        for (int i = 0; i < 5; i++) {
+            handler.processRow(resultSet);
+        }
+
+        verify(stream, times(2)).flush();
+    }
+
+    @Test
+    void shouldThrowWhenMetadataIsNull() throws SQLException {
+        when(resultSet.getMetaData()).thenReturn(null);
+
+        var handler = forEncodedStream(output, 10);
+
+        assertThrows(CsvGenerationException.MetadataInvalidException.class, () -> handler.processRow(resultSet));
+    }
+
+    @Test
+    void shouldWrapIOExceptionWhenWritingFails() throws Exception {
+        var stream = mock(OutputStream.class);
+        doThrow(new IOException("Broken pipe")).when(stream).flush();
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnName(1)).thenReturn("ID");
+        when(resultSet.getString(1)).thenReturn("1");
+
+        var handler = forEncodedStream(stream, 1);
+
+        assertThrows(CsvGenerationException.WritingToCsvException.class, () -> handler.processRow(resultSet));
+    }
+
+    @Test
+    void shouldDrainAndCloseStreamOnClose() throws Exception {
+        var stream = mock(OutputStream.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnName(1)).thenReturn("ID");
+        when(resultSet.getString(1)).thenReturn("1");
+
+        var handler = forEncodedStream(stream, 10);
+        handler.processRow(resultSet);
+        handler.close();
+
+        verify(stream).write(any(byte[].class), anyInt(), anyInt());
+        verify(stream).close();
+    }
+}
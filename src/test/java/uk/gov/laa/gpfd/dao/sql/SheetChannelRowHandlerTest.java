@@ -2,23 +2,36 @@ package uk.gov.laa.gpfd.dao.sql;
 
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import uk.gov.laa.gpfd.dao.sql.ChannelRowHandler.SheetChannelRowHandler;
+import uk.gov.laa.gpfd.services.excel.workbook.ReportSXSSFSheet;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class SheetChannelRowHandlerTest {
@@ -92,6 +105,134 @@ class SheetChannelRowHandlerTest {
         assertEquals("", createdRow.getCell(1).getStringCellValue());
     }
 
+    @Test
+    void processRow_shouldUseTypedReadersBoundFromMetadata() throws SQLException {
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(metaData.getColumnLabel(1)).thenReturn("name");
+        when(metaData.getColumnLabel(2)).thenReturn("age");
+        when(metaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+        when(metaData.getColumnType(2)).thenReturn(Types.NUMERIC);
+        when(metaData.getPrecision(2)).thenReturn(3);
+        when(metaData.getScale(2)).thenReturn(0);
+
+        when(resultSet.getString(1)).thenReturn("John Doe", "Jane Doe");
+        when(resultSet.getLong(2)).thenReturn(30L, 41L);
+
+        handler.processRow(resultSet);
+        handler.processRow(resultSet);
+
+        assertEquals("John Doe", sheet.getRow(1).getCell(0).getStringCellValue());
+        assertEquals(30, sheet.getRow(1).getCell(1).getNumericCellValue());
+        assertEquals("Jane Doe", sheet.getRow(2).getCell(0).getStringCellValue());
+        assertEquals(41, sheet.getRow(2).getCell(1).getNumericCellValue());
+        verify(resultSet, times(1)).getMetaData();
+        verify(resultSet, never()).getObject(anyInt());
+    }
+
+    @Test
+    void processRow_shouldWriteTimestampsAsDates() throws SQLException {
+        var value = LocalDateTime.of(2024, 3, 1, 12, 0);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnLabel(1)).thenReturn("age");
+        when(metaData.getColumnType(1)).thenReturn(Types.TIMESTAMP);
+        when(resultSet.getObject(1, LocalDateTime.class)).thenReturn(value);
+
+        handler.processRow(resultSet);
+
+        assertEquals(value, sheet.getRow(1).getCell(1).getLocalDateTimeCellValue());
+    }
+
+    @Test
+    void processRow_shouldWriteDirectRowsMatchingPoiRows() throws Exception {
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(metaData.getColumnLabel(1)).thenReturn("name");
+        when(metaData.getColumnLabel(2)).thenReturn("age");
+        when(metaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+        when(metaData.getColumnType(2)).thenReturn(Types.DOUBLE);
+        when(resultSet.getString(1)).thenReturn("John Doe", null, "John Doe", null);
+        when(resultSet.getDouble(2)).thenReturn(30.5, 0.0, 30.5, 0.0);
+        when(resultSet.wasNull()).thenReturn(false, true, false, true);
+
+        try (var xssfWorkbook = new XSSFWorkbook();
+             var streamingWorkbook = new SXSSFWorkbook(xssfWorkbook, 100)) {
+            var poiSheet = dataSheet(streamingWorkbook, xssfWorkbook.createSheet("Poi"), false);
+            var directSheet = dataSheet(streamingWorkbook, xssfWorkbook.createSheet("Direct"), true);
+            var poiHandler = new SheetChannelRowHandler(poiSheet, Map.of("name", 0, "age", 1));
+            var directHandler = new SheetChannelRowHandler(directSheet, Map.of("name", 0, "age", 1));
+
+            poiHandler.processRow(resultSet);
+            poiHandler.processRow(resultSet);
+            directHandler.processRow(resultSet);
+            directHandler.processRow(resultSet);
+
+            assertNull(directSheet.getRow(1), "Direct rows should not be held by the sheet");
+            assertEquals(2, directSheet.getLastRowNum());
+            assertEquals(sheetXml(poiSheet), sheetXml(directSheet));
+        }
+    }
+
+    @Test
+    void processRow_shouldRollOverToANewSheetWithTheSameHeaderWhenTheSheetIsFull() throws SQLException {
+        var headerStyle = workbook.createCellStyle();
+        sheet.getRow(0).getCell(0).setCellStyle(headerStyle);
+        sheet.setColumnWidth(0, 5000);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnLabel(1)).thenReturn("name");
+        when(metaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+        when(resultSet.getString(1)).thenReturn("Row 1", "Row 2", "Row 3", "Row 4", "Row 5");
+
+        var rollingHandler = new SheetChannelRowHandler(sheet, Map.of("name", 0), 2);
+        for (int i = 0; i < 5; i++) {
+            rollingHandler.processRow(resultSet);
+        }
+
+        assertEquals(3, workbook.getNumberOfSheets());
+        assertEquals("Row 2", sheet.getRow(2).getCell(0).getStringCellValue());
+        var second = workbook.getSheet("TestSheet (2)");
+        assertEquals("Name", second.getRow(0).getCell(0).getStringCellValue());
+        assertEquals("Email", second.getRow(0).getCell(2).getStringCellValue());
+        assertEquals(headerStyle.getIndex(), second.getRow(0).getCell(0).getCellStyle().getIndex());
+        assertEquals(5000, second.getColumnWidth(0));
+        assertEquals("Row 3", second.getRow(1).getCell(0).getStringCellValue());
+        assertEquals("Row 4", second.getRow(2).getCell(0).getStringCellValue());
+        assertEquals("Row 5", workbook.getSheet("TestSheet (3)").getRow(1).getCell(0).getStringCellValue());
+    }
+
+    @Test
+    void processRow_shouldRollOverDirectRows() throws Exception {
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnLabel(1)).thenReturn("name");
+        when(metaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+        when(resultSet.getString(1)).thenReturn("Row 1", "Row 2");
+
+        try (var xssfWorkbook = new XSSFWorkbook();
+             var streamingWorkbook = new SXSSFWorkbook(xssfWorkbook, 100)) {
+            var directSheet = dataSheet(streamingWorkbook, xssfWorkbook.createSheet("Direct"), true);
+            var rollingHandler = new SheetChannelRowHandler(directSheet, Map.of("name", 0), 1);
+
+            rollingHandler.processRow(resultSet);
+            rollingHandler.processRow(resultSet);
+
+            assertEquals(1, directSheet.getLastRowNum());
+            var second = streamingWorkbook.getSheet("Direct (2)");
+            assertEquals("Age", second.getRow(0).getCell(1).getStringCellValue());
+            assertEquals("Row 2", second.getRow(1).getCell(0).getStringCellValue());
+        }
+    }
+
+    @Test
+    void rolloverName_shouldFitExcelsSheetNameLimit() {
+        assertEquals("Claims (2)", SheetChannelRowHandler.rolloverName("Claims", 2));
+        var name = SheetChannelRowHandler.rolloverName("A sheet name of exactly 31 char", 12);
+        assertEquals("A sheet name of exactly 31 (12)", name);
+        assertEquals(31, name.length());
+    }
+
+    @Test
+    void constructor_shouldRejectLastRowIndexBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> new SheetChannelRowHandler(sheet, Map.of(), 0));
+    }
+
     @Test
     void processRow_shouldHandleSQLException() throws SQLException {
         when(resultSet.getMetaData()).thenThrow(new SQLException("Test exception"));
@@ -103,4 +244,18 @@ class SheetChannelRowHandlerTest {
     void close_shouldDoNothing() {
         assertDoesNotThrow(() -> handler.close());
     }
+
+    private static ReportSXSSFSheet dataSheet(SXSSFWorkbook workbook, XSSFSheet xSheet, boolean directRows) throws IOException {
+        var dataSheet = new ReportSXSSFSheet(workbook, xSheet, directRows);
+        var headerRow = dataSheet.createRow(0);
+        headerRow.createCell(0).setCellValue("Name");
+        headerRow.createCell(1).setCellValue("Age");
+        return dataSheet;
+    }
+
+    private static String sheetXml(SXSSFSheet sheet) throws IOException {
+        try (var input = sheet.getWorksheetXMLInputStream()) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
 }
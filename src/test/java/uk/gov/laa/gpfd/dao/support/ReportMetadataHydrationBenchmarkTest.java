@@ -0,0 +1,186 @@
+package uk.gov.laa.gpfd.dao.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.h2.Driver;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import uk.gov.laa.gpfd.model.Report;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares loading a catalogue of {@value #REPORTS} reports, each with {@value #QUERIES_PER_REPORT}
+ * queries of {@value #FIELDS_PER_QUERY} field attributes, through the
+ * {@link ReportWithQueriesAndFieldAttributesExtractor} join and through the
+ * {@link ReportMetadataHydrator}, on an in-memory H2 database.
+ * <p>
+ * Run with {@code -Dgpfd.benchmark=true}. The median time of each is logged.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "gpfd.benchmark", matches = "true")
+class ReportMetadataHydrationBenchmarkTest {
+
+    private static final int REPORTS = 1_000;
+    private static final int QUERIES_PER_REPORT = 5;
+    private static final int FIELDS_PER_QUERY = 20;
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 15;
+
+    private static final String CARTESIAN_SQL = """
+        SELECT
+            r.ID,
+            r.NAME,
+            r.FILE_NAME,
+            r.TEMPLATE_SECURE_DOCUMENT_ID,
+            r.REPORT_CREATION_DATE,
+            r.LAST_DATABASE_REFRESH_DATETIME,
+            r.DESCRIPTION AS REPORT_DESCRIPTION,
+            r.NUM_DAYS_TO_KEEP,
+            r.REPORT_OUTPUT_TYPE,
+            r.REPORT_OWNER_ID,
+            r.REPORT_OWNER_NAME,
+            r.ACTIVE,
+            r.REPORT_OWNER_EMAIL,
+            r.DEFLATE_LEVEL,
+            q.ID AS QUERY_ID,
+            q.QUERY,
+            q.TAB_NAME,
+            q."index" AS "INDEX",
+            q.PARALLEL_SLICES,
+            q.PARALLEL_SLICE_KEY,
+            q.PARALLEL_ORDERED,
+            fa.ID AS FIELD_ATTRIBUTE_ID,
+            fa.SOURCE_NAME,
+            fa.MAPPED_NAME,
+            fa.FORMAT,
+            fa.FORMAT_TYPE,
+            fa.COLUMN_WIDTH,
+            rot.ID AS OUTPUT_TYPE_ID,
+            rot.EXTENSION,
+            rot.DESCRIPTION AS OUTPUT_TYPE_DESCRIPTION
+        FROM glad.reports r
+        LEFT JOIN glad.report_queries q ON r.ID = q.REPORT_ID
+        LEFT JOIN glad.field_attributes fa ON q.ID = fa.REPORT_QUERY_ID
+        LEFT JOIN glad.report_output_types rot ON r.REPORT_OUTPUT_TYPE = rot.ID
+        ORDER BY r.NAME ASC, r.ID ASC, q."index" ASC, fa.column_order ASC
+    """;
+
+    private static SimpleDriverDataSource dataSource;
+    private static JdbcClient client;
+
+    @BeforeAll
+    static void createCatalogue() {
+        dataSource = new SimpleDriverDataSource(new Driver(),
+                "jdbc:h2:mem:hydration-benchmark;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(
+                new ClassPathResource("flyway/migration/test/V1__create_test_metadata_schema.sql"),
+                new ClassPathResource("flyway/migration/test/V3__add_query_partitioning.sql"),
+                new ClassPathResource("flyway/migration/test/V4__add_report_deflate_level.sql"))
+                .execute(dataSource);
+        client = JdbcClient.create(dataSource);
+
+        var jdbc = new JdbcTemplate(dataSource);
+        var outputTypeId = UUID.randomUUID();
+        jdbc.update("INSERT INTO glad.report_output_types (id, extension, description) VALUES (?, 'xlsx', 'Excel')",
+                outputTypeId);
+
+        var now = Timestamp.from(Instant.now());
+        var reports = new ArrayList<Object[]>(REPORTS);
+        var queries = new ArrayList<Object[]>(REPORTS * QUERIES_PER_REPORT);
+        var fields = new ArrayList<Object[]>(REPORTS * QUERIES_PER_REPORT * FIELDS_PER_QUERY);
+        for (int r = 0; r < REPORTS; r++) {
+            var reportId = UUID.randomUUID();
+            reports.add(new Object[]{reportId, "Report %04d".formatted(r), "report_" + r,
+                    UUID.randomUUID().toString(), now, now, "Description of report " + r, 30, outputTypeId,
+                    UUID.randomUUID(), "Owner", "owner@example.com", "Y"});
+            for (int q = 0; q < QUERIES_PER_REPORT; q++) {
+                var queryId = UUID.randomUUID();
+                queries.add(new Object[]{queryId, reportId, "SELECT * FROM ANY_REPORT.V_REPORT_%d_%d".formatted(r, q),
+                        "Sheet " + q, String.valueOf(q)});
+                for (int f = 0; f < FIELDS_PER_QUERY; f++) {
+                    fields.add(new Object[]{UUID.randomUUID(), queryId, "COLUMN_" + f, "Column " + f, "#,##0.00",
+                            "NUMERIC", 12.5, f});
+                }
+            }
+        }
+        jdbc.batchUpdate("""
+                INSERT INTO glad.reports (id, name, file_name, template_secure_document_id, report_creation_date,
+                    last_database_refresh_datetime, description, num_days_to_keep, report_output_type,
+                    report_owner_id, report_owner_name, report_owner_email, active)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """, reports);
+        jdbc.batchUpdate("""
+                INSERT INTO glad.report_queries (id, report_id, query, tab_name, "index") VALUES (?, ?, ?, ?, ?)
+                """, queries);
+        jdbc.batchUpdate("""
+                INSERT INTO glad.field_attributes (id, report_query_id, source_name, mapped_name, format, format_type,
+                    column_width, column_order)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                """, fields);
+    }
+
+    @AfterAll
+    static void dropCatalogue() {
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void compareCartesianExtractionWithAggregatedHydration() {
+        var extractor = new ReportWithQueriesAndFieldAttributesExtractor();
+        var hydrator = new ReportMetadataHydrator(client);
+        Supplier<Collection<Report>> cartesian = () -> client.sql(CARTESIAN_SQL).query(extractor);
+        Supplier<Collection<Report>> aggregated = hydrator::hydrateAll;
+
+        assertEquals(counts(cartesian.get()), counts(aggregated.get()));
+        assertEquals(List.of(REPORTS, REPORTS * QUERIES_PER_REPORT, REPORTS * QUERIES_PER_REPORT * FIELDS_PER_QUERY),
+                counts(aggregated.get()));
+
+        var cartesianMillis = medianMillis(cartesian);
+        var aggregatedMillis = medianMillis(aggregated);
+        log.info("Hydrating {} reports: cartesian extractor {} ms, aggregated hydrator {} ms (median of {} runs)",
+                REPORTS, "%.1f".formatted(cartesianMillis), "%.1f".formatted(aggregatedMillis), MEASURED_RUNS);
+    }
+
+    private static List<Integer> counts(Collection<Report> reports) {
+        var queries = 0;
+        var fields = 0;
+        for (var report : reports) {
+            queries += report.getQueries().size();
+            for (var query : report.getQueries()) {
+                fields += query.getExcelSheet().getFieldAttributes().size();
+            }
+        }
+        return List.of(reports.size(), queries, fields);
+    }
+
+    private static double medianMillis(Supplier<Collection<Report>> load) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            load.get();
+        }
+        var nanos = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            var start = System.nanoTime();
+            load.get();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[MEASURED_RUNS / 2] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
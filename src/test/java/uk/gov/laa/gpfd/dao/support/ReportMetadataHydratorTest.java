@@ -0,0 +1,152 @@
+package uk.gov.laa.gpfd.dao.support;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import uk.gov.laa.gpfd.model.FileExtension;
+import uk.gov.laa.gpfd.model.ReportQuery;
+import uk.gov.laa.gpfd.model.excel.ExcelMappingProjection;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static uk.gov.laa.gpfd.dao.support.ReportMetadataHydrator.SELECT_FIELD_ATTRIBUTES_SQL;
+import static uk.gov.laa.gpfd.dao.support.ReportMetadataHydrator.SELECT_QUERIES_SQL;
+import static uk.gov.laa.gpfd.dao.support.ReportMetadataHydrator.SELECT_REPORTS_SQL;
+
+@ExtendWith(MockitoExtension.class)
+class ReportMetadataHydratorTest {
+
+    private static final UUID REPORT_ID = UUID.randomUUID();
+    private static final UUID OTHER_REPORT_ID = UUID.randomUUID();
+    private static final UUID QUERY_ID = UUID.randomUUID();
+    private static final UUID SECOND_QUERY_ID = UUID.randomUUID();
+
+    @Mock
+    private JdbcClient metadataClient;
+
+    private ReportMetadataHydrator hydrator;
+
+    @BeforeEach
+    void setUp() {
+        hydrator = new ReportMetadataHydrator(metadataClient);
+    }
+
+    @Test
+    void hydrateAll_shouldMergeQueriesAndFieldAttributesIntoTheirReports() {
+        stub(SELECT_REPORTS_SQL, reportRow(REPORT_ID, "Y"), reportRow(OTHER_REPORT_ID, null));
+        stub(SELECT_QUERIES_SQL,
+                row(REPORT_ID, QUERY_ID, "SELECT * FROM ANY_REPORT.V_FIRST", "First", 0, null, null, null),
+                row(REPORT_ID, SECOND_QUERY_ID, "SELECT * FROM ANY_REPORT.V_SECOND", "Second", 1, 4, "ID", false));
+        stub(SELECT_FIELD_ATTRIBUTES_SQL,
+                row(QUERY_ID, UUID.randomUUID(), "first_a", "First A", "yyyy-mm-dd", "DATE", 12.5),
+                row(SECOND_QUERY_ID, UUID.randomUUID(), "second_a", "Second A", null, null, 8.0),
+                row(QUERY_ID, UUID.randomUUID(), "first_b", "First B", null, null, 10.0));
+
+        var reports = List.copyOf(hydrator.hydrateAll());
+
+        assertEquals(2, reports.size());
+        var report = reports.getFirst();
+        assertEquals(REPORT_ID, report.getId());
+        assertEquals("Report " + REPORT_ID, report.getName());
+        assertTrue(report.getActive());
+        assertEquals(FileExtension.XLSX, report.getOutputType().getFileExtension());
+        assertEquals(6, report.getDeflateLevel());
+
+        var queries = List.copyOf(report.getQueries());
+        assertEquals(List.of(QUERY_ID, SECOND_QUERY_ID), queries.stream().map(ReportQuery::getId).toList());
+        assertNull(queries.getFirst().getPartitioning());
+        assertEquals(4, queries.get(1).getPartitioning().slices());
+        assertEquals("Second", queries.get(1).getExcelSheet().getName());
+        assertEquals(1, queries.get(1).getExcelSheet().getIndex());
+
+        var firstFields = List.copyOf(queries.getFirst().getExcelSheet().getFieldAttributes());
+        assertEquals(List.of("first_a", "first_b"), firstFields.stream().map(ExcelMappingProjection::getSourceName).toList());
+        assertEquals("First A", firstFields.getFirst().getExcelColumn().getName());
+        assertEquals(12.5, firstFields.getFirst().getExcelColumn().getFormat().getColumnWidth());
+        assertEquals(1, queries.get(1).getExcelSheet().getFieldAttributes().size());
+
+        var other = reports.get(1);
+        assertFalse(other.getActive());
+        assertTrue(other.getQueries().isEmpty());
+    }
+
+    @Test
+    void hydrateAll_shouldSkipRowsWhoseParentWasNotRead() {
+        stub(SELECT_REPORTS_SQL, reportRow(REPORT_ID, "Y"));
+        stub(SELECT_QUERIES_SQL,
+                row(OTHER_REPORT_ID, QUERY_ID, null, "Orphan", 0, null, null, null));
+        stub(SELECT_FIELD_ATTRIBUTES_SQL,
+                row(QUERY_ID, UUID.randomUUID(), "orphan", "Orphan", null, null, 10.0));
+
+        var reports = hydrator.hydrateAll();
+
+        assertEquals(1, reports.size());
+        assertTrue(reports.iterator().next().getQueries().isEmpty());
+    }
+
+    @Test
+    void hydrateAll_shouldPropagateReadFailures() {
+        var spec = mock(JdbcClient.StatementSpec.class);
+        when(metadataClient.sql(SELECT_REPORTS_SQL)).thenReturn(spec);
+        doAnswer(_ -> {
+            throw new DataAccessResourceFailureException("down");
+        }).when(spec).query(any(RowCallbackHandler.class));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> hydrator.hydrateAll());
+    }
+
+    private void stub(String sql, ResultSet... rows) {
+        var spec = mock(JdbcClient.StatementSpec.class);
+        when(metadataClient.sql(sql)).thenReturn(spec);
+        doAnswer(invocation -> {
+            var handler = invocation.<RowCallbackHandler>getArgument(0);
+            for (var row : rows) {
+                handler.processRow(row);
+            }
+            return null;
+        }).when(spec).query(any(RowCallbackHandler.class));
+    }
+
+    private static ResultSet reportRow(UUID id, String active) {
+        var now = Timestamp.from(Instant.now());
+        return row(id, "Report " + id, "report_file", "0d4da9ec-b0b3-4371-af10-f375330d85d3", now, now,
+                "Description", 30, UUID.randomUUID(), "Owner", "owner@example.com", active, 6,
+                UUID.randomUUID(), "xlsx", "Excel Document");
+    }
+
+    /**
+     * A result set positioned on one row, answering positional getters with the given column values.
+     */
+    private static ResultSet row(Object... columns) {
+        return mock(ResultSet.class, invocation -> {
+            if (invocation.getArguments().length == 0 || !(invocation.getArgument(0) instanceof Integer index)) {
+                return RETURNS_DEFAULTS.answer(invocation);
+            }
+            var value = columns[index - 1];
+            return switch (invocation.getMethod().getName()) {
+                case "getInt" -> value == null ? 0 : ((Number) value).intValue();
+                case "getDouble" -> value == null ? 0d : ((Number) value).doubleValue();
+                default -> value;
+            };
+        });
+    }
+}
@@ -3,6 +3,7 @@ package uk.gov.laa.gpfd.dao.support;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import uk.gov.laa.gpfd.model.ImmutableReportOwner;
+import uk.gov.laa.gpfd.model.QueryPartitioning;
 import uk.gov.laa.gpfd.model.ReportQuerySql;
 import uk.gov.laa.gpfd.model.excel.ExcelTemplate;
 
@@ -62,6 +63,10 @@ class ReportWithQueriesAndFieldAttributesExtractorTest {
         when(resultSet.getString("FORMAT_TYPE")).thenReturn("DATE");
         when(resultSet.getString("EXTENSION")).thenReturn("xlsx");
         when(resultSet.getDouble("COLUMN_WIDTH")).thenReturn(10.5);
+        when(resultSet.getObject("PARALLEL_SLICES", Integer.class)).thenReturn(8);
+        when(resultSet.getString("PARALLEL_SLICE_KEY")).thenReturn("CLAIM_ID");
+        when(resultSet.getObject("PARALLEL_ORDERED", Boolean.class)).thenReturn(false);
+        when(resultSet.getObject("DEFLATE_LEVEL", Integer.class)).thenReturn(1);
 
         // When
         var reports = extractor.extractData(resultSet);
@@ -84,6 +89,7 @@ class ReportWithQueriesAndFieldAttributesExtractorTest {
         assertEquals("owner@example.com", ownerName.getEmail());
         assertEquals("report.pdf", report.getOutputFileName());
         assertTrue(report.getActive());
+        assertEquals(1, report.getDeflateLevel());
 
         // Verify queries
         assertEquals(1, report.getQueries().size());
@@ -91,6 +97,7 @@ class ReportWithQueriesAndFieldAttributesExtractorTest {
         assertEquals(queryId, query.getId());
         assertEquals(ReportQuerySql.of("SELECT * FROM ANY_REPORT.V_TABLE"), query.getQuery());
         assertEquals("Sheet1", query.getExcelSheet().getName());
+        assertEquals(new QueryPartitioning(8, "CLAIM_ID", false), query.getPartitioning());
 
         // Verify field attributes
         assertEquals(2, query.getExcelSheet().getFieldAttributes().size());
@@ -13,6 +13,7 @@ import uk.gov.laa.gpfd.model.ImmutableReportCreator;
 import uk.gov.laa.gpfd.model.ImmutableReportOutputType;
 import uk.gov.laa.gpfd.model.ImmutableReportOwner;
 import uk.gov.laa.gpfd.model.ImmutableReportQuery;
+import uk.gov.laa.gpfd.model.QueryPartitioning;
 import uk.gov.laa.gpfd.model.Report;
 import uk.gov.laa.gpfd.model.ReportOutputType;
 import uk.gov.laa.gpfd.model.ReportQuery;
@@ -119,6 +120,17 @@ public class ReportsTestDataFactory {
         return createTestReport(UUID.randomUUID().toString(), List.of(query1) );
     }
 
+    public static Report createTestReportWithPartitionedQuery(QueryPartitioning partitioning) {
+        var query1 = ImmutableReportQuery.builder()
+                .excelSheet(ImmutableExcelSheet.builder()
+                        .name("Sheet1")
+                        .build())
+                .query(ReportQuerySql.of("SELECT * FROM ANY_REPORT.DATA"))
+                .partitioning(partitioning)
+                .build();
+        return createTestReport(UUID.randomUUID().toString(), List.of(query1));
+    }
+
     public static Report createTestReportWithMultipleFieldAttributes() {
         var query1 = ImmutableReportQuery.builder()
                 .excelSheet(ImmutableExcelSheet.builder()
@@ -0,0 +1,50 @@
+package uk.gov.laa.gpfd.mapper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.laa.gpfd.model.ReportCatalogueEntry;
+import uk.gov.laa.gpfd.utils.UrlBuilder;
+
+import java.net.URI;
+import java.util.UUID;
+
+import static java.util.UUID.fromString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReport;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReportForTacticalSol;
+
+@ExtendWith(MockitoExtension.class)
+class ReportsGet200ResponseReportListInnerMapperTest {
+    private static final UUID REPORT_ID = fromString("8dd30c01-700a-4790-96d6-bd5440a31692");
+
+    @Mock
+    private UrlBuilder urlBuilder;
+
+    @InjectMocks
+    private ReportsGet200ResponseReportListInnerMapper mapper;
+
+    @Test
+    void shouldMapEntryWithDownloadUrl() {
+        when(urlBuilder.getServiceUrl()).thenReturn("https://api.example.com");
+
+        var response = mapper.map(ReportCatalogueEntry.of(createTestReport(REPORT_ID)));
+
+        assertEquals(REPORT_ID, response.getId());
+        assertEquals("Test Report", response.getReportName());
+        assertEquals("Test Description", response.getDescription());
+        assertEquals(URI.create("https://api.example.com/reports/" + REPORT_ID + "/excel"), response.getReportDownloadUrl());
+    }
+
+    @Test
+    void shouldLinkS3StorageReportsToTheirFile() {
+        when(urlBuilder.getServiceUrl()).thenReturn("https://api.example.com");
+
+        var response = mapper.map(ReportCatalogueEntry.of(createTestReportForTacticalSol(REPORT_ID)));
+
+        assertEquals(URI.create("https://api.example.com/reports/" + REPORT_ID + "/file"), response.getReportDownloadUrl());
+    }
+}
@@ -0,0 +1,65 @@
+package uk.gov.laa.gpfd.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryPartitioningTest {
+
+    @Test
+    void shouldDefaultSliceKeyToRowId() {
+        var partitioning = new QueryPartitioning(4, null, true);
+
+        assertEquals(QueryPartitioning.ROWID, partitioning.sliceKey());
+    }
+
+    @Test
+    void shouldRejectFewerThanTwoSlices() {
+        assertThrows(IllegalArgumentException.class, () -> new QueryPartitioning(1, null, true));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "1ID", "ID; DROP TABLE X", "ID, NAME", "T.ID", "ID)"})
+    void shouldRejectSliceKeysThatAreNotPlainColumnNames(String sliceKey) {
+        assertThrows(IllegalArgumentException.class, () -> new QueryPartitioning(4, sliceKey, true));
+    }
+
+    @Test
+    void shouldFilterWrappedQueryBySlice() {
+        var partitioning = new QueryPartitioning(4, "CLAIM_ID", true);
+
+        assertEquals("SELECT * FROM (SELECT * FROM ANY_REPORT.DATA) WHERE ORA_HASH(CLAIM_ID, 3) = ?",
+                partitioning.sliceSql("SELECT * FROM ANY_REPORT.DATA"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "SELECT * FROM ANY_REPORT.DATA where STATUS = 'A' OR STATUS = 'B'",
+            "SELECT * FROM ANY_REPORT.DATA WHERE ID IN (SELECT ID FROM ANY_REPORT.OTHER WHERE X = 1) ORDER BY ID",
+            "SELECT STATUS, COUNT(*) N FROM ANY_REPORT.DATA GROUP BY STATUS",
+            "SELECT * FROM ANY_REPORT.DATA ORDER BY ID FETCH FIRST 10 ROWS ONLY"
+    })
+    void shouldLeaveTheQueryItselfUntouched(String sql) {
+        var partitioning = new QueryPartitioning(2, null, true);
+
+        assertEquals("SELECT * FROM (" + sql + ") WHERE ORA_HASH(ROWID, 1) = ?", partitioning.sliceSql(sql));
+    }
+
+    @Test
+    void shouldCreateNothingWhenSlicesAreNotConfigured() {
+        assertNull(QueryPartitioning.ofNullable(null, "ID", true));
+        assertNull(QueryPartitioning.ofNullable(1, "ID", true));
+    }
+
+    @Test
+    void shouldDefaultToOrderedWhenNotConfigured() {
+        assertTrue(QueryPartitioning.ofNullable(4, null, null).ordered());
+        assertFalse(QueryPartitioning.ofNullable(4, null, false).ordered());
+    }
+}
@@ -0,0 +1,39 @@
+package uk.gov.laa.gpfd.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static uk.gov.laa.gpfd.security.SilasRoles.FINANCIAL;
+import static uk.gov.laa.gpfd.security.SilasRoles.RECONCILIATION;
+import static uk.gov.laa.gpfd.security.SilasRoles.REP000;
+
+class RoleBitsTest {
+
+    @Test
+    void shouldInternEachRoleNameToOneId() {
+        assertEquals(RoleBits.id(REP000), RoleBits.id(REP000));
+        assertNotEquals(RoleBits.id(REP000), RoleBits.id(RECONCILIATION));
+    }
+
+    @Test
+    void shouldIntersectWhenARoleIsShared() {
+        var user = RoleBits.of(List.of(REP000, FINANCIAL));
+
+        assertTrue(user.intersects(RoleBits.of(List.of(RECONCILIATION, FINANCIAL))));
+        assertFalse(user.intersects(RoleBits.of(List.of(RECONCILIATION))));
+        assertFalse(user.intersects(RoleBits.EMPTY));
+    }
+
+    @Test
+    void shouldCompareByRoles() {
+        assertEquals(RoleBits.of(List.of(REP000, FINANCIAL)), RoleBits.of(List.of(FINANCIAL, REP000, REP000)));
+        assertSame(RoleBits.EMPTY, RoleBits.of(List.of()));
+        assertTrue(RoleBits.EMPTY.isEmpty());
+    }
+}
@@ -0,0 +1,117 @@
+package uk.gov.laa.gpfd.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.laa.gpfd.dao.MetadataCatalogue;
+import uk.gov.laa.gpfd.dao.MetadataSnapshot;
+import uk.gov.laa.gpfd.dao.ReportDao;
+import uk.gov.laa.gpfd.mapper.ResourceResponseMapper;
+import uk.gov.laa.gpfd.model.ReportCatalogueEntry;
+import uk.gov.laa.gpfd.model.ReportsGet200ResponseReportListInner;
+import uk.gov.laa.gpfd.utils.SecurityUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReport;
+import static uk.gov.laa.gpfd.exception.DatabaseReadException.DatabaseFetchException;
+import static uk.gov.laa.gpfd.security.SilasRoles.FINANCIAL;
+import static uk.gov.laa.gpfd.security.SilasRoles.REP000;
+
+@ExtendWith(MockitoExtension.class)
+class ReportCatalogueServiceTest {
+
+    @Mock
+    private ReportDao reportDao;
+
+    @Mock
+    private MetadataCatalogue metadataCatalogue;
+
+    @Mock
+    private SecurityUtils securityUtils;
+
+    @Mock
+    private ResourceResponseMapper<ReportCatalogueEntry, ReportsGet200ResponseReportListInner> entryMapper;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReportCatalogueEntry entry = ReportCatalogueEntry.of(createTestReport());
+
+    private ReportCatalogueService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ReportCatalogueService(reportDao, metadataCatalogue, securityUtils, entryMapper, meterRegistry);
+    }
+
+    @Test
+    void shouldReturnMappedEntriesWhenDaoReturnsData() {
+        var roles = List.of(REP000);
+        when(securityUtils.extractRoles()).thenReturn(roles);
+        when(metadataCatalogue.current()).thenReturn(Optional.empty());
+        when(reportDao.fetchCatalogue(roles)).thenReturn(List.of(entry, entry));
+        when(entryMapper.map(entry)).thenReturn(new ReportsGet200ResponseReportListInner());
+
+        var result = service.fetchReportListEntries();
+
+        assertEquals(2, result.size());
+    }
+
+    @Test
+    void shouldThrowDatabaseReadExceptionWhenDaoThrowsException() {
+        when(securityUtils.extractRoles()).thenReturn(List.of(REP000));
+        when(metadataCatalogue.current()).thenReturn(Optional.empty());
+        when(reportDao.fetchCatalogue(any())).thenThrow(new DatabaseFetchException("DB error"));
+
+        assertThrows(DatabaseFetchException.class, () -> service.fetchReportListEntries());
+    }
+
+    @Test
+    void shouldReadTheDatabaseEveryTimeWithoutASnapshot() {
+        var roles = List.of(REP000);
+        when(securityUtils.extractRoles()).thenReturn(roles);
+        when(metadataCatalogue.current()).thenReturn(Optional.empty());
+        when(reportDao.fetchCatalogue(roles)).thenReturn(List.of(entry));
+
+        service.fetchReportListEntries();
+        service.fetchReportListEntries();
+
+        verify(reportDao, times(2)).fetchCatalogue(roles);
+    }
+
+    @Test
+    void shouldCacheListsPerRoleSetUntilTheSnapshotChanges() {
+        when(metadataCatalogue.current()).thenReturn(Optional.of(snapshot()));
+        when(securityUtils.extractRoles()).thenReturn(List.of(REP000, FINANCIAL), List.of(FINANCIAL, REP000),
+                List.of(REP000), List.of(REP000, FINANCIAL));
+        when(reportDao.fetchCatalogue(any())).thenReturn(List.of(entry));
+        when(entryMapper.map(entry)).thenAnswer(_ -> new ReportsGet200ResponseReportListInner());
+
+        var cached = service.fetchReportListEntries();
+        assertSame(cached, service.fetchReportListEntries());
+        service.fetchReportListEntries();
+        verify(reportDao, times(2)).fetchCatalogue(any());
+        assertEquals(1, meterRegistry.get("gpfd.catalogue.cache").tag("result", "hit").counter().count());
+        assertEquals(2, meterRegistry.get("gpfd.catalogue.cache").tag("result", "miss").counter().count());
+
+        when(metadataCatalogue.current()).thenReturn(Optional.of(snapshot()));
+        service.fetchReportListEntries();
+        verify(reportDao, times(3)).fetchCatalogue(any());
+    }
+
+    private static MetadataSnapshot snapshot() {
+        return MetadataSnapshot.of(List.of(), Map.of(), Instant.now());
+    }
+}
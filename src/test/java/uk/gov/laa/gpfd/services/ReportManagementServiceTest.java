@@ -10,11 +10,8 @@ import uk.gov.laa.gpfd.data.ReportsTestDataFactory;
 import uk.gov.laa.gpfd.exception.InvalidReportFormatException;
 import uk.gov.laa.gpfd.exception.ReportIdNotFoundException;
 import uk.gov.laa.gpfd.mapper.GetReportById200ResponseMapper;
-import uk.gov.laa.gpfd.mapper.ReportsGet200ResponseReportListInnerMapper;
 import uk.gov.laa.gpfd.model.FileExtension;
-import uk.gov.laa.gpfd.model.ReportsGet200ResponseReportListInner;
 
-import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -35,32 +32,9 @@ class ReportManagementServiceTest {
     @Mock
     private GetReportById200ResponseMapper reportByIdMapper;
 
-    @Mock
-    private ReportsGet200ResponseReportListInnerMapper innerResponseMapper;
-
     @InjectMocks
     private ReportManagementService reportManagementService;
 
-    @Test
-    void shouldReturnMappedReportsWhenDaoReturnsData() {
-        var report1 = ReportsTestDataFactory.createTestReport();
-        var report2 = ReportsTestDataFactory.createTestReport();
-        var reports = List.of(report1, report2);
-
-        when(reportDetailsDao.fetchReports()).thenReturn(reports);
-
-        List<ReportsGet200ResponseReportListInner> result = reportManagementService.fetchReportListEntries();
-
-        assertEquals(2, result.size());
-    }
-
-    @Test
-    void shouldThrowDatabaseReadExceptionWhenDaoThrowsException() {
-        when(reportDetailsDao.fetchReports()).thenThrow(new DatabaseFetchException("DB error"));
-
-        assertThrows(DatabaseFetchException.class, () -> reportManagementService.fetchReportListEntries());
-    }
-
     @Test
     void shouldThrowReportIdNotFoundExceptionWhenReportDoesNotExist() {
         var reportId = UUID.randomUUID();
@@ -4,15 +4,35 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import uk.gov.laa.gpfd.model.FileExtension;
+import uk.gov.laa.gpfd.services.stream.RangeableResponseBody;
+import uk.gov.laa.gpfd.services.stream.ResponseCompression;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -22,6 +42,9 @@ import static uk.gov.laa.gpfd.services.stream.DataStream.APPLICATION_EXCEL;
 @ExtendWith(MockitoExtension.class)
 class ReportResponseBuilderTest {
 
+    private static final String ETAG = "\"v1\"";
+    private static final Instant LAST_MODIFIED = Instant.parse("2026-01-01T06:00:00Z");
+
     @Mock
     StreamingResponseBody streamingResponseBody;
 
@@ -61,6 +84,154 @@ class ReportResponseBuilderTest {
         assertNull(headers.get("Content-Length"));
     }
 
+    @Test
+    void shouldCompressWhenClientAcceptsGzip() throws IOException {
+        var request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        var compressingBuilder = new ReportResponseBuilder(
+                new ResponseCompression(true, 6, 0, List.of(FileExtension.CSV), new SimpleMeterRegistry()));
+        StreamingResponseBody body = output -> output.write("a,b\n".getBytes(UTF_8));
+
+        try {
+            var response = compressingBuilder.buildResponse(body, "filename.csv", FileExtension.CSV, 4L);
+            var output = new ByteArrayOutputStream();
+            response.getBody().writeTo(output);
+
+            assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaders().getFirst(HttpHeaders.VARY));
+            assertEquals(-1, response.getHeaders().getContentLength());
+            try (var gzip = new GZIPInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+                assertEquals("a,b\n", new String(gzip.readAllBytes(), UTF_8));
+            }
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Test
+    void shouldNotCompressWithoutRequestContext() {
+        var compressingBuilder = new ReportResponseBuilder(
+                new ResponseCompression(true, 6, 0, List.of(FileExtension.CSV), new SimpleMeterRegistry()));
+
+        var response = compressingBuilder.buildResponse(streamingResponseBody, "filename.csv", FileExtension.CSV);
+
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(streamingResponseBody, response.getBody());
+    }
+
+    @Test
+    void shouldAdvertiseRangesForStoredOutput() {
+        var response = reportResponseBuilder.buildResponse(stored(), "filename.csv", FileExtension.CSV, 10L);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(ETAG, response.getHeaders().getETag());
+        assertEquals(LAST_MODIFIED.toEpochMilli(), response.getHeaders().getLastModified());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"bytes=2-5, 2-5, 2345", "bytes=7-, 7-9, 789", "bytes=-3, 7-9, 789", "bytes=8-100, 8-9, 89"})
+    void shouldServeRequestedRange(String range, String contentRange, String content) throws IOException {
+        var response = withRequest(Map.of(HttpHeaders.RANGE, range),
+                () -> reportResponseBuilder.buildResponse(stored(), "filename.csv", FileExtension.CSV, 10L));
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes " + contentRange + "/10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(content.length(), response.getHeaders().getContentLength());
+        assertEquals(content, write(response.getBody()));
+    }
+
+    @Test
+    void shouldRejectUnsatisfiableRange() {
+        var response = withRequest(Map.of(HttpHeaders.RANGE, "bytes=10-"),
+                () -> reportResponseBuilder.buildResponse(stored(), "filename.csv", FileExtension.CSV, 10L));
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertNull(response.getBody());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"bytes=0-1,4-5", "lines=1-2", "bytes=5-2"})
+    void shouldServeFullBodyForUnsupportedRanges(String range) throws IOException {
+        var response = withRequest(Map.of(HttpHeaders.RANGE, range),
+                () -> reportResponseBuilder.buildResponse(stored(), "filename.csv", FileExtension.CSV, 10L));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("0123456789", write(response.getBody()));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "\"v1\"|206",
+            "\"v0\"|200",
+            "W/\"v1\"|200",
+            "Thu, 01 Jan 2026 06:00:00 GMT|206",
+            "Thu, 01 Jan 2026 05:00:00 GMT|200",
+            "yesterday|200"})
+    void shouldOnlyServeRangeWhenIfRangeMatches(String ifRange, int status) {
+        var response = withRequest(Map.of(HttpHeaders.RANGE, "bytes=2-5", HttpHeaders.IF_RANGE, ifRange),
+                () -> reportResponseBuilder.buildResponse(stored(), "filename.csv", FileExtension.CSV, 10L));
+
+        assertEquals(status, response.getStatusCode().value());
+    }
+
+    @Test
+    void shouldServeRangeUncompressed() throws IOException {
+        var compressingBuilder = new ReportResponseBuilder(
+                new ResponseCompression(true, 6, 0, List.of(FileExtension.CSV), new SimpleMeterRegistry()));
+
+        var response = withRequest(Map.of(HttpHeaders.RANGE, "bytes=0-3", HttpHeaders.ACCEPT_ENCODING, "gzip"),
+                () -> compressingBuilder.buildResponse(stored(), "filename.csv", FileExtension.CSV, 10L));
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("0123", write(response.getBody()));
+    }
+
+    private static RangeableResponseBody stored() {
+        var bytes = "0123456789".getBytes(UTF_8);
+        return new RangeableResponseBody() {
+            @Override
+            public void writeRange(OutputStream output, long start, long length) throws IOException {
+                output.write(bytes, (int) start, (int) length);
+            }
+
+            @Override
+            public String entityTag() {
+                return ETAG;
+            }
+
+            @Override
+            public Instant lastModified() {
+                return LAST_MODIFIED;
+            }
+
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+        };
+    }
+
+    private static <T> T withRequest(Map<String, String> headers, Supplier<T> action) {
+        var request = new MockHttpServletRequest();
+        headers.forEach(request::addHeader);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            return action.get();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    private static String write(StreamingResponseBody body) throws IOException {
+        var output = new ByteArrayOutputStream();
+        body.writeTo(output);
+        return output.toString(UTF_8);
+    }
+
     private static Stream<Arguments> extensionTypeTestCases() {
         return Stream.of(
                 of(FileExtension.CSV, MediaType.APPLICATION_OCTET_STREAM),
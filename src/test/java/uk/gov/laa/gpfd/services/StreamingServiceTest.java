@@ -1,21 +1,40 @@
 package uk.gov.laa.gpfd.services;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.dao.ReportDao;
+import uk.gov.laa.gpfd.exception.ExportRejectedException;
+import uk.gov.laa.gpfd.model.ImmutableReport;
 import uk.gov.laa.gpfd.services.stream.DataStream;
+import uk.gov.laa.gpfd.services.stream.ExportCoalescer;
+import uk.gov.laa.gpfd.services.stream.ExportScheduler;
+import uk.gov.laa.gpfd.services.stream.KnownLengthResponseBody;
+import uk.gov.laa.gpfd.services.stream.ReportResultCache;
 
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Map.of;
 import static java.util.UUID.randomUUID;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static uk.gov.laa.gpfd.model.FileExtension.CSV;
 import static uk.gov.laa.gpfd.model.FileExtension.XLSX;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReport;
+import static uk.gov.laa.gpfd.services.StreamingService.AdmissionControlledStreamingService;
+import static uk.gov.laa.gpfd.services.StreamingService.CachingStreamingService;
 import static uk.gov.laa.gpfd.services.StreamingService.DefaultStreamingService;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,6 +49,9 @@ class StreamingServiceTest {
     @Mock
     private StreamingResponseBody mockStreamingBody;
 
+    @Mock
+    private ReportDao reportDao;
+
     @Test
     void shouldUseCorrectSteamStrategyForFormat() {
         var reportId = randomUUID();
@@ -93,4 +115,119 @@ class StreamingServiceTest {
         assertEquals(mockStreamingBody, result);
         verify(excelStrategy).stream(reportId);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldServeCachedReportWithoutGenerating() throws Exception {
+        var report = createTestReport();
+        var reportId = report.getId();
+        var delegate = new DefaultStreamingService(of(CSV, csvStrategy));
+        var cache = enabledCache();
+        var service = new CachingStreamingService(delegate, reportDao, cache);
+        when(reportDao.fetchReportById(reportId)).thenReturn(Optional.of(report));
+        when(csvStrategy.stream(reportId)).thenReturn(output -> output.write("id\n1\n".getBytes(UTF_8)));
+
+        service.stream(reportId, CSV).writeTo(new ByteArrayOutputStream());
+        var cached = service.stream(reportId, CSV);
+
+        var output = new ByteArrayOutputStream();
+        cached.writeTo(output);
+        assertEquals("id\n1\n", output.toString(UTF_8));
+        assertEquals(5, assertInstanceOf(KnownLengthResponseBody.class, cached).contentLength());
+        verify(csvStrategy, times(1)).stream(reportId);
+        cache.close();
+    }
+
+    @Test
+    void shouldCacheLoadedReportWithoutFetchingItAgain() throws Exception {
+        var report = createTestReport();
+        var reportId = report.getId();
+        var cache = enabledCache();
+        var service = new CachingStreamingService(new DefaultStreamingService(of(CSV, csvStrategy)), reportDao, cache);
+        when(csvStrategy.stream(reportId)).thenReturn(output -> output.write("id\n1\n".getBytes(UTF_8)));
+
+        service.stream(report, CSV).writeTo(new ByteArrayOutputStream());
+        var cached = service.stream(report, CSV);
+
+        assertEquals(5, assertInstanceOf(KnownLengthResponseBody.class, cached).contentLength());
+        verify(csvStrategy, times(1)).stream(reportId);
+        verifyNoInteractions(reportDao);
+        cache.close();
+    }
+
+    @Test
+    void shouldBypassCacheWhenReportHasNoRefreshTimestamp() {
+        var report = ImmutableReport.copyOf(createTestReport()).withLastDatabaseRefreshDate(null);
+        var reportId = report.getId();
+        var cache = enabledCache();
+        var service = new CachingStreamingService(new DefaultStreamingService(of(CSV, csvStrategy)), reportDao, cache);
+        when(reportDao.fetchReportById(reportId)).thenReturn(Optional.of(report));
+        when(csvStrategy.stream(reportId)).thenReturn(mockStreamingBody);
+
+        assertEquals(mockStreamingBody, service.stream(reportId, CSV));
+        cache.close();
+    }
+
+    @Test
+    void shouldNotLookUpReportWhenCacheIsDisabled() {
+        var reportId = randomUUID();
+        var service = new CachingStreamingService(new DefaultStreamingService(of(CSV, csvStrategy)), reportDao,
+                ReportResultCache.disabled());
+        when(csvStrategy.stream(reportId)).thenReturn(mockStreamingBody);
+
+        assertEquals(mockStreamingBody, service.stream(reportId, CSV));
+        verifyNoInteractions(reportDao);
+    }
+
+    @Test
+    void shouldCoalesceMissesWhenOnlyCoalescingIsEnabled() throws Exception {
+        var report = createTestReport();
+        var reportId = report.getId();
+        var coalescer = new ExportCoalescer(true, Thread::startVirtualThread, new SimpleMeterRegistry());
+        var service = new CachingStreamingService(new DefaultStreamingService(of(CSV, csvStrategy)), reportDao,
+                ReportResultCache.disabled(), coalescer);
+        when(reportDao.fetchReportById(reportId)).thenReturn(Optional.of(report));
+        when(csvStrategy.stream(reportId)).thenReturn(output -> output.write("id\n".getBytes(UTF_8)));
+
+        var output = new ByteArrayOutputStream();
+        service.stream(reportId, CSV).writeTo(output);
+
+        assertEquals("id\n", output.toString(UTF_8));
+        coalescer.close();
+    }
+
+    @Test
+    void shouldOnlyStreamOnceAdmitted() throws Exception {
+        var reportId = randomUUID();
+        var scheduler = new ExportScheduler(true, 1, 1, 1, 0, Duration.ZERO, Duration.ofSeconds(10),
+                Duration.ofMinutes(2), 1024, 4096, new SimpleMeterRegistry());
+        var service = new AdmissionControlledStreamingService(new DefaultStreamingService(of(CSV, csvStrategy)),
+                scheduler, UUID::randomUUID);
+        when(csvStrategy.stream(reportId)).thenReturn(output -> {
+            // The only slot is held while this body is written
+            assertThrows(ExportRejectedException.class,
+                    () -> service.stream(reportId, CSV).writeTo(new ByteArrayOutputStream()));
+            output.write("id\n".getBytes(UTF_8));
+        });
+
+        var admitted = service.stream(reportId, CSV);
+        var output = new ByteArrayOutputStream();
+        admitted.writeTo(output);
+
+        assertEquals("id\n", output.toString(UTF_8));
+        service.stream(reportId, CSV).writeTo(new ByteArrayOutputStream());
+    }
+
+    @Test
+    void shouldBypassAdmissionWhenDisabled() {
+        var reportId = randomUUID();
+        var service = new AdmissionControlledStreamingService(new DefaultStreamingService(of(CSV, csvStrategy)),
+                ExportScheduler.disabled(), UUID::randomUUID);
+        when(csvStrategy.stream(reportId)).thenReturn(mockStreamingBody);
+
+        assertEquals(mockStreamingBody, service.stream(reportId, CSV));
+    }
+
+    private static ReportResultCache enabledCache() {
+        return new ReportResultCache(true, 1024, 1024, 0, null, new SimpleMeterRegistry());
+    }
+}
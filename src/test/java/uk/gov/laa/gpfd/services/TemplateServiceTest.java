@@ -11,18 +11,21 @@ import uk.gov.laa.gpfd.data.ReportsTestDataFactory;
 import uk.gov.laa.gpfd.exception.TemplateResourceException.ExcelTemplateCreationException;
 import uk.gov.laa.gpfd.model.excel.ExcelTemplate;
 import uk.gov.laa.gpfd.services.excel.template.TemplateClient;
+import uk.gov.laa.gpfd.services.excel.workbook.AnalyticsParts;
 import uk.gov.laa.gpfd.services.excel.workbook.ReportWorkbook;
-import uk.gov.laa.gpfd.services.excel.workbook.StyleManager;
 import uk.gov.laa.gpfd.utils.WorkbookFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -67,17 +70,38 @@ class TemplateServiceTest {
         assertEquals(IOException.class, thrown.getCause().getClass());
     }
 
+    @Test
+    void findAnalyticsById_ShouldUseConfiguredAnalytics() {
+        var template = ExcelTemplate.fromString("eee30b23-2c8d-4b4b-bb11-8cd67d07915c");
+        var analytics = mock(AnalyticsParts.class);
+
+        var service = new TemplateService.ExcelTemplateService.Builder()
+                .repository(repository)
+                .factory(input -> mock(Workbook.class))
+                .withAnalytics(id -> template.getId().equals(id) ? Optional.of(analytics) : Optional.empty())
+                .build();
+
+        assertSame(analytics, service.findAnalyticsById(template).orElseThrow());
+    }
+
+    @Test
+    void findAnalyticsById_WithoutAnalytics_ShouldReturnEmpty() {
+        var service = new TemplateService.ExcelTemplateService.Builder()
+                .repository(repository)
+                .factory(input -> mock(Workbook.class))
+                .build();
+
+        assertTrue(service.findAnalyticsById(ExcelTemplate.fromString("eee30b23-2c8d-4b4b-bb11-8cd67d07915c")).isEmpty());
+    }
 
     @Test
     void createEmpty_ShouldReturnReportWorkbook() {
-        var styleManager = mock(StyleManager.class);
         var report = ReportsTestDataFactory.createTestReport();
         var factory = (WorkbookFactory) input -> new XSSFWorkbook();
 
         var service = new TemplateService.ExcelTemplateService.Builder()
                 .repository(repository)
                 .factory(factory)
-                .withStyleManager(styleManager)
                 .build();
 
         var workbook = service.createEmpty(report);
@@ -85,6 +109,20 @@ class TemplateServiceTest {
         assertInstanceOf(ReportWorkbook.class, workbook);
     }
 
+    @Test
+    void createEmpty_ShouldGiveEachWorkbookItsOwnStyles() {
+        var report = ReportsTestDataFactory.createTestReport();
+        var service = new TemplateService.ExcelTemplateService.Builder()
+                .repository(repository)
+                .factory(input -> new XSSFWorkbook())
+                .build();
+
+        var first = (ReportWorkbook) service.createEmpty(report);
+        var second = (ReportWorkbook) service.createEmpty(report);
+
+        assertNotSame(first.getStyleManager(), second.getStyleManager());
+    }
+
 
     @Test
     void build_WithStreamEnabled_ShouldReturnStreamingFactoryFromTemplate() throws Exception {
@@ -8,13 +8,20 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.laa.gpfd.dao.ExportSpool;
 import uk.gov.laa.gpfd.dao.JdbcWorkbookDataStreamer;
+import uk.gov.laa.gpfd.dao.ParallelSheetStreamer;
 import uk.gov.laa.gpfd.data.ReportsTestDataFactory;
 import uk.gov.laa.gpfd.services.TemplateService;
 import uk.gov.laa.gpfd.services.excel.formatting.CellFormatter;
+import uk.gov.laa.gpfd.services.excel.workbook.AnalyticsParts;
+
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -44,6 +51,12 @@ class ExcelCreationServiceTest {
     @Mock
     private Cell mockCell;
 
+    @Spy
+    private ExportSpool exportSpool = ExportSpool.disabled();
+
+    @Spy
+    private ParallelSheetStreamer sheetStreamer = ParallelSheetStreamer.disabled();
+
     @InjectMocks
     private ExcelCreationService excelCreationService;
 
@@ -69,6 +82,15 @@ class ExcelCreationServiceTest {
         verify(templateLoader).findTemplateById(report.getTemplateDocument());
     }
 
+    @Test
+    void resolveAnalytics_ShouldDelegateToTemplateService() {
+        var report = ReportsTestDataFactory.createTestReport();
+        var analytics = Optional.of(mock(AnalyticsParts.class));
+        when(templateLoader.findAnalyticsById(report.getTemplateDocument())).thenReturn(analytics);
+
+        assertSame(analytics, excelCreationService.resolveAnalytics(report));
+    }
+
     @Test
     void createEmpty_ShouldDelegateToTemplateService() {
         var report = ReportsTestDataFactory.createTestReport();
@@ -6,9 +6,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.math.BigDecimal;
+import java.sql.Date;
 import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Assertions;
@@ -62,9 +66,36 @@ class CellValueHandlerTest {
         Assertions.assertSame(CellValueHandler.BIG_DECIMAL, CellValueHandler.CellValueHandlerMap.get(BigDecimal.class));
         Assertions.assertSame(CellValueHandler.BOOLEAN, CellValueHandler.CellValueHandlerMap.get(Boolean.class));
         Assertions.assertSame(CellValueHandler.TIMESTAMP, CellValueHandler.CellValueHandlerMap.get(Timestamp.class));
+        Assertions.assertSame(CellValueHandler.LONG, CellValueHandler.CellValueHandlerMap.get(Long.class));
+        Assertions.assertSame(CellValueHandler.DATE, CellValueHandler.CellValueHandlerMap.get(Date.class));
+        Assertions.assertSame(CellValueHandler.LOCAL_DATE_TIME, CellValueHandler.CellValueHandlerMap.get(LocalDateTime.class));
+        Assertions.assertSame(CellValueHandler.LOCAL_DATE, CellValueHandler.CellValueHandlerMap.get(LocalDate.class));
         Assertions.assertSame(CellValueHandler.OBJECT, CellValueHandler.CellValueHandlerMap.get(Object.class));
     }
 
+    @Test
+    void shouldResolveHandlerForNullAndUnmappedValues() {
+        Assertions.assertSame(CellValueHandler.EMPTY, CellValueHandler.forValue(null));
+        Assertions.assertSame(CellValueHandler.OBJECT, CellValueHandler.forValue(new StringBuilder("text")));
+        Assertions.assertSame(CellValueHandler.STRING, CellValueHandler.forValue("text"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"-", "1.", ".5", "1.2.3", "--1", "1e5", "12a", "", "١٢٣"})
+    void shouldKeepNonNumericStringsAsText(String value) {
+        CellValueHandler.STRING.accept(cell, value);
+
+        verify(cell).setCellValue(value);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "-1", "007", "-12.50"})
+    void shouldConvertNumericStrings(String value) {
+        CellValueHandler.STRING.accept(cell, value);
+
+        verify(cell).setCellValue(Double.parseDouble(value));
+    }
+
     private static Stream<Arguments> provideHandlerValues() {
         return Stream.of(
                 Arguments.of(
@@ -115,7 +146,27 @@ class CellValueHandlerTest {
                 Arguments.of(
                         CellValueHandler.TIMESTAMP,
                         new Timestamp(1_000L),
-                        (Verifier) cell -> verify(cell).setCellValue(new Timestamp(1_000L))
+                        (Verifier) cell -> verify(cell).setCellValue(new Timestamp(1_000L).toLocalDateTime())
+                ),
+                Arguments.of(
+                        CellValueHandler.LONG,
+                        9_000_000_000L,
+                        (Verifier) cell -> verify(cell).setCellValue(9_000_000_000.0)
+                ),
+                Arguments.of(
+                        CellValueHandler.DATE,
+                        Date.valueOf("2024-03-01"),
+                        (Verifier) cell -> verify(cell).setCellValue(LocalDate.of(2024, 3, 1))
+                ),
+                Arguments.of(
+                        CellValueHandler.LOCAL_DATE_TIME,
+                        LocalDateTime.of(2024, 3, 1, 13, 45),
+                        (Verifier) cell -> verify(cell).setCellValue(LocalDateTime.of(2024, 3, 1, 13, 45))
+                ),
+                Arguments.of(
+                        CellValueHandler.LOCAL_DATE,
+                        LocalDate.of(2024, 3, 1),
+                        (Verifier) cell -> verify(cell).setCellValue(LocalDate.of(2024, 3, 1))
                 )
         );
     }
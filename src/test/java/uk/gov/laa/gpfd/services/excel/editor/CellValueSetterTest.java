@@ -2,12 +2,14 @@ package uk.gov.laa.gpfd.services.excel.editor;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.stream.Stream;
 
 import static java.lang.Double.parseDouble;
@@ -32,6 +34,13 @@ class CellValueSetterTest implements CellValueSetter {
         verifier.verify(cell, value);
     }
 
+    @Test
+    void shouldSetEmptyStringForNullValue() {
+        setCellValue(cell, null);
+
+        verify(cell).setCellValue("");
+    }
+
     @FunctionalInterface
     private interface Verifier {
         void verify(Cell cell, Object value);
@@ -46,7 +55,10 @@ class CellValueSetterTest implements CellValueSetter {
                 Arguments.of(3, (Verifier) (cell, value) -> verify(cell).setCellValue(((Number) value).doubleValue())),
                 Arguments.of(new BigDecimal("123.45"), (Verifier) (cell, value) -> verify(cell).setCellValue(((BigDecimal) value).doubleValue())),
                 Arguments.of(true, (Verifier) (cell, value) -> verify(cell).setCellValue((Boolean) value)),
-                Arguments.of(new Timestamp(System.currentTimeMillis()), (Verifier) (cell, value) -> verify(cell).setCellValue((Timestamp) value))
+                Arguments.of(new Timestamp(System.currentTimeMillis()), (Verifier) (cell, value) -> verify(cell).setCellValue(((Timestamp) value).toLocalDateTime())),
+                Arguments.of(42L, (Verifier) (cell, value) -> verify(cell).setCellValue(42.0)),
+                Arguments.of(LocalDateTime.of(2024, 3, 1, 9, 30), (Verifier) (cell, value) -> verify(cell).setCellValue((LocalDateTime) value)),
+                Arguments.of(new StringBuilder("custom"), (Verifier) (cell, value) -> verify(cell).setCellValue("custom"))
         );
     }
 
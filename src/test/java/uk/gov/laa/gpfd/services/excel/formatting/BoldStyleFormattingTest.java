@@ -10,8 +10,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import uk.gov.laa.gpfd.model.excel.ExcelMappingProjection;
+import uk.gov.laa.gpfd.services.excel.workbook.ReportWorkbook;
+import uk.gov.laa.gpfd.services.excel.workbook.StyleManager;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -49,6 +53,22 @@ class BoldStyleFormattingTest implements BoldStyleFormatting {
         verify(mockCellStyle).setFont(mockFont);
     }
 
+    @Test
+    void apply_shouldShareBoldStyleAcrossCellsOfReportWorkbook() {
+        var reportWorkbook = mock(ReportWorkbook.class);
+        when(mockSheet.getWorkbook()).thenReturn(reportWorkbook);
+        when(reportWorkbook.getStyleManager()).thenReturn(StyleManager.create());
+        when(reportWorkbook.createCellStyle()).thenReturn(mockCellStyle);
+        when(reportWorkbook.createFont()).thenReturn(mockFont);
+
+        apply(mockSheet, mockCell, mockFieldAttribute);
+        apply(mockSheet, mockCell, mockFieldAttribute);
+
+        verify(reportWorkbook, times(1)).createCellStyle();
+        verify(reportWorkbook, times(1)).createFont();
+        verify(mockCell, times(2)).setCellStyle(mockCellStyle);
+    }
+
     @Test
     void apply_withNullSheet_shouldThrowException() {
         assertThrows(NullPointerException.class, () -> apply(null, mockCell, mockFieldAttribute));
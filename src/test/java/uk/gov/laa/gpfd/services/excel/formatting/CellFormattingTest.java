@@ -4,11 +4,11 @@ import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.DataFormat;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import uk.gov.laa.gpfd.model.excel.ExcelMappingProjection;
+import uk.gov.laa.gpfd.services.excel.workbook.ReportWorkbook;
 import uk.gov.laa.gpfd.services.excel.workbook.StyleManager;
 
 import static org.mockito.Mockito.any;
@@ -18,6 +18,7 @@ import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -27,7 +28,7 @@ class CellFormattingTest {
     private CellFormatting strategy;
     private Sheet sheet;
     private Cell cell;
-    private Workbook workbook;
+    private ReportWorkbook workbook;
     private CellStyle cellStyle;
     private DataFormat dataFormat;
     private ExcelMappingProjection mappingProjection;
@@ -35,16 +36,17 @@ class CellFormattingTest {
 
     @BeforeEach
     void setUp() {
-        styleManager = mock(StyleManager.DefaultStyleManager.class);
-        strategy = new CellFormatting(styleManager) { };
+        styleManager = spy(StyleManager.create());
+        strategy = new CellFormatting() { };
         sheet = mock(Sheet.class);
         cell = mock(Cell.class);
-        workbook = mock(Workbook.class);
+        workbook = mock(ReportWorkbook.class);
         cellStyle = mock(CellStyle.class);
         dataFormat = mock(DataFormat.class);
         mappingProjection = mock(ExcelMappingProjection.class);
 
         when(sheet.getWorkbook()).thenReturn(workbook);
+        when(workbook.getStyleManager()).thenReturn(styleManager);
         when(workbook.createCellStyle()).thenReturn(cellStyle);
         when(workbook.createDataFormat()).thenReturn(dataFormat);
     }
@@ -122,6 +124,26 @@ class CellFormattingTest {
         verify(styleManager, times(2)).setColumnStyle(anyInt(), anyString(),eq(cellStyle));
     }
 
+    @Test
+    void shouldReuseStyleForColumnsWithSameFormat() {
+        // Given
+        var format = "dd/MM/yyyy";
+        when(mappingProjection.getFormat()).thenReturn(format);
+        when(dataFormat.getFormat(format)).thenReturn((short) 1);
+        when(sheet.getSheetName()).thenReturn("Sample");
+        when(cell.getColumnIndex()).thenReturn(0, 1);
+
+        // When
+        strategy.apply(sheet, cell, mappingProjection);
+        strategy.apply(sheet, cell, mappingProjection);
+
+        // Then
+        verify(workbook, times(1)).createCellStyle();
+        verify(styleManager).setColumnStyle(eq(0), eq("Sample"), eq(cellStyle));
+        verify(styleManager).setColumnStyle(eq(1), eq("Sample"), eq(cellStyle));
+        Assertions.assertEquals(1, styleManager.getStyleCount());
+    }
+
     @Test
     void shouldThrowExceptionWhenCreateCellStyleFails() {
         // Given
@@ -0,0 +1,88 @@
+package uk.gov.laa.gpfd.services.excel.template;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalyticsPartsCacheTest {
+
+    private static final UUID ID = UUID.fromString("eee30b23-2c8d-4b4b-bb11-8cd67d07915c");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TemplateCache templateCache = mock(TemplateCache.class);
+
+    @Test
+    void shouldCompileEachTemplateVersionOnce() throws IOException {
+        when(templateCache.findContentById(ID)).thenReturn(template("Summary"));
+        var cache = new AnalyticsPartsCache(templateCache, true, 0.001, 104_857_600, meterRegistry);
+
+        var first = cache.findById(ID);
+        var second = cache.findById(ID);
+
+        assertEquals(List.of("Summary"), first.orElseThrow().sheetNames());
+        assertSame(first.get(), second.orElseThrow());
+        assertEquals(1, compiles());
+    }
+
+    @Test
+    void shouldCompileAgainWhenTemplateChanges() throws IOException {
+        when(templateCache.findContentById(ID)).thenReturn(template("Summary"), template("Totals"));
+        var cache = new AnalyticsPartsCache(templateCache, true, 0.001, 104_857_600, meterRegistry);
+
+        cache.findById(ID);
+
+        assertEquals(List.of("Totals"), cache.findById(ID).orElseThrow().sheetNames());
+        assertEquals(2, compiles());
+    }
+
+    @Test
+    void shouldFallBackToCopyingWhenTemplateCannotBeCompiled() {
+        when(templateCache.findContentById(ID)).thenReturn("not a workbook".getBytes());
+        var cache = new AnalyticsPartsCache(templateCache, true, 0.001, 104_857_600, meterRegistry);
+
+        assertEquals(Optional.empty(), cache.findById(ID));
+        assertEquals(Optional.empty(), cache.findById(ID));
+        assertEquals(1, compiles());
+    }
+
+    @Test
+    void shouldReturnEmptyForReportsWithoutTemplate() {
+        var cache = new AnalyticsPartsCache(templateCache, true, 0.001, 104_857_600, meterRegistry);
+
+        assertTrue(cache.findById(ID).isEmpty());
+        assertTrue(cache.findById(null).isEmpty());
+    }
+
+    @Test
+    void shouldNotReadTemplatesWhenDisabled() {
+        assertTrue(AnalyticsPartsCache.disabled(templateCache).findById(ID).isEmpty());
+        verify(templateCache, never()).findContentById(ID);
+    }
+
+    private long compiles() {
+        return meterRegistry.get("gpfd.excel.analytics.compile").timer().count();
+    }
+
+    private static byte[] template(String sheetName) throws IOException {
+        try (var workbook = new XSSFWorkbook()) {
+            workbook.createSheet(sheetName).createRow(0).createCell(0).setCellValue("Totals");
+            var out = new ByteArrayOutputStream();
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+}
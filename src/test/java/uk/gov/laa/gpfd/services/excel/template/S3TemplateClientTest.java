@@ -6,15 +6,21 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import uk.gov.laa.gpfd.exception.TemplateResourceException.TemplateResourceNotFoundException;
+import uk.gov.laa.gpfd.services.excel.template.TemplateClient.Fetch;
 import uk.gov.laa.gpfd.services.s3.S3ClientWrapper;
 
 import java.io.ByteArrayInputStream;
+import java.util.Optional;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -65,6 +71,29 @@ class S3TemplateClientTest {
         assertThrows(TemplateResourceNotFoundException.class, () -> s3TemplateClient.findTemplateById(testUUID));
     }
 
+    @Test
+    void shouldFetchChangedTemplateWithItsEntityTag() {
+        var file = ResponseBytes.fromByteArray(GetObjectResponse.builder().eTag("\"2\"").build(), "mock template data".getBytes());
+        when(s3ClientWrapper.getTemplateIfChanged("testTemplate.xlsx", "\"1\"")).thenReturn(Optional.of(file));
+
+        var result = assertInstanceOf(Fetch.Modified.class, s3TemplateClient.fetch(testUUID, "\"1\""));
+
+        assertArrayEquals("mock template data".getBytes(), result.content());
+        assertEquals("\"2\"", result.eTag());
+    }
+
+    @Test
+    void shouldReportUnchangedTemplate() {
+        when(s3ClientWrapper.getTemplateIfChanged("testTemplate.xlsx", "\"1\"")).thenReturn(Optional.empty());
+        assertInstanceOf(Fetch.NotModified.class, s3TemplateClient.fetch(testUUID, "\"1\""));
+    }
+
+    @Test
+    void shouldReportAbsentTemplateForNullFilename() {
+        when(templateFileNameResolver.getFileNameFromId(testUUID)).thenReturn(null);
+        assertInstanceOf(Fetch.Absent.class, s3TemplateClient.fetch(testUUID, null));
+    }
+
     @Test
     void shouldLetAwsExceptionBeCaughtByExceptionHandler() {
 
@@ -0,0 +1,188 @@
+package uk.gov.laa.gpfd.services.excel.template;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import uk.gov.laa.gpfd.services.excel.template.TemplateClient.Fetch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TemplateCacheTest {
+
+    private static final UUID ID = UUID.fromString("eee30b23-2c8d-4b4b-bb11-8cd67d07915c");
+    private static final UUID OTHER_ID = UUID.fromString("a017241a-359f-4fdb-a0cd-7f28f1946ef1");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TemplateClient client = mock(TemplateClient.class);
+    private final TemplateFileNameResolver resolver = mock(TemplateFileNameResolver.class);
+
+    @Test
+    void shouldFetchTemplateOnceWhileItIsFresh() throws IOException {
+        when(client.fetch(ID, null)).thenReturn(new Fetch.Modified(bytes("v1"), "\"1\""));
+        var cache = cache(1024, Duration.ofMinutes(5));
+
+        assertArrayEquals(bytes("v1"), read(cache.findTemplateById(ID)));
+        assertArrayEquals(bytes("v1"), read(cache.findTemplateById(ID)));
+
+        verify(client, times(1)).fetch(ID, null);
+        assertEquals(1, requests("hit"));
+        assertEquals(1, requests("miss"));
+        assertEquals(1, meterRegistry.get("gpfd.template.cache.load").timer().count());
+        assertEquals(2, meterRegistry.get("gpfd.template.cache.size").gauge().value());
+        assertEquals(1, meterRegistry.get("gpfd.template.cache.entries").gauge().value());
+    }
+
+    @Test
+    void shouldReturnSameContentWhileVersionIsCached() throws IOException {
+        when(client.fetch(ID, null)).thenReturn(new Fetch.Modified(bytes("v1"), "\"1\""));
+        when(client.fetch(ID, "\"1\"")).thenReturn(new Fetch.NotModified());
+        var cache = cache(1024, Duration.ZERO);
+
+        assertSame(cache.findContentById(ID), cache.findContentById(ID));
+    }
+
+    @Test
+    void shouldKeepCachedTemplateWhenStoreReportsNoChange() throws IOException {
+        when(client.fetch(ID, null)).thenReturn(new Fetch.Modified(bytes("v1"), "\"1\""));
+        when(client.fetch(ID, "\"1\"")).thenReturn(new Fetch.NotModified());
+        var cache = cache(1024, Duration.ZERO);
+
+        cache.findTemplateById(ID);
+        assertArrayEquals(bytes("v1"), read(cache.findTemplateById(ID)));
+
+        assertEquals(1, revalidations("unchanged"));
+    }
+
+    @Test
+    void shouldReplaceCachedTemplateWhenStoreHasNewVersion() throws IOException {
+        when(client.fetch(ID, null)).thenReturn(new Fetch.Modified(bytes("v1"), "\"1\""));
+        when(client.fetch(ID, "\"1\"")).thenReturn(new Fetch.Modified(bytes("v2"), "\"2\""));
+        var cache = cache(1024, Duration.ZERO);
+
+        cache.findTemplateById(ID);
+        assertArrayEquals(bytes("v2"), read(cache.findTemplateById(ID)));
+
+        assertEquals(1, revalidations("changed"));
+    }
+
+    @Test
+    void shouldServeCachedTemplateWhenRevalidationFails() throws IOException {
+        when(client.fetch(ID, null)).thenReturn(new Fetch.Modified(bytes("v1"), "\"1\""));
+        when(client.fetch(ID, "\"1\"")).thenThrow(new IllegalStateException("S3 unavailable"));
+        var cache = cache(1024, Duration.ZERO);
+
+        cache.findTemplateById(ID);
+        assertArrayEquals(bytes("v1"), read(cache.findTemplateById(ID)));
+
+        assertEquals(1, revalidations("failed"));
+    }
+
+    @Test
+    void shouldNotRevalidateTemplatesWithoutEntityTag() throws IOException {
+        when(client.fetch(ID, null)).thenReturn(new Fetch.Modified(bytes("v1"), null));
+        var cache = cache(1024, Duration.ZERO);
+
+        cache.findTemplateById(ID);
+        cache.findTemplateById(ID);
+
+        verify(client, times(1)).fetch(any(), any());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedTemplateWhenFull() throws IOException {
+        when(client.fetch(ID, null)).thenReturn(new Fetch.Modified(bytes("first"), "\"1\""));
+        when(client.fetch(OTHER_ID, null)).thenReturn(new Fetch.Modified(bytes("second"), "\"2\""));
+        var cache = cache(8, Duration.ofMinutes(5));
+
+        cache.findTemplateById(ID);
+        cache.findTemplateById(OTHER_ID);
+        cache.findTemplateById(ID);
+
+        verify(client, times(2)).fetch(ID, null);
+        assertEquals(2, meterRegistry.get("gpfd.template.cache.evictions").counter().count());
+    }
+
+    @Test
+    void shouldReturnNullForReportsWithoutTemplate() throws IOException {
+        when(client.fetch(ID, null)).thenReturn(new Fetch.Absent());
+
+        assertNull(cache(1024, Duration.ofMinutes(5)).findTemplateById(ID));
+    }
+
+    @Test
+    void shouldPreloadKnownTemplates() throws IOException {
+        when(resolver.getTemplateIds()).thenReturn(List.of(ID, OTHER_ID));
+        when(client.fetch(ID, null)).thenReturn(new Fetch.Modified(bytes("first"), "\"1\""));
+        when(client.fetch(OTHER_ID, null)).thenThrow(new IllegalStateException("S3 unavailable"));
+        var cache = cache(1024, Duration.ofMinutes(5));
+
+        cache.preload();
+        cache.findTemplateById(ID);
+
+        verify(client, times(1)).fetch(ID, null);
+        assertEquals(1, requests("hit"));
+    }
+
+    @Test
+    void shouldReadFromClientWhenDisabled() {
+        var template = new ByteArrayInputStream(bytes("v1"));
+        when(client.findTemplateById(ID)).thenReturn(template);
+
+        var cache = TemplateCache.disabled(client);
+        cache.preload();
+
+        assertEquals(template, cache.findTemplateById(ID));
+        verify(resolver, never()).getTemplateIds();
+    }
+
+    @Test
+    void shouldReadContentFromClientWhenDisabled() {
+        when(client.findTemplateById(ID)).thenReturn(new ByteArrayInputStream(bytes("v1")));
+
+        assertArrayEquals(bytes("v1"), TemplateCache.disabled(client).findContentById(ID));
+    }
+
+    @Test
+    void shouldRejectNegativeSize() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TemplateCache(client, resolver, true, -1, Duration.ZERO, false, meterRegistry));
+    }
+
+    private TemplateCache cache(long maxBytes, Duration revalidateAfter) {
+        return new TemplateCache(client, resolver, true, maxBytes, revalidateAfter, true, meterRegistry);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("gpfd.template.cache.requests").tag("result", result).counter().count();
+    }
+
+    private double revalidations(String result) {
+        return meterRegistry.get("gpfd.template.cache.revalidations").tag("result", result).counter().count();
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes();
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        try (input) {
+            return input.readAllBytes();
+        }
+    }
+}
@@ -16,6 +16,19 @@ class TemplateFileNameResolverTest {
         assertEquals("CCMS_AND_CIS_BANK_ACCOUNT_REPORT_W_CATEGORY_CODE_YTD.xlsx", result);
     }
 
+    @Test
+    void shouldListTemplateIdsThatHaveFiles() {
+        var ids = templateFileNameResolver.getTemplateIds();
+        assertTrue(ids.contains(UUID.fromString("eee30b23-2c8d-4b4b-bb11-8cd67d07915c")));
+        assertFalse(ids.contains(UUID.fromString("f46b4d3d-c100-429a-bf9a-223305dbdbfb")));
+        ids.forEach(id -> assertNotNull(templateFileNameResolver.getFileNameFromId(id)));
+    }
+
+    @Test
+    void shouldReturnNullForReportWithoutTemplateFile() {
+        assertNull(templateFileNameResolver.getFileNameFromId(UUID.fromString("f46b4d3d-c100-429a-bf9a-223305dbdbfb")));
+    }
+
     @Test
     void shouldThrowTemplateNotFoundForUnknownId() {
         assertThrows(uk.gov.laa.gpfd.exception.TemplateResourceException.TemplateNotFoundException.class,
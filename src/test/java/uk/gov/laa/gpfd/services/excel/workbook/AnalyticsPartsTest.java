@@ -0,0 +1,212 @@
+package uk.gov.laa.gpfd.services.excel.workbook;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.DataConsolidateFunction;
+import org.apache.poi.ss.util.AreaReference;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalyticsPartsTest {
+
+    private static final double MIN_INFLATE_RATIO = 0.001;
+    private static final long MAX_SIZE = 100L * 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void compile_shouldListTemplateSheetsInOrder() throws IOException {
+        var parts = AnalyticsParts.compile(summaryTemplate("Summary", "Notes"), MIN_INFLATE_RATIO, MAX_SIZE);
+
+        assertEquals(List.of("Summary", "Notes"), parts.sheetNames());
+    }
+
+    @Test
+    void compile_shouldRejectFilesThatAreNotPackages() {
+        assertThrows(IllegalArgumentException.class, () -> AnalyticsParts.compile("not a workbook".getBytes(), MIN_INFLATE_RATIO, MAX_SIZE));
+    }
+
+    @Test
+    void compile_shouldRejectPartsThatInflateBeyondTheRatio() throws IOException {
+        var template = zip(Map.of("xl/worksheets/sheet1.xml", new byte[1024 * 1024]));
+
+        var failure = assertThrows(IllegalArgumentException.class, () -> AnalyticsParts.compile(template, 0.1, MAX_SIZE));
+        assertTrue(failure.getCause().getMessage().contains("compression ratio"));
+    }
+
+    @Test
+    void compile_shouldRejectTemplatesThatInflateBeyondTheMaximumSize() throws IOException {
+        var template = summaryTemplate("Summary");
+
+        var failure = assertThrows(IllegalArgumentException.class, () -> AnalyticsParts.compile(template, MIN_INFLATE_RATIO, 1024));
+        assertTrue(failure.getCause().getMessage().contains("inflates beyond"));
+    }
+
+    @Test
+    void splice_shouldAddSheetsInRequestedOrder() throws IOException {
+        var parts = AnalyticsParts.compile(summaryTemplate("Summary", "Notes"), MIN_INFLATE_RATIO, MAX_SIZE);
+        var order = new LinkedHashMap<String, Integer>();
+        order.put("Summary", 0);
+
+        try (var workbook = splice(parts, dataWorkbook("Data"), order)) {
+            assertEquals("Summary", workbook.getSheetName(0));
+            assertEquals("Data", workbook.getSheetName(1));
+            assertEquals("Notes", workbook.getSheetName(2));
+        }
+    }
+
+    @Test
+    void splice_shouldKeepTemplateValuesAndStyles() throws IOException {
+        var parts = AnalyticsParts.compile(summaryTemplate("Summary"), MIN_INFLATE_RATIO, MAX_SIZE);
+
+        try (var workbook = splice(parts, dataWorkbook("Data"), Map.of())) {
+            var row = workbook.getSheet("Summary").getRow(0);
+            assertEquals("Totals", row.getCell(0).getStringCellValue());
+            assertTrue(workbook.getFontAt(row.getCell(0).getCellStyle().getFontIndex()).getBold());
+            assertEquals(12.5, row.getCell(1).getNumericCellValue());
+            assertEquals("#,##0.0000", row.getCell(1).getCellStyle().getDataFormatString());
+            assertEquals(XSSFFont.DEFAULT_FONT_NAME, workbook.getFontAt(row.getCell(1).getCellStyle().getFontIndex()).getFontName());
+
+            // The generated sheet keeps its own styles
+            var data = workbook.getSheet("Data").getRow(0).getCell(0);
+            assertEquals("0.0%", data.getCellStyle().getDataFormatString());
+        }
+    }
+
+    @Test
+    void splice_shouldRegisterPivotCachesAndRefreshThemOnLoad() throws IOException {
+        var parts = AnalyticsParts.compile(pivotTemplate(), MIN_INFLATE_RATIO, MAX_SIZE);
+
+        try (var workbook = splice(parts, dataWorkbook("Data"), Map.of())) {
+            var pivotTables = workbook.getSheet("Pivot").getPivotTables();
+            assertEquals(1, pivotTables.size());
+
+            var pivotTable = pivotTables.getFirst();
+            var cacheIds = workbook.getCTWorkbook().getPivotCaches().getPivotCacheList().stream()
+                    .map(cache -> cache.getCacheId())
+                    .toList();
+            assertEquals(List.of(pivotTable.getCTPivotTableDefinition().getCacheId()), cacheIds);
+            assertTrue(pivotTable.getPivotCacheDefinition().getCTPivotCacheDefinition().getRefreshOnLoad());
+        }
+    }
+
+    @Test
+    void splice_shouldRejectSheetsThatAlreadyExist() throws IOException {
+        var parts = AnalyticsParts.compile(summaryTemplate("Summary"), MIN_INFLATE_RATIO, MAX_SIZE);
+        var target = unzip(dataWorkbook("Summary"));
+
+        assertThrows(IOException.class, () -> parts.splice(target::get, Map.of()));
+    }
+
+    private XSSFWorkbook splice(AnalyticsParts parts, byte[] target, Map<String, Integer> sheetOrder) throws IOException {
+        var entries = unzip(target);
+        var splice = parts.splice(entries::get, sheetOrder);
+        entries.putAll(splice.replaced());
+        entries.putAll(splice.added());
+        return new XSSFWorkbook(new ByteArrayInputStream(zip(entries)));
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(out)) {
+            for (var entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private Map<String, byte[]> unzip(byte[] content) throws IOException {
+        var file = Files.write(Files.createTempFile(tempDir, "workbook", ".xlsx"), content);
+        var entries = new LinkedHashMap<String, byte[]>();
+        try (var zip = new ZipFile(file.toFile())) {
+            for (var entry : zip.stream().toList()) {
+                try (var input = zip.getInputStream(entry)) {
+                    entries.put(entry.getName(), input.readAllBytes());
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] summaryTemplate(String... sheetNames) throws IOException {
+        try (var workbook = new XSSFWorkbook()) {
+            var font = workbook.createFont();
+            font.setFontName("Arial");
+            font.setBold(true);
+            var titleStyle = workbook.createCellStyle();
+            titleStyle.setFont(font);
+            var totalStyle = workbook.createCellStyle();
+            totalStyle.setDataFormat(workbook.createDataFormat().getFormat("#,##0.0000"));
+
+            for (var sheetName : sheetNames) {
+                var row = workbook.createSheet(sheetName).createRow(0);
+                var title = row.createCell(0);
+                title.setCellValue("Totals");
+                title.setCellStyle(titleStyle);
+                var total = row.createCell(1);
+                total.setCellValue(12.5);
+                total.setCellStyle(totalStyle);
+            }
+            return write(workbook);
+        }
+    }
+
+    private static byte[] pivotTemplate() throws IOException {
+        try (var workbook = new XSSFWorkbook()) {
+            var main = workbook.createSheet("MAIN");
+            var header = main.createRow(0);
+            header.createCell(0).setCellValue("Type");
+            header.createCell(1).setCellValue("Amount");
+            for (int i = 1; i <= 2; i++) {
+                var row = main.createRow(i);
+                row.createCell(0).setCellValue("Type " + i);
+                row.createCell(1).setCellValue(i * 10);
+            }
+
+            var pivotTable = workbook.createSheet("Pivot").createPivotTable(
+                    new AreaReference("A1:B3", SpreadsheetVersion.EXCEL2007), new CellReference("A1"), main);
+            pivotTable.addRowLabel(0);
+            pivotTable.addColumnLabel(DataConsolidateFunction.SUM, 1);
+            return write(workbook);
+        }
+    }
+
+    private static byte[] dataWorkbook(String sheetName) throws IOException {
+        try (var workbook = new XSSFWorkbook()) {
+            var style = workbook.createCellStyle();
+            style.setDataFormat(workbook.createDataFormat().getFormat("0.0%"));
+            var cell = workbook.createSheet(sheetName).createRow(0).createCell(0);
+            cell.setCellValue(0.25);
+            cell.setCellStyle(style);
+            return write(workbook);
+        }
+    }
+
+    private static byte[] write(XSSFWorkbook workbook) throws IOException {
+        var out = new ByteArrayOutputStream();
+        workbook.write(out);
+        return out.toByteArray();
+    }
+}
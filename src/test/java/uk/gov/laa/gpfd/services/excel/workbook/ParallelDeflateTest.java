@@ -0,0 +1,174 @@
+package uk.gov.laa.gpfd.services.excel.workbook;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.laa.gpfd.model.ImmutableReport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReport;
+
+class ParallelDeflateTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final SheetStorage storage = new SheetStorage("", 1024, false, Long.MAX_VALUE, Long.MAX_VALUE,
+            new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void write_shouldWriteDeflatedEntriesInPartOrder() throws IOException {
+        var contents = new LinkedHashMap<String, String>();
+        contents.put("[Content_Types].xml", "<Types/>");
+        contents.put("xl/worksheets/sheet1.xml", "<row r=\"1\"><c r=\"A1\"><v>1</v></c></row>".repeat(20_000));
+        contents.put("xl/worksheets/sheet2.xml", "");
+        contents.put("xl/workbook.xml", "<workbook/>");
+
+        var zip = write(contents, 6);
+
+        try (var file = new ZipFile(zip.toFile())) {
+            var names = file.stream().map(ZipEntry::getName).toList();
+            assertEquals(List.copyOf(contents.keySet()), names);
+            for (var entry : file.stream().toList()) {
+                assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+                try (var input = file.getInputStream(entry)) {
+                    assertEquals(contents.get(entry.getName()), new String(input.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    @Test
+    void write_shouldUseTheGivenLevel() throws IOException {
+        var contents = Map.of("xl/worksheets/sheet1.xml", "<row r=\"1\"><c r=\"A1\"><v>1</v></c></row>".repeat(20_000));
+
+        var stored = Files.size(write(contents, 0));
+        var compressed = Files.size(write(contents, 9));
+
+        assertTrue(compressed * 10 < stored, "level 9 should be far smaller than level 0");
+    }
+
+    @Test
+    void write_shouldFailWhenAPartCannotBeRead() {
+        var deflate = new ParallelDeflate(executor, true, 6);
+        var parts = List.of(
+                new ParallelDeflate.Part("a.xml", -1, () -> new ByteArrayInputStream(new byte[10])),
+                new ParallelDeflate.Part("b.xml", -1, () -> {
+                    throw new IOException("Sheet data is gone");
+                }));
+
+        try (var export = storage.open()) {
+            var thrown = assertThrows(IOException.class,
+                    () -> deflate.write(parts, 6, export, new ByteArrayOutputStream()));
+            assertEquals("Sheet data is gone", thrown.getMessage());
+        }
+    }
+
+    /**
+     * The second part is still being deflated when the first fails, so the failure is only thrown
+     * once that part has stopped and let go of its content.
+     */
+    @Test
+    void write_shouldWaitForPartsStillDeflatingBeforeFailing() {
+        var deflate = new ParallelDeflate(executor, true, 6);
+        var reading = new CountDownLatch(1);
+        var closed = new AtomicBoolean();
+        var parts = List.of(
+                new ParallelDeflate.Part("a.xml", -1, () -> {
+                    awaitQuietly(reading);
+                    throw new IOException("Sheet data is gone");
+                }),
+                new ParallelDeflate.Part("b.xml", -1, () -> new ByteArrayInputStream(new byte[1024 * 1024]) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        reading.countDown();
+                        sleepQuietly();
+                        return super.read(b, off, len);
+                    }
+
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                }));
+
+        try (var export = storage.open()) {
+            assertThrows(IOException.class, () -> deflate.write(parts, 6, export, new ByteArrayOutputStream()));
+            assertTrue(closed.get(), "the part still deflating should have stopped before the failure was thrown");
+        }
+    }
+
+    @Test
+    void levelOf_shouldPreferTheReportsOwnLevel() {
+        var deflate = new ParallelDeflate(executor, false, 6);
+        var report = createTestReport();
+
+        assertEquals(6, deflate.levelOf(report));
+        assertFalse(deflate.appliesTo(report));
+        assertEquals(1, deflate.levelOf(ImmutableReport.copyOf(report).withDeflateLevel(1)));
+        assertTrue(deflate.appliesTo(ImmutableReport.copyOf(report).withDeflateLevel(1)));
+        assertEquals(6, deflate.levelOf(ImmutableReport.copyOf(report).withDeflateLevel(12)));
+    }
+
+    @Test
+    void constructor_shouldRejectInvalidDefaultLevel() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelDeflate(executor, true, 10));
+    }
+
+    private Path write(Map<String, String> contents, int level) throws IOException {
+        var parts = new ArrayList<ParallelDeflate.Part>();
+        contents.forEach((name, content) -> parts.add(new ParallelDeflate.Part(name, -1,
+                () -> new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)))));
+
+        var zip = Files.createTempFile(tempDir, "workbook", ".zip");
+        try (var export = storage.open(); var out = Files.newOutputStream(zip)) {
+            new ParallelDeflate(executor, true, 6).write(parts, level, export, out);
+            assertEquals(0, export.bytesInUse());
+        }
+        return zip;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package uk.gov.laa.gpfd.services.excel.workbook;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PivotCacheGeneratorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SheetStorage.Export storage = new SheetStorage("", 1024, false, Long.MAX_VALUE, Long.MAX_VALUE,
+            meterRegistry).open();
+    private final XSSFWorkbook rows = new XSSFWorkbook();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storage.close();
+        rows.close();
+    }
+
+    @Test
+    void add_shouldShareItemsAndKeepTheTemplatesPositions() throws IOException {
+        var source = source(
+                new AnalyticsParts.CacheField("Type", true, false, List.of(
+                        new AnalyticsParts.CacheItem("s", "Old"), new AnalyticsParts.CacheItem("s", "Type A"))),
+                new AnalyticsParts.CacheField("Amount", false, false, List.of()));
+        var cache = generator(100).start(source, storage);
+
+        cache.add(0, row(0, "Type", "Amount"));
+        cache.add(1, row(1, "type a", 5));
+        cache.add(2, row(2, "Type B", 7.5));
+
+        assertTrue(cache.finish());
+        assertEquals(2, cache.recordCount());
+        assertEquals(3, cache.itemCount(0));
+        assertFalse(cache.isUsed(0, 0));
+        assertTrue(cache.isUsed(0, 1));
+        assertTrue(cache.isUsed(0, 2));
+        assertEquals("<s v=\"Old\" u=\"1\"/><s v=\"Type A\"/><s v=\"Type B\"/>", sharedItems(cache, 0));
+        assertTrue(read(cache.records()).endsWith("count=\"2\"><r><x v=\"1\"/><n v=\"5\"/></r><r><x v=\"2\"/><n v=\"7.5\"/></r></pivotCacheRecords>"));
+
+        var amount = cache.sharedItemsAttributes(1);
+        assertEquals("0", amount.get("containsSemiMixedTypes"));
+        assertEquals("0", amount.get("containsString"));
+        assertEquals("5", amount.get("minValue"));
+        assertEquals("7.5", amount.get("maxValue"));
+        assertEquals("3", cache.sharedItemsAttributes(0).get("count"));
+        assertEquals(1, meterRegistry.get("gpfd.excel.pivot-cache.build").timer().count());
+    }
+
+    @Test
+    void add_shouldWriteNumbersOfDateFieldsAsDates() throws IOException {
+        var source = source(new AnalyticsParts.CacheField("Submitted", true, true, List.of()));
+        var cache = generator(100).start(source, storage);
+
+        var row = rows.createSheet().createRow(1);
+        row.createCell(0).setCellValue(LocalDate.of(2024, 1, 31));
+        cache.add(1, row);
+
+        assertTrue(cache.finish());
+        assertEquals("<d v=\"2024-01-31T00:00:00\"/>", sharedItems(cache, 0));
+        var attributes = cache.sharedItemsAttributes(0);
+        assertEquals("1", attributes.get("containsDate"));
+        assertEquals("0", attributes.get("containsNonDate"));
+        assertEquals("2024-01-31T00:00:00", attributes.get("maxDate"));
+    }
+
+    @Test
+    void add_shouldAbandonCachesWithTooManyItems() throws IOException {
+        var source = source(new AnalyticsParts.CacheField("Type", true, false, List.of()));
+        var cache = generator(2).start(source, storage);
+
+        for (int i = 1; i <= 3; i++) {
+            cache.add(i, row(i, "Type " + i));
+        }
+
+        assertFalse(cache.finish());
+        assertEquals(1, meterRegistry.get("gpfd.excel.pivot-cache.abandoned").counter().count());
+        assertEquals(0, storage.bytesInUse());
+    }
+
+    @Test
+    void constructor_shouldRejectNonPositiveItemLimit() {
+        assertThrows(IllegalArgumentException.class, () -> new PivotCacheGenerator(true, true, 0, meterRegistry));
+    }
+
+    private PivotCacheGenerator generator(int maxItems) {
+        return new PivotCacheGenerator(true, true, maxItems, meterRegistry);
+    }
+
+    private static AnalyticsParts.PivotSource source(AnalyticsParts.CacheField... fields) {
+        return new AnalyticsParts.PivotSource("xl/pivotCache/pivotCacheDefinition1.xml", "Data", 0, 1048575, 0,
+                List.of(fields));
+    }
+
+    private Row row(int rownum, Object... values) {
+        var sheet = rows.getNumberOfSheets() == 0 ? rows.createSheet() : rows.getSheetAt(0);
+        var row = sheet.createRow(rownum);
+        for (int i = 0; i < values.length; i++) {
+            switch (values[i]) {
+                case String text -> row.createCell(i).setCellValue(text);
+                case Number number -> row.createCell(i).setCellValue(number.doubleValue());
+                default -> throw new IllegalArgumentException("Unexpected value " + values[i]);
+            }
+        }
+        return row;
+    }
+
+    private static String sharedItems(PivotCacheGenerator.Cache cache, int field) throws IOException {
+        var out = new StringWriter();
+        cache.writeSharedItems(field, out);
+        return out.toString();
+    }
+
+    private static String read(ParallelDeflate.Content content) throws IOException {
+        try (var input = content.open()) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import java.lang.reflect.Field;
 import java.util.TreeMap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ReportSXSSFSheetTest {
@@ -50,6 +51,28 @@ class ReportSXSSFSheetTest {
         }
     }
 
+    @Test
+    void writeDirectRow_shouldWriteRowsAfterFlushingExistingRows() throws Exception {
+        try (var xssfWorkbook = new XSSFWorkbook();
+             var streamingWorkbook = new SXSSFWorkbook(xssfWorkbook, 100)) {
+            var reportSheet = new ReportSXSSFSheet(streamingWorkbook, xssfWorkbook.createSheet("Test"), true);
+            reportSheet.createRow(0).createCell(0).setCellValue("Header");
+
+            var row = reportSheet.createDirectRow();
+            var cell = row.createCell(0);
+            for (int rownum = 1; rownum <= 3; rownum++) {
+                cell.setCellValue(rownum);
+                reportSheet.writeDirectRow(rownum, row);
+            }
+
+            assertTrue(reportSheet.isDirectRows());
+            assertTrue(getRows(reportSheet).isEmpty());
+            assertEquals(3, reportSheet.getLastRowNum());
+            assertEquals(4, reportSheet.getPhysicalNumberOfRows());
+            assertThrows(IllegalArgumentException.class, () -> reportSheet.writeDirectRow(3, row));
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static TreeMap<Integer, SXSSFRow> getRows(ReportSXSSFSheet sheet) throws Exception {
         Field rowsField = SXSSFSheet.class.getDeclaredField("_rows");
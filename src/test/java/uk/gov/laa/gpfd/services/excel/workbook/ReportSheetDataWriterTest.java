@@ -4,6 +4,7 @@ import lombok.SneakyThrows;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.streaming.SheetDataWriter;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.junit.jupiter.api.BeforeEach;
@@ -22,6 +23,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -296,4 +298,68 @@ class ReportSheetDataWriterTest {
                 .contains("<c r=\"A1\" t=\"e\"><f>=A3+B4</f><v>#DIV/0!</v></c>");
     }
 
-}
\ No newline at end of file
+
+    @Test
+    void writeRow_shouldReferenceCellsByTheRowBeingWritten() throws IOException {
+        createDataWriter(null);
+        setupCommonMocks();
+
+        try (var workbook = new SXSSFWorkbook()) {
+            var row = workbook.createSheet().createRow(41);
+            row.createCell(0).setCellValue("first");
+            row.createCell(1).setCellValue(2);
+
+            reportSheetDataWriter.writeRow(41, row);
+        }
+
+        assertThat(buffer.toString())
+                .contains("<c r=\"A42\" t=\"inlineStr\"><is><t>first</t></is></c>")
+                .contains("<c r=\"B42\" t=\"n\"><v>2.0</v></c>");
+    }
+
+    @Test
+    void writeCell_shouldResolveColumnStyleOncePerColumn() throws IOException {
+        createDataWriter();
+        when(report.getExcelSheet()).thenReturn(sheet);
+        when(sheet.getName()).thenReturn("testSheet");
+
+        when(cell.getCellType()).thenReturn(CellType.BLANK);
+        when(styleManager.getColumnStyle(0, "testSheet")).thenReturn(7);
+        reportSheetDataWriter.writeCell(0, cell);
+        reportSheetDataWriter.writeCell(0, cell);
+
+        assertThat(buffer.toString())
+                .isEqualTo("<c r=\"A1\" s=\"7\"></c><c r=\"A1\" s=\"7\"></c>");
+        verify(styleManager, times(1)).getColumnStyle(0, "testSheet");
+    }
+
+    @Test
+    void writeCell_shouldWriteColumnLettersBeyondZ() throws IOException {
+        createDataWriter();
+        setupCommonMocks();
+
+        when(cell.getCellType()).thenReturn(CellType.BLANK);
+        reportSheetDataWriter.writeCell(27, cell);
+        reportSheetDataWriter.writeCell(702, cell);
+
+        assertThat(buffer.toString())
+                .isEqualTo("<c r=\"AB1\"></c><c r=\"AAA1\"></c>");
+    }
+
+    @Test
+    void writeCell_shouldWriteNumbersAsDoubleToStringWould() throws IOException {
+        createDataWriter();
+        setupCommonMocks();
+
+        when(cell.getCellType()).thenReturn(CellType.NUMERIC);
+        for (var value : new double[]{-0.5, 1.0E10, 4.9E-324, Double.MAX_VALUE}) {
+            buffer.getBuffer().setLength(0);
+            when(cell.getNumericCellValue()).thenReturn(value);
+
+            reportSheetDataWriter.writeCell(0, cell);
+
+            assertThat(buffer.toString())
+                    .isEqualTo("<c r=\"A1\" t=\"n\"><v>" + Double.toString(value) + "</v></c>");
+        }
+    }
+}
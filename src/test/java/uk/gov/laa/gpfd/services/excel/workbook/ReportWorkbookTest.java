@@ -1,19 +1,41 @@
 package uk.gov.laa.gpfd.services.excel.workbook;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.DataConsolidateFunction;
+import org.apache.poi.ss.util.AreaReference;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTItem;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTString;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipInputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReportWithMultipleFieldAttributes;
 
 class ReportWorkbookTest {
 
+    @TempDir
+    Path tempDir;
+
     @Test
     void createSheet_withoutName_shouldReturnSXSSFSheetWithDefaultName()  throws IOException {
-        try (var workbook = new ReportWorkbook(createTestReportWithMultipleFieldAttributes(), null)) {
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes()).build()) {
             var sheet = workbook.createSheet();
 
             assertNotNull(sheet);
@@ -24,7 +46,7 @@ class ReportWorkbookTest {
 
     @Test
     void createSheetDataWriter_shouldReturnReportSheetDataWriter() throws IOException {
-        try (var workbook = new ReportWorkbook(null, null)) {
+        try (var workbook = new ReportWorkbook.Builder().build()) {
             var writer = workbook.createSheetDataWriter();
             assertInstanceOf(ReportSheetDataWriter.class, writer);
         }
@@ -32,7 +54,7 @@ class ReportWorkbookTest {
 
     @Test
     void workbook_shouldBeUsableInWorkbookContext() throws IOException {
-        try (var workbook = new ReportWorkbook(createTestReportWithMultipleFieldAttributes(), null)) {
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes()).build()) {
             var sheet = workbook.createSheet("Sheet1");
             assertNotNull(sheet);
             assertEquals("Sheet1", sheet.getSheetName());
@@ -48,7 +70,7 @@ class ReportWorkbookTest {
      */
     @Test
     void createSheet_shouldRegisterBidirectionalMappings() throws IOException {
-        try (var workbook = new ReportWorkbook(createTestReportWithMultipleFieldAttributes(), null)) {
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes()).build()) {
             var sxSheet = workbook.createSheet("TestSheet");
 
             // If the bidirectional mappings are broken, getSheet() will return null
@@ -64,7 +86,7 @@ class ReportWorkbookTest {
      */
     @Test
     void createSheet_multipleSheets_shouldAllBeRetrievable() throws IOException {
-        try (var workbook = new ReportWorkbook(createTestReportWithMultipleFieldAttributes(), null)) {
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes()).build()) {
             var sheet1 = workbook.createSheet("Sheet1");
             var sheet2 = workbook.createSheet("Sheet2");
             var sheet3 = workbook.createSheet("Sheet3");
@@ -84,7 +106,7 @@ class ReportWorkbookTest {
      */
     @Test
     void createSheet_shouldBeRetrievableByIndex() throws IOException {
-        try (var workbook = new ReportWorkbook(createTestReportWithMultipleFieldAttributes(), null)) {
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes()).build()) {
             workbook.createSheet("Sheet1");
             workbook.createSheet("Sheet2");
 
@@ -94,6 +116,25 @@ class ReportWorkbookTest {
         }
     }
 
+    @Test
+    void createRolloverSheet_shouldContinueTheDataSheetsRowsAndFollowItInTheSheetOrder() throws IOException {
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes()).withDirectRows(true).build()) {
+            workbook.createSheet("Summary");
+            workbook.createSheet("Sheet1");
+            workbook.createSheet("Notes");
+
+            var rollover = workbook.createRolloverSheet("Sheet1", "Sheet1 (2)");
+            workbook.createRolloverSheet("Sheet1", "Sheet1 (3)");
+
+            assertInstanceOf(ReportSXSSFSheet.class, rollover);
+            assertTrue(((ReportSXSSFSheet) rollover).isDirectRows());
+            assertEquals(Map.of("Summary", 0, "Sheet1", 1, "Sheet1 (2)", 2, "Sheet1 (3)", 3, "Notes", 4),
+                    workbook.withRolloverSheets(Map.of("Notes", 2, "Sheet1", 1, "Summary", 0)));
+            assertEquals(List.of("Summary", "Sheet1", "Sheet1 (2)", "Sheet1 (3)", "Notes"),
+                    List.copyOf(workbook.withRolloverSheets(Map.of("Notes", 2, "Sheet1", 1, "Summary", 0)).keySet()));
+        }
+    }
+
     /**
      * This just confirms that both ways of creating a sheet, with a name (createSheet("Sheet1")) and
      * without (createSheet()), always return our custom ReportSXSSFSheet type rather than a plain POI
@@ -102,7 +143,7 @@ class ReportWorkbookTest {
      */
     @Test
     void createSheet_shouldReturnReportSXSSFSheetInstance() throws IOException {
-        try (var workbook = new ReportWorkbook(createTestReportWithMultipleFieldAttributes(), null)) {
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes()).build()) {
             var sheet1 = workbook.createSheet("Sheet1");
             var sheet2 = workbook.createSheet();
 
@@ -111,4 +152,159 @@ class ReportWorkbookTest {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Analytics sheets are never created through POI, they are added to the package while it is
+     * written. Reading the written file back checks the spliced package is one POI can open, with
+     * the analytics sheet in its requested position next to the streamed sheet.
+     */
+    @Test
+    void write_withAnalytics_shouldSpliceAnalyticsSheets() throws IOException {
+        var output = new ByteArrayOutputStream();
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes()).build()) {
+            workbook.createSheet("Data").createRow(0).createCell(0).setCellValue("Header");
+            workbook.spliceAnalytics(AnalyticsParts.compile(analyticsTemplate(), 0.001, Long.MAX_VALUE), Map.of("Summary", 0));
+            workbook.write(output);
+        }
+
+        try (var written = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals("Summary", written.getSheetName(0));
+            assertEquals("Totals", written.getSheet("Summary").getRow(0).getCell(0).getStringCellValue());
+            assertEquals("Header", written.getSheet("Data").getRow(0).getCell(0).getStringCellValue());
+        }
+    }
+
+    /**
+     * Sheets that outgrow the heap are kept in compressed files under the storage directory. The
+     * written workbook must read back the same, and closing it must delete the files and release
+     * their bytes.
+     */
+    @Test
+    void write_withSpilledSheets_shouldReadThemBackAndDeleteThemOnClose() throws IOException {
+        var storage = new SheetStorage(tempDir.toString(), 0, true, Long.MAX_VALUE, Long.MAX_VALUE, new SimpleMeterRegistry());
+        var output = new ByteArrayOutputStream();
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes())
+                .withSheetStorage(storage).build()) {
+            var sheet = workbook.createSheet("Data");
+            for (int i = 0; i < 500; i++) {
+                sheet.createRow(i).createCell(0).setCellValue("Row " + i);
+            }
+            workbook.write(output);
+
+            assertTrue(workbook.getSheetBytesInUse() > 0);
+            try (var files = Files.list(tempDir)) {
+                assertEquals(1, files.count());
+            }
+        }
+
+        assertEquals(0, storage.bytesInUse());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+        try (var written = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals("Row 499", written.getSheet("Data").getRow(499).getCell(0).getStringCellValue());
+        }
+    }
+
+    /**
+     * With parallel deflate the package is no longer written by POI, so the worksheet parts have to
+     * be put together here. Reading the file back checks the rows landed in the right sheets next to
+     * the spliced analytics sheet, and that the staged parts were released.
+     */
+    @Test
+    void write_withParallelDeflate_shouldWriteReadableWorkbook() throws IOException {
+        var storage = new SheetStorage(tempDir.toString(), 0, true, Long.MAX_VALUE, Long.MAX_VALUE, new SimpleMeterRegistry());
+        var deflate = new ParallelDeflate(Runnable::run, true, 1);
+        var output = new ByteArrayOutputStream();
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes())
+                .withSheetStorage(storage).withParallelDeflate(deflate).build()) {
+            var first = workbook.createSheet("First");
+            var second = workbook.createSheet("Second");
+            for (int i = 0; i < 300; i++) {
+                first.createRow(i).createCell(0).setCellValue("First " + i);
+                second.createRow(i).createCell(1).setCellValue(i);
+            }
+            workbook.spliceAnalytics(AnalyticsParts.compile(analyticsTemplate(), 0.001, Long.MAX_VALUE), Map.of("Summary", 0));
+            workbook.write(output);
+        }
+
+        assertEquals(0, storage.bytesInUse());
+        try (var written = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals("Summary", written.getSheetName(0));
+            assertEquals("First 299", written.getSheet("First").getRow(299).getCell(0).getStringCellValue());
+            assertEquals(299, written.getSheet("Second").getRow(299).getCell(1).getNumericCellValue());
+            assertEquals("Totals", written.getSheet("Summary").getRow(0).getCell(0).getStringCellValue());
+        }
+    }
+
+    /**
+     * With the pivot cache generator enabled, the cache of a spliced pivot table is built from the
+     * rows of its data sheet. Reading the file back checks the cache has the data's shared items
+     * and records, and that the pivot table lists the new items.
+     */
+    @Test
+    void write_withServerSidePivotCaches_shouldBuildCachesFromTheRows() throws IOException {
+        var generator = new PivotCacheGenerator(true, true, 100, new SimpleMeterRegistry());
+        var output = new ByteArrayOutputStream();
+        try (var workbook = new ReportWorkbook.Builder().report(createTestReportWithMultipleFieldAttributes())
+                .withPivotCacheGenerator(generator).build()) {
+            workbook.spliceAnalytics(AnalyticsParts.compile(pivotTemplate(), 0.001, Long.MAX_VALUE), Map.of());
+            var data = workbook.createSheet("MAIN");
+            var header = data.createRow(0);
+            header.createCell(0).setCellValue("Type");
+            header.createCell(1).setCellValue("Amount");
+            for (int i = 1; i <= 4; i++) {
+                var row = data.createRow(i);
+                row.createCell(0).setCellValue("Type " + (char) ('A' + i % 3));
+                row.createCell(1).setCellValue(i * 10);
+            }
+            workbook.write(output);
+        }
+
+        try (var written = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            var pivotTable = written.getSheet("Pivot").getPivotTables().getFirst();
+            var cache = pivotTable.getPivotCacheDefinition().getCTPivotCacheDefinition();
+            assertEquals(4, cache.getRecordCount());
+            assertTrue(cache.getRefreshOnLoad());
+            var types = cache.getCacheFields().getCacheFieldArray(0).getSharedItems();
+            assertEquals(List.of("Type B", "Type C", "Type A"), Arrays.stream(types.getSArray()).map(CTString::getV).toList());
+            var items = pivotTable.getCTPivotTableDefinition().getPivotFields().getPivotFieldArray(0).getItems();
+            assertEquals(3, Arrays.stream(items.getItemArray()).filter(CTItem::isSetX).count());
+        }
+        try (var zip = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                if (entry.getName().contains("pivotCacheRecords")) {
+                    var records = new String(zip.readAllBytes(), StandardCharsets.UTF_8);
+                    assertTrue(records.contains("count=\"4\"><r><x v=\"0\"/>"), records);
+                }
+            }
+        }
+    }
+
+    private static byte[] pivotTemplate() throws IOException {
+        try (var template = new XSSFWorkbook()) {
+            var main = template.createSheet("MAIN");
+            var header = main.createRow(0);
+            header.createCell(0).setCellValue("Type");
+            header.createCell(1).setCellValue("Amount");
+            var pivotTable = template.createSheet("Pivot").createPivotTable(
+                    new AreaReference("A1:B100", SpreadsheetVersion.EXCEL2007), new CellReference("A1"), main);
+            pivotTable.addRowLabel(0);
+            pivotTable.addColumnLabel(DataConsolidateFunction.SUM, 1);
+            // The data sheet comes from the report, only the pivot table is spliced
+            template.removeSheetAt(0);
+            var out = new ByteArrayOutputStream();
+            template.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] analyticsTemplate() throws IOException {
+        try (var template = new XSSFWorkbook()) {
+            template.createSheet("Summary").createRow(0).createCell(0).setCellValue("Totals");
+            var out = new ByteArrayOutputStream();
+            template.write(out);
+            return out.toByteArray();
+        }
+    }
+
+}
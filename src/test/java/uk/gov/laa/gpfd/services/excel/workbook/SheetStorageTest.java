@@ -0,0 +1,137 @@
+package uk.gov.laa.gpfd.services.excel.workbook;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SheetStorageTest {
+
+    private static final String XML = "<row r=\"1\"><c r=\"A1\" t=\"n\"><v>1.0</v></c></row>".repeat(200);
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldKeepSmallSheetsInMemory() throws IOException {
+        var storage = storage(1024 * 1024, true, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        try (var export = storage.open()) {
+            var sheet = write(export, XML);
+
+            assertEquals(XML, read(sheet));
+            assertEquals(0, export.bytesInUse());
+            assertEquals(0, files());
+        }
+    }
+
+    @Test
+    void shouldSpillLargeSheetsToCompressedFiles() throws IOException {
+        var storage = storage(16, true, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        try (var export = storage.open()) {
+            var sheet = write(export, XML);
+
+            assertEquals(XML, read(sheet));
+            assertEquals(1, files());
+            assertTrue(storage.bytesInUse() > 0);
+            assertTrue(storage.bytesInUse() < XML.length(), "sheet data should be compressed");
+            assertEquals(storage.bytesInUse(), gauge());
+        }
+
+        assertEquals(0, files());
+        assertEquals(0, gauge());
+    }
+
+    @Test
+    void shouldRejectSheetsPastTheExportQuota() throws IOException {
+        var storage = storage(0, false, 100, Long.MAX_VALUE);
+
+        try (var export = storage.open()) {
+            var writer = export.newSheet().writer();
+            writer.write(XML);
+
+            assertThrows(SheetStorage.QuotaExceededException.class, writer::flush);
+            assertTrue(export.bytesInUse() <= 100);
+        }
+        assertEquals(0, storage.bytesInUse());
+    }
+
+    @Test
+    void shouldShareTheTotalQuotaBetweenExports() throws IOException {
+        var storage = storage(0, false, Long.MAX_VALUE, XML.length() + 100L);
+
+        var first = storage.open();
+        write(first, XML);
+        try (var second = storage.open()) {
+            var writer = second.newSheet().writer();
+            writer.write(XML);
+            assertThrows(SheetStorage.QuotaExceededException.class, writer::flush);
+        }
+
+        first.close();
+        try (var third = storage.open()) {
+            assertEquals(XML, read(write(third, XML)));
+        }
+    }
+
+    @Test
+    void shouldNotReadSheetsStillBeingWritten() throws IOException {
+        try (var export = storage(0, false, Long.MAX_VALUE, Long.MAX_VALUE).open()) {
+            var sheet = export.newSheet();
+            sheet.writer().write(XML);
+
+            assertThrows(IOException.class, sheet::read);
+        }
+    }
+
+    @Test
+    void shouldDeleteFilesLeftByAPreviousProcess() throws IOException {
+        var leftover = Files.createFile(tempDir.resolve("gpfd-sheet-1.xml.gz"));
+        var other = Files.createFile(tempDir.resolve("report.xlsx"));
+
+        storage(0, false, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        assertFalse(Files.exists(leftover));
+        assertTrue(Files.exists(other));
+    }
+
+    private SheetStorage storage(int memoryBytes, boolean compress, long exportQuota, long totalQuota) {
+        return new SheetStorage(tempDir.toString(), memoryBytes, compress, exportQuota, totalQuota, meterRegistry);
+    }
+
+    private static SheetStorage.Sheet write(SheetStorage.Export export, String xml) throws IOException {
+        var sheet = export.newSheet();
+        try (var writer = sheet.writer()) {
+            writer.write(xml);
+        }
+        return sheet;
+    }
+
+    private static String read(SheetStorage.Sheet sheet) throws IOException {
+        try (var input = sheet.read()) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private long files() throws IOException {
+        try (var files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    private double gauge() {
+        return meterRegistry.get("gpfd.excel.sheet-storage.bytes").gauge().value();
+    }
+}
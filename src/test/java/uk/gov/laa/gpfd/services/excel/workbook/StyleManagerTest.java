@@ -1,15 +1,25 @@
 package uk.gov.laa.gpfd.services.excel.workbook;
 
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -100,4 +110,91 @@ class StyleManagerTest {
         assertEquals(0, styleIndex);
     }
 
-}
\ No newline at end of file
+    @Test
+    void getColumnStyle_shouldReturnNegativeOneForColumnWithoutStyle() {
+        when(mockCellStyle1.getIndex()).thenReturn((short) 3);
+
+        styleManager.setColumnStyle(0, "key", mockCellStyle1);
+
+        assertEquals(-1, styleManager.getColumnStyle(1, "key"));
+    }
+
+    @Test
+    void setColumnStyle_shouldKeepEveryColumnOfWideSheets() {
+        when(mockCellStyle1.getIndex()).thenReturn((short) 7);
+
+        for (int column = 0; column < 16_384; column++) {
+            styleManager.setColumnStyle(column, "wide", mockCellStyle1);
+        }
+
+        assertTrue(IntStream.range(0, 16_384).allMatch(column -> styleManager.getColumnStyle(column, "wide") == 7));
+    }
+
+    @Test
+    void setColumnStyle_shouldBeSafeForConcurrentSheets() throws Exception {
+        when(mockCellStyle1.getIndex()).thenReturn((short) 9);
+
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            var writes = IntStream.range(0, 8)
+                    .mapToObj(sheet -> executor.submit(() -> {
+                        for (int column = 0; column < 500; column++) {
+                            styleManager.setColumnStyle(column, "Sheet" + sheet, mockCellStyle1);
+                        }
+                    }))
+                    .toList();
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        }
+
+        assertTrue(IntStream.range(0, 8).allMatch(sheet ->
+                IntStream.range(0, 500).allMatch(column -> styleManager.getColumnStyle(column, "Sheet" + sheet) == 9)));
+    }
+
+    @Test
+    void getDataFormatStyle_shouldCreateEachFormatOnce() throws IOException {
+        try (var workbook = new XSSFWorkbook()) {
+            var styles = workbook.getNumCellStyles();
+
+            var first = styleManager.getDataFormatStyle(workbook, "dd/MM/yyyy");
+            var second = styleManager.getDataFormatStyle(workbook, "dd/MM/yyyy");
+            var other = styleManager.getDataFormatStyle(workbook, "0.00%");
+
+            assertSame(first, second);
+            assertNotSame(first, other);
+            assertEquals("dd/MM/yyyy", first.getDataFormatString());
+            assertEquals(styles + 2, workbook.getNumCellStyles());
+            assertEquals(2, styleManager.getStyleCount());
+        }
+    }
+
+    @Test
+    void getBoldStyle_shouldCreateStyleAndFontOnce() throws IOException {
+        try (var workbook = new XSSFWorkbook()) {
+            var fonts = workbook.getNumberOfFonts();
+
+            var style = styleManager.getBoldStyle(workbook);
+
+            assertSame(style, styleManager.getBoldStyle(workbook));
+            assertTrue(workbook.getFontAt(style.getFontIndex()).getBold());
+            assertEquals(fonts + 1, workbook.getNumberOfFonts());
+        }
+    }
+
+    @Test
+    void getDataFormatStyle_shouldRejectAnotherWorkbook() throws IOException {
+        try (var workbook = new XSSFWorkbook(); var other = new XSSFWorkbook()) {
+            styleManager.getBoldStyle(workbook);
+
+            assertThrows(IllegalArgumentException.class, () -> styleManager.getDataFormatStyle(other, "0.00"));
+        }
+    }
+
+    @Test
+    void of_shouldReturnTheReportWorkbooksOwnManager() throws IOException {
+        try (var workbook = new ReportWorkbook.Builder().withStyleManager(styleManager).build()) {
+            assertSame(styleManager, StyleManager.of(workbook));
+        }
+    }
+
+}
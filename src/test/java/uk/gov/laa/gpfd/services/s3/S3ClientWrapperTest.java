@@ -6,6 +6,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
@@ -13,12 +14,14 @@ import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.S3Object;
 
 import java.io.ByteArrayInputStream;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -67,6 +70,44 @@ class S3ClientWrapperTest {
 
     }
 
+    @Test
+    void getTemplateIfChanged_shouldSendEntityTagAndReturnFile() {
+
+        var file = ResponseBytes.fromByteArray(GetObjectResponse.builder().eTag("\"2\"").build(), "mock template data".getBytes());
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class))).thenReturn(file);
+        var s3ClientWrapper = new S3ClientWrapper(s3Client, "bucket");
+
+        var result = s3ClientWrapper.getTemplateIfChanged("file.xlsx", "\"1\"");
+
+        assertEquals(Optional.of(file), result);
+        var captor = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3Client).getObjectAsBytes(captor.capture());
+        assertEquals("templates/file.xlsx", captor.getValue().key());
+        assertEquals("\"1\"", captor.getValue().ifNoneMatch());
+
+    }
+
+    @Test
+    void getTemplateIfChanged_shouldReturnEmptyWhenNotModified() {
+
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class)))
+                .thenThrow(S3Exception.builder().statusCode(304).build());
+        var s3ClientWrapper = new S3ClientWrapper(s3Client, "bucket");
+
+        assertTrue(s3ClientWrapper.getTemplateIfChanged("file.xlsx", "\"1\"").isEmpty());
+
+    }
+
+    @Test
+    void getTemplateIfChanged_shouldLetOtherAwsExceptionsBeCaughtByExceptionHandler() {
+
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class))).thenThrow(NoSuchKeyException.builder().statusCode(404).build());
+        var s3ClientWrapper = new S3ClientWrapper(s3Client, "bucket");
+
+        assertThrows(NoSuchKeyException.class, () -> s3ClientWrapper.getTemplateIfChanged("file.xlsx", null));
+
+    }
+
     @Test
     void getResultCsv_shouldPickLatestMatchingFileFromS3AndReturnInputStream() {
 
@@ -0,0 +1,133 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.exception.DatabaseReadException.DatabaseFetchException;
+import uk.gov.laa.gpfd.model.FileExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExportCoalescerTest {
+
+    private static final ReportResultCache.Key KEY =
+            new ReportResultCache.Key(UUID.randomUUID(), FileExtension.CSV, Instant.parse("2026-01-01T06:00:00Z"));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ExportCoalescer coalescer = new ExportCoalescer(true, executor, meterRegistry);
+    private final AtomicInteger generations = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        coalescer.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldShareOneGenerationBetweenConcurrentRequests() throws Exception {
+        var release = new CountDownLatch(1);
+        var first = coalescer.join(KEY, () -> generator("id\n1\n", "2\n", release));
+        var second = coalescer.join(KEY, () -> generator("other\n", "", release));
+
+        var follower = CompletableFuture.supplyAsync(() -> write(second));
+        release.countDown();
+
+        assertEquals("id\n1\n2\n", write(first));
+        assertEquals("id\n1\n2\n", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, generations.get());
+        assertEquals(1, meterRegistry.get("gpfd.export.coalesced").tag("format", "csv").counter().count());
+    }
+
+    @Test
+    void shouldStartNewGenerationOnceFlightHasCompleted() {
+        var release = new CountDownLatch(0);
+
+        assertEquals("a\nb\n", write(coalescer.join(KEY, () -> generator("a\n", "b\n", release))));
+        assertEquals("a\nb\n", write(coalescer.join(KEY, () -> generator("a\n", "b\n", release))));
+
+        assertEquals(2, generations.get());
+    }
+
+    @Test
+    void shouldPropagateGenerationFailureToEverySubscriber() {
+        var release = new CountDownLatch(1);
+        var failure = new DatabaseFetchException("ORA-01555");
+        StreamingResponseBody failing = output -> {
+            output.write("partial".getBytes(UTF_8));
+            awaitQuietly(release);
+            throw failure;
+        };
+        var first = coalescer.join(KEY, () -> failing);
+        var second = coalescer.join(KEY, () -> failing);
+        release.countDown();
+
+        assertSame(failure, assertThrows(DatabaseFetchException.class, () -> first.writeTo(new ByteArrayOutputStream())));
+        assertSame(failure, assertThrows(DatabaseFetchException.class, () -> second.writeTo(new ByteArrayOutputStream())));
+    }
+
+    @Test
+    void shouldRethrowWhenGeneratorCannotBeCreated() {
+        var failure = new IllegalStateException("Report has no queries");
+
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> coalescer.join(KEY, () -> {
+            throw failure;
+        })));
+        assertEquals("a\n", write(coalescer.join(KEY, () -> generator("a\n", "", new CountDownLatch(0)))));
+    }
+
+    @Test
+    void shouldCallGeneratorDirectlyWhenDisabled() {
+        var disabled = ExportCoalescer.disabled();
+        StreamingResponseBody body = output -> output.write(1);
+
+        assertFalse(disabled.isEnabled());
+        assertSame(body, disabled.join(KEY, () -> body));
+    }
+
+    private StreamingResponseBody generator(String head, String tail, CountDownLatch release) {
+        generations.incrementAndGet();
+        return output -> {
+            output.write(head.getBytes(UTF_8));
+            awaitQuietly(release);
+            output.write(tail.getBytes(UTF_8));
+        };
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) throws IOException {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IOException("Timed out waiting for test");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static String write(StreamingResponseBody body) {
+        var output = new ByteArrayOutputStream();
+        try {
+            body.writeTo(output);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return output.toString(UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import uk.gov.laa.gpfd.dao.RowEstimator;
+import uk.gov.laa.gpfd.model.ImmutableReport;
+import uk.gov.laa.gpfd.model.Report;
+
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static uk.gov.laa.gpfd.data.ReportsTestDataFactory.createTestReportWithQuery;
+import static uk.gov.laa.gpfd.model.FileExtension.XLSX;
+import static uk.gov.laa.gpfd.model.FileExtension.ZIP;
+
+class ExportFormatPlannerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RowEstimator rowEstimator = mock(RowEstimator.class);
+    private final ReportResultCache cache = mock(ReportResultCache.class);
+    private final Report report = createTestReportWithQuery();
+
+    @Test
+    void shouldKeepWorkbooksWhenDisabled() {
+        assertEquals(XLSX, planner(0).excelFormat(report));
+        verifyNoInteractions(cache, rowEstimator);
+    }
+
+    @Test
+    void shouldExportZippedCsvWhenASheetIsEstimatedAboveTheThreshold() {
+        when(rowEstimator.estimate("SELECT * FROM ANY_REPORT.DATA")).thenReturn(OptionalLong.of(2_000_001));
+
+        assertEquals(ZIP, planner(2_000_000).excelFormat(report));
+        assertEquals(1, meterRegistry.get("gpfd.excel.csv-zip").counter().count());
+    }
+
+    @Test
+    void shouldKeepWorkbooksWhenEstimatesAreWithinTheThreshold() {
+        when(rowEstimator.estimate(any())).thenReturn(OptionalLong.of(2_000_000));
+
+        assertEquals(XLSX, planner(2_000_000).excelFormat(report));
+    }
+
+    @Test
+    void shouldKeepWorkbooksWhenQueriesCannotBeEstimated() {
+        when(rowEstimator.estimate(any())).thenReturn(OptionalLong.empty());
+
+        assertEquals(XLSX, planner(1).excelFormat(report));
+    }
+
+    @Test
+    void shouldRejectUnknownReports() {
+        when(reportDao.fetchReportById(REPORT)).thenReturn(Optional.empty());
+
+        var planner = planner(1);
+        assertThrows(ReportIdNotFoundException.class, () -> planner.excelFormat(report));
+    }
+
+    @Test
+    void shouldRejectNegativeThreshold() {
+        assertThrows(IllegalArgumentException.class, () -> planner(-1));
+    }
+
+    private ExportFormatPlanner planner(long aboveRows) {
+        return new ExportFormatPlanner(rowEstimator, cache, aboveRows, meterRegistry);
+    }
+}
@@ -0,0 +1,290 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.dao.ExportSpool;
+import uk.gov.laa.gpfd.exception.ExportRejectedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static uk.gov.laa.gpfd.model.FileExtension.CSV;
+import static uk.gov.laa.gpfd.model.FileExtension.XLSX;
+import static uk.gov.laa.gpfd.services.stream.ExportScheduler.CostClass.LARGE;
+import static uk.gov.laa.gpfd.services.stream.ExportScheduler.CostClass.MEDIUM;
+import static uk.gov.laa.gpfd.services.stream.ExportScheduler.CostClass.SMALL;
+
+class ExportSchedulerTest {
+
+    private static final UUID REPORT = UUID.randomUUID();
+    private static final UUID USER = UUID.randomUUID();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldTreatUnknownReportsAsMedium() {
+        assertEquals(MEDIUM, scheduler(0, Duration.ZERO).classify(REPORT, CSV));
+    }
+
+    @Test
+    void shouldLearnCostClassFromPreviousGenerations() throws IOException {
+        var scheduler = scheduler(0, Duration.ZERO);
+        var large = UUID.randomUUID();
+
+        write(scheduler.admit(REPORT, CSV, USER, () -> output -> output.write(new byte[10])));
+        write(scheduler.admit(large, CSV, USER, () -> output -> output.write(new byte[5000])));
+
+        assertEquals(SMALL, scheduler.classify(REPORT, CSV));
+        assertEquals(LARGE, scheduler.classify(large, CSV));
+    }
+
+    @Test
+    void shouldEstimateEachFormatOfReportSeparately() throws IOException {
+        var scheduler = scheduler(0, Duration.ZERO);
+
+        write(scheduler.admit(REPORT, CSV, USER, () -> output -> output.write(new byte[10])));
+        write(scheduler.admit(REPORT, XLSX, USER, () -> output -> output.write(new byte[5000])));
+
+        assertEquals(SMALL, scheduler.classify(REPORT, CSV));
+        assertEquals(LARGE, scheduler.classify(REPORT, XLSX));
+    }
+
+    @Test
+    void shouldRejectWithRetryAfterWhenQueueIsFull() throws Exception {
+        var scheduler = scheduler(0, Duration.ZERO);
+        var running = occupySlot(scheduler);
+
+        var rejected = assertThrows(ExportRejectedException.class,
+                () -> write(scheduler.admit(REPORT, CSV, UUID.randomUUID(), () -> output -> { })));
+
+        assertTrue(rejected.getRetryAfter().toSeconds() >= 1);
+        assertEquals(1, meterRegistry.get("gpfd.export.rejected")
+                .tags("class", "medium", "reason", "queue_full").counter().count());
+        running.release();
+    }
+
+    @Test
+    void shouldRejectWhenWaitingTooLong() throws Exception {
+        var scheduler = scheduler(5, Duration.ofMillis(50));
+        var running = occupySlot(scheduler);
+
+        assertThrows(ExportRejectedException.class,
+                () -> write(scheduler.admit(REPORT, CSV, USER, () -> output -> { })));
+
+        assertEquals(0, gauge("gpfd.export.queue.depth"));
+        assertEquals(1, meterRegistry.get("gpfd.export.queue.wait")
+                .tags("class", "medium", "outcome", "rejected").timer().count());
+        running.release();
+    }
+
+    @Test
+    void shouldAdmitQueuedExportOnceSlotIsReleased() throws Exception {
+        var scheduler = scheduler(5, Duration.ofSeconds(5));
+        var running = occupySlot(scheduler);
+        var queued = executor.submit(() -> {
+            write(scheduler.admit(REPORT, CSV, USER, () -> output -> output.write(2)));
+            return null;
+        });
+        awaitGauge("gpfd.export.queue.depth", 1);
+
+        running.release();
+
+        queued.get(5, TimeUnit.SECONDS);
+        assertEquals(0, gauge("gpfd.export.slots.active"));
+    }
+
+    @Test
+    void shouldServeQueuedUsersInTurn() throws Exception {
+        var scheduler = scheduler(5, Duration.ofSeconds(5));
+        var busyUser = UUID.randomUUID();
+        var otherUser = UUID.randomUUID();
+        var order = new CopyOnWriteArrayList<String>();
+        var running = occupySlot(scheduler);
+
+        var waiters = List.of(
+                queue(scheduler, busyUser, "busy-1", order, 1),
+                queue(scheduler, busyUser, "busy-2", order, 2),
+                queue(scheduler, otherUser, "other-1", order, 3));
+        running.release();
+
+        for (var waiter : waiters) {
+            waiter.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(List.of("busy-1", "other-1", "busy-2"), order);
+    }
+
+    @Test
+    void shouldNotHoldSlotForBodyThatIsNeverWritten() throws IOException {
+        var scheduler = scheduler(0, Duration.ZERO);
+
+        scheduler.admit(REPORT, CSV, USER, () -> output -> { });
+        scheduler.admit(REPORT, CSV, USER, () -> output -> { });
+
+        assertEquals(0, gauge("gpfd.export.slots.active"));
+        write(scheduler.admit(REPORT, CSV, USER, () -> output -> { }));
+    }
+
+    @Test
+    void shouldReleaseSlotWhenExportFails() throws IOException {
+        var scheduler = scheduler(0, Duration.ZERO);
+        var failure = new IOException("Broken pipe");
+
+        assertSame(failure, assertThrows(IOException.class, () -> write(scheduler.admit(REPORT, CSV, USER, () -> output -> {
+            throw failure;
+        }))));
+
+        assertEquals(0, gauge("gpfd.export.slots.active"));
+        write(scheduler.admit(REPORT, CSV, USER, () -> output -> { }));
+    }
+
+    @Test
+    void shouldReleaseSlotOnceSpooledReadHasFinished() throws Exception {
+        var scheduler = scheduler(0, Duration.ZERO);
+        var spool = new ExportSpool(true, 1024, executor, meterRegistry);
+        var read = new CountDownLatch(1);
+        var client = new CountDownLatch(1);
+        var download = executor.submit(() -> {
+            scheduler.admit(REPORT, CSV, USER, () -> output -> spool.stream(CSV, out -> {
+                        out.write(new byte[10]);
+                        read.countDown();
+                    }, output))
+                    .writeTo(new OutputStream() {
+                        @Override
+                        public void write(int b) throws IOException {
+                            awaitQuietly(client);
+                        }
+                    });
+            return null;
+        });
+
+        assertTrue(read.await(5, TimeUnit.SECONDS));
+        awaitGauge("gpfd.export.slots.active", 0);
+        assertFalse(download.isDone());
+        write(scheduler.admit(REPORT, CSV, UUID.randomUUID(), () -> output -> { }));
+
+        client.countDown();
+        download.get(5, TimeUnit.SECONDS);
+        assertEquals(0, gauge("gpfd.export.slots.active"));
+    }
+
+    @Test
+    void shouldRethrowWhenExportCannotBeCreated() {
+        var scheduler = scheduler(0, Duration.ZERO);
+        var failure = new IllegalStateException("Report has no queries");
+
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> scheduler.admit(REPORT, CSV, USER, () -> {
+            throw failure;
+        })));
+    }
+
+    @Test
+    void shouldAdmitEverythingWhenDisabled() {
+        var disabled = ExportScheduler.disabled();
+        StreamingResponseBody body = output -> output.write(1);
+
+        assertFalse(disabled.isEnabled());
+        assertSame(body, disabled.admit(REPORT, CSV, USER, () -> body));
+        assertSame(body, disabled.admit(REPORT, CSV, USER, () -> body));
+    }
+
+    @Test
+    void shouldCountSlotsOfEveryClassOnlyWhenEnabled() {
+        var scheduler = new ExportScheduler(true, 3, 2, 1, 0, Duration.ZERO, Duration.ofSeconds(10),
+                Duration.ofMinutes(2), 1024, 4096, meterRegistry);
+
+        assertEquals(6, scheduler.totalSlots());
+        assertEquals(0, ExportScheduler.disabled().totalSlots());
+    }
+
+    @Test
+    void shouldRejectClassesWithoutSlots() {
+        assertThrows(IllegalArgumentException.class, () -> new ExportScheduler(true, 0, 1, 1, 0, Duration.ZERO,
+                Duration.ofSeconds(10), Duration.ofMinutes(2), 1024, 4096, meterRegistry));
+    }
+
+    /**
+     * Starts writing an export that holds the medium slot until it is released.
+     */
+    private Running occupySlot(ExportScheduler scheduler) {
+        var latch = new CountDownLatch(1);
+        var writer = executor.submit(() -> {
+            write(scheduler.admit(REPORT, CSV, USER, () -> output -> awaitQuietly(latch)));
+            return null;
+        });
+        awaitGauge("gpfd.export.slots.active", 1);
+        return new Running(latch, writer);
+    }
+
+    private record Running(CountDownLatch latch, Future<?> writer) {
+        void release() throws Exception {
+            latch.countDown();
+            writer.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private Future<?> queue(ExportScheduler scheduler, UUID userId, String name, List<String> order, int depth) {
+        var waiter = executor.submit(() -> {
+            write(scheduler.admit(REPORT, CSV, userId, () -> output -> order.add(name)));
+            return null;
+        });
+        awaitGauge("gpfd.export.queue.depth", depth);
+        return waiter;
+    }
+
+    private ExportScheduler scheduler(int maxQueued, Duration maxWait) {
+        return new ExportScheduler(true, 1, 1, 1, maxQueued, maxWait, Duration.ofSeconds(10),
+                Duration.ofMinutes(2), 1024, 4096, meterRegistry);
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).tag("class", "medium").gauge().value();
+    }
+
+    private void awaitGauge(String name, int value) {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gauge(name) != value) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("%s never reached %d".formatted(name, value));
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) throws IOException {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IOException("Timed out waiting for test");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static void write(StreamingResponseBody body) throws IOException {
+        body.writeTo(new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,285 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.model.FileExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportResultCacheTest {
+
+    private static final Instant REFRESHED = Instant.parse("2026-01-01T06:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ReportResultCache cache;
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Test
+    void shouldMissThenServeFromMemory() throws IOException {
+        cache = cache(1024, 100, 4096);
+        var key = key(UUID.randomUUID(), REFRESHED);
+
+        assertTrue(cache.lookup(key).isEmpty());
+        var generated = generate(key, bytes(50));
+
+        var hit = cache.lookup(key).orElseThrow();
+        assertEquals(50, hit.contentLength());
+        assertArrayEquals(generated, write(hit));
+        assertEquals(1, requests(key, "hit"));
+        assertEquals(1, requests(key, "miss"));
+        assertEquals(50, meterRegistry.get("gpfd.report.cache.bytes.saved").counter().count());
+        assertEquals(50, meterRegistry.get("gpfd.report.cache.size").tag("tier", "memory").gauge().value());
+        assertEquals(0, listFiles());
+    }
+
+    @Test
+    void shouldReportHeldVersionsWithoutCountingRequests() throws IOException {
+        cache = cache(1024, 100, 4096);
+        var key = key(UUID.randomUUID(), REFRESHED);
+
+        assertFalse(cache.contains(key));
+        generate(key, bytes(50));
+
+        assertTrue(cache.contains(key));
+        assertTrue(meterRegistry.find("gpfd.report.cache.requests").counters().isEmpty());
+    }
+
+    @Test
+    void shouldServeLargeOutputsFromDisk() throws IOException {
+        cache = cache(1024, 100, 4096);
+        var key = key(UUID.randomUUID(), REFRESHED);
+        var generated = generate(key, bytes(1000));
+
+        var hit = cache.lookup(key).orElseThrow();
+
+        assertEquals(1000, hit.contentLength());
+        assertArrayEquals(generated, write(hit));
+        assertEquals(1000, meterRegistry.get("gpfd.report.cache.size").tag("tier", "disk").gauge().value());
+        assertEquals(1, listFiles());
+    }
+
+    @Test
+    void shouldNotCacheOutputLargerThanDiskQuota() throws IOException {
+        cache = cache(1024, 100, 500);
+        var key = key(UUID.randomUUID(), REFRESHED);
+        var generated = bytes(1000);
+        var output = new ByteArrayOutputStream();
+
+        cache.populate(key, out -> out.write(generated)).writeTo(output);
+
+        assertArrayEquals(generated, output.toByteArray());
+        assertTrue(cache.lookup(key).isEmpty());
+        assertEquals(0, listFiles());
+    }
+
+    @Test
+    void shouldNotCacheFailedGeneration() {
+        cache = cache(1024, 100, 4096);
+        var key = key(UUID.randomUUID(), REFRESHED);
+        StreamingResponseBody failing = out -> {
+            out.write(bytes(500));
+            throw new IOException("ORA-03113");
+        };
+
+        assertThrows(IOException.class, () -> cache.populate(key, failing).writeTo(new ByteArrayOutputStream()));
+
+        assertTrue(cache.lookup(key).isEmpty());
+        assertEquals(0, listFiles());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedWhenMemoryIsFull() throws IOException {
+        cache = cache(100, 60, 4096);
+        var first = key(UUID.randomUUID(), REFRESHED);
+        var second = key(UUID.randomUUID(), REFRESHED);
+        generate(first, bytes(60));
+
+        generate(second, bytes(60));
+
+        assertTrue(cache.lookup(first).isEmpty());
+        assertTrue(cache.lookup(second).isPresent());
+        assertEquals(1, meterRegistry.get("gpfd.report.cache.evictions")
+                .tags("tier", "memory", "cause", "size").counter().count());
+    }
+
+    @Test
+    void shouldDropSupersededVersionsWhenReportIsRefreshed() throws IOException {
+        cache = cache(1024, 100, 4096);
+        var reportId = UUID.randomUUID();
+        var old = key(reportId, REFRESHED);
+        var refreshed = key(reportId, REFRESHED.plusSeconds(3600));
+        generate(old, bytes(1000));
+
+        generate(refreshed, bytes(1000));
+
+        assertTrue(cache.lookup(old).isEmpty());
+        assertTrue(cache.lookup(refreshed).isPresent());
+        assertEquals(1, meterRegistry.get("gpfd.report.cache.evictions")
+                .tags("tier", "disk", "cause", "superseded").counter().count());
+        assertEquals(1, listFiles());
+    }
+
+    @Test
+    void shouldKeepEvictedFileUntilHitHasBeenWritten() throws IOException {
+        cache = cache(0, 0, 1500);
+        var first = key(UUID.randomUUID(), REFRESHED);
+        var generated = generate(first, bytes(1000));
+        var hit = cache.lookup(first).orElseThrow();
+        var output = new ByteArrayOutputStream() {
+            private boolean evicted;
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                if (!evicted) {
+                    evicted = true;
+                    try {
+                        generate(key(UUID.randomUUID(), REFRESHED), bytes(1000));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    assertEquals(2, listFiles());
+                }
+                super.write(b, off, len);
+            }
+        };
+
+        hit.writeTo(output);
+
+        assertArrayEquals(generated, output.toByteArray());
+        assertTrue(cache.lookup(first).isEmpty());
+        assertEquals(1, listFiles());
+    }
+
+    @Test
+    void shouldFailHitWhoseFileWasEvictedBeforeWriting() throws IOException {
+        cache = cache(0, 0, 1500);
+        var first = key(UUID.randomUUID(), REFRESHED);
+        generate(first, bytes(1000));
+        var hit = cache.lookup(first).orElseThrow();
+        generate(key(UUID.randomUUID(), REFRESHED), bytes(1000));
+        var output = new ByteArrayOutputStream();
+
+        assertThrows(FileNotFoundException.class, () -> hit.writeTo(output));
+    }
+
+    @Test
+    void shouldWriteRangesOfCachedOutput() throws IOException {
+        cache = cache(1024, 100, 4096);
+        var small = key(UUID.randomUUID(), REFRESHED);
+        var large = key(UUID.randomUUID(), REFRESHED);
+        var smallBytes = generate(small, bytes(50));
+        var largeBytes = generate(large, bytes(1000));
+
+        var smallRange = new ByteArrayOutputStream();
+        cache.lookup(small).orElseThrow().writeRange(smallRange, 10, 5);
+        var largeRange = new ByteArrayOutputStream();
+        cache.lookup(large).orElseThrow().writeRange(largeRange, 900, 100);
+
+        assertArrayEquals(Arrays.copyOfRange(smallBytes, 10, 15), smallRange.toByteArray());
+        assertArrayEquals(Arrays.copyOfRange(largeBytes, 900, 1000), largeRange.toByteArray());
+    }
+
+    @Test
+    void shouldTagHitsWithReportVersion() throws IOException {
+        cache = cache(1024, 100, 4096);
+        var key = key(UUID.randomUUID(), REFRESHED);
+        generate(key, bytes(10));
+
+        var hit = cache.lookup(key).orElseThrow();
+
+        assertEquals("\"" + key.reportId() + "-csv-" + REFRESHED.toEpochMilli() + "\"", hit.entityTag());
+        assertEquals(REFRESHED, hit.lastModified());
+    }
+
+    @Test
+    void shouldNeverCacheWhenDisabled() {
+        cache = ReportResultCache.disabled();
+        var key = key(UUID.randomUUID(), REFRESHED);
+        StreamingResponseBody body = out -> out.write(1);
+
+        assertFalse(cache.isEnabled());
+        assertSame(body, cache.populate(key, body));
+        assertTrue(cache.lookup(key).isEmpty());
+    }
+
+    @Test
+    void shouldRejectNegativeSizes() {
+        var dir = directory.toString();
+        assertThrows(IllegalArgumentException.class,
+                () -> new ReportResultCache(true, -1, 0, 0, dir, meterRegistry));
+    }
+
+    private ReportResultCache cache(long memoryMaxBytes, long memoryMaxEntryBytes, long diskMaxBytes) {
+        return new ReportResultCache(true, memoryMaxBytes, memoryMaxEntryBytes, diskMaxBytes,
+                directory.toString(), meterRegistry);
+    }
+
+    private byte[] generate(ReportResultCache.Key key, byte[] content) throws IOException {
+        var output = new ByteArrayOutputStream();
+        cache.populate(key, out -> {
+            out.write(content, 0, content.length / 2);
+            out.flush();
+            out.write(content, content.length / 2, content.length - content.length / 2);
+        }).writeTo(output);
+        assertArrayEquals(content, output.toByteArray());
+        return content;
+    }
+
+    private double requests(ReportResultCache.Key key, String result) {
+        return meterRegistry.get("gpfd.report.cache.requests")
+                .tags("report", key.reportId().toString(), "result", result)
+                .counter().count();
+    }
+
+    private long listFiles() {
+        try (var files = Files.list(directory)) {
+            return files.count();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] write(StreamingResponseBody body) throws IOException {
+        var output = new ByteArrayOutputStream();
+        body.writeTo(output);
+        return output.toByteArray();
+    }
+
+    private static byte[] bytes(int length) {
+        var bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+
+    private static ReportResultCache.Key key(UUID reportId, Instant refreshedAt) {
+        return new ReportResultCache.Key(reportId, FileExtension.CSV, refreshedAt);
+    }
+}
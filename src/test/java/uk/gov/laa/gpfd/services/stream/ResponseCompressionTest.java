@@ -0,0 +1,112 @@
+package uk.gov.laa.gpfd.services.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.gov.laa.gpfd.model.FileExtension;
+import uk.gov.laa.gpfd.services.stream.ResponseCompression.ContentCoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ResponseCompressionTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ResponseCompression compression =
+            new ResponseCompression(true, 6, 1024, List.of(FileExtension.CSV), meterRegistry);
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gzip", "gzip, deflate, br", "br;q=1.0, GZIP;q=0.5", "*", "identity, *;q=0.1"})
+    void shouldNegotiateGzipWhenAccepted(String acceptEncoding) {
+        assertEquals(Optional.of(ContentCoding.GZIP), ContentCoding.negotiate(acceptEncoding));
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {"identity", "br", "gzip;q=0", "*;q=0", "gzip;q=0, *", "gzip;q=abc"})
+    void shouldNotNegotiateWhenGzipIsNotAccepted(String acceptEncoding) {
+        assertTrue(ContentCoding.negotiate(acceptEncoding).isEmpty());
+    }
+
+    @Test
+    void shouldOnlyCompressConfiguredFormats() {
+        assertTrue(compression.negotiate("gzip", FileExtension.CSV, null).isPresent());
+        assertFalse(compression.negotiate("gzip", FileExtension.XLSX, null).isPresent());
+    }
+
+    @Test
+    void shouldSkipKnownLengthsBelowMinimumSize() {
+        assertFalse(compression.negotiate("gzip", FileExtension.CSV, 1023L).isPresent());
+        assertTrue(compression.negotiate("gzip", FileExtension.CSV, 1024L).isPresent());
+    }
+
+    @Test
+    void shouldNeverCompressWhenDisabled() {
+        assertFalse(ResponseCompression.disabled().negotiate("gzip", FileExtension.CSV, null).isPresent());
+    }
+
+    @Test
+    void shouldRejectInvalidLevel() {
+        var formats = List.of(FileExtension.CSV);
+        assertThrows(IllegalArgumentException.class, () -> new ResponseCompression(true, 0, 0, formats, meterRegistry));
+        assertThrows(IllegalArgumentException.class, () -> new ResponseCompression(true, 10, 0, formats, meterRegistry));
+    }
+
+    @Test
+    void shouldCompressBodyAndRecordMetrics() throws IOException {
+        var content = "id,name\n".repeat(10_000);
+        StreamingResponseBody body = output -> {
+            output.write(content.getBytes(UTF_8));
+            output.flush();
+        };
+        var output = new ByteArrayOutputStream();
+
+        compression.compress(body, ContentCoding.GZIP, FileExtension.CSV).writeTo(output);
+
+        try (var gzip = new GZIPInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals(content, new String(gzip.readAllBytes(), UTF_8));
+        }
+        assertEquals(content.length(), meterRegistry.get("gpfd.response.compression.bytes.in").counter().count());
+        assertEquals(output.size(), meterRegistry.get("gpfd.response.compression.bytes.out").counter().count());
+        assertTrue(meterRegistry.get("gpfd.response.compression.ratio").summary().max() > 1);
+        assertEquals(1, meterRegistry.get("gpfd.response.compression.time").tag("format", "csv").timer().count());
+    }
+
+    @Test
+    void shouldNotCloseServletStream() throws IOException {
+        var output = mock(OutputStream.class);
+
+        compression.compress(out -> out.write(1), ContentCoding.GZIP, FileExtension.CSV).writeTo(output);
+
+        verify(output, never()).close();
+        verify(output, atLeastOnce()).flush();
+    }
+
+    @Test
+    void shouldPropagateBodyFailures() {
+        StreamingResponseBody body = _ -> {
+            throw new IOException("Broken pipe");
+        };
+        var wrapped = compression.compress(body, ContentCoding.GZIP, FileExtension.CSV);
+
+        assertThrows(IOException.class, () -> wrapped.writeTo(new ByteArrayOutputStream()));
+    }
+}
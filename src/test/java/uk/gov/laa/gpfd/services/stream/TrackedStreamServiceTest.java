@@ -9,15 +9,18 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.annotation.Import;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import uk.gov.laa.gpfd.config.AsyncTestConfig;
-import uk.gov.laa.gpfd.dao.ReportTrackingDao;
+import uk.gov.laa.gpfd.dao.ReportTrackingPipeline;
 import uk.gov.laa.gpfd.exception.StreamErrorException;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ExtendWith(MockitoExtension.class)
 @Import(AsyncTestConfig.class)
@@ -27,7 +30,7 @@ class TrackedStreamServiceTest {
     private static final UUID USER_ID = UUID.fromString("5aee3d3d-15d3-41ba-9646-06429a183f68");
 
     @Mock
-    ReportTrackingDao reportTrackingDao;
+    ReportTrackingPipeline reportTrackingPipeline;
 
     @InjectMocks
     TrackedStreamService trackedStreamService;
@@ -42,7 +45,7 @@ class TrackedStreamServiceTest {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         wrappedStream.writeTo(outputStream);
 
-        verify(reportTrackingDao).insertTrackingRow(REPORT_ID, USER_ID);
+        verify(reportTrackingPipeline).track(REPORT_ID, USER_ID);
     }
 
     @SneakyThrows
@@ -57,4 +60,55 @@ class TrackedStreamServiceTest {
 
     }
 
-}
\ No newline at end of file
+    @SneakyThrows
+    @Test
+    void keepsStoredOutputRangeable() {
+        var wrappedStream = trackedStreamService.wrapStream(stored(), REPORT_ID, USER_ID);
+
+        var rangeable = assertInstanceOf(RangeableResponseBody.class, wrappedStream);
+        var outputStream = new ByteArrayOutputStream();
+        rangeable.writeRange(outputStream, 0, 2);
+
+        assertEquals("da", outputStream.toString());
+        assertEquals(4, rangeable.contentLength());
+        assertEquals("\"v1\"", rangeable.entityTag());
+        verify(reportTrackingPipeline).track(REPORT_ID, USER_ID);
+    }
+
+    @SneakyThrows
+    @Test
+    void doesNotTrackResumedDownloads() {
+        var rangeable = (RangeableResponseBody) trackedStreamService.wrapStream(stored(), REPORT_ID, USER_ID);
+
+        var outputStream = new ByteArrayOutputStream();
+        rangeable.writeRange(outputStream, 2, 2);
+
+        assertEquals("ta", outputStream.toString());
+        verifyNoInteractions(reportTrackingPipeline);
+    }
+
+    private static RangeableResponseBody stored() {
+        var bytes = "data".getBytes();
+        return new RangeableResponseBody() {
+            @Override
+            public void writeRange(OutputStream output, long start, long length) throws IOException {
+                output.write(bytes, (int) start, (int) length);
+            }
+
+            @Override
+            public String entityTag() {
+                return "\"v1\"";
+            }
+
+            @Override
+            public Instant lastModified() {
+                return Instant.EPOCH;
+            }
+
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+        };
+    }
+}
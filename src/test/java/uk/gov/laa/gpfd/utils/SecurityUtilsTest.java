@@ -8,11 +8,14 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.AuthenticationIsNullException;
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.NoAttributesOnTokenException;
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.NoOidSetOnTokenException;
@@ -20,6 +23,7 @@ import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.NoRolesExcept
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.NoRolesInAttributeException;
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.PrincipalIsNullException;
 import uk.gov.laa.gpfd.exception.UnableToParseAuthDetailsException.UnexpectedAuthClassException;
+import uk.gov.laa.gpfd.security.RoleBits;
 
 import java.util.HashMap;
 import java.util.List;
@@ -30,11 +34,13 @@ import java.util.stream.Stream;
 import static java.util.stream.Stream.of;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.when;
+import static uk.gov.laa.gpfd.security.SilasRoles.REP000;
 import static uk.gov.laa.gpfd.security.SilasRoles.all;
 
 @ExtendWith(MockitoExtension.class)
@@ -160,6 +166,45 @@ class SecurityUtilsTest {
     }
 
 
+    @Test
+    void extractRoleBits_parsesRolesWithoutASession() {
+        when(oidcUser.getAttributes()).thenReturn(Map.of("LAA_APP_ROLES", all()));
+        when(authentication.getPrincipal()).thenReturn(oidcUser);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        assertEquals(RoleBits.of(all()), securityUtils.extractRoleBits());
+    }
+
+    @Test
+    void extractRoleBits_reusesTheSessionsRolesWhileTheClaimIsUnchanged() {
+        var claim = List.of(REP000);
+        when(oidcUser.getAttributes()).thenReturn(Map.of("LAA_APP_ROLES", claim));
+        when(authentication.getPrincipal()).thenReturn(oidcUser);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        var request = new MockHttpServletRequest();
+        request.getSession(true);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        try {
+            var first = securityUtils.extractRoleBits();
+            assertSame(first, securityUtils.extractRoleBits());
+
+            when(oidcUser.getAttributes()).thenReturn(Map.of("LAA_APP_ROLES", all()));
+            assertEquals(RoleBits.of(all()), securityUtils.extractRoleBits());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Test
+    void extractRoleBits_throwsException_whenRoleSuppliedIsEmpty() {
+        when(authentication.getPrincipal()).thenReturn(oidcUser);
+        when(oidcUser.getAttributes()).thenReturn(Map.of("LAA_APP_ROLES", ""));
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        assertThrows(NoRolesException.class, securityUtils::extractRoleBits);
+    }
+
     @Test
     void isAuthorized_returnsTrue_whenUserHasAtLeastOneRequiredRole() {
         assertTrue(securityUtils.isAuthorized(
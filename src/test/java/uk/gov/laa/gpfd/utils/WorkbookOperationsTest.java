@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import uk.gov.laa.gpfd.services.excel.workbook.AnalyticsParts;
 
 import java.io.IOException;
 import java.util.LinkedHashMap;
@@ -68,6 +69,16 @@ class WorkbookOperationsTest implements WorkbookOperations {
         }
     }
 
+    @Test
+    void spliceAnalyticSheets_throwsWhenTargetNotReportWorkbook() throws IOException {
+        try (var invalidTarget = new SXSSFWorkbook()) {
+            var analytics = mock(AnalyticsParts.class);
+
+            assertThrows(InvalidWorkbookTypeException.class,
+                    () -> spliceAnalyticSheets(analytics, invalidTarget, new LinkedHashMap<>()));
+        }
+    }
+
     @Test
     void shouldHandleEmptyTemplate() {
         Workbook workbook = mock(Workbook.class);
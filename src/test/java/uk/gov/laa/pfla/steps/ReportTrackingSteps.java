@@ -4,6 +4,7 @@ import io.cucumber.java.en.Given;
 import io.cucumber.java.en.Then;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
+import uk.gov.laa.gpfd.dao.ReportTrackingPipeline;
 import uk.gov.laa.pfla.configuration.SecurityConfigTestSetup;
 
 import java.util.UUID;
@@ -11,15 +12,19 @@ import java.util.UUID;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
 
-public record ReportTrackingSteps(@Qualifier("trackingJdbcTemplate") JdbcTemplate trackingJdbcTemplate) {
+public record ReportTrackingSteps(@Qualifier("trackingJdbcTemplate") JdbcTemplate trackingJdbcTemplate,
+                                  ReportTrackingPipeline reportTrackingPipeline) {
 
     @Given("I have an empty tracking table")
     public void deleteTrackingEntries() {
+        reportTrackingPipeline.flush();
         trackingJdbcTemplate.update("DELETE FROM glad.report_tracking WHERE user_id = ?", SecurityConfigTestSetup.getTestUserOid());
     }
 
     @Then("a row is entered in the report tracking table for report ID {string}")
     public void shouldBeAnEntryInTheReportTrackingTableForReport(String reportId) {
+        // Tracking rows are written behind the download
+        reportTrackingPipeline.flush();
 
         var rowCount = trackingJdbcTemplate.queryForObject(
                 "SELECT COUNT(id) FROM glad.report_tracking WHERE report_id = ? AND user_id = ?", Integer.class, UUID.fromString(reportId), SecurityConfigTestSetup.getTestUserOid()
@@ -30,6 +35,8 @@ public record ReportTrackingSteps(@Qualifier("trackingJdbcTemplate") JdbcTemplat
 
     @Then("no row is entered in the report tracking table for report ID {string}")
     public void shouldNotBeAnEntryInTheReportTrackingTableForReport(String reportId) {
+        // Tracking rows are written behind the download
+        reportTrackingPipeline.flush();
 
         var rowCount = trackingJdbcTemplate.queryForObject(
                 "SELECT COUNT(id) FROM glad.report_tracking WHERE report_id = ? AND user_id = ?", Integer.class, UUID.fromString(reportId), SecurityConfigTestSetup.getTestUserOid()
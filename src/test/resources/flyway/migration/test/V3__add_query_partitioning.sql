@@ -0,0 +1,3 @@
+ALTER TABLE glad.report_queries ADD COLUMN IF NOT EXISTS parallel_slices INT;
+ALTER TABLE glad.report_queries ADD COLUMN IF NOT EXISTS parallel_slice_key VARCHAR(128);
+ALTER TABLE glad.report_queries ADD COLUMN IF NOT EXISTS parallel_ordered BOOLEAN;
@@ -0,0 +1 @@
+ALTER TABLE glad.reports ADD COLUMN IF NOT EXISTS deflate_level INT;
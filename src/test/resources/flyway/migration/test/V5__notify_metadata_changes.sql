@@ -0,0 +1,36 @@
+CREATE OR REPLACE FUNCTION glad.notify_metadata_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('gpfd_metadata', TG_TABLE_NAME);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS reports_notify_metadata_change ON glad.reports;
+CREATE TRIGGER reports_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON glad.reports
+    FOR EACH STATEMENT EXECUTE FUNCTION glad.notify_metadata_change();
+
+DROP TRIGGER IF EXISTS report_queries_notify_metadata_change ON glad.report_queries;
+CREATE TRIGGER report_queries_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON glad.report_queries
+    FOR EACH STATEMENT EXECUTE FUNCTION glad.notify_metadata_change();
+
+DROP TRIGGER IF EXISTS field_attributes_notify_metadata_change ON glad.field_attributes;
+CREATE TRIGGER field_attributes_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON glad.field_attributes
+    FOR EACH STATEMENT EXECUTE FUNCTION glad.notify_metadata_change();
+
+DROP TRIGGER IF EXISTS report_output_types_notify_metadata_change ON glad.report_output_types;
+CREATE TRIGGER report_output_types_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON glad.report_output_types
+    FOR EACH STATEMENT EXECUTE FUNCTION glad.notify_metadata_change();
+
+DROP TRIGGER IF EXISTS roles_notify_metadata_change ON glad.roles;
+CREATE TRIGGER roles_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON glad.roles
+    FOR EACH STATEMENT EXECUTE FUNCTION glad.notify_metadata_change();
+
+DROP TRIGGER IF EXISTS report_roles_notify_metadata_change ON glad.report_roles;
+CREATE TRIGGER report_roles_notify_metadata_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON glad.report_roles
+    FOR EACH STATEMENT EXECUTE FUNCTION glad.notify_metadata_change();